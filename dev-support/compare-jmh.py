@@ -0,0 +1,60 @@
+#!/usr/bin/env python3
+# Licensed to the Apache Software Foundation (ASF) under one or more
+# contributor license agreements.  See the NOTICE file distributed with
+# this work for additional information regarding copyright ownership.
+# The ASF licenses this file to You under the Apache License, Version 2.0
+# (the "License"); you may not use this file except in compliance with
+# the License.  You may obtain a copy of the License at
+#
+#     http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+
+"""Compare two JMH result files in JSON, see ratis-benchmark/README.md."""
+
+import json
+import sys
+
+
+def load(path):
+    results = {}
+    with open(path) as f:
+        for r in json.load(f):
+            params = ",".join("%s=%s" % kv for kv in sorted(r.get("params", {}).items()))
+            key = (r["benchmark"].rsplit(".", 2)[-2] + "." + r["benchmark"].rsplit(".", 1)[-1], params)
+            primary = r["primaryMetric"]
+            alloc = r.get("secondaryMetrics", {}).get("·gc.alloc.rate.norm")
+            results[key] = (primary["score"], primary.get("scoreError", 0.0), primary["scoreUnit"],
+                            alloc["score"] if alloc else None)
+    return results
+
+
+def main(argv):
+    if len(argv) != 3:
+        print("Usage: %s <BASE_JSON> <NEW_JSON>" % argv[0])
+        return 1
+    base = load(argv[1])
+    new = load(argv[2])
+
+    print("%-60s %-30s %14s %14s %8s %4s %12s %12s" % (
+        "Benchmark", "Params", "Base", "New", "Change", "Sig", "Base B/op", "New B/op"))
+    for key in sorted(set(base) | set(new)):
+        if key not in base or key not in new:
+            print("%-60s %-30s only in %s" % (key[0], key[1], argv[1] if key in base else argv[2]))
+            continue
+        b, be, unit, ba = base[key]
+        n, ne, _, na = new[key]
+        change = (n - b) / b * 100 if b else float("nan")
+        significant = "*" if abs(n - b) > be + ne else ""
+        print("%-60s %-30s %14.3f %14.3f %+7.1f%% %4s %12s %12s  %s" % (
+            key[0], key[1], b, n, change, significant,
+            "" if ba is None else "%.1f" % ba, "" if na is None else "%.1f" % na, unit))
+    return 0
+
+
+if __name__ == "__main__":
+    sys.exit(main(sys.argv))
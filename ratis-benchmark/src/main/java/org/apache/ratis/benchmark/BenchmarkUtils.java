@@ -0,0 +1,58 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.benchmark;
+
+import org.apache.ratis.protocol.ClientId;
+import org.apache.ratis.proto.RaftProtos.LogEntryProto;
+import org.apache.ratis.server.impl.ServerProtoUtils;
+import org.apache.ratis.thirdparty.com.google.protobuf.ByteString;
+import org.apache.ratis.util.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.ThreadLocalRandom;
+
+/** Utilities for the benchmarks. */
+public interface BenchmarkUtils {
+  ClientId CLIENT_ID = ClientId.randomId();
+
+  /** @return random bytes of the given size, which are not compressible. */
+  static ByteString randomBytes(int size) {
+    final byte[] bytes = new byte[size];
+    ThreadLocalRandom.current().nextBytes(bytes);
+    return ByteString.copyFrom(bytes);
+  }
+
+  /** @return a state machine log entry with the given size of log data. */
+  static LogEntryProto newLogEntry(long term, long index, ByteString logData) {
+    return ServerProtoUtils.toLogEntryProto(
+        ServerProtoUtils.toStateMachineLogEntryProto(CLIENT_ID, index, logData, null), term, index);
+  }
+
+  /** @return a new temporary directory, which is deleted by {@link #deleteDir(File)}. */
+  static File newTempDir(Class<?> clazz) throws IOException {
+    return Files.createTempDirectory(clazz.getSimpleName()).toFile();
+  }
+
+  static void deleteDir(File dir) throws IOException {
+    if (dir != null) {
+      FileUtils.deleteFully(dir);
+    }
+  }
+}
@@ -0,0 +1,432 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.benchmark;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.Parameters;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.apache.ratis.MiniRaftCluster;
+import org.apache.ratis.RaftTestUtil;
+import org.apache.ratis.client.RaftClient;
+import org.apache.ratis.client.RaftClientConfigKeys;
+import org.apache.ratis.conf.RaftProperties;
+import org.apache.ratis.grpc.MiniRaftClusterWithGrpc;
+import org.apache.ratis.netty.MiniRaftClusterWithNetty;
+import org.apache.ratis.protocol.Message;
+import org.apache.ratis.protocol.RaftClientReply;
+import org.apache.ratis.protocol.RaftGroup;
+import org.apache.ratis.protocol.RaftGroupId;
+import org.apache.ratis.protocol.RaftPeer;
+import org.apache.ratis.server.simulation.MiniRaftClusterWithSimulatedRpc;
+import org.apache.ratis.server.simulation.SimulatedNetwork;
+import org.apache.ratis.server.storage.SlowDiskInjection;
+import org.apache.ratis.statemachine.StateMachine;
+import org.apache.ratis.util.Daemon;
+import org.apache.ratis.util.JavaUtils;
+import org.apache.ratis.util.SizeInBytes;
+import org.apache.ratis.util.TimeDuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * An end-to-end benchmark running clients against a {@link MiniRaftCluster} in a single JVM.
+ *
+ * The clients send writes and reads of a given mix to {@link BenchmarkStateMachine}
+ * in one of the two modes:
+ * (1) closed loop, where each client sends a request after the reply of its previous request; or
+ * (2) open loop, where the requests are sent asynchronously at a fixed rate.
+ * In the open loop mode, the latency is measured from the intended send time of a request
+ * so that a stalled cluster is not hidden by the requests not sent (coordinated omission).
+ *
+ * The latencies are recorded in HDR histograms and the results are written in JSON.
+ */
+@Parameters(commandDescription = "End-to-end benchmark on a MiniRaftCluster")
+public class ClusterBenchmark {
+  static final Logger LOG = LoggerFactory.getLogger(ClusterBenchmark.class);
+
+  /** The latencies are recorded in microseconds up to an hour. */
+  private static final long MAX_LATENCY_MICROS = TimeUnit.HOURS.toMicros(1);
+
+  enum Rpc {
+    SIMULATED(MiniRaftClusterWithSimulatedRpc.FACTORY),
+    GRPC(MiniRaftClusterWithGrpc.FACTORY),
+    NETTY(MiniRaftClusterWithNetty.FACTORY);
+
+    private final MiniRaftCluster.Factory<?> factory;
+
+    Rpc(MiniRaftCluster.Factory<?> factory) {
+      this.factory = factory;
+    }
+  }
+
+  enum Mode {CLOSED, OPEN}
+
+  @Parameter(names = {"--rpc"}, description = "RPC type: SIMULATED, GRPC or NETTY")
+  private Rpc rpc = Rpc.GRPC;
+
+  @Parameter(names = {"--servers"}, description = "Number of servers")
+  private int numServers = 3;
+
+  @Parameter(names = {"--groups"}, description = "Number of raft groups, each of which has all the servers")
+  private int numGroups = 1;
+
+  @Parameter(names = {"--clients"}, description = "Number of clients, which are assigned to the groups round-robin")
+  private int numClients = 16;
+
+  @Parameter(names = {"--valueSize"}, description = "Size of each write in bytes")
+  private int valueSize = 1024;
+
+  @Parameter(names = {"--readRatio"}, description = "Ratio of the reads in [0, 1]")
+  private double readRatio = 0;
+
+  @Parameter(names = {"--mode"}, description = "CLOSED for closed loop or OPEN for open loop")
+  private Mode mode = Mode.CLOSED;
+
+  @Parameter(names = {"--rate"}, description = "Requests per second in the open loop mode")
+  private int rate = 1000;
+
+  @Parameter(names = {"--maxOutstanding"},
+      description = "Max outstanding requests in the open loop mode; the requests beyond it are dropped")
+  private int maxOutstanding = 10000;
+
+  @Parameter(names = {"--warmup"}, description = "Warmup time in seconds, which is excluded from the results")
+  private int warmupSeconds = 10;
+
+  @Parameter(names = {"--duration"}, description = "Measurement time in seconds")
+  private int durationSeconds = 60;
+
+  @Parameter(names = {"--seed"}, description = "Seed of the simulated network and disk")
+  private long seed = 0;
+
+  @Parameter(names = {"--latency"}, description = "One-way latency in milliseconds of the SIMULATED links")
+  private long latencyMs = 0;
+
+  @Parameter(names = {"--jitter"}, description = "Jitter in milliseconds of the SIMULATED links")
+  private long jitterMs = 0;
+
+  @Parameter(names = {"--bandwidth"},
+      description = "Bytes per second of the SIMULATED links, e.g. 100MB; 0 for unlimited")
+  private String bandwidth = "0";
+
+  @Parameter(names = {"--loss"}, description = "Message loss probability of the SIMULATED links")
+  private double loss = 0;
+
+  @Parameter(names = {"--diskBandwidth"}, description = "Simulated disk write bytes per second; 0 for unlimited")
+  private String diskBandwidth = "0";
+
+  @Parameter(names = {"--fsyncLatency"}, description = "Simulated disk fsync latency in milliseconds")
+  private long fsyncLatencyMs = 0;
+
+  @Parameter(names = {"--output"}, description = "Output JSON file; print to stdout if it is not set")
+  private String output;
+
+  @Parameter(names = {"--help", "-h"}, help = true, description = "Print the usage")
+  private boolean help;
+
+  public static void main(String[] args) throws Exception {
+    final ClusterBenchmark benchmark = new ClusterBenchmark();
+    final JCommander jc = JCommander.newBuilder().addObject(benchmark).build();
+    jc.setProgramName(ClusterBenchmark.class.getSimpleName());
+    jc.parse(args);
+    if (benchmark.help) {
+      jc.usage();
+      return;
+    }
+    benchmark.run();
+    System.exit(0);
+  }
+
+  /** The statistics of a type of operations. */
+  static class OpStats {
+    private final String name;
+    private final Recorder recorder = new Recorder(MAX_LATENCY_MICROS, 3);
+    private final AtomicLong errors = new AtomicLong();
+
+    OpStats(String name) {
+      this.name = name;
+    }
+
+    void record(long startNanos) {
+      final long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos);
+      recorder.recordValue(Math.min(Math.max(micros, 0), MAX_LATENCY_MICROS));
+    }
+
+    void onReply(RaftClientReply reply, Throwable e, long startNanos) {
+      if (e == null && reply.isSuccess()) {
+        record(startNanos);
+      } else {
+        errors.incrementAndGet();
+        LOG.debug("Failed {}: reply={}", name, reply, e);
+      }
+    }
+
+    void reset() {
+      recorder.reset();
+      errors.set(0);
+    }
+
+    void appendJson(StringBuilder b, double seconds) {
+      final Histogram h = recorder.getIntervalHistogram();
+      final long count = h.getTotalCount();
+      b.append("    \"").append(name).append("\": {\n");
+      appendField(b, "      ", "count", count, true);
+      appendField(b, "      ", "errors", errors.get(), true);
+      appendField(b, "      ", "throughput", count / seconds, true);
+      b.append("      \"latencyMicros\": {\n");
+      final String indent = "        ";
+      appendField(b, indent, "min", count == 0? 0: h.getMinValue(), true);
+      appendField(b, indent, "mean", h.getMean(), true);
+      appendField(b, indent, "p50", h.getValueAtPercentile(50), true);
+      appendField(b, indent, "p90", h.getValueAtPercentile(90), true);
+      appendField(b, indent, "p99", h.getValueAtPercentile(99), true);
+      appendField(b, indent, "p999", h.getValueAtPercentile(99.9), true);
+      appendField(b, indent, "max", h.getMaxValue(), false);
+      b.append("      }\n    }");
+    }
+  }
+
+  private final OpStats writes = new OpStats("write");
+  private final OpStats reads = new OpStats("read");
+  private final AtomicLong dropped = new AtomicLong();
+  private volatile boolean running = true;
+
+  private Message writeMessage;
+
+  void run() throws Exception {
+    final RaftProperties properties = new RaftProperties();
+    properties.setClass(MiniRaftCluster.STATEMACHINE_CLASS_KEY, BenchmarkStateMachine.class, StateMachine.class);
+    RaftClientConfigKeys.Async.setMaxOutstandingRequests(properties, Math.max(2, maxOutstanding));
+    writeMessage = Message.valueOf(BenchmarkUtils.randomBytes(valueSize));
+    if (rpc == Rpc.SIMULATED) {
+      MiniRaftClusterWithSimulatedRpc.setSimulateLatencyMs(properties, 0);
+      SimulatedNetwork.setSeed(properties, seed);
+      SimulatedNetwork.setDefault(properties, new SimulatedNetwork.LinkModel(
+          TimeDuration.valueOf(latencyMs, TimeUnit.MILLISECONDS), TimeDuration.valueOf(jitterMs, TimeUnit.MILLISECONDS),
+          SizeInBytes.valueOf(bandwidth), loss));
+    }
+    final SizeInBytes diskBytesPerSecond = SizeInBytes.valueOf(diskBandwidth);
+    if (diskBytesPerSecond.getSize() > 0 || fsyncLatencyMs > 0) {
+      SlowDiskInjection.getInstance().setDefault(new SlowDiskInjection.DiskModel(diskBytesPerSecond,
+          TimeDuration.valueOf(fsyncLatencyMs, TimeUnit.MILLISECONDS), TimeDuration.valueOf(0, TimeUnit.MILLISECONDS),
+          seed));
+    }
+
+    final MiniRaftCluster cluster = rpc.factory.newCluster(numServers, properties);
+    final List<RaftClient> clients = new ArrayList<>();
+    try {
+      cluster.start();
+      final List<RaftGroup> groups = startGroups(cluster);
+      for (int i = 0; i < numClients; i++) {
+        clients.add(cluster.createClient(groups.get(i % groups.size())));
+      }
+
+      final List<Daemon> workers = mode == Mode.CLOSED? startClosedLoop(clients): startOpenLoop(clients);
+      LOG.info("Warming up for {}s", warmupSeconds);
+      TimeUnit.SECONDS.sleep(warmupSeconds);
+      writes.reset();
+      reads.reset();
+      dropped.set(0);
+
+      LOG.info("Running for {}s", durationSeconds);
+      final long startNanos = System.nanoTime();
+      TimeUnit.SECONDS.sleep(durationSeconds);
+      final double seconds = (System.nanoTime() - startNanos) / 1e9;
+      final String json = toJson(seconds);
+
+      running = false;
+      for (Daemon w : workers) {
+        w.join(TimeUnit.SECONDS.toMillis(10));
+      }
+      writeOutput(json);
+    } finally {
+      for (RaftClient c : clients) {
+        try {
+          c.close();
+        } catch (IOException e) {
+          LOG.warn("Failed to close " + c, e);
+        }
+      }
+      cluster.shutdown();
+    }
+  }
+
+  /** Start the groups; the first group is the cluster group and the others are added to all the servers. */
+  private List<RaftGroup> startGroups(MiniRaftCluster cluster) throws Exception {
+    final List<RaftGroup> groups = new ArrayList<>();
+    groups.add(cluster.getGroup());
+    RaftTestUtil.waitForLeader(cluster);
+    for (int i = 1; i < numGroups; i++) {
+      final RaftGroup group = RaftGroup.valueOf(RaftGroupId.randomId(), cluster.getPeers());
+      for (RaftPeer p : group.getPeers()) {
+        try (RaftClient client = cluster.createClient(p.getId(), group)) {
+          client.groupAdd(group, p.getId());
+        }
+      }
+      RaftTestUtil.waitForLeader(cluster, group.getGroupId());
+      groups.add(group);
+    }
+    LOG.info("Started {} group(s): {}", groups.size(), cluster.printServers());
+    return groups;
+  }
+
+  private boolean nextIsRead() {
+    return readRatio > 0 && ThreadLocalRandom.current().nextDouble() < readRatio;
+  }
+
+  /** Each client sends a request after the reply of its previous request. */
+  private List<Daemon> startClosedLoop(List<RaftClient> clients) {
+    final List<Daemon> workers = new ArrayList<>();
+    for (int i = 0; i < clients.size(); i++) {
+      final RaftClient client = clients.get(i);
+      final Daemon w = new Daemon(() -> {
+        while (running) {
+          final boolean read = nextIsRead();
+          final OpStats stats = read? reads: writes;
+          final long start = System.nanoTime();
+          RaftClientReply reply = null;
+          Throwable error = null;
+          try {
+            reply = read? client.sendReadOnly(Message.EMPTY): client.send(writeMessage);
+          } catch (Throwable e) {
+            error = e;
+          }
+          if (running) {
+            stats.onReply(reply, error, start);
+          }
+        }
+      }, "client-" + i);
+      w.start();
+      workers.add(w);
+    }
+    return workers;
+  }
+
+  /** A pacer thread sends the requests asynchronously at a fixed rate using the clients round-robin. */
+  private List<Daemon> startOpenLoop(List<RaftClient> clients) {
+    final long intervalNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(1, rate);
+    final AtomicInteger outstanding = new AtomicInteger();
+    final Daemon pacer = new Daemon(() -> {
+      final long start = System.nanoTime();
+      for (long i = 0; running; i++) {
+        final long intended = start + i * intervalNanos;
+        for (long wait; (wait = intended - System.nanoTime()) > 0; ) {
+          LockSupport.parkNanos(wait);
+        }
+        if (outstanding.get() >= maxOutstanding) {
+          dropped.incrementAndGet();
+          continue;
+        }
+
+        outstanding.incrementAndGet();
+        final RaftClient client = clients.get((int) (i % clients.size()));
+        final boolean read = nextIsRead();
+        final OpStats stats = read? reads: writes;
+        final CompletableFuture<RaftClientReply> f = read? client.sendReadOnlyAsync(Message.EMPTY)
+            : client.sendAsync(writeMessage);
+        f.whenComplete((reply, e) -> {
+          outstanding.decrementAndGet();
+          if (running) {
+            stats.onReply(reply, e == null? null: JavaUtils.unwrapCompletionException(e), intended);
+          }
+        });
+      }
+    }, "pacer");
+    pacer.start();
+    final List<Daemon> workers = new ArrayList<>();
+    workers.add(pacer);
+    return workers;
+  }
+
+  private String toJson(double seconds) {
+    final StringBuilder b = new StringBuilder();
+    b.append("{\n");
+    appendField(b, "  ", "benchmark", ClusterBenchmark.class.getSimpleName(), true);
+    appendField(b, "  ", "timestamp", Instant.now().toString(), true);
+    b.append("  \"config\": {\n");
+    final String indent = "    ";
+    appendField(b, indent, "rpc", rpc.name(), true);
+    appendField(b, indent, "servers", numServers, true);
+    appendField(b, indent, "groups", numGroups, true);
+    appendField(b, indent, "clients", numClients, true);
+    appendField(b, indent, "valueSize", valueSize, true);
+    appendField(b, indent, "readRatio", readRatio, true);
+    appendField(b, indent, "mode", mode.name(), true);
+    if (mode == Mode.OPEN) {
+      appendField(b, indent, "rate", rate, true);
+      appendField(b, indent, "maxOutstanding", maxOutstanding, true);
+    }
+    if (rpc == Rpc.SIMULATED) {
+      appendField(b, indent, "latencyMs", latencyMs, true);
+      appendField(b, indent, "jitterMs", jitterMs, true);
+      appendField(b, indent, "bandwidth", bandwidth, true);
+      appendField(b, indent, "loss", loss, true);
+    }
+    appendField(b, indent, "seed", seed, true);
+    appendField(b, indent, "diskBandwidth", diskBandwidth, true);
+    appendField(b, indent, "fsyncLatencyMs", fsyncLatencyMs, true);
+    appendField(b, indent, "warmupSeconds", warmupSeconds, true);
+    appendField(b, indent, "durationSeconds", durationSeconds, false);
+    b.append("  },\n");
+    appendField(b, "  ", "elapsedSeconds", seconds, true);
+    appendField(b, "  ", "dropped", dropped.get(), true);
+    b.append("  \"operations\": {\n");
+    writes.appendJson(b, seconds);
+    b.append(",\n");
+    reads.appendJson(b, seconds);
+    b.append("\n  }\n}\n");
+    return b.toString();
+  }
+
+  private static void appendField(StringBuilder b, String indent, String name, Object value, boolean more) {
+    b.append(indent).append('"').append(name).append("\": ");
+    if (value instanceof String) {
+      b.append('"').append(value).append('"');
+    } else if (value instanceof Double) {
+      final double d = (Double) value;
+      b.append(Double.isFinite(d)? String.format("%.3f", d): "0");
+    } else {
+      b.append(value);
+    }
+    b.append(more? ",\n": "\n");
+  }
+
+  private void writeOutput(String json) throws IOException {
+    if (output == null) {
+      System.out.print(json);
+    } else {
+      Files.write(Paths.get(output), json.getBytes(StandardCharsets.UTF_8));
+      LOG.info("Results written to {}", output);
+    }
+  }
+}
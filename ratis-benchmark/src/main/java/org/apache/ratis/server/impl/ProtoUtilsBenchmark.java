@@ -0,0 +1,125 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.server.impl;
+
+import org.apache.ratis.benchmark.BenchmarkUtils;
+import org.apache.ratis.client.impl.ClientProtoUtils;
+import org.apache.ratis.proto.RaftProtos.AppendEntriesRequestProto;
+import org.apache.ratis.proto.RaftProtos.LogEntryProto;
+import org.apache.ratis.proto.RaftProtos.RaftClientReplyProto;
+import org.apache.ratis.proto.RaftProtos.RaftClientRequestProto;
+import org.apache.ratis.protocol.Message;
+import org.apache.ratis.protocol.RaftClientReply;
+import org.apache.ratis.protocol.RaftClientRequest;
+import org.apache.ratis.protocol.RaftGroupId;
+import org.apache.ratis.protocol.RaftPeerId;
+import org.apache.ratis.server.protocol.TermIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark the conversions of {@link ClientProtoUtils} and {@link ServerProtoUtils} on the write path:
+ * a client request is converted to and from its proto, then to a log entry,
+ * which is sent to the followers in an append entries request, and the reply is converted back.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ProtoUtilsBenchmark {
+  static final RaftPeerId LEADER = RaftPeerId.valueOf("s0");
+  static final RaftPeerId FOLLOWER = RaftPeerId.valueOf("s1");
+  static final RaftGroupId GROUP_ID = RaftGroupId.randomId();
+
+  @Param({"64", "1024", "16384"})
+  private int messageSize;
+
+  /** The number of entries in an append entries request. */
+  @Param({"1", "64"})
+  private int numEntries;
+
+  private RaftClientRequest request;
+  private RaftClientRequestProto requestProto;
+  private RaftClientReply reply;
+  private RaftClientReplyProto replyProto;
+  private List<LogEntryProto> entries;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    final Message message = Message.valueOf(BenchmarkUtils.randomBytes(messageSize));
+    request = new RaftClientRequest(BenchmarkUtils.CLIENT_ID, LEADER, GROUP_ID, 1, message,
+        RaftClientRequest.writeRequestType(), null);
+    requestProto = ClientProtoUtils.toRaftClientRequestProto(request);
+    reply = new RaftClientReply(request, Collections.emptyList());
+    replyProto = ClientProtoUtils.toRaftClientReplyProto(reply);
+
+    entries = new ArrayList<>(numEntries);
+    for (int i = 0; i < numEntries; i++) {
+      entries.add(BenchmarkUtils.newLogEntry(1, i, message.getContent()));
+    }
+  }
+
+  @Benchmark
+  public RaftClientRequestProto toRaftClientRequestProto() {
+    return ClientProtoUtils.toRaftClientRequestProto(request);
+  }
+
+  @Benchmark
+  public RaftClientRequest toRaftClientRequest() {
+    return ClientProtoUtils.toRaftClientRequest(requestProto);
+  }
+
+  @Benchmark
+  public RaftClientReplyProto toRaftClientReplyProto() {
+    return ClientProtoUtils.toRaftClientReplyProto(reply);
+  }
+
+  @Benchmark
+  public RaftClientReply toRaftClientReply() {
+    return ClientProtoUtils.toRaftClientReply(replyProto);
+  }
+
+  @Benchmark
+  public LogEntryProto toLogEntryProto() {
+    return ServerProtoUtils.toLogEntryProto(
+        ServerProtoUtils.toStateMachineLogEntryProto(request, null, null), 1, 1);
+  }
+
+  @Benchmark
+  public AppendEntriesRequestProto toAppendEntriesRequestProto() {
+    return ServerProtoUtils.toAppendEntriesRequestProto(LEADER, FOLLOWER, GROUP_ID, 1, entries,
+        numEntries, false, false, false, TermIndex.newTermIndex(1, 0), Collections.emptyList(), 1);
+  }
+}
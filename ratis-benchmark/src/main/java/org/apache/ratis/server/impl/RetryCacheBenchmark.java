@@ -0,0 +1,111 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.server.impl;
+
+import org.apache.ratis.protocol.ClientId;
+import org.apache.ratis.protocol.RaftClientReply;
+import org.apache.ratis.protocol.RaftGroupId;
+import org.apache.ratis.protocol.RaftPeerId;
+import org.apache.ratis.util.TimeDuration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark {@link RetryCache} with the benchmark threads, see the -t option, sharing a cache.
+ * The new request benchmark creates and completes an entry for each request as the server does;
+ * the retry benchmark queries the existing entries.
+ * The entries expire after one second, instead of the default, to bound the size of the cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class RetryCacheBenchmark {
+  static final int NUM_RETRY_CALLS = 1024;
+
+  @Param({"1", "100", "10000"})
+  private int numClients;
+
+  private RetryCache cache;
+  private ClientId[] clientIds;
+  private RaftClientReply reply;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    cache = new RetryCache(TimeDuration.valueOf(1, TimeUnit.SECONDS));
+    clientIds = new ClientId[numClients];
+    for (int i = 0; i < clientIds.length; i++) {
+      clientIds[i] = ClientId.randomId();
+    }
+    reply = new RaftClientReply(clientIds[0], RaftPeerId.valueOf("s0"), RaftGroupId.randomId(),
+        0, true, null, null, 0, Collections.emptyList());
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    cache.close();
+  }
+
+  @State(Scope.Thread)
+  public static class Calls {
+    private long nextCallId = ThreadLocalRandom.current().nextInt(Integer.MAX_VALUE);
+    private int nextClient = 0;
+
+    ClientId nextClientId(ClientId[] clientIds) {
+      if (nextClient == clientIds.length) {
+        nextClient = 0;
+      }
+      return clientIds[nextClient++];
+    }
+  }
+
+  @Benchmark
+  public RetryCache.CacheEntry newRequest(Calls calls) {
+    final ClientId clientId = calls.nextClientId(clientIds);
+    final RetryCache.CacheQueryResult result = cache.queryCache(clientId, calls.nextCallId++);
+    final RetryCache.CacheEntry entry = result.getEntry();
+    if (!result.isRetry()) {
+      entry.updateResult(reply);
+    }
+    return entry;
+  }
+
+  @Benchmark
+  public RetryCache.CacheEntry retry(Calls calls) {
+    final ClientId clientId = calls.nextClientId(clientIds);
+    // the entries are created by the first queries and then they are retries
+    return cache.queryCache(clientId, calls.nextCallId++ % NUM_RETRY_CALLS).getEntry();
+  }
+}
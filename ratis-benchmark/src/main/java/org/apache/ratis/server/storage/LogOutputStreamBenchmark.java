@@ -0,0 +1,109 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.server.storage;
+
+import org.apache.ratis.benchmark.BenchmarkUtils;
+import org.apache.ratis.proto.RaftProtos.LogEntryProto;
+import org.apache.ratis.thirdparty.com.google.protobuf.ByteString;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark {@link LogOutputStream#write(LogEntryProto)}.
+ * Each invocation writes a batch of entries and, if sync is set, flushes them to the disk.
+ * The segment is rolled once it reaches {@link #SEGMENT_SIZE} so that the file size stays bounded.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class LogOutputStreamBenchmark {
+  static final int BATCH_SIZE = 128;
+  static final long SEGMENT_SIZE = 64L << 20;
+
+  @Param({"64", "1024", "16384"})
+  private int entrySize;
+
+  @Param({"false", "true"})
+  private boolean sync;
+
+  private File dir;
+  private File file;
+  private LogEntryProto[] entries;
+  private LogOutputStream out;
+  private long written;
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    dir = BenchmarkUtils.newTempDir(getClass());
+    file = new File(dir, "segment");
+    final ByteString data = BenchmarkUtils.randomBytes(entrySize);
+    entries = new LogEntryProto[BATCH_SIZE];
+    for (int i = 0; i < entries.length; i++) {
+      entries[i] = BenchmarkUtils.newLogEntry(1, i, data);
+    }
+    roll();
+  }
+
+  private void roll() throws IOException {
+    if (out != null) {
+      out.close();
+    }
+    out = new LogOutputStream(file, false, SEGMENT_SIZE, 4L << 20, 64 << 10);
+    written = 0;
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    out.close();
+    BenchmarkUtils.deleteDir(dir);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH_SIZE)
+  public void write() throws IOException {
+    for (LogEntryProto e : entries) {
+      out.write(e);
+    }
+    if (sync) {
+      out.flush();
+    }
+    written += BATCH_SIZE * (long) entrySize;
+    if (written >= SEGMENT_SIZE) {
+      roll();
+    }
+  }
+}
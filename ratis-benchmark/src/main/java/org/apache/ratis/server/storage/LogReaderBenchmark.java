@@ -0,0 +1,104 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.server.storage;
+
+import org.apache.ratis.benchmark.BenchmarkUtils;
+import org.apache.ratis.proto.RaftProtos.LogEntryProto;
+import org.apache.ratis.thirdparty.com.google.protobuf.ByteString;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark the sequential scan of a segment by {@link LogReader}, i.e. decoding and verifying each entry.
+ * The segment file is usually in the page cache after the first scan,
+ * so that the benchmark measures the decoding rather than the disk.
+ *
+ * The score is the number of scans per second;
+ * the scan throughput in bytes is the score times {@link #SEGMENT_SIZE}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class LogReaderBenchmark {
+  static final long SEGMENT_SIZE = 16L << 20;
+
+  @Param({"64", "1024", "16384"})
+  private int entrySize;
+
+  /** The segment format version, see {@link SegmentedRaftLogFormat}. */
+  @Param({"1", "2"})
+  private int version;
+
+  private File dir;
+  private File file;
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    dir = BenchmarkUtils.newTempDir(getClass());
+    file = new File(dir, "segment");
+    final ByteString data = BenchmarkUtils.randomBytes(entrySize);
+    final long n = SEGMENT_SIZE / entrySize;
+    try (LogOutputStream out = new LogOutputStream(file, false, Long.MAX_VALUE, 0, 64 << 10)) {
+      for (long i = 0; i < n; i++) {
+        out.write(BenchmarkUtils.newLogEntry(1, i, data));
+      }
+      out.flush();
+    }
+    if (version != SegmentedRaftLogFormat.VERSION_1) {
+      LogFormatConverter.convert(file, 0, n - 1, version, 64 << 10, false);
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    BenchmarkUtils.deleteDir(dir);
+  }
+
+  @Benchmark
+  public long scan(Blackhole blackhole) throws IOException {
+    long count = 0;
+    try (LogReader reader = new LogReader(file)) {
+      if (!reader.verifyHeader()) {
+        throw new IOException("Failed to verify the header of " + file);
+      }
+      for (LogEntryProto entry; (entry = reader.readEntry()) != null; count++) {
+        blackhole.consume(entry);
+      }
+    }
+    return count;
+  }
+}
@@ -0,0 +1,106 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.server.storage;
+
+import org.apache.ratis.benchmark.BenchmarkUtils;
+import org.apache.ratis.conf.RaftProperties;
+import org.apache.ratis.proto.RaftProtos.LogEntryProto;
+import org.apache.ratis.server.protocol.TermIndex;
+import org.apache.ratis.thirdparty.com.google.protobuf.ByteString;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark the lookups of {@link RaftLogCache} at random indices
+ * with the benchmark threads, see the -t option, sharing a cache.
+ * All the segments are closed and their entries are cached, on or off heap.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class RaftLogCacheBenchmark {
+  static final int ENTRIES_PER_SEGMENT = 1000;
+
+  @Param({"10", "1000"})
+  private int numSegments;
+
+  @Param({"64", "1024"})
+  private int entrySize;
+
+  @Param({"false", "true"})
+  private boolean offHeap;
+
+  private RaftLogCache cache;
+  private long numEntries;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    cache = new RaftLogCache(null, null, new RaftProperties());
+    final ByteString data = BenchmarkUtils.randomBytes(entrySize);
+    for (int s = 0; s < numSegments; s++) {
+      final long start = s * (long) ENTRIES_PER_SEGMENT;
+      final LogSegment segment = LogSegment.newOpenSegment(null, start);
+      for (long i = start; i < start + ENTRIES_PER_SEGMENT; i++) {
+        segment.appendToOpenSegment(BenchmarkUtils.newLogEntry(1, i, data));
+      }
+      segment.close();
+      if (offHeap) {
+        segment.useOffHeapCache();
+      }
+      cache.addSegment(segment);
+    }
+    numEntries = numSegments * (long) ENTRIES_PER_SEGMENT;
+  }
+
+  private long randomIndex() {
+    return ThreadLocalRandom.current().nextLong(numEntries);
+  }
+
+  @Benchmark
+  public TermIndex getTermIndex() {
+    return cache.getLogRecord(randomIndex()).getTermIndex();
+  }
+
+  @Benchmark
+  public LogEntryProto getEntry() {
+    final long index = randomIndex();
+    return cache.getSegment(index).getEntryWithoutLoading(index).getEntry();
+  }
+
+  @Benchmark
+  public TermIndex[] getTermIndices() {
+    final long index = randomIndex();
+    return cache.getTermIndices(index, index + 64);
+  }
+}
@@ -0,0 +1,86 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.util;
+
+import org.apache.ratis.util.Crc32cProvider.Implementation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Checksum;
+
+/**
+ * Compare the CRC32C implementations of {@link Crc32cProvider} over byte arrays and direct buffers.
+ * The setup fails for an implementation unavailable in the running JVM,
+ * which skips the corresponding parameters unless -foe is set.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class Crc32cBenchmark {
+  @Param({"JDK", "NATIVE", "PURE_JAVA"})
+  private Implementation implementation;
+
+  @Param({"64", "4096", "65536"})
+  private int size;
+
+  private Checksum checksum;
+  private byte[] array;
+  private ByteBuffer direct;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    if (!Crc32cProvider.isAvailable(implementation)) {
+      throw new IllegalStateException(implementation + " is unavailable");
+    }
+    checksum = Crc32cProvider.newChecksum(implementation);
+    array = new byte[size];
+    ThreadLocalRandom.current().nextBytes(array);
+    direct = ByteBuffer.allocateDirect(size);
+    direct.put(array).flip();
+  }
+
+  @Benchmark
+  public long array() {
+    checksum.reset();
+    checksum.update(array, 0, array.length);
+    return checksum.getValue();
+  }
+
+  @Benchmark
+  public long directBuffer() {
+    checksum.reset();
+    Crc32cProvider.update(checksum, direct.duplicate());
+    return checksum.getValue();
+  }
+}
@@ -0,0 +1,102 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark {@link DataBlockingQueue} and {@link MpscDataBlockingQueue} with producers and consumers.
+ * By default, there is one producer and one consumer;
+ * use the -tg option to change the numbers, e.g. "-tg 4,1" for four producers and one consumer.
+ * Since {@link MpscDataBlockingQueue} has a single consumer, the mpsc queues must not have more than one consumer.
+ * The mpscDrain queue drains the elements in batches to a consumer buffer.
+ * The blocking calls time out so that the threads do not hang at the end of an iteration.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class DataBlockingQueueBenchmark {
+  static final TimeDuration TIMEOUT = TimeDuration.valueOf(10, TimeUnit.MILLISECONDS);
+  static final Integer ELEMENT = 1;
+  static final int DRAIN_BATCH = 64;
+
+  @Param({"16", "1024"})
+  private int elementLimit;
+
+  @Param({"lock", "mpsc", "mpscDrain"})
+  private String queueType;
+
+  private DataBlockingQueue<Integer> queue;
+  private MpscDataBlockingQueue<Integer> mpscQueue;
+  private final Queue<Integer> drained = new ArrayDeque<>();
+
+  @Setup(Level.Iteration)
+  public void setup() {
+    final SizeInBytes byteLimit = SizeInBytes.valueOf("1GB");
+    drained.clear();
+    if (queueType.startsWith("mpsc")) {
+      queue = null;
+      mpscQueue = new MpscDataBlockingQueue<>("benchmark", byteLimit, elementLimit, e -> 64);
+    } else {
+      queue = new DataBlockingQueue<>("benchmark", byteLimit, elementLimit, e -> 64);
+      mpscQueue = null;
+    }
+  }
+
+  @Benchmark
+  @Group("queue")
+  @GroupThreads(1)
+  public boolean offer() throws InterruptedException {
+    return queue != null? queue.offer(ELEMENT, TIMEOUT): mpscQueue.offer(ELEMENT, TIMEOUT);
+  }
+
+  @Benchmark
+  @Group("queue")
+  @GroupThreads(1)
+  public Integer poll() throws InterruptedException {
+    if (queue != null) {
+      return queue.poll(TIMEOUT);
+    } else if (queueType.equals("mpscDrain")) {
+      if (drained.isEmpty() && mpscQueue.drainTo(drained, DRAIN_BATCH) == 0) {
+        return mpscQueue.poll(TIMEOUT);
+      }
+      return drained.poll();
+    }
+    return mpscQueue.poll(TIMEOUT);
+  }
+}
@@ -0,0 +1,189 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Benchmark {@link SlidingWindow}.
+ * Each operation submits a new request and replies the oldest outstanding request
+ * once there are more than {@link #window} outstanding requests.
+ *
+ * The client benchmark shares a window among the benchmark threads, see the -t option,
+ * and the server benchmark uses a window for each thread.
+ *
+ * The sharedServer benchmark has a thread receiving requests and three threads replying them
+ * in a shared server window, as the ordered stream of a busy client;
+ * use the -tg option to change the number of threads.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class SlidingWindowBenchmark {
+  static class Request implements SlidingWindow.ClientSideRequest<Long>, SlidingWindow.ServerSideRequest<Long> {
+    private final long seqNum;
+    private volatile Long reply;
+
+    Request(long seqNum) {
+      this.seqNum = seqNum;
+    }
+
+    @Override
+    public long getSeqNum() {
+      return seqNum;
+    }
+
+    @Override
+    public void setReply(Long reply) {
+      this.reply = reply;
+    }
+
+    @Override
+    public boolean hasReply() {
+      return reply != null;
+    }
+
+    @Override
+    public void setFirstRequest() {
+    }
+
+    @Override
+    public boolean isFirstRequest() {
+      return seqNum == 0;
+    }
+
+    @Override
+    public void fail(Throwable e) {
+    }
+  }
+
+  static final Consumer<Request> NO_OP = r -> {};
+
+  @State(Scope.Benchmark)
+  public static class ClientState {
+    private final SlidingWindow.Client<Request, Long> client = new SlidingWindow.Client<>("benchmark");
+
+    @Setup(Level.Trial)
+    public void setup() {
+      // reply the first request so that the other requests are sent without delay
+      final Request first = client.submitNewRequest(Request::new, NO_OP);
+      client.receiveReply(first.getSeqNum(), first.getSeqNum(), NO_OP);
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class ServerState {
+    private final SlidingWindow.Server<Request, Long> server
+        = new SlidingWindow.Server<>("benchmark", new Request(Long.MAX_VALUE));
+    private long nextSeqNum = 0;
+  }
+
+  @State(Scope.Group)
+  public static class SharedServerState {
+    @Param({"1024"})
+    private int window;
+
+    private final SlidingWindow.Server<Request, Long> server
+        = new SlidingWindow.Server<>("benchmark", new Request(Long.MAX_VALUE));
+    private final ConcurrentLinkedQueue<Request> processed = new ConcurrentLinkedQueue<>();
+    private final AtomicLong replied = new AtomicLong();
+    private long nextSeqNum = 0;
+
+    private final Consumer<Request> processMethod = processed::add;
+    private final Consumer<Request> replyMethod = r -> replied.incrementAndGet();
+  }
+
+  @State(Scope.Thread)
+  public static class Outstanding {
+    @Param({"1", "64", "1024"})
+    private int window;
+
+    private final Queue<Request> requests = new ArrayDeque<>();
+
+    Request next(Request submitted) {
+      requests.add(submitted);
+      return requests.size() > window? requests.poll(): null;
+    }
+  }
+
+  @Benchmark
+  public Request client(ClientState state, Outstanding outstanding) {
+    final Request r = state.client.submitNewRequest(Request::new, NO_OP);
+    final Request toReply = outstanding.next(r);
+    if (toReply != null) {
+      state.client.receiveReply(toReply.getSeqNum(), toReply.getSeqNum(), NO_OP);
+    }
+    return r;
+  }
+
+  @Benchmark
+  public Request server(ServerState state, Outstanding outstanding) {
+    final Request r = new Request(state.nextSeqNum++);
+    state.server.receivedRequest(r, NO_OP);
+    final Request toReply = outstanding.next(r);
+    if (toReply != null) {
+      state.server.receiveReply(toReply.getSeqNum(), toReply.getSeqNum(), NO_OP, NO_OP);
+    }
+    return r;
+  }
+
+  @Benchmark
+  @Group("sharedServer")
+  @GroupThreads(1)
+  public Request sharedServerReceive(SharedServerState state) {
+    if (state.nextSeqNum - state.replied.get() >= state.window) {
+      return null; // the window is full
+    }
+    final Request r = new Request(state.nextSeqNum++);
+    state.server.receivedRequest(r, state.processMethod);
+    return r;
+  }
+
+  @Benchmark
+  @Group("sharedServer")
+  @GroupThreads(3)
+  public Request sharedServerReply(SharedServerState state) {
+    final Request r = state.processed.poll();
+    if (r != null) {
+      state.server.receiveReply(r.getSeqNum(), r.getSeqNum(), state.replyMethod, state.processMethod);
+    }
+    return r;
+  }
+}
@@ -0,0 +1,71 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark scheduling timeouts in a {@link TimeoutScheduler}
+ * using a {@link java.util.concurrent.ScheduledThreadPoolExecutor} (tick = 0)
+ * or a {@link HashedWheelTimer} with the given tick in milliseconds.
+ * The tasks time out after the given timeout so that the number of outstanding tasks is
+ * about the throughput times the timeout, e.g. a million for 1000 ops/ms and 1000ms.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class TimeoutSchedulerBenchmark {
+  @Param({"0", "10"})
+  private int tickMs;
+
+  @Param({"1000"})
+  private int timeoutMs;
+
+  @Param({"2"})
+  private int numThreads;
+
+  private TimeoutScheduler scheduler;
+  private TimeDuration timeout;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    scheduler = TimeoutScheduler.newInstance(numThreads, TimeDuration.valueOf(tickMs, TimeUnit.MILLISECONDS));
+    timeout = TimeDuration.valueOf(timeoutMs, TimeUnit.MILLISECONDS);
+  }
+
+  @Benchmark
+  public void onTimeout() {
+    scheduler.onTimeout(timeout, () -> { }, TimeoutScheduler.LOG, () -> "Failed to run the task");
+  }
+}
@@ -0,0 +1,291 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.client;
+
+import org.apache.ratis.conf.Parameters;
+import org.apache.ratis.conf.RaftProperties;
+import org.apache.ratis.proto.RaftProtos.RaftPeerRole;
+import org.apache.ratis.proto.RaftProtos.RoleInfoProto;
+import org.apache.ratis.protocol.GroupInfoReply;
+import org.apache.ratis.protocol.RaftClientReply;
+import org.apache.ratis.protocol.RaftGroup;
+import org.apache.ratis.protocol.RaftGroupId;
+import org.apache.ratis.protocol.RaftPeer;
+import org.apache.ratis.protocol.RaftPeerId;
+import org.apache.ratis.retry.RetryPolicies;
+import org.apache.ratis.util.Daemon;
+import org.apache.ratis.util.TimeDuration;
+import org.apache.ratis.util.Timestamp;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Balance the leaders of the raft groups hosted by a set of servers.
+ *
+ * In each round, the balancer asks every server for its groups and their roles
+ * using {@link RaftClient#getGroupList(RaftPeerId)} and {@link RaftClient#getGroupInfo(RaftGroupId, RaftPeerId)}.
+ * It counts the leaders per server
+ * and then transfers the leadership of groups from the most loaded servers
+ * to the least loaded peers in the same groups.
+ *
+ * In order to avoid election storms,
+ * (1) a round issues at most {@link RaftClientConfigKeys.LeaderBalancer#transfersMax(RaftProperties)} transfers,
+ * (2) a round is skipped entirely if some group does not have a unique leader, and
+ * (3) a group is not moved if its leader is younger than
+ *     {@link RaftClientConfigKeys.LeaderBalancer#groupCooldown(RaftProperties)}.
+ * A server failing to answer is left out of the round together with all the groups it is a member of.
+ */
+public class LeaderBalancer implements Closeable {
+  public static final Logger LOG = LoggerFactory.getLogger(LeaderBalancer.class);
+
+  /** The leader of a group observed in a balancing round. */
+  static class GroupLeader {
+    private final RaftGroup group;
+    private final RaftPeerId leader;
+    private final long leaderElapsedTimeMs;
+
+    GroupLeader(RaftGroup group, RaftPeerId leader, long leaderElapsedTimeMs) {
+      this.group = group;
+      this.leader = leader;
+      this.leaderElapsedTimeMs = leaderElapsedTimeMs;
+    }
+
+    @Override
+    public String toString() {
+      return group.getGroupId() + ":leader=" + leader;
+    }
+  }
+
+  private final List<RaftPeer> servers;
+  private final Function<RaftGroup, RaftClient> clientFactory;
+
+  private final TimeDuration interval;
+  private final int transfersMax;
+  private final long groupCooldownMs;
+
+  private final Map<RaftGroupId, Timestamp> lastTransferTimes = new ConcurrentHashMap<>();
+  private final Daemon daemon;
+  private volatile boolean running = true;
+
+  public LeaderBalancer(Collection<RaftPeer> servers, RaftProperties properties, Parameters parameters) {
+    this(servers, properties, group -> RaftClient.newBuilder()
+        .setRaftGroup(group)
+        .setProperties(properties)
+        .setParameters(parameters)
+        .setRetryPolicy(RetryPolicies.retryUpToMaximumCountWithFixedSleep(
+            3, RaftClientConfigKeys.Rpc.requestTimeout(properties)))
+        .build());
+  }
+
+  public LeaderBalancer(Collection<RaftPeer> servers, RaftProperties properties,
+      Function<RaftGroup, RaftClient> clientFactory) {
+    this.servers = Collections.unmodifiableList(new ArrayList<>(servers));
+    this.clientFactory = clientFactory;
+
+    this.interval = RaftClientConfigKeys.LeaderBalancer.interval(properties);
+    this.transfersMax = RaftClientConfigKeys.LeaderBalancer.transfersMax(properties);
+    this.groupCooldownMs = RaftClientConfigKeys.LeaderBalancer.groupCooldown(properties)
+        .toLong(TimeUnit.MILLISECONDS);
+    this.daemon = new Daemon(this::run, toString());
+  }
+
+  /** Start running balancing rounds periodically. */
+  public void start() {
+    daemon.start();
+  }
+
+  @Override
+  public void close() {
+    running = false;
+    daemon.interrupt();
+  }
+
+  private void run() {
+    while (running) {
+      try {
+        interval.sleep();
+        balance();
+      } catch (InterruptedException e) {
+        if (running) {
+          LOG.info("{} is interrupted", this);
+        }
+        Thread.currentThread().interrupt();
+        return;
+      } catch (Exception e) {
+        LOG.warn(this + ": Failed to balance leaders", e);
+      }
+    }
+  }
+
+  /**
+   * Run a single balancing round.
+   *
+   * @return the number of leadership transfers issued.
+   */
+  public int balance() throws IOException {
+    final Set<RaftPeerId> failed = new HashSet<>();
+    final Collection<GroupLeader> groupLeaders = getGroupLeaders(failed);
+    if (groupLeaders == null) {
+      return 0;
+    }
+
+    // group the leaders by server, including the servers not leading any group but excluding the failed servers
+    final Map<RaftPeerId, List<GroupLeader>> led = new HashMap<>();
+    servers.stream().map(RaftPeer::getId).filter(id -> !failed.contains(id))
+        .forEach(id -> led.put(id, new ArrayList<>()));
+    groupLeaders.forEach(g -> led.computeIfAbsent(g.leader, k -> new ArrayList<>()).add(g));
+    LOG.debug("{}: leader counts {}", this, led.entrySet().stream()
+        .collect(Collectors.toMap(Map.Entry::getKey, e -> e.getValue().size())));
+
+    int transfers = 0;
+    for(; transfers < transfersMax; transfers++) {
+      if (!transferNext(led)) {
+        break;
+      }
+    }
+    return transfers;
+  }
+
+  /**
+   * Find the group led by the most loaded server which has a peer with at least two fewer leaders,
+   * and then transfer its leadership to that peer.
+   *
+   * @return true if a transfer is issued; otherwise, the leaders are balanced, return false.
+   */
+  private boolean transferNext(Map<RaftPeerId, List<GroupLeader>> led) {
+    final List<RaftPeerId> sources = new ArrayList<>(led.keySet());
+    sources.sort(Comparator.comparingInt((RaftPeerId id) -> led.get(id).size()).reversed());
+
+    for(RaftPeerId source : sources) {
+      final List<GroupLeader> groups = led.get(source);
+      for(GroupLeader g : groups) {
+        if (isCoolingDown(g)) {
+          continue;
+        }
+        final RaftPeerId target = g.group.getPeers().stream()
+            .map(RaftPeer::getId)
+            .filter(id -> !id.equals(source))
+            .filter(led::containsKey)
+            .min(Comparator.comparingInt(id -> led.get(id).size()))
+            .orElse(null);
+        if (target != null && groups.size() - led.get(target).size() >= 2) {
+          // update the counts even if the transfer fails so that the round does not retry the same group
+          groups.remove(g);
+          led.get(target).add(new GroupLeader(g.group, target, 0));
+          lastTransferTimes.put(g.group.getGroupId(), Timestamp.currentTime());
+          transferLeadership(g, target);
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private boolean isCoolingDown(GroupLeader g) {
+    if (g.leaderElapsedTimeMs < groupCooldownMs) {
+      return true;
+    }
+    final Timestamp last = lastTransferTimes.get(g.group.getGroupId());
+    return last != null && last.elapsedTimeMs() < groupCooldownMs;
+  }
+
+  private void transferLeadership(GroupLeader g, RaftPeerId target) {
+    LOG.info("{}: transfer leadership of {} to {}", this, g, target);
+    try(RaftClient client = clientFactory.apply(g.group)) {
+      final RaftClientReply reply = client.transferLeadership(target);
+      if (reply == null || !reply.isSuccess()) {
+        LOG.warn("{}: Failed to transfer leadership of {} to {}: {}", this, g, target, reply);
+      }
+    } catch (IOException e) {
+      LOG.warn(this + ": Failed to transfer leadership of " + g + " to " + target, e);
+    }
+  }
+
+  /**
+   * @param failed the servers failed to answer, which is an output parameter.
+   * @return the leaders of all the groups hosted by the servers, excluding the groups with a failed member;
+   *         or null if some group does not have a unique leader.
+   */
+  private Collection<GroupLeader> getGroupLeaders(Set<RaftPeerId> failed) throws IOException {
+    final Map<RaftGroupId, GroupLeader> leaders = new HashMap<>();
+    final Map<RaftGroupId, RaftGroup> groups = new HashMap<>();
+    try(RaftClient client = clientFactory.apply(RaftGroup.valueOf(RaftGroupId.emptyGroupId(), servers))) {
+      for(RaftPeer server : servers) {
+        final List<GroupInfoReply> infos = new ArrayList<>();
+        try {
+          for(RaftGroupId groupId : client.getGroupList(server.getId()).getGroupIds()) {
+            infos.add(client.getGroupInfo(groupId, server.getId()));
+          }
+        } catch (IOException e) {
+          LOG.warn(this + ": Skip the groups of " + server.getId() + " in this round since it failed to answer", e);
+          failed.add(server.getId());
+          continue;
+        }
+
+        for(GroupInfoReply info : infos) {
+          final RaftGroupId groupId = info.getGroup().getGroupId();
+          groups.put(groupId, info.getGroup());
+          final RoleInfoProto role = info.getRoleInfoProto();
+          if (role.getRole() == RaftPeerRole.LEADER) {
+            final GroupLeader previous = leaders.put(groupId,
+                new GroupLeader(info.getGroup(), server.getId(), role.getRoleElapsedTimeMs()));
+            if (previous != null) {
+              LOG.info("{}: Skip this round since {} has multiple leaders {} and {}",
+                  this, groupId, previous.leader, server.getId());
+              return null;
+            }
+          }
+        }
+      }
+    }
+
+    if (!failed.isEmpty()) {
+      // the leader of such a group may be a failed server
+      groups.values().removeIf(g -> g.getPeers().stream().map(RaftPeer::getId).anyMatch(failed::contains));
+      leaders.keySet().retainAll(groups.keySet());
+    }
+    final Set<RaftGroupId> groupIds = new HashSet<>(groups.keySet());
+    if (leaders.size() < groupIds.size()) {
+      groupIds.removeAll(leaders.keySet());
+      LOG.info("{}: Skip this round since there are no leaders for {}", this, groupIds);
+      return null;
+    }
+    return leaders.values();
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + servers.stream().map(RaftPeer::getId).collect(Collectors.toList());
+  }
+}
@@ -85,6 +85,16 @@ public interface RaftClient extends Closeable {
   /** Send set configuration request to the raft service. */
   RaftClientReply setConfiguration(RaftPeer[] serversInNewConf) throws IOException;
 
+  /**
+   * Send set configuration request to the raft service.
+   * The learners replicate the log but neither vote nor count toward the majority.
+   */
+  RaftClientReply setConfiguration(RaftPeer[] serversInNewConf, RaftPeer[] learnersInNewConf)
+      throws IOException;
+
+  /** Send transfer leadership request to the raft service. */
+  RaftClientReply transferLeadership(RaftPeerId newLeader) throws IOException;
+
   /** Send groupAdd request to the given server (not the raft service). */
   RaftClientReply groupAdd(RaftGroup newGroup, RaftPeerId server) throws IOException;
 
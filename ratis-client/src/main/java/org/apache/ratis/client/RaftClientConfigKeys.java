@@ -72,6 +72,60 @@ public interface RaftClientConfigKeys {
     static void setSchedulerThreads(RaftProperties properties, int schedulerThreads) {
       setInt(properties::setInt, SCHEDULER_THREADS_KEY, schedulerThreads);
     }
+
+    /**
+     * The tick of the hashed wheel timer scheduling the request timeouts.
+     * Set it to 0 to use a ScheduledThreadPoolExecutor instead.
+     */
+    String SCHEDULER_TICK_KEY = PREFIX + ".scheduler-tick";
+    TimeDuration SCHEDULER_TICK_DEFAULT = TimeDuration.valueOf(0, TimeUnit.MILLISECONDS);
+    static TimeDuration schedulerTick(RaftProperties properties) {
+      return getTimeDuration(properties.getTimeDuration(SCHEDULER_TICK_DEFAULT.getUnit()),
+          SCHEDULER_TICK_KEY, SCHEDULER_TICK_DEFAULT, getDefaultLog());
+    }
+    static void setSchedulerTick(RaftProperties properties, TimeDuration tick) {
+      setTimeDuration(properties::setTimeDuration, SCHEDULER_TICK_KEY, tick);
+    }
+  }
+
+  interface LeaderBalancer {
+    String PREFIX = RaftClientConfigKeys.PREFIX + ".leader-balancer";
+
+    /** The time between two balancing rounds. */
+    String INTERVAL_KEY = PREFIX + ".interval";
+    TimeDuration INTERVAL_DEFAULT = TimeDuration.valueOf(60, TimeUnit.SECONDS);
+    static TimeDuration interval(RaftProperties properties) {
+      return getTimeDuration(properties.getTimeDuration(INTERVAL_DEFAULT.getUnit()),
+          INTERVAL_KEY, INTERVAL_DEFAULT, getDefaultLog());
+    }
+    static void setInterval(RaftProperties properties, TimeDuration interval) {
+      setTimeDuration(properties::setTimeDuration, INTERVAL_KEY, interval);
+    }
+
+    /** The maximum number of leadership transfers issued in a single round. */
+    String TRANSFERS_MAX_KEY = PREFIX + ".transfers.max";
+    int TRANSFERS_MAX_DEFAULT = 1;
+    static int transfersMax(RaftProperties properties) {
+      return getInt(properties::getInt, TRANSFERS_MAX_KEY,
+          TRANSFERS_MAX_DEFAULT, getDefaultLog(), requireMin(1));
+    }
+    static void setTransfersMax(RaftProperties properties, int transfersMax) {
+      setInt(properties::setInt, TRANSFERS_MAX_KEY, transfersMax);
+    }
+
+    /**
+     * A group is not moved again until its leader has been in place for at least this duration,
+     * so that the balancer never chases elections that are still settling.
+     */
+    String GROUP_COOLDOWN_KEY = PREFIX + ".group.cooldown";
+    TimeDuration GROUP_COOLDOWN_DEFAULT = TimeDuration.valueOf(5, TimeUnit.MINUTES);
+    static TimeDuration groupCooldown(RaftProperties properties) {
+      return getTimeDuration(properties.getTimeDuration(GROUP_COOLDOWN_DEFAULT.getUnit()),
+          GROUP_COOLDOWN_KEY, GROUP_COOLDOWN_DEFAULT, getDefaultLog());
+    }
+    static void setGroupCooldown(RaftProperties properties, TimeDuration cooldown) {
+      setTimeDuration(properties::setTimeDuration, GROUP_COOLDOWN_KEY, cooldown);
+    }
   }
 
   static void main(String[] args) {
@@ -30,6 +30,7 @@ import java.util.stream.Collectors;
 import static org.apache.ratis.proto.RaftProtos.RaftClientReplyProto.ExceptionDetailsCase.NOTLEADEREXCEPTION;
 import static org.apache.ratis.proto.RaftProtos.RaftClientReplyProto.ExceptionDetailsCase.NOTREPLICATEDEXCEPTION;
 import static org.apache.ratis.proto.RaftProtos.RaftClientReplyProto.ExceptionDetailsCase.STATEMACHINEEXCEPTION;
+import static org.apache.ratis.proto.RaftProtos.RaftClientReplyProto.ExceptionDetailsCase.TRANSFERLEADERSHIPEXCEPTION;
 
 public interface ClientProtoUtils {
 
@@ -159,6 +160,7 @@ public interface ClientProtoUtils {
 
       final NotLeaderException nle = reply.getNotLeaderException();
       final StateMachineException sme;
+      final TransferLeadershipException tle;
       if (nle != null) {
         NotLeaderExceptionProto.Builder nleBuilder =
             NotLeaderExceptionProto.newBuilder();
@@ -177,6 +179,9 @@ public interface ClientProtoUtils {
             .setErrorMsg(t.getMessage())
             .setStacktrace(ProtoUtils.writeObject2ByteString(t.getStackTrace()));
         b.setStateMachineException(smeBuilder.build());
+      } else if ((tle = reply.getTransferLeadershipException()) != null) {
+        b.setTransferLeadershipException(TransferLeadershipExceptionProto.newBuilder()
+            .setErrorMsg(tle.getMessage()));
       }
 
       final NotReplicatedException nre = reply.getNotReplicatedException();
@@ -243,6 +248,8 @@ public interface ClientProtoUtils {
       e = wrapStateMachineException(RaftPeerId.valueOf(rp.getReplyId()),
           smeProto.getExceptionClassName(), smeProto.getErrorMsg(),
           smeProto.getStacktrace());
+    } else if (replyProto.getExceptionDetailsCase() == TRANSFERLEADERSHIPEXCEPTION) {
+      e = new TransferLeadershipException(replyProto.getTransferLeadershipException().getErrorMsg());
     } else {
       e = null;
     }
@@ -317,11 +324,12 @@ public interface ClientProtoUtils {
       SetConfigurationRequestProto p) {
     final RaftRpcRequestProto m = p.getRpcRequest();
     final RaftPeer[] peers = ProtoUtils.toRaftPeerArray(p.getPeersList());
+    final RaftPeer[] learners = ProtoUtils.toRaftPeerArray(p.getLearnersList());
     return new SetConfigurationRequest(
         ClientId.valueOf(m.getRequestorId()),
         RaftPeerId.valueOf(m.getReplyId()),
         ProtoUtils.toRaftGroupId(m.getRaftGroupId()),
-        p.getRpcRequest().getCallId(), peers);
+        p.getRpcRequest().getCallId(), peers, learners);
   }
 
   static SetConfigurationRequestProto toSetConfigurationRequestProto(
@@ -330,6 +338,26 @@ public interface ClientProtoUtils {
         .setRpcRequest(toRaftRpcRequestProtoBuilder(request))
         .addAllPeers(ProtoUtils.toRaftPeerProtos(
             Arrays.asList(request.getPeersInNewConf())))
+        .addAllLearners(ProtoUtils.toRaftPeerProtos(
+            Arrays.asList(request.getLearnersInNewConf())))
+        .build();
+  }
+
+  static TransferLeadershipRequest toTransferLeadershipRequest(
+      TransferLeadershipRequestProto p) {
+    final RaftRpcRequestProto m = p.getRpcRequest();
+    return new TransferLeadershipRequest(
+        ClientId.valueOf(m.getRequestorId()),
+        RaftPeerId.valueOf(m.getReplyId()),
+        ProtoUtils.toRaftGroupId(m.getRaftGroupId()),
+        m.getCallId(), RaftPeerId.valueOf(p.getNewLeader()));
+  }
+
+  static TransferLeadershipRequestProto toTransferLeadershipRequestProto(
+      TransferLeadershipRequest request) {
+    return TransferLeadershipRequestProto.newBuilder()
+        .setRpcRequest(toRaftRpcRequestProtoBuilder(request))
+        .setNewLeader(request.getNewLeader().toByteString())
         .build();
   }
 
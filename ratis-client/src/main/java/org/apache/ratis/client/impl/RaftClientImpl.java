@@ -36,11 +36,13 @@ import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
 import java.util.function.LongFunction;
+import java.util.function.LongSupplier;
 import java.util.function.Supplier;
 import java.util.stream.Stream;
 
 import static org.apache.ratis.proto.RaftProtos.RaftClientRequestProto.TypeCase.STALEREAD;
 import static org.apache.ratis.proto.RaftProtos.RaftClientRequestProto.TypeCase.WATCH;
+import static org.apache.ratis.proto.RaftProtos.RaftClientRequestProto.TypeCase.WRITE;
 
 /** A client who sends requests to a raft service. */
 final class RaftClientImpl implements RaftClient {
@@ -74,16 +76,27 @@ final class RaftClientImpl implements RaftClient {
       implements SlidingWindow.ClientSideRequest<RaftClientReply> {
     private final Function<SlidingWindowEntry, RaftClientRequest> requestConstructor;
     private final long seqNum;
+    private final long callId;
+    /** Supply {@link SlidingWindowEntry#getMinUnrepliedCallId()} for each attempt. */
+    private final LongSupplier minUnrepliedCallId;
     private volatile boolean isFirst = false;
 
-    PendingAsyncRequest(long seqNum, Function<SlidingWindowEntry, RaftClientRequest> requestConstructor) {
+    PendingAsyncRequest(long seqNum, long callId, LongSupplier minUnrepliedCallId,
+        Function<SlidingWindowEntry, RaftClientRequest> requestConstructor) {
       this.seqNum = seqNum;
+      this.callId = callId;
+      this.minUnrepliedCallId = minUnrepliedCallId;
       this.requestConstructor = requestConstructor;
     }
 
     @Override
     RaftClientRequest newRequestImpl() {
-      return requestConstructor.apply(ProtoUtils.toSlidingWindowEntry(seqNum, isFirst));
+      return requestConstructor.apply(
+          ProtoUtils.toSlidingWindowEntry(seqNum, isFirst, minUnrepliedCallId.getAsLong()));
+    }
+
+    long getCallId() {
+      return callId;
     }
 
     @Override
@@ -130,6 +143,8 @@ final class RaftClientImpl implements RaftClient {
       slidingWindows = new ConcurrentHashMap<>();
   private final TimeoutScheduler scheduler;
   private final Semaphore asyncRequestSemaphore;
+  /** The number of the outstanding blocking write calls, which are not tracked by a sliding window. */
+  private final AtomicInteger numBlockingWrites = new AtomicInteger();
 
   RaftClientImpl(ClientId clientId, RaftGroup group, RaftPeerId leaderId,
       RaftClientRpc clientRpc, RaftProperties properties, RetryPolicy retryPolicy) {
@@ -143,7 +158,8 @@ final class RaftClientImpl implements RaftClient {
     this.retryPolicy = retryPolicy;
 
     asyncRequestSemaphore = new Semaphore(RaftClientConfigKeys.Async.maxOutstandingRequests(properties));
-    scheduler = TimeoutScheduler.newInstance(RaftClientConfigKeys.Async.schedulerThreads(properties));
+    scheduler = TimeoutScheduler.newInstance(RaftClientConfigKeys.Async.schedulerThreads(properties),
+        RaftClientConfigKeys.Async.schedulerTick(properties));
     clientRpc.addServers(peers);
   }
 
@@ -201,15 +217,34 @@ final class RaftClientImpl implements RaftClient {
           "Interrupted when sending " + type + ", message=" + message, e));
     }
 
-    final long callId = nextCallId();
-    final LongFunction<PendingAsyncRequest> constructor = seqNum -> new PendingAsyncRequest(seqNum,
-        slidingWindowEntry -> newRaftClientRequest(server, callId, message, type, slidingWindowEntry));
-    return getSlidingWindow(server).submitNewRequest(constructor, this::sendRequestWithRetryAsync
+    final SlidingWindow.Client<PendingAsyncRequest, RaftClientReply> window = getSlidingWindow(server);
+    // only the raft service window has the write requests, which are in the retry cache of the servers
+    final LongSupplier minUnrepliedCallId = server == null? () -> getMinUnrepliedCallId(window): () -> 0;
+    final LongFunction<PendingAsyncRequest> constructor = seqNum -> {
+      // the constructor is called under the window lock, so the call ids increase with the seqNums
+      final long callId = nextCallId();
+      return new PendingAsyncRequest(seqNum, callId, minUnrepliedCallId,
+          slidingWindowEntry -> newRaftClientRequest(server, callId, message, type, slidingWindowEntry));
+    };
+    return window.submitNewRequest(constructor, this::sendRequestWithRetryAsync
     ).getReplyFuture(
     ).thenApply(reply -> handleStateMachineException(reply, CompletionException::new)
     ).whenComplete((r, e) -> asyncRequestSemaphore.release());
   }
 
+  /**
+   * Since the call ids in the window increase with the seqNums,
+   * the calls before the first request in the window have been replied,
+   * unless there are outstanding blocking writes, which may have smaller call ids.
+   *
+   * @return the smallest call id which is not yet replied, or 0 if it is unknown.
+   */
+  private long getMinUnrepliedCallId(SlidingWindow.Client<PendingAsyncRequest, RaftClientReply> window) {
+    final PendingAsyncRequest first = window.getFirstRequest();
+    // check the blocking writes after the window so that a new blocking write must have a larger call id
+    return first == null || numBlockingWrites.get() > 0? 0: first.getCallId();
+  }
+
   RaftClientRequest newRaftClientRequest(
       RaftPeerId server, long callId, Message message, RaftClientRequest.Type type,
       SlidingWindowEntry slidingWindowEntry) {
@@ -244,20 +279,47 @@ final class RaftClientImpl implements RaftClient {
       Objects.requireNonNull(message, "message == null");
     }
 
-    final long callId = nextCallId();
-    return sendRequestWithRetry(() -> newRaftClientRequest(server, callId, message, type, null));
+    if (!type.is(WRITE)) {
+      final long callId = nextCallId();
+      return sendRequestWithRetry(() -> newRaftClientRequest(server, callId, message, type, null));
+    }
+
+    // count the blocking write before getting the call id; see getMinUnrepliedCallId
+    numBlockingWrites.incrementAndGet();
+    try {
+      final long callId = nextCallId();
+      return sendRequestWithRetry(() -> newRaftClientRequest(server, callId, message, type, null));
+    } finally {
+      numBlockingWrites.decrementAndGet();
+    }
   }
 
   @Override
   public RaftClientReply setConfiguration(RaftPeer[] peersInNewConf)
       throws IOException {
+    return setConfiguration(peersInNewConf, new RaftPeer[0]);
+  }
+
+  @Override
+  public RaftClientReply setConfiguration(RaftPeer[] peersInNewConf, RaftPeer[] learnersInNewConf)
+      throws IOException {
     Objects.requireNonNull(peersInNewConf, "peersInNewConf == null");
+    Objects.requireNonNull(learnersInNewConf, "learnersInNewConf == null");
 
     final long callId = nextCallId();
     // also refresh the rpc proxies for these peers
-    addServers(Arrays.stream(peersInNewConf));
+    addServers(Stream.concat(Arrays.stream(peersInNewConf), Arrays.stream(learnersInNewConf)));
     return sendRequestWithRetry(() -> new SetConfigurationRequest(
-        clientId, leaderId, groupId, callId, peersInNewConf));
+        clientId, leaderId, groupId, callId, peersInNewConf, learnersInNewConf));
+  }
+
+  @Override
+  public RaftClientReply transferLeadership(RaftPeerId newLeader) throws IOException {
+    Objects.requireNonNull(newLeader, "newLeader == null");
+
+    final long callId = nextCallId();
+    return sendRequestWithRetry(() -> new TransferLeadershipRequest(
+        clientId, leaderId, groupId, callId, newLeader));
   }
 
   @Override
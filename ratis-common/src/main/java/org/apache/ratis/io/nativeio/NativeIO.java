@@ -49,6 +49,8 @@ public class NativeIO {
     public static int O_APPEND = -1;
     public static int O_NONBLOCK = -1;
     public static int O_SYNC = -1;
+    /* Not supported on all systems, i.e. remains -1 if it is unavailable.  */
+    public static int O_DIRECT = -1;
 
     // Flags for posix_fadvise() from bits/fcntl.h - Set by JNI
     /* No further special treatment.  */
@@ -82,6 +84,7 @@ public class NativeIO {
 
     // Set to true via JNI if possible
     public static boolean fadvisePossible = false;
+    public static boolean fallocatePossible = false;
 
     private static boolean nativeLoaded = false;
     private static boolean syncFileRangePossible = true;
@@ -218,6 +221,31 @@ public class NativeIO {
       }
     }
 
+    /** Wrapper around posix_fallocate(3) */
+    static native void posix_fallocate(
+      FileDescriptor fd, long offset, long len) throws NativeIOException;
+
+    /**
+     * Call posix_fallocate on the given file descriptor in order to allocate the disk space
+     * for the given range, which reads as zeros.
+     * On systems or file systems where this call is not available, does nothing.
+     *
+     * @return true if the space is allocated; otherwise, return false and the caller should fall back.
+     * @throws NativeIOException if there is an error with the syscall
+     */
+    public static boolean fallocateIfPossible(
+        FileDescriptor fd, long offset, long len) throws NativeIOException {
+      if (nativeLoaded && fallocatePossible) {
+        try {
+          posix_fallocate(fd, offset, len);
+          return true;
+        } catch (UnsupportedOperationException | UnsatisfiedLinkError e) {
+          fallocatePossible = false;
+        }
+      }
+      return false;
+    }
+
     /**
      * Call sync_file_range on the given file descriptor. See the manpage
      * for this syscall for more information. On systems where this
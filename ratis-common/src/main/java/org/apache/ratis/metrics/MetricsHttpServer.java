@@ -0,0 +1,85 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A lightweight HTTP server exposing the metrics at {@link #PATH} in the Prometheus text format,
+ * see {@link PrometheusMetricsWriter}.
+ * The requests are handled by the dispatcher thread of the server one at a time.
+ */
+public class MetricsHttpServer implements Closeable {
+  public static final Logger LOG = LoggerFactory.getLogger(MetricsHttpServer.class);
+
+  public static final String PATH = "/metrics";
+  static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+  private final HttpServer server;
+
+  public MetricsHttpServer(InetSocketAddress address) throws IOException {
+    this.server = HttpServer.create(address, 0);
+    server.createContext(PATH, this::handle);
+  }
+
+  public void start() {
+    server.start();
+    LOG.info("Started metrics http server at {}", getAddress());
+  }
+
+  public InetSocketAddress getAddress() {
+    return server.getAddress();
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    try {
+      if (!"GET".equals(exchange.getRequestMethod())) {
+        exchange.sendResponseHeaders(405, -1);
+        return;
+      }
+      exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+      exchange.sendResponseHeaders(200, 0);
+      try (Writer out = new BufferedWriter(
+          new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8), 64 << 10)) {
+        PrometheusMetricsWriter.write(out);
+      }
+    } catch (IOException e) {
+      LOG.warn("Failed to handle " + exchange.getRequestURI(), e);
+      throw e;
+    } finally {
+      exchange.close();
+    }
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+    LOG.info("Stopped metrics http server at {}", getAddress());
+  }
+}
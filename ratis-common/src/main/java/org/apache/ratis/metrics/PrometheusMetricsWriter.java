@@ -0,0 +1,291 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.metrics;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+import org.apache.ratis.metrics.RatisMetricsRegistry.MemberRegistry;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write the metrics in {@link RatisMetricsRegistry} in the Prometheus text format.
+ *
+ * A metric named [component class].[peer id].[group id].[name] is written
+ * as ratis_[component]_[name] with the peer and the group labels,
+ * where the names are converted to snake case.
+ * A name may end with an additional label, see {@link RatisMetrics#withLabel(String, String, Object)}.
+ * The gauges are written as gauges,
+ * the counters and the meters as counters with the _total suffix,
+ * and the histograms and the timers as summaries; the timers are in seconds.
+ *
+ * The converted names are cached in the registries
+ * so that a scrape mainly allocates the lists grouping the samples by family.
+ */
+public final class PrometheusMetricsWriter {
+  private static final String PREFIX = "ratis_";
+  private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+  private static final double[] QUANTILES = {0.5, 0.75, 0.95, 0.99, 0.999};
+  private static final String[] QUANTILE_LABELS = {"0.5", "0.75", "0.95", "0.99", "0.999"};
+
+  /** The names of the metrics not belonging to any group member. */
+  private static final ConcurrentMap<String, Name> NAMES = new ConcurrentHashMap<>();
+
+  private PrometheusMetricsWriter() {}
+
+  /** The family name and the additional label of a metric. */
+  static final class Name {
+    private final String family;
+    private final String labelName;
+    private final String labelValue;
+
+    Name(String family, String labelName, String labelValue) {
+      this.family = family;
+      this.labelName = labelName;
+      this.labelValue = labelValue;
+    }
+
+    @Override
+    public String toString() {
+      return labelName == null? family: family + "{" + labelName + "=" + labelValue + "}";
+    }
+  }
+
+  /** A metric of a group member. */
+  private static final class Sample {
+    private final MemberRegistry member;
+    private final Name name;
+    private final Metric metric;
+
+    Sample(MemberRegistry member, Name name, Metric metric) {
+      this.member = member;
+      this.name = name;
+      this.metric = metric;
+    }
+  }
+
+  /** Write all the metrics to the given writer. */
+  public static void write(Writer out) throws IOException {
+    final Map<String, List<Sample>> families = new TreeMap<>();
+    addAll(null, RatisMetricsRegistry.getRegistry(), families);
+    for (MemberRegistry member : RatisMetricsRegistry.getMemberRegistries()) {
+      addAll(member, member.getRegistry(), families);
+    }
+
+    for (Map.Entry<String, List<Sample>> e : families.entrySet()) {
+      writeFamily(e.getKey(), e.getValue(), out);
+    }
+  }
+
+  private static void addAll(MemberRegistry member, MetricRegistry registry, Map<String, List<Sample>> families) {
+    final String infix = member == null? null
+        : "." + member.getPeerId() + (member.getGroupId().isEmpty()? "": "." + member.getGroupId()) + ".";
+    final ConcurrentMap<String, Name> names = member == null? NAMES: member.getNames();
+    for (Map.Entry<String, Metric> e : registry.getMetrics().entrySet()) {
+      final Name name = names.computeIfAbsent(e.getKey(), key -> toName(key, infix));
+      families.computeIfAbsent(name.family, k -> new ArrayList<>()).add(new Sample(member, name, e.getValue()));
+    }
+  }
+
+  /** Remove the ids and the package from the given metric name and then split the label, if there is any. */
+  static Name toName(String fullName, String infix) {
+    String name = fullName;
+    String labelName = null;
+    String labelValue = null;
+    if (name.endsWith(RatisMetrics.LABEL_END)) {
+      final int start = name.lastIndexOf(RatisMetrics.LABEL_START);
+      final int equal = start < 0? -1: name.indexOf('=', start);
+      if (equal > 0) {
+        final StringBuilder b = new StringBuilder();
+        appendSnakeCase(name.substring(start + 1, equal), b);
+        labelName = b.toString();
+        labelValue = name.substring(equal + 1, name.length() - 1);
+        name = name.substring(0, start);
+      }
+    }
+    return new Name(toFamilyName(name, infix), labelName, labelValue);
+  }
+
+  /** Remove the ids and the package from the given metric name. */
+  static String toFamilyName(String name, String infix) {
+    final int i = infix == null? -1: name.indexOf(infix);
+    final String component;
+    final String metric;
+    if (i < 0) {
+      component = "";
+      metric = name;
+    } else {
+      final String className = name.substring(0, i);
+      component = className.substring(className.lastIndexOf('.') + 1);
+      metric = name.substring(i + infix.length());
+    }
+
+    final StringBuilder b = new StringBuilder(PREFIX);
+    appendSnakeCase(component, b);
+    if (b.length() > PREFIX.length()) {
+      b.append('_');
+    }
+    appendSnakeCase(metric, b);
+    return b.toString();
+  }
+
+  private static void appendSnakeCase(String s, StringBuilder b) {
+    for (int i = 0; i < s.length(); i++) {
+      final char c = s.charAt(i);
+      if (Character.isUpperCase(c)) {
+        if (i > 0 && !Character.isUpperCase(s.charAt(i - 1))) {
+          b.append('_');
+        }
+        b.append(Character.toLowerCase(c));
+      } else if ((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')) {
+        b.append(c);
+      } else {
+        b.append('_');
+      }
+    }
+  }
+
+  private static void writeFamily(String name, List<Sample> samples, Writer out) throws IOException {
+    final Metric first = samples.get(0).metric;
+    if (first instanceof Gauge) {
+      writeType(name, "gauge", out);
+      for (Sample s : samples) {
+        if (s.metric instanceof Gauge) {
+          final Object value = ((Gauge<?>) s.metric).getValue();
+          if (value instanceof Number) {
+            writeSample(name, "", s, null, ((Number) value).doubleValue(), out);
+          } else if (value instanceof Boolean) {
+            writeSample(name, "", s, null, (Boolean) value? 1: 0, out);
+          }
+        }
+      }
+    } else if (first instanceof Counter || first instanceof Meter) {
+      // the counters are never decremented
+      writeType(name + "_total", "counter", out);
+      for (Sample s : samples) {
+        if (s.metric instanceof Counter) {
+          writeSample(name, "_total", s, null, ((Counter) s.metric).getCount(), out);
+        } else if (s.metric instanceof Meter) {
+          writeSample(name, "_total", s, null, ((Meter) s.metric).getCount(), out);
+        }
+      }
+    } else if (first instanceof Timer) {
+      final String seconds = name + "_seconds";
+      writeType(seconds, "summary", out);
+      for (Sample s : samples) {
+        if (s.metric instanceof Timer) {
+          final Timer timer = (Timer) s.metric;
+          writeSummary(seconds, s, timer.getSnapshot(), NANOS_PER_SECOND, timer.getCount(), out);
+        }
+      }
+    } else if (first instanceof Histogram) {
+      writeType(name, "summary", out);
+      for (Sample s : samples) {
+        if (s.metric instanceof Histogram) {
+          final Histogram histogram = (Histogram) s.metric;
+          writeSummary(name, s, histogram.getSnapshot(), 1, histogram.getCount(), out);
+        }
+      }
+    }
+  }
+
+  private static void writeType(String name, String type, Writer out) throws IOException {
+    out.write("# TYPE ");
+    out.write(name);
+    out.write(' ');
+    out.write(type);
+    out.write('\n');
+  }
+
+  private static void writeSummary(String name, Sample sample, Snapshot snapshot, double unit, long count,
+      Writer out) throws IOException {
+    for (int i = 0; i < QUANTILES.length; i++) {
+      writeSample(name, "", sample, QUANTILE_LABELS[i], snapshot.getValue(QUANTILES[i]) / unit, out);
+    }
+    writeSample(name, "_count", sample, null, count, out);
+  }
+
+  private static void writeSample(String name, String suffix, Sample sample, String quantile, double value,
+      Writer out) throws IOException {
+    out.write(name);
+    out.write(suffix);
+    final MemberRegistry member = sample.member;
+    boolean first = true;
+    if (member != null) {
+      first = writeLabel("peer", member.getPeerId(), first, out);
+      first = writeLabel("group", member.getGroupId(), first, out);
+    }
+    if (sample.name.labelName != null) {
+      first = writeLabel(sample.name.labelName, sample.name.labelValue, first, out);
+    }
+    if (quantile != null) {
+      first = writeLabel("quantile", quantile, first, out);
+    }
+    if (!first) {
+      out.write('}');
+    }
+    out.write(' ');
+    if (Double.isInfinite(value)) {
+      out.write(value > 0? "+Inf": "-Inf");
+    } else if (value == (long) value) {
+      out.write(Long.toString((long) value));
+    } else {
+      out.write(Double.toString(value));
+    }
+    out.write('\n');
+  }
+
+  /** @return false since a label has been written. */
+  private static boolean writeLabel(String name, String value, boolean first, Writer out) throws IOException {
+    out.write(first? '{': ',');
+    out.write(name);
+    out.write("=\"");
+    writeEscaped(value, out);
+    out.write('"');
+    return false;
+  }
+
+  /** Write the given label value with the backslashes, the double quotes and the line feeds escaped. */
+  private static void writeEscaped(String value, Writer out) throws IOException {
+    for (int i = 0; i < value.length(); i++) {
+      final char c = value.charAt(i);
+      if (c == '\\' || c == '"') {
+        out.write('\\');
+        out.write(c);
+      } else if (c == '\n') {
+        out.write("\\n");
+      } else {
+        out.write(c);
+      }
+    }
+  }
+}
@@ -0,0 +1,103 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.metrics;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * The metrics of a component of a group member in {@link RatisMetricsRegistry},
+ * which are named by the component class, the peer id, the group id and the metric name.
+ *
+ * The counters and the meters are cheap to update from the hot paths;
+ * the gauges are only evaluated when they are read.
+ * The metrics are removed by {@link #removeAll()} when the component is closed.
+ */
+public class RatisMetrics {
+  static final String LABEL_START = "[";
+  static final String LABEL_END = "]";
+
+  /**
+   * @return the name of the given metric with the given label, e.g. match-lag[follower=s1],
+   *         so that {@link PrometheusMetricsWriter} writes the metrics differing only in the label value
+   *         as a single family with the label.
+   */
+  public static String withLabel(String name, String labelName, Object labelValue) {
+    return name + LABEL_START + labelName + "=" + labelValue + LABEL_END;
+  }
+
+  private final MetricRegistry registry;
+  private final String prefix;
+
+  /** The group id may be null if the component does not belong to any group. */
+  public RatisMetrics(Class<?> component, Object peerId, Object groupId) {
+    this.registry = RatisMetricsRegistry.getRegistry(peerId, groupId);
+    this.prefix = MetricRegistry.name(component, Objects.toString(peerId), Objects.toString(groupId, null));
+  }
+
+  /** @return the full name of the given metric. */
+  public String getName(String... names) {
+    return MetricRegistry.name(prefix, names);
+  }
+
+  public Counter counter(String name) {
+    return registry.counter(getName(name));
+  }
+
+  public Meter meter(String name) {
+    return registry.meter(getName(name));
+  }
+
+  public Histogram histogram(String name) {
+    return registry.histogram(getName(name));
+  }
+
+  public Timer timer(String name) {
+    return registry.timer(getName(name));
+  }
+
+  /** Register a gauge, which replaces the existing metric with the same name. */
+  public <T> Gauge<T> gauge(String name, Supplier<T> supplier) {
+    final String fullName = getName(name);
+    final Gauge<T> gauge = supplier::get;
+    registry.remove(fullName);
+    return registry.register(fullName, gauge);
+  }
+
+  public boolean remove(String name) {
+    return registry.remove(getName(name));
+  }
+
+  /** Remove all the metrics of this component. */
+  public void removeAll() {
+    final String p = prefix + ".";
+    registry.removeMatching((name, metric) -> name.startsWith(p));
+  }
+
+  @Override
+  public String toString() {
+    return prefix;
+  }
+}
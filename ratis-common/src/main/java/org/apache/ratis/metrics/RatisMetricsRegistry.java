@@ -21,6 +21,20 @@ package org.apache.ratis.metrics;
 import com.codahale.metrics.JmxReporter;
 import com.codahale.metrics.MetricRegistry;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The registries of the Ratis metrics.
+ *
+ * Each group member, i.e. a peer in a group, has its own registry,
+ * which is created when a metric of the member is first registered
+ * and is removed by {@link #removeRegistry(Object, Object)} when the member is removed.
+ * All the registries are reported to JMX.
+ */
 public class RatisMetricsRegistry {
 
   private static final MetricRegistry metricsRegistry = new MetricRegistry();
@@ -29,7 +43,71 @@ public class RatisMetricsRegistry {
     JmxReporter.forRegistry(RatisMetricsRegistry.getRegistry()).build().start();
   }
 
+  /** The registry of a group member. */
+  static final class MemberRegistry {
+    private final String peerId;
+    private final String groupId;
+    private final MetricRegistry registry = new MetricRegistry();
+    private final JmxReporter jmxReporter = JmxReporter.forRegistry(registry).build();
+    /** The cache of the Prometheus names, see {@link PrometheusMetricsWriter}. */
+    private final ConcurrentMap<String, PrometheusMetricsWriter.Name> names = new ConcurrentHashMap<>();
+
+    MemberRegistry(String peerId, String groupId) {
+      this.peerId = peerId;
+      this.groupId = groupId;
+    }
+
+    String getPeerId() {
+      return peerId;
+    }
+
+    String getGroupId() {
+      return groupId;
+    }
+
+    MetricRegistry getRegistry() {
+      return registry;
+    }
+
+    ConcurrentMap<String, PrometheusMetricsWriter.Name> getNames() {
+      return names;
+    }
+
+    @Override
+    public String toString() {
+      return peerId + "@" + groupId;
+    }
+  }
+
+  private static final ConcurrentMap<String, MemberRegistry> memberRegistries = new ConcurrentHashMap<>();
+
+  /** @return the registry of the metrics not belonging to any group member. */
   public static MetricRegistry getRegistry() {
     return metricsRegistry;
   }
+
+  /** @return the registry of the given group member, which is created if it does not exist. */
+  public static MetricRegistry getRegistry(Object peerId, Object groupId) {
+    return memberRegistries.computeIfAbsent(getKey(peerId, groupId), key -> {
+      final MemberRegistry r = new MemberRegistry(Objects.toString(peerId, ""), Objects.toString(groupId, ""));
+      r.jmxReporter.start();
+      return r;
+    }).getRegistry();
+  }
+
+  /** Remove the registry of the given group member and unregister its metrics from JMX. */
+  public static void removeRegistry(Object peerId, Object groupId) {
+    final MemberRegistry r = memberRegistries.remove(getKey(peerId, groupId));
+    if (r != null) {
+      r.jmxReporter.stop();
+    }
+  }
+
+  private static String getKey(Object peerId, Object groupId) {
+    return peerId + "@" + groupId;
+  }
+
+  static Collection<MemberRegistry> getMemberRegistries() {
+    return Collections.unmodifiableCollection(memberRegistries.values());
+  }
 }
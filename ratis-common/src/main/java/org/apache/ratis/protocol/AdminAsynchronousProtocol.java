@@ -26,4 +26,6 @@ public interface AdminAsynchronousProtocol {
   CompletableFuture<GroupInfoReply> getGroupInfoAsync(GroupInfoRequest request);
 
   CompletableFuture<RaftClientReply> groupManagementAsync(GroupManagementRequest request);
+
+  CompletableFuture<RaftClientReply> transferLeadershipAsync(TransferLeadershipRequest request);
 }
\ No newline at end of file
@@ -26,4 +26,6 @@ public interface AdminProtocol {
   GroupInfoReply getGroupInfo(GroupInfoRequest request) throws IOException;
 
   RaftClientReply groupManagement(GroupManagementRequest request) throws IOException;
+
+  RaftClientReply transferLeadership(TransferLeadershipRequest request) throws IOException;
 }
\ No newline at end of file
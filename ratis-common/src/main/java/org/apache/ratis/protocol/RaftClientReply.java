@@ -68,7 +68,8 @@ public class RaftClientReply extends RaftClientMessage {
           () -> "Inconsistent parameters: success && exception != null: " + this);
       Preconditions.assertTrue(ReflectionUtils.isInstance(exception,
           NotLeaderException.class, NotReplicatedException.class, StateMachineException.class,
-          RaftRetryFailureException.class), () -> "Unexpected exception class: " + this);
+          RaftRetryFailureException.class, TransferLeadershipException.class),
+          () -> "Unexpected exception class: " + this);
     }
   }
 
@@ -149,4 +150,9 @@ public class RaftClientReply extends RaftClientMessage {
   public RaftRetryFailureException getRetryFailureException() {
     return JavaUtils.cast(exception, RaftRetryFailureException.class);
   }
+
+  /** If this reply has {@link TransferLeadershipException}, return it; otherwise return null. */
+  public TransferLeadershipException getTransferLeadershipException() {
+    return JavaUtils.cast(exception, TransferLeadershipException.class);
+  }
 }
@@ -20,20 +20,35 @@ package org.apache.ratis.protocol;
 import java.util.Arrays;
 
 public class SetConfigurationRequest extends RaftClientRequest {
+  private static final RaftPeer[] EMPTY_PEERS = {};
+
   private final RaftPeer[] peers;
+  /** The non-voting learners in the new conf. */
+  private final RaftPeer[] learners;
 
   public SetConfigurationRequest(ClientId clientId, RaftPeerId serverId,
       RaftGroupId groupId, long callId, RaftPeer[] peers) {
+    this(clientId, serverId, groupId, callId, peers, EMPTY_PEERS);
+  }
+
+  public SetConfigurationRequest(ClientId clientId, RaftPeerId serverId,
+      RaftGroupId groupId, long callId, RaftPeer[] peers, RaftPeer[] learners) {
     super(clientId, serverId, groupId, callId, writeRequestType());
     this.peers = peers;
+    this.learners = learners != null? learners: EMPTY_PEERS;
   }
 
   public RaftPeer[] getPeersInNewConf() {
     return peers;
   }
 
+  public RaftPeer[] getLearnersInNewConf() {
+    return learners;
+  }
+
   @Override
   public String toString() {
-    return super.toString() + ", peers:" + Arrays.asList(getPeersInNewConf());
+    return super.toString() + ", peers:" + Arrays.asList(getPeersInNewConf())
+        + (learners.length == 0? "": ", learners:" + Arrays.asList(learners));
   }
 }
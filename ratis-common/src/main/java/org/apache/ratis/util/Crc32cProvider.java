@@ -0,0 +1,198 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.function.Supplier;
+import java.util.zip.Checksum;
+
+/**
+ * Provide CRC32C {@link Checksum}s using the fastest implementation available at runtime:
+ * (1) {@link Implementation#JDK}, i.e. java.util.zip.CRC32C in Java 9 or above,
+ *     which is intrinsified by the JIT with the CRC32 instructions,
+ * (2) {@link Implementation#NATIVE}, i.e. {@link NativeCrc32C} when the native library is loaded, or
+ * (3) {@link Implementation#PURE_JAVA}, i.e. {@link PureJavaCrc32C}.
+ *
+ * The implementation can be forced with the system property {@link #IMPLEMENTATION_PROPERTY}.
+ * All the implementations compute the same checksum.
+ */
+public final class Crc32cProvider {
+  public static final Logger LOG = LoggerFactory.getLogger(Crc32cProvider.class);
+
+  public static final String IMPLEMENTATION_PROPERTY = "ratis.crc32c.implementation";
+
+  public enum Implementation {
+    JDK, NATIVE, PURE_JAVA
+  }
+
+  /** The constructor of java.util.zip.CRC32C; or null if it is unavailable. */
+  private static final MethodHandle JDK_CRC32C = findJdkCrc32c();
+  /** {@link Checksum}.update(ByteBuffer) in Java 9 or above; or null if it is unavailable. */
+  private static final MethodHandle UPDATE_BYTE_BUFFER = findUpdateByteBuffer();
+
+  private static final Implementation IMPLEMENTATION = selectImplementation();
+
+  private Crc32cProvider() {}
+
+  private static MethodHandle findJdkCrc32c() {
+    try {
+      final Class<?> clazz = Class.forName("java.util.zip.CRC32C");
+      return MethodHandles.publicLookup().findConstructor(clazz, MethodType.methodType(void.class))
+          .asType(MethodType.methodType(Checksum.class));
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      return null;
+    }
+  }
+
+  private static MethodHandle findUpdateByteBuffer() {
+    try {
+      return MethodHandles.publicLookup().findVirtual(Checksum.class, "update",
+          MethodType.methodType(void.class, ByteBuffer.class));
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      return null;
+    }
+  }
+
+  private static Implementation selectImplementation() {
+    final String property = System.getProperty(IMPLEMENTATION_PROPERTY);
+    if (property != null) {
+      final Implementation forced = Implementation.valueOf(property.trim().toUpperCase());
+      if (isAvailable(forced)) {
+        LOG.info("CRC32C implementation: {} (set by {})", forced, IMPLEMENTATION_PROPERTY);
+        return forced;
+      }
+      LOG.warn("CRC32C implementation {} set by {} is unavailable", forced, IMPLEMENTATION_PROPERTY);
+    }
+
+    for (Implementation i : Implementation.values()) {
+      if (isAvailable(i)) {
+        LOG.info("CRC32C implementation: {}", i);
+        return i;
+      }
+    }
+    throw new IllegalStateException("No CRC32C implementation is available");
+  }
+
+  /** Is the given implementation available and does it compute the same checksum as the pure java one? */
+  public static boolean isAvailable(Implementation implementation) {
+    final Supplier<Checksum> constructor;
+    switch (implementation) {
+      case JDK:
+        if (JDK_CRC32C == null) {
+          return false;
+        }
+        constructor = Crc32cProvider::newJdkCrc32c;
+        break;
+      case NATIVE:
+        if (!NativeCrc32.isAvailable()) {
+          return false;
+        }
+        constructor = NativeCrc32C::new;
+        break;
+      case PURE_JAVA:
+        return true;
+      default:
+        throw new IllegalArgumentException("Unexpected implementation " + implementation);
+    }
+
+    try {
+      final byte[] data = new byte[1000];
+      new Random(implementation.ordinal()).nextBytes(data);
+      final Checksum expected = new PureJavaCrc32C();
+      expected.update(data, 0, data.length);
+      final Checksum checksum = constructor.get();
+      checksum.update(data, 0, data.length);
+      return checksum.getValue() == expected.getValue();
+    } catch (UnsatisfiedLinkError | RuntimeException e) {
+      // e.g. the native library is built without the CRC32C functions.
+      LOG.debug("CRC32C implementation " + implementation + " is unavailable", e);
+      return false;
+    }
+  }
+
+  private static Checksum newJdkCrc32c() {
+    try {
+      return (Checksum) JDK_CRC32C.invokeExact();
+    } catch (Throwable t) {
+      throw new IllegalStateException("Failed to create java.util.zip.CRC32C", t);
+    }
+  }
+
+  /** @return the implementation used by {@link #newChecksum()}. */
+  public static Implementation getImplementation() {
+    return IMPLEMENTATION;
+  }
+
+  /** @return a new CRC32C {@link Checksum} of the fastest available implementation. */
+  public static Checksum newChecksum() {
+    return newChecksum(IMPLEMENTATION);
+  }
+
+  /** @return a new CRC32C {@link Checksum} of the given implementation, which must be available. */
+  public static Checksum newChecksum(Implementation implementation) {
+    switch (implementation) {
+      case JDK:
+        return newJdkCrc32c();
+      case NATIVE:
+        return new NativeCrc32C();
+      case PURE_JAVA:
+        return new PureJavaCrc32C();
+      default:
+        throw new IllegalArgumentException("Unexpected implementation " + implementation);
+    }
+  }
+
+  /**
+   * Update the given checksum with the remaining bytes of the given buffer
+   * and advance the position of the buffer to its limit.
+   * The buffer, including a direct buffer, is not copied to an array
+   * unless the checksum does not support {@link ByteBuffer}s.
+   */
+  public static void update(Checksum checksum, ByteBuffer buffer) {
+    if (checksum instanceof PureJavaCrc32C) {
+      ((PureJavaCrc32C) checksum).update(buffer);
+    } else if (checksum instanceof NativeCrc32C) {
+      ((NativeCrc32C) checksum).update(buffer);
+    } else if (UPDATE_BYTE_BUFFER != null) {
+      try {
+        UPDATE_BYTE_BUFFER.invokeExact(checksum, buffer);
+      } catch (RuntimeException | Error e) {
+        throw e;
+      } catch (Throwable t) {
+        throw new IllegalStateException("Failed to update " + checksum, t);
+      }
+    } else if (buffer.hasArray()) {
+      checksum.update(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+      buffer.position(buffer.limit());
+    } else {
+      final byte[] array = new byte[Math.min(buffer.remaining(), 8 << 10)];
+      while (buffer.hasRemaining()) {
+        final int n = Math.min(buffer.remaining(), array.length);
+        buffer.get(array, 0, n);
+        checksum.update(array, 0, n);
+      }
+    }
+  }
+}
@@ -0,0 +1,321 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A hashed wheel timer for the timeout tasks of {@link TimeoutScheduler}.
+ *
+ * The wheel has a power-of-two number of buckets and the tick thread advances one bucket per tick.
+ * A task expiring after the given number of ticks is put in the bucket (ticks mod wheelSize)
+ * with (ticks / wheelSize) remaining rounds.
+ * Scheduling a task is O(1): it adds the task to a lock-free queue,
+ * which is transferred to the buckets by the tick thread.
+ * In each tick, the expired tasks of the current bucket are collected in a batch
+ * and the batch is run by the executor threads.
+ *
+ * A task runs no earlier than its delay and at most about one tick later, if the executor is not busy.
+ *
+ * The tick thread parks while the wheel is empty and it is unparked when a task is scheduled.
+ * The {@link TimeoutScheduler}s share a timer for each tick, see {@link #getShared(int, TimeDuration)}.
+ */
+final class HashedWheelTimer implements TimeoutScheduler.Scheduler {
+  public static final Logger LOG = LoggerFactory.getLogger(HashedWheelTimer.class);
+
+  static final int DEFAULT_WHEEL_SIZE = 512;
+  /** The time for an idle executor thread to wait for a task before it terminates. */
+  private static final TimeDuration KEEP_ALIVE = TimeDuration.valueOf(1, TimeUnit.MINUTES);
+
+  /** The shared timers, one for each tick. */
+  private static final Map<TimeDuration, HashedWheelTimer> SHARED = new HashMap<>();
+
+  /**
+   * Get the timer with the given tick shared in this process, and grow its executor to the given number of threads.
+   * The timer is created if it does not exist.
+   * It is stopped once all the returned schedulers are shut down.
+   */
+  static synchronized SharedScheduler getShared(int numThreads, TimeDuration tick) {
+    final HashedWheelTimer timer = SHARED.computeIfAbsent(tick,
+        t -> new HashedWheelTimer("shared-" + t, numThreads, t, DEFAULT_WHEEL_SIZE));
+    timer.references++;
+    timer.growExecutor(numThreads);
+    return new SharedScheduler(timer, numThreads);
+  }
+
+  private static synchronized void release(HashedWheelTimer timer) {
+    if (--timer.references == 0) {
+      SHARED.remove(timer.tickDuration);
+      timer.shutdown();
+    }
+  }
+
+  /** A {@link TimeoutScheduler.Scheduler} using a shared timer, which is released when it is shut down. */
+  static final class SharedScheduler implements TimeoutScheduler.Scheduler {
+    private final HashedWheelTimer timer;
+    private final int numThreads;
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    private SharedScheduler(HashedWheelTimer timer, int numThreads) {
+      this.timer = timer;
+      this.numThreads = numThreads;
+    }
+
+    HashedWheelTimer getTimer() {
+      return timer;
+    }
+
+    @Override
+    public void schedule(Runnable task, TimeDuration delay) {
+      timer.schedule(task, delay);
+    }
+
+    @Override
+    public void shutdown() {
+      if (released.compareAndSet(false, true)) {
+        release(timer);
+      }
+    }
+
+    @Override
+    public int getNumThreads() {
+      return numThreads;
+    }
+  }
+
+  private static final class Timeout {
+    private final Runnable task;
+    /** The deadline relative to the start time of the timer. */
+    private final long deadlineNanos;
+    private long remainingRounds;
+
+    private Timeout(Runnable task, long deadlineNanos) {
+      this.task = task;
+      this.deadlineNanos = deadlineNanos;
+    }
+  }
+
+  private final String name;
+  private final TimeDuration tickDuration;
+  private final long tickNanos;
+  private final int mask;
+  /** The buckets, which are only accessed by the tick thread. */
+  private final List<List<Timeout>> wheel;
+  /** The newly scheduled tasks. */
+  private final Queue<Timeout> scheduled = new ConcurrentLinkedQueue<>();
+
+  private volatile int numThreads;
+  private final ThreadPoolExecutor executor;
+  private final Daemon tickThread;
+  private final long startNanos = System.nanoTime();
+  private volatile boolean running = true;
+  /** Is the tick thread parked for an empty wheel? */
+  private volatile boolean idle = false;
+
+  /** The current tick, which is only accessed by the tick thread. */
+  private long tick = 0;
+  /** The number of tasks in the buckets, which is only accessed by the tick thread. */
+  private long numTimeouts = 0;
+  /** The number of the {@link SharedScheduler}s using this timer, guarded by the class. */
+  private int references = 0;
+
+  HashedWheelTimer(Object name, int numThreads, TimeDuration tickDuration, int wheelSize) {
+    Preconditions.assertTrue(numThreads > 0, () -> "numThreads = " + numThreads + " <= 0");
+    Preconditions.assertTrue(Integer.bitCount(wheelSize) == 1,
+        () -> "wheelSize = " + wheelSize + " is not a power of two");
+    this.name = name + "-" + getClass().getSimpleName();
+    this.tickDuration = tickDuration;
+    this.tickNanos = tickDuration.toLong(TimeUnit.NANOSECONDS);
+    Preconditions.assertTrue(tickNanos > 0, () -> "tick = " + tickDuration + " is non-positive");
+    this.mask = wheelSize - 1;
+    this.wheel = new ArrayList<>(wheelSize);
+    for(int i = 0; i < wheelSize; i++) {
+      wheel.add(new ArrayList<>());
+    }
+
+    this.numThreads = numThreads;
+    this.executor = new ThreadPoolExecutor(numThreads, numThreads,
+        KEEP_ALIVE.getDuration(), KEEP_ALIVE.getUnit(), new LinkedBlockingQueue<>(), (ThreadFactory) Daemon::new);
+    executor.allowCoreThreadTimeOut(true);
+    this.tickThread = new Daemon(this::run, this.name);
+    tickThread.start();
+  }
+
+  @Override
+  public int getNumThreads() {
+    return numThreads;
+  }
+
+  private synchronized void growExecutor(int n) {
+    if (n > numThreads) {
+      executor.setMaximumPoolSize(n);
+      executor.setCorePoolSize(n);
+      numThreads = n;
+    }
+  }
+
+  boolean isIdle() {
+    return idle;
+  }
+
+  /** Schedule the given task to run after the given delay. */
+  @Override
+  public void schedule(Runnable task, TimeDuration delay) {
+    final long deadline = System.nanoTime() - startNanos + delay.toLong(TimeUnit.NANOSECONDS);
+    scheduled.offer(new Timeout(task, deadline));
+    if (idle) {
+      LockSupport.unpark(tickThread);
+    }
+  }
+
+  /** Stop the tick thread and the executor threads; the remaining tasks are discarded. */
+  @Override
+  public void shutdown() {
+    running = false;
+    tickThread.interrupt();
+    executor.shutdown();
+  }
+
+  private void run() {
+    try {
+      for(; running; tick++) {
+        if (numTimeouts == 0 && scheduled.isEmpty()) {
+          waitForTasks();
+        }
+        waitForNextTick();
+        transferScheduled();
+        final List<Runnable> expired = expire(wheel.get((int) (tick & mask)));
+        if (!expired.isEmpty()) {
+          execute(expired);
+        }
+      }
+    } catch (InterruptedException e) {
+      if (running) {
+        LOG.warn("{} is interrupted while still running", name);
+      }
+      Thread.currentThread().interrupt();
+    }
+    LOG.debug("{} stopped", name);
+  }
+
+  /** Park until a task is scheduled, and then move the wheel, which is empty, to the current time. */
+  private void waitForTasks() throws InterruptedException {
+    idle = true;
+    try {
+      // check the queue after setting idle so that a task scheduled concurrently unparks this thread
+      while (scheduled.isEmpty()) {
+        LockSupport.park(this);
+        if (Thread.interrupted()) {
+          throw new InterruptedException(name + " is interrupted");
+        }
+      }
+    } finally {
+      idle = false;
+    }
+    tick = (System.nanoTime() - startNanos) / tickNanos;
+  }
+
+  /** Wait until the end of the current tick. */
+  private void waitForNextTick() throws InterruptedException {
+    final long end = (tick + 1) * tickNanos;
+    for(long remaining; (remaining = end - (System.nanoTime() - startNanos)) > 0; ) {
+      LockSupport.parkNanos(this, remaining);
+      if (Thread.interrupted()) {
+        throw new InterruptedException(name + " is interrupted");
+      }
+    }
+  }
+
+  /** Put the scheduled tasks into the buckets. */
+  private void transferScheduled() {
+    for(Timeout t; (t = scheduled.poll()) != null; ) {
+      // the task expires in the tick whose end is at or after the deadline; overdue tasks expire now
+      final long expireTick = Math.max(tick, (t.deadlineNanos + tickNanos - 1) / tickNanos - 1);
+      final long ticks = expireTick - tick;
+      t.remainingRounds = ticks / wheel.size();
+      wheel.get((int) (expireTick & mask)).add(t);
+      numTimeouts++;
+    }
+  }
+
+  /** Remove the expired tasks from the given bucket and decrement the rounds of the other tasks. */
+  private List<Runnable> expire(List<Timeout> bucket) {
+    if (bucket.isEmpty()) {
+      return Collections.emptyList();
+    }
+    final List<Runnable> expired = new ArrayList<>();
+    int n = 0;
+    for(Timeout t : bucket) {
+      if (t.remainingRounds <= 0) {
+        expired.add(t.task);
+      } else {
+        t.remainingRounds--;
+        bucket.set(n++, t);
+      }
+    }
+    bucket.subList(n, bucket.size()).clear();
+    numTimeouts -= expired.size();
+    return expired;
+  }
+
+  /** Run the expired tasks in at most numThreads batches. */
+  private void execute(List<Runnable> expired) {
+    final int numBatches = Math.min(numThreads, expired.size());
+    final int batchSize = (expired.size() + numBatches - 1) / numBatches;
+    for(int i = 0; i < expired.size(); i += batchSize) {
+      final List<Runnable> batch = expired.subList(i, Math.min(i + batchSize, expired.size()));
+      try {
+        executor.execute(() -> batch.forEach(this::runTask));
+      } catch (RejectedExecutionException e) {
+        if (running) {
+          throw e;
+        }
+        LOG.debug("{} is shut down: discard {} tasks", name, batch.size());
+      }
+    }
+  }
+
+  private void runTask(Runnable task) {
+    try {
+      task.run();
+    } catch (Throwable t) {
+      LOG.warn(name + ": failed to run " + task, t);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return name;
+  }
+}
@@ -0,0 +1,324 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
+
+/**
+ * A multi-producer/single-consumer variant of {@link DataBlockingQueue}
+ * such that the queue imposes limits on both number of elements and the data size in bytes.
+ *
+ * An offer reserves the space by a CAS on the element and byte counts, which are packed in a long,
+ * and then links the element to a linked queue by swapping the tail.
+ * A poll unlinks the head element and releases its space.
+ * The consumer is parked only when the queue is empty
+ * and the producers wait on a lock only when the queue is full.
+ *
+ * Null element is NOT supported.
+ *
+ * The offer methods are threadsafe.
+ * The consumer methods, i.e. the poll, drain and clear methods, are serialized by a lock,
+ * which is uncontended when there is a single consumer thread.
+ * At most one thread may call {@link #poll(TimeDuration)} at any time.
+ */
+public class MpscDataBlockingQueue<E> {
+  public static final Logger LOG = LoggerFactory.getLogger(MpscDataBlockingQueue.class);
+
+  private static final long ONE_ELEMENT = 1L << 32;
+  private static final long BYTE_MASK = ONE_ELEMENT - 1;
+
+  private static final class Node<E> {
+    private E element;
+    private volatile Node<E> next;
+
+    private Node(E element) {
+      this.element = element;
+    }
+  }
+
+  private final Object name;
+  private final int byteLimit;
+  private final int elementLimit;
+  private final ToIntFunction<E> getNumBytes;
+
+  /** The number of elements in the high 32 bits and the number of bytes in the low 32 bits. */
+  private final AtomicLong counts = new AtomicLong();
+  /** The producers swap the tail. */
+  private final AtomicReference<Node<E>> tail;
+  /** The consumer advances the head, which is a dummy node. */
+  private Node<E> head;
+  private final Object consumerLock = new Object();
+  /** The consumer waiting in {@link #poll(TimeDuration)}, if there is any; it is unparked by one producer only. */
+  private final AtomicReference<Thread> waitingConsumer = new AtomicReference<>();
+
+  private final Lock producerLock = new ReentrantLock();
+  private final Condition notFull = producerLock.newCondition();
+  /** The number of producers waiting in {@link #offer(Object, TimeDuration)}. */
+  private volatile int waitingProducers = 0;
+  /** Have the waiting producers been signaled but not yet retried? If so, the consumer does not signal again. */
+  private volatile boolean signaled = false;
+
+  public MpscDataBlockingQueue(Object name, SizeInBytes byteLimit, int elementLimit, ToIntFunction<E> getNumBytes) {
+    this.name = name != null? name: this;
+    this.byteLimit = byteLimit.getSizeInt();
+    this.elementLimit = elementLimit;
+    this.getNumBytes = getNumBytes;
+
+    this.head = new Node<>(null);
+    this.tail = new AtomicReference<>(head);
+  }
+
+  public int getElementLimit() {
+    return elementLimit;
+  }
+
+  public int getByteLimit() {
+    return byteLimit;
+  }
+
+  /** @return the number of bytes, including the elements being added. */
+  public int getNumBytes() {
+    return (int) (counts.get() & BYTE_MASK);
+  }
+
+  /** @return the number of elements, including the elements being added. */
+  public int getNumElements() {
+    return (int) (counts.get() >>> 32);
+  }
+
+  public final boolean isEmpty() {
+    return getNumElements() == 0;
+  }
+
+  int getNumWaitingProducers() {
+    return waitingProducers;
+  }
+
+  boolean hasWaitingConsumer() {
+    return waitingConsumer.get() != null;
+  }
+
+  /** Reserve the space for an element with the given size. */
+  private boolean reserve(int elementNumBytes) {
+    final int maxBytes = byteLimit > 0? byteLimit: Integer.MAX_VALUE;
+    for(;;) {
+      final long current = counts.get();
+      if (elementLimit > 0 && (current >>> 32) >= elementLimit) {
+        return false;
+      }
+      if ((current & BYTE_MASK) > maxBytes - elementNumBytes) {
+        return false;
+      }
+      if (counts.compareAndSet(current, current + ONE_ELEMENT + elementNumBytes)) {
+        return true;
+      }
+    }
+  }
+
+  /** Release the space of the removed elements and then signal the waiting producers, if necessary. */
+  private void release(int numElements, long numBytes) {
+    if (numElements == 0) {
+      return;
+    }
+    counts.addAndGet(-(numElements * ONE_ELEMENT + numBytes));
+    if (waitingProducers > 0 && !signaled) {
+      producerLock.lock();
+      try {
+        signaled = true;
+        notFull.signalAll();
+      } finally {
+        producerLock.unlock();
+      }
+    }
+  }
+
+  /**
+   * Adds an element to this queue without waiting.
+   *
+   * @return true if the element is added successfully;
+   *         otherwise, the element is not added, return false.
+   */
+  public boolean offer(E element) {
+    Objects.requireNonNull(element, "element == null");
+    final int elementNumBytes = getNumBytes.applyAsInt(element);
+    Preconditions.assertTrue(elementNumBytes >= 0,
+        () -> name + ": elementNumBytes = " + elementNumBytes + " < 0");
+    if (byteLimit > 0) {
+      Preconditions.assertTrue(elementNumBytes <= byteLimit,
+          () -> "elementNumBytes = " + elementNumBytes + " > byteLimit = " + byteLimit);
+    }
+    if (!reserve(elementNumBytes)) {
+      return false;
+    }
+
+    final Node<E> node = new Node<>(element);
+    tail.getAndSet(node).next = node;
+
+    final Thread consumer = waitingConsumer.get();
+    if (consumer != null && waitingConsumer.compareAndSet(consumer, null)) {
+      LockSupport.unpark(consumer);
+    }
+    return true;
+  }
+
+  /**
+   * Adds an element to this queue, waiting up to the given timeout.
+   *
+   * @return true if the element is added successfully;
+   *         otherwise, the element is not added, return false.
+   */
+  public boolean offer(E element, TimeDuration timeout) throws InterruptedException {
+    if (offer(element)) {
+      return true;
+    }
+    long nanos = timeout.toLong(TimeUnit.NANOSECONDS);
+    if (nanos <= 0) {
+      return false;
+    }
+
+    producerLock.lockInterruptibly();
+    try {
+      waitingProducers++;
+      try {
+        for(;;) {
+          // check again after resetting signaled so that a release cannot be missed.
+          signaled = false;
+          if (offer(element)) {
+            return true;
+          }
+          if (nanos <= 0) {
+            return false;
+          }
+          nanos = notFull.awaitNanos(nanos);
+        }
+      } finally {
+        waitingProducers--;
+      }
+    } finally {
+      producerLock.unlock();
+    }
+  }
+
+  /** Unlink the head element without releasing its space; the caller must hold the consumer lock. */
+  private E unlink() {
+    final Node<E> next = head.next;
+    if (next == null) {
+      // empty, or an element is being linked
+      return null;
+    }
+    final E element = next.element;
+    next.element = null;
+    head = next;
+    return element;
+  }
+
+  /** Poll out the head element from this queue without waiting. */
+  public E poll() {
+    synchronized (consumerLock) {
+      final E polled = unlink();
+      if (polled != null) {
+        release(1, getNumBytes.applyAsInt(polled));
+      }
+      return polled;
+    }
+  }
+
+  /**
+   * Poll out the head element from this queue, waiting up to the given timeout.
+   * The calling thread parks only when the queue is empty.
+   */
+  public E poll(TimeDuration timeout) throws InterruptedException {
+    long nanos = timeout.toLong(TimeUnit.NANOSECONDS);
+    final long deadline = System.nanoTime() + nanos;
+    for(;;) {
+      E polled = poll();
+      if (polled != null) {
+        return polled;
+      }
+      if (Thread.interrupted()) {
+        throw new InterruptedException(name + ": interrupted in poll");
+      }
+      if (nanos <= 0) {
+        return null;
+      }
+
+      waitingConsumer.set(Thread.currentThread());
+      try {
+        // check again after setting waitingConsumer so that an unpark cannot be missed.
+        polled = poll();
+        if (polled != null) {
+          return polled;
+        }
+        LockSupport.parkNanos(this, nanos);
+      } finally {
+        waitingConsumer.set(null);
+      }
+      nanos = deadline - System.nanoTime();
+    }
+  }
+
+  /**
+   * Drain at most the given number of elements from this queue without waiting.
+   * The space of the drained elements is released at once.
+   *
+   * @return the number of drained elements.
+   */
+  public int drain(Consumer<? super E> consumer, int maxElements) {
+    synchronized (consumerLock) {
+      int n = 0;
+      long numBytes = 0;
+      try {
+        for(E e; n < maxElements && (e = unlink()) != null; ) {
+          n++;
+          numBytes += getNumBytes.applyAsInt(e);
+          consumer.accept(e);
+        }
+      } finally {
+        release(n, numBytes);
+      }
+      return n;
+    }
+  }
+
+  /**
+   * Drain at most the given number of elements from this queue to the given collection.
+   *
+   * @return the number of drained elements.
+   */
+  public int drainTo(Collection<? super E> collection, int maxElements) {
+    return drain(collection::add, maxElements);
+  }
+
+  /** Remove the linked elements; the elements being added are not removed. */
+  public void clear() {
+    drain(e -> {}, Integer.MAX_VALUE);
+  }
+}
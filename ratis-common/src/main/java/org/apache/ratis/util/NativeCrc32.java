@@ -91,6 +91,15 @@ class NativeCrc32 {
         "", 0, false);
   }
 
+  /**
+   * Update the given running CRC32C, which starts at 0xffffffff and is bit-flipped at the end,
+   * with the data in the given direct buffer.
+   */
+  static native int nativeUpdateCrc32c(int crc, ByteBuffer data, int dataOffset, int dataLength);
+
+  /** The same as {@link #nativeUpdateCrc32c(int, ByteBuffer, int, int)} except for taking a byte array. */
+  static native int nativeUpdateCrc32cByteArray(int crc, byte[] data, int dataOffset, int dataLength);
+
   private static native void nativeComputeChunkedSums(
       int bytesPerSum, int checksumType,
       ByteBuffer sums, int sumsOffset,
@@ -0,0 +1,75 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.util;
+
+import java.nio.ByteBuffer;
+import java.util.zip.Checksum;
+
+/**
+ * A CRC32C {@link Checksum} computed by the native library,
+ * which uses the CRC32 instructions when the CPU supports them.
+ */
+class NativeCrc32C implements Checksum {
+  /** the current CRC value, bit-flipped */
+  private int crc;
+
+  NativeCrc32C() {
+    reset();
+  }
+
+  @Override
+  public long getValue() {
+    return (~crc) & 0xffffffffL;
+  }
+
+  @Override
+  public void reset() {
+    crc = 0xffffffff;
+  }
+
+  @Override
+  public void update(int b) {
+    update(new byte[]{(byte) b}, 0, 1);
+  }
+
+  @Override
+  public void update(byte[] b, int off, int len) {
+    Preconditions.assertTrue(off >= 0 && len >= 0 && off + len <= b.length,
+        () -> "Out of bounds: off=" + off + ", len=" + len + ", length=" + b.length);
+    crc = NativeCrc32.nativeUpdateCrc32cByteArray(crc, b, off, len);
+  }
+
+  /**
+   * Update the checksum with the remaining bytes of the given buffer
+   * and advance its position to its limit.
+   */
+  public void update(ByteBuffer b) {
+    final int position = b.position();
+    final int limit = b.limit();
+    if (b.isDirect()) {
+      crc = NativeCrc32.nativeUpdateCrc32c(crc, b, position, limit - position);
+    } else if (b.hasArray()) {
+      update(b.array(), b.arrayOffset() + position, limit - position);
+    } else {
+      final byte[] array = new byte[limit - position];
+      b.duplicate().get(array);
+      update(array, 0, array.length);
+    }
+    b.position(limit);
+  }
+}
@@ -138,7 +138,12 @@ public interface ProtoUtils {
   }
 
   static SlidingWindowEntry toSlidingWindowEntry(long seqNum, boolean isFirst) {
-    return SlidingWindowEntry.newBuilder().setSeqNum(seqNum).setIsFirst(isFirst).build();
+    return toSlidingWindowEntry(seqNum, isFirst, 0);
+  }
+
+  static SlidingWindowEntry toSlidingWindowEntry(long seqNum, boolean isFirst, long minUnrepliedCallId) {
+    return SlidingWindowEntry.newBuilder().setSeqNum(seqNum).setIsFirst(isFirst)
+        .setMinUnrepliedCallId(minUnrepliedCallId).build();
   }
 
   static String toString(SlidingWindowEntry proto) {
@@ -20,6 +20,7 @@
  */
 package org.apache.ratis.util;
 
+import java.nio.ByteBuffer;
 import java.util.zip.Checksum;
 
 /**
@@ -88,6 +89,48 @@ public class PureJavaCrc32C implements Checksum {
     crc = localCrc;
   }
 
+  /**
+   * Update the checksum with the remaining bytes of the given buffer
+   * and advance its position to its limit.
+   * A direct buffer is read in place without copying it to an array.
+   */
+  public void update(ByteBuffer b) {
+    final int limit = b.limit();
+    int off = b.position();
+    int len = limit - off;
+    if (b.hasArray()) {
+      update(b.array(), b.arrayOffset() + off, len);
+      b.position(limit);
+      return;
+    }
+
+    int localCrc = crc;
+    while(len > 7) {
+      final int c0 =(b.get(off+0) ^ localCrc) & 0xff;
+      final int c1 =(b.get(off+1) ^ (localCrc >>>= 8)) & 0xff;
+      final int c2 =(b.get(off+2) ^ (localCrc >>>= 8)) & 0xff;
+      final int c3 =(b.get(off+3) ^ (localCrc >>>= 8)) & 0xff;
+      localCrc = (T[T8_7_START + c0] ^ T[T8_6_START + c1])
+          ^ (T[T8_5_START + c2] ^ T[T8_4_START + c3]);
+
+      final int c4 = b.get(off+4) & 0xff;
+      final int c5 = b.get(off+5) & 0xff;
+      final int c6 = b.get(off+6) & 0xff;
+      final int c7 = b.get(off+7) & 0xff;
+
+      localCrc ^= (T[T8_3_START + c4] ^ T[T8_2_START + c5])
+           ^ (T[T8_1_START + c6] ^ T[T8_0_START + c7]);
+
+      off += 8;
+      len -= 8;
+    }
+    for(; len > 0; len--) {
+      localCrc = (localCrc >>> 8) ^ T[T8_0_START + ((localCrc ^ b.get(off++)) & 0xff)];
+    }
+    crc = localCrc;
+    b.position(limit);
+  }
+
   @Override
   public final void update(int b) {
     crc = (crc >>> 8) ^ T[T8_0_START + ((crc ^ b) & 0xff)];
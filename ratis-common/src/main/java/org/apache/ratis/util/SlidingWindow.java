@@ -22,7 +22,13 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Queue;
 import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.concurrent.TimeUnit;
@@ -33,6 +39,11 @@ import java.util.function.LongFunction;
  * A single-client-to-multiple-server sliding window.
  * The client only talks to a server at any time.
  * When the current server fails, the client fails over to another server.
+ *
+ * The windows only hold their locks for the bookkeeping of the requests.
+ * The send, processing and reply methods, as well as setting the replies to the client requests,
+ * are invoked outside the locks so that the threads calling the windows do not block each other on them.
+ * Each window still runs them one thread at a time, in the order decided under the lock.
  */
 public interface SlidingWindow {
   Logger LOG = LoggerFactory.getLogger(SlidingWindow.class);
@@ -55,12 +66,30 @@ public interface SlidingWindow {
     boolean isFirstRequest();
   }
 
-  /** A seqNum-to-request map, sorted by seqNum. */
+  /**
+   * A seqNum-to-request map, sorted by seqNum.
+   * The requests are stored in an array ring indexed by seqNum,
+   * which is grown when the range of the seqNums exceeds its length
+   * and shrunk when the range is less than a quarter of its length.
+   *
+   * This class is not threadsafe; the windows synchronize the access.
+   */
   class RequestMap<REQUEST extends Request<REPLY>, REPLY> implements Iterable<REQUEST> {
     static boolean LOG_REPEATEDLY = false;
+    /** The max range of the seqNums in a map. */
+    static final int MAX_CAPACITY = 1 << 24;
+    private static final int INITIAL_CAPACITY = 16;
+
     private final Object name;
-    /** Request map: seqNum -> request */
-    private final SortedMap<Long, REQUEST> requests = new TreeMap<>();
+    /** Request ring: seqNum -> request at (seqNum & mask) */
+    private Object[] ring = new Object[INITIAL_CAPACITY];
+    /** The replied flags of the requests, which are set before the replies are passed to the requests. */
+    private boolean[] replied = new boolean[INITIAL_CAPACITY];
+    /** The smallest seqNum in the map. */
+    private long first;
+    /** The largest seqNum in the map. */
+    private long last;
+    private int size = 0;
 
     RequestMap(Object name) {
       this.name = name;
@@ -74,7 +103,29 @@ public interface SlidingWindow {
     }
 
     boolean isEmpty() {
-      return requests.isEmpty();
+      return size == 0;
+    }
+
+    int size() {
+      return size;
+    }
+
+    int getCapacity() {
+      return ring.length;
+    }
+
+    private int slot(long seqNum) {
+      return (int) (seqNum & (ring.length - 1));
+    }
+
+    @SuppressWarnings("unchecked")
+    REQUEST get(long seqNum) {
+      return size == 0 || seqNum < first || seqNum > last? null: (REQUEST) ring[slot(seqNum)];
+    }
+
+    /** @return the request with the smallest seqNum; or null if the map is empty. */
+    REQUEST peekFirst() {
+      return get(first);
     }
 
     /**
@@ -86,35 +137,150 @@ public interface SlidingWindow {
      * (2) it does not has reply.
      */
     REQUEST getNonRepliedRequest(long seqNum, String op) {
-      final REQUEST request = requests.get(seqNum);
+      final REQUEST request = get(seqNum);
       if (request == null) {
         LOG.debug("{}: {}, seq={} not found in {}", getName(), op, seqNum, this);
         return null;
       }
-      if (request.hasReply()) {
+      if (isReplied(request)) {
         LOG.debug("{}: {}, seq={} already has replied in {}", getName(), op, seqNum, this);
         return null;
       }
       return request;
     }
 
+    /** @return is the given request, which must be in this map, replied? */
+    boolean isReplied(REQUEST request) {
+      return replied[slot(request.getSeqNum())] || request.hasReply();
+    }
+
     long firstSeqNum() {
-      return requests.firstKey();
+      if (size == 0) {
+        throw new NoSuchElementException(getName() + " is empty");
+      }
+      return first;
     }
 
     long lastSeqNum() {
-      return requests.lastKey();
+      if (size == 0) {
+        throw new NoSuchElementException(getName() + " is empty");
+      }
+      return last;
     }
 
     /** Iterate the requests in the order of seqNum. */
     @Override
     public Iterator<REQUEST> iterator() {
-      return requests.values().iterator();
+      return new Iterator<REQUEST>() {
+        private long next = size == 0? 1: first;
+        private final long end = size == 0? 0: last;
+
+        @Override
+        public boolean hasNext() {
+          for(; next <= end; next++) {
+            if (get(next) != null) {
+              return true;
+            }
+          }
+          return false;
+        }
+
+        @Override
+        public REQUEST next() {
+          if (!hasNext()) {
+            throw new NoSuchElementException();
+          }
+          return get(next++);
+        }
+      };
     }
 
     void putNewRequest(REQUEST request) {
       final long seqNum = request.getSeqNum();
-      CollectionUtils.putNew(seqNum, request, requests, () -> getName() + ":requests");
+      if (size == 0) {
+        first = last = seqNum;
+      } else {
+        final long newFirst = Math.min(first, seqNum);
+        final long newLast = Math.max(last, seqNum);
+        final long range = newLast - newFirst + 1;
+        Preconditions.assertTrue(range > 0 && range <= MAX_CAPACITY,
+            () -> "The seqNum range [" + newFirst + ", " + newLast + "] is too large in " + getName());
+        if (range > ring.length) {
+          resize(capacity((int) range));
+        }
+        Preconditions.assertTrue(ring[slot(seqNum)] == null,
+            () -> "Entry already exists for key " + seqNum + " in map " + getName() + ":requests");
+        first = newFirst;
+        last = newLast;
+      }
+      final int i = slot(seqNum);
+      ring[i] = request;
+      replied[i] = false;
+      size++;
+    }
+
+    /** @return the smallest power of two which is at least the given range and {@link #INITIAL_CAPACITY}. */
+    private static int capacity(int range) {
+      return Math.max(INITIAL_CAPACITY, Integer.highestOneBit(range - 1) << 1);
+    }
+
+    /** Move the requests to a ring with the given capacity, which must be at least the seqNum range. */
+    private void resize(int capacity) {
+      final Object[] newRing = new Object[capacity];
+      final boolean[] newReplied = new boolean[capacity];
+      for(long seqNum = first; seqNum <= last; seqNum++) {
+        final int i = slot(seqNum);
+        final int j = (int) (seqNum & (capacity - 1));
+        newRing[j] = ring[i];
+        newReplied[j] = replied[i];
+      }
+      ring = newRing;
+      replied = newReplied;
+    }
+
+    /** Remove the request with the smallest seqNum. */
+    REQUEST removeFirst() {
+      final REQUEST request = peekFirst();
+      if (request == null) {
+        return null;
+      }
+      final int i = slot(first);
+      ring[i] = null;
+      replied[i] = false;
+      if (--size > 0) {
+        do {
+          first++;
+        } while (ring[slot(first)] == null);
+        final int range = (int) (last - first + 1);
+        if (range <= ring.length >> 2) {
+          // shrink to twice the range so that the ring is not resized back and forth
+          final int capacity = capacity(range) << 1;
+          if (capacity < ring.length) {
+            resize(capacity);
+          }
+        }
+      } else if (ring.length > INITIAL_CAPACITY) {
+        ring = new Object[INITIAL_CAPACITY];
+        replied = new boolean[INITIAL_CAPACITY];
+      }
+      return request;
+    }
+
+    /**
+     * Mark the request with the given seqNum as replied if it is non-replied.
+     * Otherwise, do nothing.
+     * The caller must pass the reply to the request.
+     *
+     * @return the request if this method does mark it; otherwise, return null.
+     */
+    REQUEST setReplied(long seqNum, String op) {
+      final REQUEST request = getNonRepliedRequest(seqNum, op);
+      if (request == null) {
+        LOG.debug("{}: DUPLICATED reply for seq={} in {}", getName(), seqNum, this);
+        return null;
+      }
+      replied[slot(seqNum)] = true;
+      return request;
     }
 
     /**
@@ -124,36 +290,32 @@ public interface SlidingWindow {
      * @return true iff this method does set the reply for the request.
      */
     boolean setReply(long seqNum, REPLY reply, String op) {
-      final REQUEST request = getNonRepliedRequest(seqNum, op);
+      final REQUEST request = setReplied(seqNum, op);
       if (request == null) {
-        LOG.debug("{}: DUPLICATED reply {} for seq={} in {}", getName(), reply, seqNum, this);
         return false;
       }
-
       LOG.debug("{}: set reply {} for seq={} in {}", getName(), reply, seqNum, this);
       request.setReply(reply);
       return true;
     }
 
-    synchronized void clear() {
+    void clear() {
       LOG.debug("close {}", this);
-      requests.clear();
+      ring = new Object[INITIAL_CAPACITY];
+      replied = new boolean[INITIAL_CAPACITY];
+      size = 0;
     }
 
-    synchronized void log() {
+    void log() {
       LOG.debug(this.toString());
-      for(REQUEST r : requests.values()) {
-        LOG.debug("  {}: hasReply? {}", r.getSeqNum(), r.hasReply());
+      for(REQUEST r : this) {
+        LOG.debug("  {}: hasReply? {}", r.getSeqNum(), isReplied(r));
       }
     }
 
     @Override
     public String toString() {
-      return getName() + ": requests" + asString(requests);
-    }
-
-    private static String asString(SortedMap<Long, ?> map) {
-      return map.isEmpty()? "[]": "[" + map.firstKey() + ".." + map.lastKey() + "]";
+      return getName() + ": requests" + (size == 0? "[]": "[" + first + ".." + last + "]");
     }
   }
 
@@ -167,6 +329,11 @@ public interface SlidingWindow {
    *
    * Depend on the replies/exceptions, the client may retry the requests
    * to the same or a different server.
+   *
+   * The requests and retries to be sent are queued under the lock
+   * and then sent by a single thread at a time, i.e. the thread which finds no other thread sending.
+   * Therefore, the sends are in the same order as the window decided to send them;
+   * e.g. a retry cannot overtake a delayed request which was released before it.
    */
   class Client<REQUEST extends ClientSideRequest<REPLY>, REPLY> {
     /** The requests in the sliding window. */
@@ -183,14 +350,21 @@ public interface SlidingWindow {
     /** The exception, if there is any. */
     private Throwable exception;
 
+    /** The sends to run, in the order that the window decided to send the requests. */
+    private final Queue<Runnable> pendingSends = new ArrayDeque<>();
+    /** Is a thread sending the requests? */
+    private boolean sending = false;
+
     public Client(Object name) {
       this.requests = new RequestMap<REQUEST, REPLY>(name) {
         @Override
-        synchronized void log() {
-          LOG.debug(toString());
-          for (REQUEST r : requests) {
-            LOG.debug("  {}: {}", r.getSeqNum(), r.hasReply() ? "replied"
-                : delayedRequests.containsKey(r.getSeqNum()) ? "delayed" : "submitted");
+        void log() {
+          synchronized (Client.this) {
+            LOG.debug(toString());
+            for (REQUEST r : requests) {
+              LOG.debug("  {}: {}", r.getSeqNum(), isReplied(r) ? "replied"
+                  : delayedRequests.containsKey(r.getSeqNum()) ? "delayed" : "submitted");
+            }
           }
         }
       };
@@ -210,36 +384,49 @@ public interface SlidingWindow {
      * @param requestConstructor use seqNum to create a new request.
      * @return the new request.
      */
-    public synchronized REQUEST submitNewRequest(
+    public REQUEST submitNewRequest(
         LongFunction<REQUEST> requestConstructor, Consumer<REQUEST> sendMethod) {
-      if (!requests.isEmpty()) {
-        Preconditions.assertTrue(nextSeqNum == requests.lastSeqNum() + 1,
-            () -> "nextSeqNum=" + nextSeqNum + " but " + this);
-      }
+      final REQUEST r;
+      final boolean submitted;
+      synchronized (this) {
+        if (!requests.isEmpty()) {
+          Preconditions.assertTrue(nextSeqNum == requests.lastSeqNum() + 1,
+              () -> "nextSeqNum=" + nextSeqNum + " but " + this);
+        }
 
-      final long seqNum = nextSeqNum++;
-      final REQUEST r = requestConstructor.apply(seqNum);
+        final long seqNum = nextSeqNum++;
+        r = requestConstructor.apply(seqNum);
 
-      if (exception != null) {
-        alreadyClosed(r, exception);
-        return r;
-      }
+        if (exception != null) {
+          alreadyClosed(r, exception);
+          return r;
+        }
 
-      requests.putNewRequest(r);
+        requests.putNewRequest(r);
+        submitted = sendOrDelayRequest(r);
+        if (submitted) {
+          pendingSends.offer(() -> sendMethod.accept(r));
+        }
+      }
 
-      final boolean submitted = sendOrDelayRequest(r, sendMethod);
+      sendPending();
       LOG.debug("{}: submitting a new request {} in {}? {}",
           requests.getName(), r, this, submitted? "submitted": "delayed");
       return r;
     }
 
-    private boolean sendOrDelayRequest(REQUEST request, Consumer<REQUEST> sendMethod) {
+    /** @return the first request in the window, which has the smallest seqNum of the requests not yet replied. */
+    public synchronized REQUEST getFirstRequest() {
+      return requests.peekFirst();
+    }
+
+    /** @return true if the request should be sent now; or false if it is delayed. */
+    private boolean sendOrDelayRequest(REQUEST request) {
       final long seqNum = request.getSeqNum();
       Preconditions.assertTrue(requests.getNonRepliedRequest(seqNum, "sendOrDelayRequest") == request);
 
       if (firstReplied) {
         // already received the reply for the first request, submit any request.
-        sendMethod.accept(request);
         return true;
       }
 
@@ -248,7 +435,6 @@ public interface SlidingWindow {
         LOG.debug("{}: detect firstSubmitted {} in {}", requests.getName(), request, this);
         firstSeqNum = seqNum;
         request.setFirstRequest();
-        sendMethod.accept(request);
         return true;
       }
 
@@ -258,23 +444,57 @@ public interface SlidingWindow {
     }
 
     /** Receive a retry from an existing request (may out-of-order). */
-    public synchronized void retry(REQUEST request, Consumer<REQUEST> sendMethod) {
-      if (requests.getNonRepliedRequest(request.getSeqNum(), "retry") != request) {
-        // out-dated or invalid retry
-        LOG.debug("{}: Ignore retry {} in {}", requests.getName(), request, this);
-        return;
+    public void retry(REQUEST request, Consumer<REQUEST> sendMethod) {
+      final boolean submitted;
+      synchronized (this) {
+        if (requests.getNonRepliedRequest(request.getSeqNum(), "retry") != request) {
+          // out-dated or invalid retry
+          LOG.debug("{}: Ignore retry {} in {}", requests.getName(), request, this);
+          return;
+        }
+        submitted = sendOrDelayRequest(request);
+        if (submitted) {
+          pendingSends.offer(() -> sendMethod.accept(request));
+        }
       }
-      final boolean submitted = sendOrDelayRequest(request, sendMethod);
+
+      sendPending();
       LOG.debug("{}: submitting a retry {} in {}? {}",
           requests.getName(), request, this, submitted? "submitted": "delayed");
     }
 
-    private void removeRepliedFromHead() {
-      for (final Iterator<REQUEST> i = requests.iterator(); i.hasNext(); i.remove()) {
-        final REQUEST r = i.next();
-        if (!r.hasReply()) {
+    /** Run the pending sends unless another thread is running them. */
+    private void sendPending() {
+      synchronized (this) {
+        if (sending) {
           return;
         }
+        sending = true;
+      }
+
+      for(;;) {
+        final Runnable send;
+        synchronized (this) {
+          send = pendingSends.poll();
+          if (send == null) {
+            sending = false;
+            return;
+          }
+        }
+        try {
+          send.run();
+        } catch (RuntimeException | Error e) {
+          synchronized (this) {
+            sending = false;
+          }
+          throw e;
+        }
+      }
+    }
+
+    private void removeRepliedFromHead() {
+      for(REQUEST r; (r = requests.peekFirst()) != null && requests.isReplied(r); ) {
+        requests.removeFirst();
       }
     }
 
@@ -282,37 +502,48 @@ public interface SlidingWindow {
      * Receive a reply with the given seqNum (may out-of-order).
      * It may trigger the client to send delayed requests.
      */
-    public synchronized void receiveReply(
+    public void receiveReply(
         long seqNum, REPLY reply, Consumer<REQUEST> sendMethod) {
-      if (!requests.setReply(seqNum, reply, "receiveReply")) {
-        return; // request already replied
-      }
-      if (seqNum == firstSeqNum) {
-        firstReplied = true; // received the reply for the first submitted request
+      final REQUEST request;
+      synchronized (this) {
+        request = requests.setReplied(seqNum, "receiveReply");
+        if (request == null) {
+          return; // request already replied
+        }
+        if (seqNum == firstSeqNum) {
+          firstReplied = true; // received the reply for the first submitted request
+        }
+        removeRepliedFromHead();
+        for(REQUEST r : trySendDelayed()) {
+          pendingSends.offer(() -> sendMethod.accept(r));
+        }
       }
-      removeRepliedFromHead();
-      trySendDelayed(sendMethod);
+
+      LOG.debug("{}: set reply {} for seq={}", requests.getName(), reply, seqNum);
+      request.setReply(reply);
+      sendPending();
     }
 
-    private void trySendDelayed(Consumer<REQUEST> sendMethod) {
+    /** @return the delayed requests which should be sent now. */
+    private List<REQUEST> trySendDelayed() {
       if (firstReplied) {
         // after first received, all other requests can be submitted (out-of-order)
-        if (!delayedRequests.isEmpty()) {
-          for (Long seqNum : delayedRequests.keySet()) {
-            sendMethod.accept(requests.getNonRepliedRequest(seqNum, "trySendDelayed"));
-          }
-          delayedRequests.clear();
+        if (delayedRequests.isEmpty()) {
+          return Collections.emptyList();
         }
+        final List<REQUEST> toSend = new ArrayList<>(delayedRequests.size());
+        for (Long seqNum : delayedRequests.keySet()) {
+          toSend.add(requests.getNonRepliedRequest(seqNum, "trySendDelayed"));
+        }
+        delayedRequests.clear();
+        return toSend;
       } else {
         // Otherwise, submit the first only if it is a delayed request
-        final Iterator<REQUEST> i = requests.iterator();
-        if (i.hasNext()) {
-          final REQUEST r = i.next();
-          final Long delayed = delayedRequests.remove(r.getSeqNum());
-          if (delayed != null) {
-            sendOrDelayRequest(r, sendMethod);
-          }
+        final REQUEST r = requests.peekFirst();
+        if (r != null && delayedRequests.remove(r.getSeqNum()) != null && sendOrDelayRequest(r)) {
+          return Collections.singletonList(r);
         }
+        return Collections.emptyList();
       }
     }
 
@@ -326,6 +557,9 @@ public interface SlidingWindow {
     /** Fail all requests starting from the given seqNum. */
     public synchronized void fail(final long startingSeqNum, Throwable e) {
       exception = e;
+      if (requests.isEmpty()) {
+        return;
+      }
 
       boolean handled = false;
       for(long i = startingSeqNum; i <= requests.lastSeqNum(); i++) {
@@ -358,14 +592,23 @@ public interface SlidingWindow {
    * (2) submit the requests for processing;
    * (3) receive replies from the processing unit;
    * (4) send replies to the client.
+   *
+   * The requests are processed, and the replies are sent, in the order of seqNum
+   * by a single thread at a time, i.e. the thread which finds no other thread doing it.
    */
   class Server<REQUEST extends ServerSideRequest<REPLY>, REPLY> implements Closeable {
     /** The requests in the sliding window. */
     private final RequestMap<REQUEST, REPLY> requests;
     /** The end of requests */
     private final REQUEST end;
+    /** Has the end of requests been received? */
+    private boolean endReceived = false;
 
     private long nextToProcess = -1;
+    /** Is a thread processing the requests? */
+    private boolean processing = false;
+    /** Is a thread sending the replies? */
+    private boolean replying = false;
 
     public Server(Object name, REQUEST end) {
       this.requests = new RequestMap<>(name);
@@ -375,29 +618,58 @@ public interface SlidingWindow {
 
     @Override
     public synchronized String toString() {
-      return requests + ", nextToProcess=" + nextToProcess;
+      return requests + (endReceived? "+end": "") + ", nextToProcess=" + nextToProcess;
     }
 
     /** A request (or a retry) arrives (may be out-of-order except for the first request). */
-    public synchronized void receivedRequest(REQUEST request, Consumer<REQUEST> processingMethod) {
-      final long seqNum = request.getSeqNum();
-      if (nextToProcess == -1 && (request.isFirstRequest() || seqNum == 0)) {
-        nextToProcess = seqNum;
-        LOG.debug("{}: got seq={} (first request), set nextToProcess in {}", requests.getName(), seqNum, this);
-      } else {
-        LOG.debug("{}: got seq={} in {}", requests.getName(), seqNum, this);
+    public void receivedRequest(REQUEST request, Consumer<REQUEST> processingMethod) {
+      synchronized (this) {
+        final long seqNum = request.getSeqNum();
+        if (nextToProcess == -1 && (request.isFirstRequest() || seqNum == 0)) {
+          nextToProcess = seqNum;
+          LOG.debug("{}: got seq={} (first request), set nextToProcess in {}", requests.getName(), seqNum, this);
+        } else {
+          LOG.debug("{}: got seq={} in {}", requests.getName(), seqNum, this);
+        }
+        requests.putNewRequest(request);
       }
-      requests.putNewRequest(request);
       processRequestsFromHead(processingMethod);
     }
 
+    /**
+     * Process the requests starting from the head of the window, which must be {@link #nextToProcess},
+     * as long as their seqNums are consecutive.
+     */
     private void processRequestsFromHead(Consumer<REQUEST> processingMethod) {
-      for(REQUEST r : requests) {
-        if (r.getSeqNum() != nextToProcess) {
+      synchronized (this) {
+        if (processing) {
           return;
         }
-        processingMethod.accept(r);
-        nextToProcess++;
+        final REQUEST head = requests.peekFirst();
+        if (head == null || head.getSeqNum() != nextToProcess) {
+          return;
+        }
+        processing = true;
+      }
+
+      for(;;) {
+        final REQUEST r;
+        synchronized (this) {
+          r = requests.get(nextToProcess);
+          if (r == null) {
+            processing = false;
+            return;
+          }
+          nextToProcess++;
+        }
+        try {
+          processingMethod.accept(r);
+        } catch (RuntimeException | Error e) {
+          synchronized (this) {
+            processing = false;
+          }
+          throw e;
+        }
       }
     }
 
@@ -405,30 +677,63 @@ public interface SlidingWindow {
      * Receives a reply for the given seqNum (may out-of-order) from the processor.
      * It may trigger sending replies to client or processing more requests.
      */
-    public synchronized void receiveReply(
+    public void receiveReply(
         long seqNum, REPLY reply, Consumer<REQUEST> replyMethod, Consumer<REQUEST> processingMethod) {
-      if (!requests.setReply(seqNum, reply, "receiveReply")) {
-        return; // request already replied
+      synchronized (this) {
+        if (!requests.setReply(seqNum, reply, "receiveReply")) {
+          return; // request already replied
+        }
       }
       sendRepliesFromHead(replyMethod);
       processRequestsFromHead(processingMethod);
     }
 
-    private void sendRepliesFromHead(
-        Consumer<REQUEST> replyMethod
-    ) {
-      for(final Iterator<REQUEST> i = requests.iterator(); i.hasNext(); i.remove()) {
-        final REQUEST r = i.next();
-        if (!r.hasReply()) {
+    /** Send the replies from the head of the window, and then the end of requests if it is received. */
+    private void sendRepliesFromHead(Consumer<REQUEST> replyMethod) {
+      synchronized (this) {
+        if (replying) {
           return;
         }
-        replyMethod.accept(r);
+        replying = true;
+      }
+
+      for(;;) {
+        final REQUEST r;
+        synchronized (this) {
+          r = pollReplied();
+          if (r == null) {
+            replying = false;
+            return;
+          }
+        }
+        try {
+          replyMethod.accept(r);
+        } catch (RuntimeException | Error e) {
+          synchronized (this) {
+            replying = false;
+          }
+          throw e;
+        }
         if (r == end) {
+          synchronized (this) {
+            replying = false;
+          }
           return;
         }
       }
     }
 
+    private REQUEST pollReplied() {
+      final REQUEST head = requests.peekFirst();
+      if (head != null) {
+        return requests.isReplied(head)? requests.removeFirst(): null;
+      } else if (endReceived) {
+        endReceived = false;
+        return end;
+      }
+      return null;
+    }
+
     /**
      * Signal the end of requests.
      * @return true if no more outstanding requests.
@@ -438,14 +743,15 @@ public interface SlidingWindow {
         return true;
       } else {
         LOG.debug("{}: put end-of-request in {}", requests.getName(), this);
-        requests.putNewRequest(end);
+        endReceived = true;
         return false;
       }
     }
 
     @Override
-    public void close() {
+    public synchronized void close() {
       requests.clear();
+      endReceived = false;
     }
   }
-}
\ No newline at end of file
+}
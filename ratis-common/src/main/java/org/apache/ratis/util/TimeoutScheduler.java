@@ -21,41 +21,106 @@ import org.apache.ratis.util.function.CheckedRunnable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 
+/**
+ * Run tasks on timeout.
+ *
+ * The underlying scheduler is created when a task is scheduled
+ * and it is shut down when there are no tasks for the grace period.
+ * It is either a {@link ScheduledThreadPoolExecutor}, whose delay queue is a heap,
+ * or a {@link HashedWheelTimer}, which has O(1) scheduling for a large number of timeouts.
+ * The {@link HashedWheelTimer} is shared by all the instances with the same tick in the process.
+ *
+ * The task counters are atomic so that scheduling a task does not take the monitor of this object,
+ * which is only taken for creating the scheduler and for shutting it down.
+ */
 public final class TimeoutScheduler {
   public static final Logger LOG = LoggerFactory.getLogger(TimeoutScheduler.class);
 
   private static final TimeDuration DEFAULT_GRACE_PERIOD = TimeDuration.valueOf(1, TimeUnit.MINUTES);
+  /** The value of {@link #numTasks} when there is no scheduler. */
+  private static final int NO_SCHEDULER = -1;
+
+  /** The underlying scheduler. */
+  interface Scheduler {
+    void schedule(Runnable task, TimeDuration delay);
+
+    void shutdown();
+
+    int getNumThreads();
+  }
+
+  private static final class ExecutorScheduler implements Scheduler {
+    private final ScheduledThreadPoolExecutor executor;
+
+    private ExecutorScheduler(int numThreads) {
+      this.executor = new ScheduledThreadPoolExecutor(numThreads, (ThreadFactory) Daemon::new);
+    }
 
+    @Override
+    public void schedule(Runnable task, TimeDuration delay) {
+      executor.schedule(task, delay.getDuration(), delay.getUnit());
+    }
+
+    @Override
+    public void shutdown() {
+      executor.shutdown();
+    }
+
+    @Override
+    public int getNumThreads() {
+      return executor.getCorePoolSize();
+    }
+  }
+
+  /** @return a new instance using a {@link ScheduledThreadPoolExecutor}. */
   public static TimeoutScheduler newInstance(int numThreads) {
-    return new TimeoutScheduler(numThreads);
+    return new TimeoutScheduler(numThreads, null);
+  }
+
+  /**
+   * @param tick the tick of the {@link HashedWheelTimer}, or zero for using a {@link ScheduledThreadPoolExecutor}.
+   * @return a new instance.
+   */
+  public static TimeoutScheduler newInstance(int numThreads, TimeDuration tick) {
+    return new TimeoutScheduler(numThreads, tick.isNonPositive()? null: tick);
   }
 
   /** When there is no tasks, the time period to wait before shutting down the scheduler. */
   private final AtomicReference<TimeDuration> gracePeriod = new AtomicReference<>(DEFAULT_GRACE_PERIOD);
 
-  /** The number of scheduled tasks. */
-  private int numTasks = 0;
+  /**
+   * The number of scheduled tasks, or {@link #NO_SCHEDULER}.
+   * The scheduler is not shut down as long as it is non-negative.
+   */
+  private final AtomicInteger numTasks = new AtomicInteger(NO_SCHEDULER);
   /** The scheduleID for each task */
-  private int scheduleID = 0;
+  private final AtomicInteger scheduleID = new AtomicInteger();
 
   private final int numThreads;
-  private volatile ScheduledExecutorService scheduler = null;
+  /** The tick of the {@link HashedWheelTimer}; or null for using a {@link ScheduledThreadPoolExecutor}. */
+  private final TimeDuration tick;
+  private volatile Scheduler scheduler = null;
 
-  private TimeoutScheduler(int numThreads) {
+  private TimeoutScheduler(int numThreads, TimeDuration tick) {
     this.numThreads = numThreads;
+    this.tick = tick;
   }
 
   public int getNumThreads() {
-    final ScheduledExecutorService s = scheduler;
-    return s instanceof ScheduledThreadPoolExecutor? ((ScheduledThreadPoolExecutor)s).getCorePoolSize(): numThreads;
+    final Scheduler s = scheduler;
+    return s != null? s.getNumThreads(): numThreads;
+  }
+
+  TimeDuration getTick() {
+    return tick;
   }
 
   TimeDuration getGracePeriod() {
@@ -66,10 +131,14 @@ public final class TimeoutScheduler {
     this.gracePeriod.set(gracePeriod);
   }
 
-  synchronized boolean hasScheduler() {
+  boolean hasScheduler() {
     return scheduler != null;
   }
 
+  Scheduler getScheduler() {
+    return scheduler;
+  }
+
   /**
    * Schedule a timeout task.
    *
@@ -91,35 +160,56 @@ public final class TimeoutScheduler {
     });
   }
 
-  private synchronized void onTimeout(TimeDuration timeout, Consumer<Integer> toSchedule) {
-    if (scheduler == null) {
-      Preconditions.assertTrue(numTasks == 0);
+  private void onTimeout(TimeDuration timeout, Consumer<Integer> toSchedule) {
+    final Scheduler s = acquireScheduler();
+    final int sid = scheduleID.getAndIncrement();
+
+    LOG.debug("schedule a task: timeout {}, sid {}", timeout, sid);
+    schedule(s, () -> toSchedule.accept(sid), () -> "task #" + sid, timeout);
+  }
+
+  /** Increment {@link #numTasks} and then return the scheduler, which is created if necessary. */
+  private Scheduler acquireScheduler() {
+    for(;;) {
+      final int n = numTasks.get();
+      if (n == NO_SCHEDULER) {
+        initScheduler();
+      } else if (numTasks.compareAndSet(n, n + 1)) {
+        return scheduler;
+      }
+    }
+  }
+
+  private synchronized void initScheduler() {
+    if (numTasks.get() == NO_SCHEDULER) {
       LOG.debug("Initialize scheduler");
-      scheduler = Executors.newScheduledThreadPool(numThreads, Daemon::new);
+      scheduler = tick == null? new ExecutorScheduler(numThreads)
+          : HashedWheelTimer.getShared(numThreads, tick);
+      numTasks.set(0);
     }
-    numTasks++;
-    final int sid = scheduleID++;
+  }
 
-    LOG.debug("schedule a task: timeout {}, sid {}", timeout, sid);
-    schedule(scheduler, () -> toSchedule.accept(sid), () -> "task #" + sid, timeout);
+  private void onTaskCompleted() {
+    if (numTasks.decrementAndGet() == 0) {
+      scheduleShutdown();
+    }
   }
 
-  private synchronized void onTaskCompleted() {
-    if (--numTasks == 0) {
-      final int sid = scheduleID;
+  private synchronized void scheduleShutdown() {
+    if (numTasks.get() == 0) {
+      final int sid = scheduleID.get();
       final TimeDuration grace = getGracePeriod();
       LOG.debug("Schedule a shutdown task: grace {}, sid {}", grace, sid);
       schedule(scheduler, () -> tryShutdownScheduler(sid), () -> "shutdown task #" + sid, grace);
     }
   }
 
-  static void schedule(ScheduledExecutorService service, Runnable task, Supplier<String> name, TimeDuration timeDuration) {
-    service.schedule(LogUtils.newRunnable(LOG, task, name),
-        timeDuration.getDuration(), timeDuration.getUnit());
+  static void schedule(Scheduler service, Runnable task, Supplier<String> name, TimeDuration timeDuration) {
+    service.schedule(LogUtils.newRunnable(LOG, task, name), timeDuration);
   }
 
   private synchronized void tryShutdownScheduler(int sid) {
-    if (sid == scheduleID) {
+    if (sid == scheduleID.get() && numTasks.compareAndSet(0, NO_SCHEDULER)) {
       // No new tasks submitted, shutdown the scheduler.
       LOG.debug("shutdown scheduler: sid {}", sid);
       scheduler.shutdown();
@@ -153,6 +153,9 @@ static void consts_init(JNIEnv *env) {
   SET_INT_OR_RETURN(env, clazz, O_APPEND);
   SET_INT_OR_RETURN(env, clazz, O_NONBLOCK);
   SET_INT_OR_RETURN(env, clazz, O_SYNC);
+#ifdef O_DIRECT
+  SET_INT_OR_RETURN(env, clazz, O_DIRECT);
+#endif
 #ifdef HAVE_POSIX_FADVISE
   setStaticBoolean(env, clazz, "fadvisePossible", JNI_TRUE);
   SET_INT_OR_RETURN(env, clazz, POSIX_FADV_NORMAL);
@@ -164,6 +167,11 @@ static void consts_init(JNIEnv *env) {
 #else
   setStaticBoolean(env, clazz, "fadvisePossible", JNI_FALSE);
 #endif
+#ifdef HAVE_POSIX_FALLOCATE
+  setStaticBoolean(env, clazz, "fallocatePossible", JNI_TRUE);
+#else
+  setStaticBoolean(env, clazz, "fallocatePossible", JNI_FALSE);
+#endif
 #ifdef HAVE_SYNC_FILE_RANGE
   SET_INT_OR_RETURN(env, clazz, SYNC_FILE_RANGE_WAIT_BEFORE);
   SET_INT_OR_RETURN(env, clazz, SYNC_FILE_RANGE_WRITE);
@@ -415,6 +423,38 @@ Java_org_apache_ratis_io_nativeio_NativeIO_00024POSIX_posix_1fadvise(
 #endif
 }
 
+/**
+ * public static native void posix_fallocate(
+ *   FileDescriptor fd, long offset, long len);
+ *
+ * The "00024" in the function name is an artifact of how JNI encodes
+ * special characters. U+0024 is '$'.
+ */
+JNIEXPORT void JNICALL
+Java_org_apache_ratis_io_nativeio_NativeIO_00024POSIX_posix_1fallocate(
+  JNIEnv *env, jclass clazz,
+  jobject fd_object, jlong offset, jlong len)
+{
+#ifndef HAVE_POSIX_FALLOCATE
+  THROW(env, "java/lang/UnsupportedOperationException",
+        "fallocate support not available");
+#else
+  int fd = fd_get(env, fd_object);
+  PASS_EXCEPTIONS(env);
+
+  int err = 0;
+  if ((err = posix_fallocate(fd, (off_t)offset, (off_t)len))) {
+    if (err == EOPNOTSUPP || err == EINVAL) {
+      // the file system does not support it
+      THROW(env, "java/lang/UnsupportedOperationException",
+            "fallocate is not supported by the file system");
+      return;
+    }
+    throw_ioe(env, err);
+  }
+#endif
+}
+
 #if defined(HAVE_SYNC_FILE_RANGE)
 #  define my_sync_file_range sync_file_range
 #elif defined(SYS_sync_file_range)
@@ -259,6 +259,57 @@ JNIEXPORT void JNICALL Java_org_apache_ratis_util_NativeCrc32_nativeComputeChunk
 
 }
 
+JNIEXPORT jint JNICALL Java_org_apache_ratis_util_NativeCrc32_nativeUpdateCrc32c
+  (JNIEnv *env, jclass clazz, jint crc, jobject j_data, jint data_offset, jint data_len)
+{
+  uint8_t *data_addr;
+
+  if (unlikely(!j_data)) {
+    THROW(env, "java/lang/NullPointerException",
+      "input ByteBuffer must not be null");
+    return crc;
+  }
+  data_addr = (*env)->GetDirectBufferAddress(env, j_data);
+  if (unlikely(!data_addr)) {
+    THROW(env, "java/lang/IllegalArgumentException",
+      "input ByteBuffer is not direct");
+    return crc;
+  }
+  if (unlikely(data_offset < 0 || data_len < 0)) {
+    THROW(env, "java/lang/IllegalArgumentException",
+      "bad offsets or lengths");
+    return crc;
+  }
+  return (jint) crc32c_update((uint32_t) crc, data_addr + data_offset, data_len);
+}
+
+JNIEXPORT jint JNICALL Java_org_apache_ratis_util_NativeCrc32_nativeUpdateCrc32cByteArray
+  (JNIEnv *env, jclass clazz, jint crc, jarray j_data, jint data_offset, jint data_len)
+{
+  uint8_t *data_addr;
+  uint32_t result;
+
+  if (unlikely(!j_data)) {
+    THROW(env, "java/lang/NullPointerException",
+      "input byte array must not be null");
+    return crc;
+  }
+  if (unlikely(data_offset < 0 || data_len < 0)) {
+    THROW(env, "java/lang/IllegalArgumentException",
+      "bad offsets or lengths");
+    return crc;
+  }
+  data_addr = (*env)->GetPrimitiveArrayCritical(env, j_data, NULL);
+  if (unlikely(!data_addr)) {
+    THROW(env, "java/lang/OutOfMemoryError",
+      "not enough memory for byte array in JNI code");
+    return crc;
+  }
+  result = crc32c_update((uint32_t) crc, data_addr + data_offset, data_len);
+  (*env)->ReleasePrimitiveArrayCritical(env, j_data, data_addr, JNI_ABORT);
+  return (jint) result;
+}
+
 /**
  * vim: sw=2: ts=2: et:
  */
@@ -145,6 +145,14 @@ return_crc_error:
   return INVALID_CHECKSUM_DETECTED;
 }
 
+uint32_t crc32c_update(uint32_t crc, const uint8_t *data, size_t data_len) {
+  uint32_t crc2 = CRC_INITIAL_VAL, crc3 = CRC_INITIAL_VAL;
+  if (likely(data_len > 0)) {
+    pipelined_crc32c_func(&crc, &crc2, &crc3, data, data_len, 1);
+  }
+  return crc;
+}
+
 /**
  * Extract the final result of a CRC
  */
@@ -70,4 +70,17 @@ extern int bulk_crc(const uint8_t *data, size_t data_len,
     int bytes_per_checksum,
     crc32_error_t *error_info);
 
+/**
+ * Update a running CRC32C with the given data.
+ * The running value starts at 0xffffffff and the checksum is its bit-flip,
+ * i.e. the running value is in the same form as the pipelined functions use.
+ *
+ * @param crc                   The running CRC32C
+ * @param data                  The data to checksum
+ * @param data_len              Length of the data buffer
+ *
+ * @return                      The updated running CRC32C
+ */
+extern uint32_t crc32c_update(uint32_t crc, const uint8_t *data, size_t data_len);
+
 #endif
@@ -32,6 +32,7 @@ import org.apache.ratis.proto.RaftProtos.GroupManagementRequestProto;
 import org.apache.ratis.proto.RaftProtos.RaftClientReplyProto;
 import org.apache.ratis.proto.RaftProtos.RaftClientRequestProto;
 import org.apache.ratis.proto.RaftProtos.SetConfigurationRequestProto;
+import org.apache.ratis.proto.RaftProtos.TransferLeadershipRequestProto;
 import org.apache.ratis.util.IOUtils;
 import org.apache.ratis.util.JavaUtils;
 import org.apache.ratis.util.PeerProxyMap;
@@ -96,6 +97,10 @@ public class GrpcClientRpc extends RaftClientRpcWithProxy<GrpcClientProtocolClie
       final SetConfigurationRequestProto setConf = ClientProtoUtils.toSetConfigurationRequestProto(
           (SetConfigurationRequest) request);
       return ClientProtoUtils.toRaftClientReply(proxy.setConfiguration(setConf));
+    } else if (request instanceof TransferLeadershipRequest) {
+      final TransferLeadershipRequestProto proto = ClientProtoUtils.toTransferLeadershipRequestProto(
+          (TransferLeadershipRequest) request);
+      return ClientProtoUtils.toRaftClientReply(proxy.transferLeadership(proto));
     } else if (request instanceof GroupListRequest){
       final GroupListRequestProto proto = ClientProtoUtils.toGroupListRequestProto(
           (GroupListRequest) request);
@@ -55,7 +55,7 @@ public class GrpcLogAppender extends LogAppender {
   private final boolean installSnapshotEnabled;
 
   private final TimeDuration requestTimeoutDuration;
-  private final TimeoutScheduler scheduler = TimeoutScheduler.newInstance(1);
+  private final TimeoutScheduler scheduler;
 
   private volatile StreamObserver<AppendEntriesRequestProto> appendLogRequestObserver;
 
@@ -71,6 +71,8 @@ public class GrpcLogAppender extends LogAppender {
     pendingRequests = new ConcurrentHashMap<>();
     installSnapshotEnabled = RaftServerConfigKeys.Log.Appender.installSnapshotEnabled(
         server.getProxy().getProperties());
+    scheduler = TimeoutScheduler.newInstance(1,
+        RaftServerConfigKeys.TimeoutScheduler.tick(server.getProxy().getProperties()));
   }
 
   private GrpcServerProtocolClient getClient() throws IOException {
@@ -81,6 +83,8 @@ public class GrpcLogAppender extends LogAppender {
     rpcService.getProxies().resetProxy(follower.getPeer().getId());
     appendLogRequestObserver = null;
     firstResponseReceived = false;
+    // the follower may have missed the quiescent heartbeat; keep heartbeating
+    follower.setQuiescent(false);
 
     // clear the pending requests queue and reset the next index of follower
     final long nextIndex = request != null && request.hasPreviousLog()?
@@ -146,7 +150,7 @@ public class GrpcLogAppender extends LogAppender {
 
   @Override
   protected boolean shouldSendRequest() {
-    return appendLogRequestObserver == null || super.shouldSendRequest();
+    return (appendLogRequestObserver == null && !follower.isQuiescent()) || super.shouldSendRequest();
   }
 
   /** @return true iff not received first response or queue is full. */
@@ -29,6 +29,7 @@ import org.apache.ratis.protocol.GroupManagementRequest;
 import org.apache.ratis.protocol.RaftClientReply;
 import org.apache.ratis.protocol.RaftClientRequest;
 import org.apache.ratis.protocol.SetConfigurationRequest;
+import org.apache.ratis.protocol.TransferLeadershipRequest;
 import org.apache.ratis.thirdparty.com.google.protobuf.ServiceException;
 import org.apache.ratis.util.ProtoUtils;
 import org.apache.ratis.util.function.CheckedFunction;
@@ -76,6 +77,14 @@ public class CombinedClientProtocolClientSideTranslatorPB
         p -> getProtocol().groupManagement(null, p));
   }
 
+  @Override
+  public RaftClientReply transferLeadership(TransferLeadershipRequest request) throws IOException {
+    return handleRequest(request,
+        ClientProtoUtils::toTransferLeadershipRequestProto,
+        ClientProtoUtils::toRaftClientReply,
+        p -> getProtocol().transferLeadership(null, p));
+  }
+
   @Override
   public GroupListReply getGroupList(GroupListRequest request) throws IOException {
     return handleRequest(request,
@@ -34,6 +34,7 @@ import org.apache.ratis.proto.RaftProtos.GroupListRequestProto;
 import org.apache.ratis.proto.RaftProtos.GroupListReplyProto;
 import org.apache.ratis.proto.RaftProtos.GroupInfoRequestProto;
 import org.apache.ratis.proto.RaftProtos.GroupInfoReplyProto;
+import org.apache.ratis.proto.RaftProtos.TransferLeadershipRequestProto;
 
 
 @InterfaceAudience.Private
@@ -85,6 +86,19 @@ public class CombinedClientProtocolServerSideTranslatorPB
     }
   }
 
+  @Override
+  public RaftClientReplyProto transferLeadership(RpcController controller, TransferLeadershipRequestProto proto)
+      throws ServiceException {
+    final TransferLeadershipRequest request;
+    try {
+      request = ClientProtoUtils.toTransferLeadershipRequest(proto);
+      final RaftClientReply reply = impl.transferLeadership(request);
+      return ClientProtoUtils.toRaftClientReplyProto(reply);
+    } catch(IOException ioe) {
+      throw new ServiceException(ioe);
+    }
+  }
+
   @Override
   public GroupListReplyProto groupList(
       RpcController controller, GroupListRequestProto proto)
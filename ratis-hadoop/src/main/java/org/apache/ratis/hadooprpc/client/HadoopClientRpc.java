@@ -42,6 +42,8 @@ public class HadoopClientRpc extends RaftClientRpcWithProxy<CombinedClientProtoc
         return proxy.groupManagement((GroupManagementRequest) request);
       } else if (request instanceof SetConfigurationRequest) {
         return proxy.setConfiguration((SetConfigurationRequest) request);
+      } else if (request instanceof TransferLeadershipRequest) {
+        return proxy.transferLeadership((TransferLeadershipRequest) request);
       } else if (request instanceof GroupListRequest) {
         return proxy.getGroupList((GroupListRequest) request);
       } else if (request instanceof GroupInfoRequest) {
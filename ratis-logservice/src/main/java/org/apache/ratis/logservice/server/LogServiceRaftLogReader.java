@@ -57,8 +57,8 @@ public class LogServiceRaftLogReader {
    */
   public void seek(long recordId) throws RaftLogIOException, InvalidProtocolBufferException {
     LOG.debug("Seeking to recordId={}", recordId);
-    // RaftLog starting index
-    currentRaftIndex = raftLog.getStartIndex();
+    // RaftLog starting index, including the archived entries
+    currentRaftIndex = raftLog.getArchiveStartIndex();
     currentRecordId = 0;
 
     currentLogEntry = null;
@@ -123,7 +123,7 @@ public class LogServiceRaftLogReader {
     // Make sure we don't read off the end of the Raft log
     for (; currentRaftIndex < raftLog.getLastCommittedIndex(); currentRaftIndex++) {
       try {
-        LogEntryProto entry = raftLog.get(currentRaftIndex);
+        LogEntryProto entry = raftLog.getWithArchive(currentRaftIndex);
         if (LOG.isTraceEnabled()) {
           LOG.trace("Raft Index: {} Entry: {}", currentRaftIndex,
               TextFormat.shortDebugString(entry));
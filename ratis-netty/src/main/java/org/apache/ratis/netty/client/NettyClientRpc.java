@@ -26,6 +26,7 @@ import org.apache.ratis.proto.RaftProtos.RaftClientRequestProto;
 import org.apache.ratis.proto.RaftProtos.RaftRpcRequestProto;
 import org.apache.ratis.proto.RaftProtos.GroupManagementRequestProto;
 import org.apache.ratis.proto.RaftProtos.SetConfigurationRequestProto;
+import org.apache.ratis.proto.RaftProtos.TransferLeadershipRequestProto;
 import org.apache.ratis.proto.netty.NettyProtos.RaftNettyServerRequestProto;
 
 import java.io.IOException;
@@ -52,6 +53,11 @@ public class NettyClientRpc extends RaftClientRpcWithProxy<NettyRpcProxy> {
           (SetConfigurationRequest)request);
       b.setSetConfigurationRequest(proto);
       rpcRequest = proto.getRpcRequest();
+    } else if (request instanceof TransferLeadershipRequest) {
+      final TransferLeadershipRequestProto proto = ClientProtoUtils.toTransferLeadershipRequestProto(
+          (TransferLeadershipRequest)request);
+      b.setTransferLeadershipRequest(proto);
+      rpcRequest = proto.getRpcRequest();
     } else if (request instanceof GroupListRequest) {
       final RaftProtos.GroupListRequestProto proto = ClientProtoUtils.toGroupListRequestProto(
           (GroupListRequest)request);
@@ -197,6 +197,15 @@ public final class NettyRpcService extends RaftServerRpcWithProxy<NettyRpcProxy,
               .setRaftClientReply(ClientProtoUtils.toRaftClientReplyProto(reply))
               .build();
         }
+        case TRANSFERLEADERSHIPREQUEST: {
+          final TransferLeadershipRequestProto request = proto.getTransferLeadershipRequest();
+          rpcRequest = request.getRpcRequest();
+          final RaftClientReply reply = server.transferLeadership(
+              ClientProtoUtils.toTransferLeadershipRequest(request));
+          return RaftNettyServerReplyProto.newBuilder()
+              .setRaftClientReply(ClientProtoUtils.toRaftClientReplyProto(reply))
+              .build();
+        }
         case GROUPMANAGEMENTREQUEST: {
           final GroupManagementRequestProto request = proto.getGroupManagementRequest();
           rpcRequest = request.getRpcRequest();
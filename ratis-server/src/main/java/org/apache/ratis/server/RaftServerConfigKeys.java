@@ -48,6 +48,17 @@ public interface RaftServerConfigKeys {
     setFiles(properties::setFiles, STORAGE_DIR_KEY, storageDir);
   }
 
+  /** The number of threads to initialize the groups, including loading their logs, concurrently. */
+  String GROUP_INIT_THREADS_KEY = PREFIX + ".group.init.threads";
+  int GROUP_INIT_THREADS_DEFAULT = 4;
+  static int groupInitThreads(RaftProperties properties) {
+    return getInt(properties::getInt,
+        GROUP_INIT_THREADS_KEY, GROUP_INIT_THREADS_DEFAULT, getDefaultLog(), requireMin(1));
+  }
+  static void setGroupInitThreads(RaftProperties properties, int groupInitThreads) {
+    setInt(properties::setInt, GROUP_INIT_THREADS_KEY, groupInitThreads);
+  }
+
   /**
    * When bootstrapping a new peer, If the gap between the match index of the
    * peer and the leader's latest committed index is less than this gap, we
@@ -156,6 +167,35 @@ public interface RaftServerConfigKeys {
       setInt(properties::setInt, SEGMENT_CACHE_MAX_NUM_KEY, maxCachedSegmentNum);
     }
 
+    /**
+     * Should the closed segments cache the serialized entries in pooled direct memory
+     * instead of the parsed entries on the heap?
+     * The entries are parsed when they are read.
+     */
+    String SEGMENT_CACHE_OFFHEAP_KEY = PREFIX + ".segment.cache.offheap";
+    boolean SEGMENT_CACHE_OFFHEAP_DEFAULT = false;
+    static boolean segmentCacheOffHeap(RaftProperties properties) {
+      return getBoolean(properties::getBoolean, SEGMENT_CACHE_OFFHEAP_KEY,
+          SEGMENT_CACHE_OFFHEAP_DEFAULT, getDefaultLog());
+    }
+    static void setSegmentCacheOffHeap(RaftProperties properties, boolean segmentCacheOffHeap) {
+      setBoolean(properties::setBoolean, SEGMENT_CACHE_OFFHEAP_KEY, segmentCacheOffHeap);
+    }
+
+    /**
+     * The number of threads to load the closed segments in parallel when opening the log.
+     * The open segment is always loaded last by the opening thread.
+     */
+    String SEGMENT_LOAD_THREADS_KEY = PREFIX + ".segment.load.threads";
+    int SEGMENT_LOAD_THREADS_DEFAULT = 4;
+    static int segmentLoadThreads(RaftProperties properties) {
+      return getInt(properties::getInt, SEGMENT_LOAD_THREADS_KEY,
+          SEGMENT_LOAD_THREADS_DEFAULT, getDefaultLog(), requireMin(1));
+    }
+    static void setSegmentLoadThreads(RaftProperties properties, int segmentLoadThreads) {
+      setInt(properties::setInt, SEGMENT_LOAD_THREADS_KEY, segmentLoadThreads);
+    }
+
     String PREALLOCATED_SIZE_KEY = PREFIX + ".preallocated.size";
     SizeInBytes PREALLOCATED_SIZE_DEFAULT = SizeInBytes.valueOf("4MB");
     static SizeInBytes preallocatedSize(RaftProperties properties) {
@@ -176,6 +216,116 @@ public interface RaftServerConfigKeys {
       setSizeInBytes(properties::set, WRITE_BUFFER_SIZE_KEY, writeBufferSize);
     }
 
+    /**
+     * The format of the closed segments, see {@link org.apache.ratis.server.storage.SegmentedRaftLogFormat}.
+     * Version 1 frames and checksums each entry.
+     * Version 2 packs the entries into blocks with a checksum per block and optional compression;
+     * a closed segment is converted to version 2 when it is finalized.
+     * The open segments are always in version 1 and the segments of both versions can be read.
+     */
+    interface Format {
+      String PREFIX = Log.PREFIX + ".format";
+
+      String VERSION_KEY = PREFIX + ".version";
+      int VERSION_DEFAULT = 1;
+      static int version(RaftProperties properties) {
+        return getInt(properties::getInt, VERSION_KEY, VERSION_DEFAULT, getDefaultLog(),
+            requireMin(1), requireMax(2));
+      }
+      static void setVersion(RaftProperties properties, int version) {
+        setInt(properties::setInt, VERSION_KEY, version, requireMin(1), requireMax(2));
+      }
+
+      /** A block is written once the serialized size of its entries reaches the block size. */
+      String BLOCK_SIZE_KEY = PREFIX + ".block.size";
+      SizeInBytes BLOCK_SIZE_DEFAULT = SizeInBytes.valueOf("64KB");
+      static SizeInBytes blockSize(RaftProperties properties) {
+        return getSizeInBytes(properties::getSizeInBytes,
+            BLOCK_SIZE_KEY, BLOCK_SIZE_DEFAULT, getDefaultLog());
+      }
+      static void setBlockSize(RaftProperties properties, SizeInBytes blockSize) {
+        setSizeInBytes(properties::set, BLOCK_SIZE_KEY, blockSize);
+      }
+
+      /** Compress the blocks with deflate; a block is stored uncompressed if it does not shrink. */
+      String COMPRESSION_ENABLED_KEY = PREFIX + ".compression.enabled";
+      boolean COMPRESSION_ENABLED_DEFAULT = false;
+      static boolean compressionEnabled(RaftProperties properties) {
+        return getBoolean(properties::getBoolean,
+            COMPRESSION_ENABLED_KEY, COMPRESSION_ENABLED_DEFAULT, getDefaultLog());
+      }
+      static void setCompressionEnabled(RaftProperties properties, boolean compressionEnabled) {
+        setBoolean(properties::setBoolean, COMPRESSION_ENABLED_KEY, compressionEnabled);
+      }
+    }
+
+    /**
+     * The archive keeps the purged log segments, which are otherwise deleted,
+     * so that the entries are still readable by {@link org.apache.ratis.server.storage.RaftLog#getWithArchive(long)}.
+     * The archived segments are compressed in the version 2 format, see {@link Format},
+     * and stored in a subdirectory of {@link #DIR_KEY} for each group.
+     * The segments are archived in the background and the total size is bounded by {@link #SIZE_MAX_KEY}.
+     * The archive is disabled if {@link #DIR_KEY} is not set.
+     */
+    interface Archive {
+      String PREFIX = Log.PREFIX + ".archive";
+
+      String DIR_KEY = PREFIX + ".dir";
+      File DIR_DEFAULT = null;
+      static File dir(RaftProperties properties) {
+        return getFile(properties::getFile, DIR_KEY, DIR_DEFAULT, getDefaultLog());
+      }
+      static void setDir(RaftProperties properties, File dir) {
+        setFile(properties::setFile, DIR_KEY, dir);
+      }
+
+      /**
+       * The maximum total size of the archived segments of a group.
+       * The oldest archived segments are deleted once the size is exceeded.
+       */
+      String SIZE_MAX_KEY = PREFIX + ".size.max";
+      SizeInBytes SIZE_MAX_DEFAULT = SizeInBytes.valueOf("10GB");
+      static SizeInBytes sizeMax(RaftProperties properties) {
+        return getSizeInBytes(properties::getSizeInBytes,
+            SIZE_MAX_KEY, SIZE_MAX_DEFAULT, getDefaultLog());
+      }
+      static void setSizeMax(RaftProperties properties, SizeInBytes sizeMax) {
+        setSizeInBytes(properties::set, SIZE_MAX_KEY, sizeMax);
+      }
+    }
+
+    /**
+     * Direct I/O (O_DIRECT) writes the log segments bypassing the page cache,
+     * which is useful for dedicated log volumes.
+     * It is enabled for the storage directories, see {@link RaftServerConfigKeys#storageDirs(RaftProperties)},
+     * listed in {@link #DIRS_KEY}.
+     * The entries are written in aligned blocks padded with the terminator.
+     * It falls back to buffered I/O if direct I/O is unavailable.
+     */
+    interface DirectIo {
+      String PREFIX = Log.PREFIX + ".direct-io";
+
+      String DIRS_KEY = PREFIX + ".dirs";
+      List<File> DIRS_DEFAULT = Collections.emptyList();
+      static List<File> dirs(RaftProperties properties) {
+        return getFiles(properties::getFiles, DIRS_KEY, DIRS_DEFAULT, getDefaultLog());
+      }
+      static void setDirs(RaftProperties properties, List<File> dirs) {
+        setFiles(properties::setFiles, DIRS_KEY, dirs);
+      }
+
+      /** The alignment of the buffer addresses, the file offsets and the write sizes; it must be a power of two. */
+      String ALIGNMENT_KEY = PREFIX + ".alignment";
+      SizeInBytes ALIGNMENT_DEFAULT = SizeInBytes.valueOf("4KB");
+      static SizeInBytes alignment(RaftProperties properties) {
+        return getSizeInBytes(properties::getSizeInBytes,
+            ALIGNMENT_KEY, ALIGNMENT_DEFAULT, getDefaultLog());
+      }
+      static void setAlignment(RaftProperties properties, SizeInBytes alignment) {
+        setSizeInBytes(properties::set, ALIGNMENT_KEY, alignment);
+      }
+    }
+
     String FORCE_SYNC_NUM_KEY = PREFIX + ".force.sync.num";
     int FORCE_SYNC_NUM_DEFAULT = 128;
     static int forceSyncNum(RaftProperties properties) {
@@ -186,6 +336,50 @@ public interface RaftServerConfigKeys {
       setInt(properties::setInt, FORCE_SYNC_NUM_KEY, forceSyncNum);
     }
 
+    /**
+     * The adaptive flush policy tunes the number of entries per flush online,
+     * instead of flushing after {@link #forceSyncNum(RaftProperties)} entries or when the queue is empty.
+     * It shrinks the batches when the observed latency,
+     * i.e. the time from the first unflushed write to the end of the flush, exceeds the target latency,
+     * and it grows the batches when the queue builds up.
+     * When the queue is empty, it may linger for more entries as long as the target latency allows.
+     * The number of entries per flush is still bounded by {@link #forceSyncNum(RaftProperties)}.
+     */
+    interface Flush {
+      String PREFIX = Log.PREFIX + ".flush";
+
+      String ADAPTIVE_ENABLED_KEY = PREFIX + ".adaptive.enabled";
+      boolean ADAPTIVE_ENABLED_DEFAULT = false;
+      static boolean adaptiveEnabled(RaftProperties properties) {
+        return getBoolean(properties::getBoolean,
+            ADAPTIVE_ENABLED_KEY, ADAPTIVE_ENABLED_DEFAULT, getDefaultLog());
+      }
+      static void setAdaptiveEnabled(RaftProperties properties, boolean enabled) {
+        setBoolean(properties::setBoolean, ADAPTIVE_ENABLED_KEY, enabled);
+      }
+
+      String TARGET_LATENCY_KEY = PREFIX + ".adaptive.target-latency";
+      TimeDuration TARGET_LATENCY_DEFAULT = TimeDuration.valueOf(10, TimeUnit.MILLISECONDS);
+      static TimeDuration targetLatency(RaftProperties properties) {
+        return getTimeDuration(properties.getTimeDuration(TARGET_LATENCY_DEFAULT.getUnit()),
+            TARGET_LATENCY_KEY, TARGET_LATENCY_DEFAULT, getDefaultLog());
+      }
+      static void setTargetLatency(RaftProperties properties, TimeDuration targetLatency) {
+        setTimeDuration(properties::setTimeDuration, TARGET_LATENCY_KEY, targetLatency);
+      }
+
+      /** The max time to wait for more entries when the queue is empty; zero means no lingering. */
+      String LINGER_MAX_KEY = PREFIX + ".adaptive.linger.max";
+      TimeDuration LINGER_MAX_DEFAULT = TimeDuration.valueOf(2, TimeUnit.MILLISECONDS);
+      static TimeDuration lingerMax(RaftProperties properties) {
+        return getTimeDuration(properties.getTimeDuration(LINGER_MAX_DEFAULT.getUnit()),
+            LINGER_MAX_KEY, LINGER_MAX_DEFAULT, getDefaultLog());
+      }
+      static void setLingerMax(RaftProperties properties, TimeDuration lingerMax) {
+        setTimeDuration(properties::setTimeDuration, LINGER_MAX_KEY, lingerMax);
+      }
+    }
+
     interface StateMachineData {
       String PREFIX = Log.PREFIX + ".statemachine.data";
 
@@ -362,6 +556,69 @@ public interface RaftServerConfigKeys {
     }
   }
 
+  /** leader election related */
+  interface LeaderElection {
+    String PREFIX = RaftServerConfigKeys.PREFIX + ".leaderelection";
+
+    /**
+     * When enabled, a candidate first runs a pre-vote round without incrementing its term
+     * so that a peer which cannot win an election does not disrupt the current leader.
+     */
+    String PRE_VOTE_KEY = PREFIX + ".pre-vote";
+    boolean PRE_VOTE_DEFAULT = true;
+    static boolean preVote(RaftProperties properties) {
+      return getBoolean(properties::getBoolean, PRE_VOTE_KEY, PRE_VOTE_DEFAULT, getDefaultLog());
+    }
+    static void setPreVote(RaftProperties properties, boolean enablePreVote) {
+      setBoolean(properties::setBoolean, PRE_VOTE_KEY, enablePreVote);
+    }
+  }
+
+  /** server quiescence related */
+  interface Quiescence {
+    String PREFIX = RaftServerConfigKeys.PREFIX + ".quiescence";
+
+    /**
+     * When enabled, the leader of an idle group stops sending heartbeats
+     * and the followers suspend their election timeouts.
+     */
+    String ENABLED_KEY = PREFIX + ".enabled";
+    boolean ENABLED_DEFAULT = false;
+    static boolean enabled(RaftProperties properties) {
+      return getBoolean(properties::getBoolean, ENABLED_KEY, ENABLED_DEFAULT, getDefaultLog());
+    }
+    static void setEnabled(RaftProperties properties, boolean enabled) {
+      setBoolean(properties::setBoolean, ENABLED_KEY, enabled);
+    }
+
+    /** The time without any log activity after which a caught-up group becomes quiescent. */
+    String IDLE_TIMEOUT_KEY = PREFIX + ".idle.timeout";
+    TimeDuration IDLE_TIMEOUT_DEFAULT = TimeDuration.valueOf(60, TimeUnit.SECONDS);
+    static TimeDuration idleTimeout(RaftProperties properties) {
+      return getTimeDuration(properties.getTimeDuration(IDLE_TIMEOUT_DEFAULT.getUnit()),
+          IDLE_TIMEOUT_KEY, IDLE_TIMEOUT_DEFAULT, getDefaultLog(), requirePositive());
+    }
+    static void setIdleTimeout(RaftProperties properties, TimeDuration idleTimeout) {
+      setTimeDuration(properties::setTimeDuration, IDLE_TIMEOUT_KEY, idleTimeout);
+    }
+
+    /**
+     * A quiescent follower waits for the leader for at most this multiple of the max election timeout
+     * and then resumes its election timeout,
+     * so that a leader failure is detected even if no client request wakes up the group.
+     * The leader sends a heartbeat to its quiescent followers once in this multiple of half the min election timeout.
+     */
+    String TIMEOUT_MULTIPLIER_KEY = PREFIX + ".timeout.multiplier";
+    int TIMEOUT_MULTIPLIER_DEFAULT = 10;
+    static int timeoutMultiplier(RaftProperties properties) {
+      return getInt(properties::getInt, TIMEOUT_MULTIPLIER_KEY, TIMEOUT_MULTIPLIER_DEFAULT, getDefaultLog(),
+          requireMin(2));
+    }
+    static void setTimeoutMultiplier(RaftProperties properties, int timeoutMultiplier) {
+      setInt(properties::setInt, TIMEOUT_MULTIPLIER_KEY, timeoutMultiplier, requireMin(2));
+    }
+  }
+
   /** server retry cache related */
   interface RetryCache {
     String PREFIX = RaftServerConfigKeys.PREFIX + ".retrycache";
@@ -377,6 +634,84 @@ public interface RaftServerConfigKeys {
     }
   }
 
+  /** metrics related */
+  interface Metrics {
+    String PREFIX = RaftServerConfigKeys.PREFIX + ".metrics";
+
+    /** The http endpoint exposing the metrics in the Prometheus text format. */
+    interface Http {
+      String PREFIX = Metrics.PREFIX + ".http";
+
+      String ENABLED_KEY = PREFIX + ".enabled";
+      boolean ENABLED_DEFAULT = false;
+      static boolean enabled(RaftProperties properties) {
+        return getBoolean(properties::getBoolean, ENABLED_KEY, ENABLED_DEFAULT, getDefaultLog());
+      }
+      static void setEnabled(RaftProperties properties, boolean enabled) {
+        setBoolean(properties::setBoolean, ENABLED_KEY, enabled);
+      }
+
+      String PORT_KEY = PREFIX + ".port";
+      int PORT_DEFAULT = 0;
+      static int port(RaftProperties properties) {
+        return getInt(properties::getInt,
+            PORT_KEY, PORT_DEFAULT, getDefaultLog(), requireMin(0), requireMax(65535));
+      }
+      static void setPort(RaftProperties properties, int port) {
+        setInt(properties::setInt, PORT_KEY, port);
+      }
+    }
+  }
+
+  /** request tracing related */
+  interface Trace {
+    String PREFIX = RaftServerConfigKeys.PREFIX + ".trace";
+
+    /**
+     * Trace the stages of the log entries with index a multiple of this interval.
+     * The stage latencies of the sampled entries are aggregated in the server metrics.
+     * Set it to 0 to disable tracing.
+     */
+    String SAMPLE_INTERVAL_KEY = PREFIX + ".sample.interval";
+    int SAMPLE_INTERVAL_DEFAULT = 100;
+    static int sampleInterval(RaftProperties properties) {
+      return getInt(properties::getInt, SAMPLE_INTERVAL_KEY, SAMPLE_INTERVAL_DEFAULT, getDefaultLog(),
+          requireMin(0));
+    }
+    static void setSampleInterval(RaftProperties properties, int sampleInterval) {
+      setInt(properties::setInt, SAMPLE_INTERVAL_KEY, sampleInterval);
+    }
+
+    /** When enabled, the full traces of the sampled entries are logged. */
+    String LOG_ENABLED_KEY = PREFIX + ".log.enabled";
+    boolean LOG_ENABLED_DEFAULT = false;
+    static boolean logEnabled(RaftProperties properties) {
+      return getBoolean(properties::getBoolean, LOG_ENABLED_KEY, LOG_ENABLED_DEFAULT, getDefaultLog());
+    }
+    static void setLogEnabled(RaftProperties properties, boolean logEnabled) {
+      setBoolean(properties::setBoolean, LOG_ENABLED_KEY, logEnabled);
+    }
+  }
+
+  /** timeout scheduler related */
+  interface TimeoutScheduler {
+    String PREFIX = RaftServerConfigKeys.PREFIX + ".timeout-scheduler";
+
+    /**
+     * The tick of the hashed wheel timer scheduling the watch and the append request timeouts.
+     * Set it to 0 to use a ScheduledThreadPoolExecutor instead.
+     */
+    String TICK_KEY = PREFIX + ".tick";
+    TimeDuration TICK_DEFAULT = TimeDuration.valueOf(0, TimeUnit.MILLISECONDS);
+    static TimeDuration tick(RaftProperties properties) {
+      return getTimeDuration(properties.getTimeDuration(TICK_DEFAULT.getUnit()),
+          TICK_KEY, TICK_DEFAULT, getDefaultLog());
+    }
+    static void setTick(RaftProperties properties, TimeDuration tick) {
+      setTimeDuration(properties::setTimeDuration, TICK_KEY, tick);
+    }
+  }
+
   static void main(String[] args) {
     printAll(RaftServerConfigKeys.class);
   }
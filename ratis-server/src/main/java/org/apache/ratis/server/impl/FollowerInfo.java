@@ -41,6 +41,8 @@ public class FollowerInfo {
   private final RaftLogIndex matchIndex = new RaftLogIndex("matchIndex", 0L);
   private final RaftLogIndex commitIndex = new RaftLogIndex("commitIndex", RaftServerConstants.INVALID_LOG_INDEX);
   private volatile boolean attendVote;
+  /** Has the leader told the follower to suspend its election timeout? */
+  private volatile boolean quiescent = false;
   private final int rpcSlownessTimeoutMs;
 
 
@@ -99,7 +101,7 @@ public class FollowerInfo {
   @Override
   public String toString() {
     return name + "(c" + getCommitIndex() + ",m" + getMatchIndex() + ",n" + getNextIndex()
-        + ", attendVote=" + attendVote +
+        + ", attendVote=" + attendVote + (quiescent? ", quiescent": "") +
         ", lastRpcSendTime=" + lastRpcSendTime.get().elapsedTimeMs() +
         ", lastRpcResponseTime=" + lastRpcResponseTime.get().elapsedTimeMs() + ")";
   }
@@ -112,6 +114,14 @@ public class FollowerInfo {
     return attendVote;
   }
 
+  public boolean isQuiescent() {
+    return quiescent;
+  }
+
+  public void setQuiescent(boolean quiescent) {
+    this.quiescent = quiescent;
+  }
+
   public RaftPeer getPeer() {
     return peer;
   }
@@ -135,6 +145,6 @@ public class FollowerInfo {
   }
 
   public boolean isSlow() {
-    return lastRpcResponseTime.get().elapsedTimeMs() > rpcSlownessTimeoutMs;
+    return !quiescent && lastRpcResponseTime.get().elapsedTimeMs() > rpcSlownessTimeoutMs;
   }
 }
@@ -17,6 +17,7 @@
  */
 package org.apache.ratis.server.impl;
 
+import org.apache.ratis.server.RaftServerConfigKeys;
 import org.apache.ratis.util.Daemon;
 import org.apache.ratis.util.Timestamp;
 import org.slf4j.Logger;
@@ -55,9 +56,16 @@ class FollowerState extends Daemon {
   private volatile Timestamp lastRpcTime = Timestamp.currentTime();
   private volatile boolean monitorRunning = true;
   private final AtomicInteger outstandingOp = new AtomicInteger();
+  /** Is the election timeout suspended since the group is idle? */
+  private volatile boolean quiescent = false;
+  private final Object quiescence = new Object();
+  /** The max time to wait for the leader while quiescent. */
+  private final long quiescentTimeoutMs;
 
   FollowerState(RaftServerImpl server) {
     this.server = server;
+    this.quiescentTimeoutMs = (long) RaftServerConfigKeys.Quiescence.timeoutMultiplier(
+        server.getProxy().getProperties()) * server.getMaxTimeoutMs();
   }
 
   void updateLastRpcTime(UpdateType type) {
@@ -79,29 +87,75 @@ class FollowerState extends Daemon {
   }
 
   boolean shouldWithholdVotes() {
-    return lastRpcTime.elapsedTimeMs() < server.getMinTimeoutMs();
+    return quiescent || lastRpcTime.elapsedTimeMs() < server.getMinTimeoutMs();
   }
 
   void stopRunning() {
     this.monitorRunning = false;
   }
 
+  boolean isQuiescent() {
+    return quiescent;
+  }
+
+  /** Suspend or resume the election timeout. */
+  void setQuiescent(boolean newQuiescent) {
+    if (quiescent == newQuiescent) {
+      return;
+    }
+    synchronized (quiescence) {
+      quiescent = newQuiescent;
+      lastRpcTime = Timestamp.currentTime();
+      quiescence.notifyAll();
+    }
+    LOG.info("{}:{} {} the election timeout", server.getId(), server.getGroupId(),
+        newQuiescent? "suspends": "resumes");
+  }
+
+  /**
+   * Wait while quiescent.
+   * If the leader has not sent anything within the quiescent timeout, it may have failed;
+   * resume the election timeout.
+   */
+  private void waitWhileQuiescent() throws InterruptedException {
+    synchronized (quiescence) {
+      for(long remaining; quiescent && monitorRunning
+          && (remaining = quiescentTimeoutMs - lastRpcTime.elapsedTimeMs()) > 0; ) {
+        quiescence.wait(remaining);
+      }
+      if (!quiescent || !monitorRunning) {
+        return;
+      }
+      quiescent = false;
+    }
+    LOG.info("{}:{} resumes the election timeout since the leader is silent for {}ms",
+        server.getId(), server.getGroupId(), lastRpcTime.elapsedTimeMs());
+  }
+
   @Override
   public  void run() {
     while (monitorRunning && server.isFollower()) {
       final long electionTimeout = server.getRandomTimeoutMs();
       try {
+        if (quiescent) {
+          waitWhileQuiescent();
+          continue;
+        }
         Thread.sleep(electionTimeout);
         if (!monitorRunning || !server.isFollower()) {
           LOG.info("{} heartbeat monitor quit", server.getId());
           break;
         }
         synchronized (server) {
-          if (outstandingOp.get() == 0 && lastRpcTime.elapsedTimeMs() >= electionTimeout) {
+          if (server.isLearner()) {
+            // a learner never becomes a candidate; it waits for a leader to contact it
+            continue;
+          }
+          if (!quiescent && outstandingOp.get() == 0 && lastRpcTime.elapsedTimeMs() >= electionTimeout) {
             LOG.info("{}:{} changes to CANDIDATE, lastRpcTime:{}, electionTimeout:{}ms",
                 server.getId(), server.getGroupId(), lastRpcTime.elapsedTimeMs(), electionTimeout);
             // election timeout, should become a candidate
-            server.changeToCandidate();
+            server.changeToCandidate(false);
             break;
           }
         }
@@ -17,10 +17,14 @@
  */
 package org.apache.ratis.server.impl;
 
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Timer;
+import org.apache.ratis.metrics.RatisMetrics;
 import org.apache.ratis.proto.RaftProtos.RequestVoteReplyProto;
 import org.apache.ratis.proto.RaftProtos.RequestVoteRequestProto;
 import org.apache.ratis.protocol.RaftPeer;
 import org.apache.ratis.protocol.RaftPeerId;
+import org.apache.ratis.server.RaftServerConfigKeys;
 import org.apache.ratis.server.protocol.TermIndex;
 import org.apache.ratis.statemachine.SnapshotInfo;
 import org.apache.ratis.util.Daemon;
@@ -35,6 +39,7 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -50,10 +55,10 @@ import java.util.stream.Collectors;
 class LeaderElection implements Runnable {
   public static final Logger LOG = LoggerFactory.getLogger(LeaderElection.class);
 
-  private ResultAndTerm logAndReturn(Result result,
+  private ResultAndTerm logAndReturn(Phase phase, Result result,
       Map<RaftPeerId, RequestVoteReplyProto> responses,
       List<Exception> exceptions, long newTerm) {
-    LOG.info(this + ": Election " + result + "; received " + responses.size() + " response(s) "
+    LOG.info(this + ": " + phase + " " + result + "; received " + responses.size() + " response(s) "
         + responses.values().stream().map(ServerProtoUtils::toString).collect(Collectors.toList())
         + " and " + exceptions.size() + " exception(s); " + server.getState());
     int i = 0;
@@ -64,8 +69,44 @@ class LeaderElection implements Runnable {
     return new ResultAndTerm(result, newTerm);
   }
 
+  /**
+   * A pre-vote round is run at the next term without changing any persistent state;
+   * the election starts only if the pre-vote has passed.
+   * See Section 9.6 of the Raft dissertation.
+   */
+  enum Phase {PRE_VOTE, ELECTION}
+
   enum Result {PASSED, REJECTED, TIMEOUT, DISCOVERED_A_NEW_TERM, SHUTDOWN}
 
+  /**
+   * The election metrics of a server.
+   * They are looked up once per server since a new {@link LeaderElection} is created for each election.
+   */
+  static final class Metrics {
+    private final Map<Phase, Timer> timers = new EnumMap<>(Phase.class);
+    private final Map<Phase, Map<Result, Counter>> counters = new EnumMap<>(Phase.class);
+
+    Metrics(RatisMetrics metrics) {
+      for(Phase phase : Phase.values()) {
+        final String prefix = "election." + phase.name().toLowerCase();
+        timers.put(phase, metrics.timer(prefix + ".time"));
+        final Map<Result, Counter> resultCounters = new EnumMap<>(Result.class);
+        for(Result result : Result.values()) {
+          resultCounters.put(result, metrics.counter(prefix + "." + result.name().toLowerCase()));
+        }
+        counters.put(phase, resultCounters);
+      }
+    }
+
+    Timer getTimer(Phase phase) {
+      return timers.get(phase);
+    }
+
+    Counter getCounter(Phase phase, Result result) {
+      return counters.get(phase).get(result);
+    }
+  }
+
   private static class ResultAndTerm {
     final Result result;
     final long term;
@@ -108,12 +149,15 @@ class LeaderElection implements Runnable {
   private final Daemon daemon;
 
   private final RaftServerImpl server;
+  private final boolean skipPreVote;
 
-  LeaderElection(RaftServerImpl server) {
+  LeaderElection(RaftServerImpl server, boolean skipPreVote) {
     this.name = server.getId() + ":" + server.getGroupId() + ":" + getClass().getSimpleName() + COUNT.incrementAndGet();
     this.lifeCycle = new LifeCycle(this);
     this.daemon = new Daemon(this);
     this.server = server;
+    this.skipPreVote = skipPreVote
+        || !RaftServerConfigKeys.LeaderElection.preVote(server.getProxy().getProperties());
   }
 
   void start() {
@@ -168,89 +212,126 @@ class LeaderElection implements Runnable {
    * send out requestVote rpc to all other peers.
    */
   private void askForVotes() throws InterruptedException, IOException {
-    final ServerState state = server.getState();
     while (shouldRun()) {
-      // one round of requestVotes
-      final long electionTerm;
-      final RaftConfiguration conf;
-      synchronized (server) {
+      if (!skipPreVote) {
+        final Result preVote = askForVotes(Phase.PRE_VOTE);
+        if (preVote == Result.TIMEOUT) {
+          continue;
+        } else if (preVote != Result.PASSED) {
+          return;
+        }
+      }
+      if (askForVotes(Phase.ELECTION) != Result.TIMEOUT) {
+        return;
+      }
+      // timeout, should start another election
+    }
+  }
+
+  /**
+   * Run one round of the given phase.
+   *
+   * @return the result of the round, or null if this election should not run anymore.
+   */
+  private Result askForVotes(Phase phase) throws InterruptedException, IOException {
+    final ServerState state = server.getState();
+    final long electionTerm;
+    final RaftConfiguration conf;
+    synchronized (server) {
+      if (!shouldRun()) {
+        return null;
+      }
+      if (phase == Phase.PRE_VOTE) {
+        electionTerm = state.getCurrentTerm() + 1;
+      } else {
         electionTerm = state.initElection();
-        conf = state.getRaftConf();
+      }
+      conf = state.getRaftConf();
+      if (phase == Phase.ELECTION) {
         state.persistMetadata();
       }
-      LOG.info("{}: begin an election at term {} for {}", this, electionTerm, conf);
-
-      TermIndex lastEntry = state.getLog().getLastEntryTermIndex();
-      if (lastEntry == null) {
-        // lastEntry may need to be derived from snapshot
-        SnapshotInfo snapshot = state.getLatestSnapshot();
-        if (snapshot != null) {
-          lastEntry = snapshot.getTermIndex();
-        }
+    }
+    LOG.info("{}: begin {} at term {} for {}", this, phase, electionTerm, conf);
+    final Metrics metrics = server.getElectionMetrics();
+    final Timer.Context timerContext = metrics.getTimer(phase).time();
+
+    TermIndex lastEntry = state.getLog().getLastEntryTermIndex();
+    if (lastEntry == null) {
+      // lastEntry may need to be derived from snapshot
+      SnapshotInfo snapshot = state.getLatestSnapshot();
+      if (snapshot != null) {
+        lastEntry = snapshot.getTermIndex();
       }
+    }
 
-      final ResultAndTerm r;
-      final Collection<RaftPeer> others = conf.getOtherPeers(server.getId());
-      if (others.isEmpty()) {
-        r = new ResultAndTerm(Result.PASSED, electionTerm);
-      } else {
-        final Executor voteExecutor = new Executor(this, others.size());
-        try {
-          final int submitted = submitRequests(electionTerm, lastEntry, others, voteExecutor);
-          r = waitForResults(electionTerm, submitted, conf, voteExecutor);
-        } finally {
-          voteExecutor.shutdown();
-        }
+    // a pre-vote does not change the current term
+    final long currentTerm = phase == Phase.PRE_VOTE? electionTerm - 1: electionTerm;
+    final ResultAndTerm r;
+    final Collection<RaftPeer> others = conf.getOtherPeers(server.getId());
+    if (others.isEmpty()) {
+      r = new ResultAndTerm(Result.PASSED, electionTerm);
+    } else {
+      final Executor voteExecutor = new Executor(this, others.size());
+      try {
+        final int submitted = submitRequests(phase, electionTerm, lastEntry, others, voteExecutor);
+        r = waitForResults(phase, currentTerm, submitted, conf, voteExecutor);
+      } finally {
+        voteExecutor.shutdown();
       }
+    }
+    timerContext.stop();
+    metrics.getCounter(phase, r.result).inc();
 
-      synchronized (server) {
-        if (!shouldRun(electionTerm)) {
-          return; // term already passed or this should not run anymore.
-        }
+    synchronized (server) {
+      if (!shouldRun(currentTerm)) {
+        return null; // term already passed or this should not run anymore.
+      }
 
-        switch (r.result) {
-          case PASSED:
+      switch (r.result) {
+        case PASSED:
+          if (phase == Phase.ELECTION) {
             server.changeToLeader();
-            return;
-          case SHUTDOWN:
-            LOG.info("{} received shutdown response when requesting votes.", this);
-            server.getProxy().close();
-            return;
-          case REJECTED:
-          case DISCOVERED_A_NEW_TERM:
-            final long term = Math.max(r.term, state.getCurrentTerm());
-            server.changeToFollowerAndPersistMetadata(term, Result.DISCOVERED_A_NEW_TERM);
-            return;
-          case TIMEOUT:
-            // should start another election
-        }
+          }
+          break;
+        case SHUTDOWN:
+          LOG.info("{} received shutdown response when requesting votes.", this);
+          server.getProxy().close();
+          break;
+        case REJECTED:
+        case DISCOVERED_A_NEW_TERM:
+          final long term = Math.max(r.term, state.getCurrentTerm());
+          server.changeToFollowerAndPersistMetadata(term, Result.DISCOVERED_A_NEW_TERM);
+          break;
+        case TIMEOUT:
+          // should start another round
       }
+      return r.result;
     }
   }
 
-  private int submitRequests(final long electionTerm, final TermIndex lastEntry,
+  private int submitRequests(Phase phase, long electionTerm, TermIndex lastEntry,
       Collection<RaftPeer> others, Executor voteExecutor) {
     int submitted = 0;
     for (final RaftPeer peer : others) {
       final RequestVoteRequestProto r = server.createRequestVoteRequest(
-          peer.getId(), electionTerm, lastEntry);
+          peer.getId(), electionTerm, lastEntry, phase == Phase.PRE_VOTE);
       voteExecutor.submit(() -> server.getServerRpc().requestVote(r));
       submitted++;
     }
     return submitted;
   }
 
-  private ResultAndTerm waitForResults(final long electionTerm, final int submitted,
+  private ResultAndTerm waitForResults(Phase phase, final long currentTerm, final int submitted,
       RaftConfiguration conf, Executor voteExecutor) throws InterruptedException {
     final Timestamp timeout = Timestamp.currentTime().addTimeMs(server.getRandomTimeoutMs());
     final Map<RaftPeerId, RequestVoteReplyProto> responses = new HashMap<>();
     final List<Exception> exceptions = new ArrayList<>();
     int waitForNum = submitted;
     Collection<RaftPeerId> votedPeers = new ArrayList<>();
-    while (waitForNum > 0 && shouldRun(electionTerm)) {
+    while (waitForNum > 0 && shouldRun(currentTerm)) {
       final TimeDuration waitTime = timeout.elapsedTime().apply(n -> -n);
       if (waitTime.isNonPositive()) {
-        return logAndReturn(Result.TIMEOUT, responses, exceptions, -1);
+        return logAndReturn(phase, Result.TIMEOUT, responses, exceptions, -1);
       }
 
       try {
@@ -268,16 +349,16 @@ class LeaderElection implements Runnable {
           continue;
         }
         if (r.getShouldShutdown()) {
-          return logAndReturn(Result.SHUTDOWN, responses, exceptions, -1);
+          return logAndReturn(phase, Result.SHUTDOWN, responses, exceptions, -1);
         }
-        if (r.getTerm() > electionTerm) {
-          return logAndReturn(Result.DISCOVERED_A_NEW_TERM, responses,
+        if (r.getTerm() > currentTerm) {
+          return logAndReturn(phase, Result.DISCOVERED_A_NEW_TERM, responses,
               exceptions, r.getTerm());
         }
         if (r.getServerReply().getSuccess()) {
           votedPeers.add(replierId);
           if (conf.hasMajority(votedPeers, server.getId())) {
-            return logAndReturn(Result.PASSED, responses, exceptions, -1);
+            return logAndReturn(phase, Result.PASSED, responses, exceptions, -1);
           }
         }
       } catch(ExecutionException e) {
@@ -287,7 +368,7 @@ class LeaderElection implements Runnable {
       waitForNum--;
     }
     // received all the responses
-    return logAndReturn(Result.REJECTED, responses, exceptions, -1);
+    return logAndReturn(phase, Result.REJECTED, responses, exceptions, -1);
   }
 
   @Override
@@ -17,7 +17,10 @@
  */
 package org.apache.ratis.server.impl;
 
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Timer;
 import org.apache.ratis.conf.RaftProperties;
+import org.apache.ratis.metrics.RatisMetrics;
 import org.apache.ratis.proto.RaftProtos.ReplicationLevel;
 import org.apache.ratis.protocol.*;
 import org.apache.ratis.server.RaftServerConfigKeys;
@@ -189,11 +192,25 @@ public class LeaderState {
   private final TimeDuration syncInterval;
   private final long placeHolderIndex;
 
+  private final boolean quiescenceEnabled;
+  private final long quiescenceIdleTimeoutMs;
+  /** The last time a log entry was appended. */
+  private volatile Timestamp lastActivityTime = Timestamp.currentTime();
+
+  private final RatisMetrics metrics;
+  /** The number of committed entries. */
+  private final Meter commitMeter;
+  /** The time from a request added to committed, sampled by the last request of each commit. */
+  private final Timer commitLatency;
+
   LeaderState(RaftServerImpl server, RaftProperties properties) {
     this.server = server;
 
     stagingCatchupGap = RaftServerConfigKeys.stagingCatchupGap(properties);
     syncInterval = RaftServerConfigKeys.Rpc.sleepTime(properties);
+    quiescenceEnabled = RaftServerConfigKeys.Quiescence.enabled(properties);
+    quiescenceIdleTimeoutMs = RaftServerConfigKeys.Quiescence.idleTimeout(properties)
+        .toLong(TimeUnit.MILLISECONDS);
 
     final ServerState state = server.getState();
     this.raftLog = state.getLog();
@@ -204,6 +221,7 @@ public class LeaderState {
 
     final RaftConfiguration conf = server.getRaftConf();
     Collection<RaftPeer> others = conf.getOtherPeers(state.getSelfId());
+    others.addAll(conf.getOtherLearners(state.getSelfId()));
     final Timestamp t = Timestamp.currentTime().addTimeMs(-server.getMaxTimeoutMs());
     placeHolderIndex = raftLog.getNextIndex();
 
@@ -212,6 +230,28 @@ public class LeaderState {
         .toArray(LogAppender[]::new));
 
     voterLists = divideFollowers(conf);
+
+    this.metrics = new RatisMetrics(LeaderState.class, server.getId(), server.getGroupId());
+    this.commitMeter = metrics.meter("commit");
+    this.commitLatency = metrics.timer("commit-latency");
+    metrics.gauge("commit-index", raftLog::getLastCommittedIndex);
+    metrics.gauge("pending-requests", pendingRequests::size);
+    senders.forEach(s -> addFollowerMetrics(s.getFollower()));
+  }
+
+  /** Register the lags of the given follower behind the last entry of the leader. */
+  private void addFollowerMetrics(FollowerInfo f) {
+    final RaftPeerId id = f.getPeer().getId();
+    metrics.gauge(RatisMetrics.withLabel("follower-match-lag", "follower", id),
+        () -> raftLog.getNextIndex() - 1 - f.getMatchIndex());
+    metrics.gauge(RatisMetrics.withLabel("follower-next-lag", "follower", id),
+        () -> raftLog.getNextIndex() - f.getNextIndex());
+  }
+
+  private void removeFollowerMetrics(FollowerInfo f) {
+    final RaftPeerId id = f.getPeer().getId();
+    metrics.remove(RatisMetrics.withLabel("follower-match-lag", "follower", id));
+    metrics.remove(RatisMetrics.withLabel("follower-next-lag", "follower", id));
   }
 
   LogEntryProto start() {
@@ -247,16 +287,50 @@ public class LeaderState {
       LOG.warn(server.getId() + ": Caught exception in sendNotLeaderResponses", e);
     }
     server.getServerRpc().notifyNotLeader();
+    metrics.removeAll();
   }
 
   void notifySenders() {
+    lastActivityTime = Timestamp.currentTime();
     senders.forEach(LogAppender::notifyAppend);
   }
 
+  /**
+   * Should the followers be told to suspend their election timeouts?
+   * It is the case when quiescence is enabled, no log entries were appended
+   * within the idle timeout and all the followers have caught up with the leader.
+   */
+  boolean shouldQuiesce() {
+    if (!quiescenceEnabled || !running || inStagingState() || server.getTransferLeadership().isSteppingDown()
+        || lastActivityTime.elapsedTimeMs() < quiescenceIdleTimeoutMs) {
+      return false;
+    }
+    final long lastIndex = raftLog.getNextIndex() - 1;
+    final long committed = raftLog.getLastCommittedIndex();
+    return committed == lastIndex && server.getRaftConf().isStable()
+        && senders.stream().map(LogAppender::getFollower)
+        .allMatch(f -> f.getMatchIndex() == lastIndex && f.getCommitIndex() >= committed);
+  }
+
+  /** @return true iff the given follower is the leadership transfer target and it has caught up. */
+  boolean isTimeoutNowPending(FollowerInfo follower) {
+    return server.getTransferLeadership().isTimeoutNowPending(follower, raftLog.getNextIndex() - 1);
+  }
+
+  /** @return true iff a TimeoutNow should be sent to the given follower. */
+  boolean sendTimeoutNow(FollowerInfo follower) {
+    return server.getTransferLeadership().sendTimeoutNow(follower, raftLog.getNextIndex() - 1);
+  }
+
   boolean inStagingState() {
     return stagingState != null;
   }
 
+  /** @return the scheduler of the watch requests, which is also used for the other timeouts of this leader. */
+  TimeoutScheduler getScheduler() {
+    return watchRequests.getScheduler();
+  }
+
   long getCurrentTerm() {
     return currentTerm;
   }
@@ -278,8 +352,8 @@ public class LeaderState {
     // add the request to the pending queue
     final PendingRequest pending = pendingRequests.addConfRequest(request);
 
-    ConfigurationStagingState stagingState = new ConfigurationStagingState(
-        peersToBootStrap, new PeerConfiguration(Arrays.asList(peersInNewConf)));
+    ConfigurationStagingState stagingState = new ConfigurationStagingState(peersToBootStrap,
+        new PeerConfiguration(Arrays.asList(peersInNewConf), Arrays.asList(request.getLearnersInNewConf())));
     Collection<RaftPeer> newPeers = stagingState.getNewPeers();
     // set the staging state
     this.stagingState = stagingState;
@@ -336,6 +410,7 @@ public class LeaderState {
     // apply the (old, new) configuration to log, and use it as the current conf
     long index = state.getLog().append(state.getCurrentTerm(), oldNewConf);
     updateConfiguration(index, oldNewConf);
+    addLearnerSenders(oldNewConf);
 
     this.stagingState = null;
     notifySenders();
@@ -354,10 +429,10 @@ public class LeaderState {
 
   AppendEntriesRequestProto newAppendEntriesRequestProto(RaftPeerId targetId,
       TermIndex previous, List<LogEntryProto> entries, boolean initializing,
-      long callId) {
+      boolean quiescent, boolean timeoutNow, long callId) {
     return ServerProtoUtils.toAppendEntriesRequestProto(server.getId(), targetId,
         server.getGroupId(), currentTerm, entries, raftLog.getLastCommittedIndex(),
-        initializing, previous, server.getCommitInfos(), callId);
+        initializing, quiescent, timeoutNow, previous, server.getCommitInfos(), callId);
   }
 
   /**
@@ -365,20 +440,43 @@ public class LeaderState {
    * RpcSender list.
    */
   void addSenders(Collection<RaftPeer> newMembers) {
+    addSenders(newMembers, false);
+  }
+
+  private void addSenders(Collection<RaftPeer> newMembers, boolean attendVote) {
     final Timestamp t = Timestamp.currentTime().addTimeMs(-server.getMaxTimeoutMs());
     final long nextIndex = raftLog.getNextIndex();
 
     senders.addAll(newMembers.stream().map(peer -> {
-      LogAppender sender = server.newLogAppender(this, peer, t, nextIndex, false);
+      LogAppender sender = server.newLogAppender(this, peer, t, nextIndex, attendVote);
+      addFollowerMetrics(sender.getFollower());
       sender.startAppender();
       return sender;
     }).collect(Collectors.toList()));
   }
 
+  /**
+   * Start replicating to the learners in the given conf which do not have a sender yet.
+   * Learners are not bootstrapped since they are not on the commit path;
+   * they are excluded from the majority by {@link #divideFollowers(RaftConfiguration)}.
+   */
+  private void addLearnerSenders(RaftConfiguration conf) {
+    final Set<RaftPeerId> existing = senders.stream()
+        .map(s -> s.getFollower().getPeer().getId())
+        .collect(Collectors.toSet());
+    final List<RaftPeer> learners = conf.getOtherLearners(server.getId()).stream()
+        .filter(p -> !existing.contains(p.getId()))
+        .collect(Collectors.toList());
+    if (!learners.isEmpty()) {
+      addSenders(learners, true);
+    }
+  }
+
   void stopAndRemoveSenders(Predicate<LogAppender> predicate) {
     final List<LogAppender> toStop = senders.stream().filter(predicate).collect(Collectors.toList());
     toStop.forEach(LogAppender::stopAppender);
     senders.removeAll(toStop);
+    toStop.forEach(s -> removeFollowerMetrics(s.getFollower()));
   }
 
   /**
@@ -386,7 +484,8 @@ public class LeaderState {
    */
   private void updateSenders(RaftConfiguration conf) {
     Preconditions.assertTrue(conf.isStable() && !inStagingState());
-    stopAndRemoveSenders(s -> !conf.containsInConf(s.getFollower().getPeer().getId()));
+    stopAndRemoveSenders(s -> !conf.containsInConf(s.getFollower().getPeer().getId())
+        && !conf.isLearner(s.getFollower().getPeer().getId()));
   }
 
   void submitStepDownEvent() {
@@ -547,6 +646,7 @@ public class LeaderState {
   }
 
   private void updateCommit() {
+    server.getTracer().recordUpTo(raftLog.getLatestFlushedIndex(), RequestTracer.Stage.FLUSH);
     getMajorityMin(FollowerInfo::getMatchIndex, raftLog::getLatestFlushedIndex)
         .ifPresent(m -> updateCommit(m.majority, m.min));
   }
@@ -587,6 +687,12 @@ public class LeaderState {
       final TermIndex[] entriesToCommit = raftLog.getEntries(
           oldLastCommitted + 1, majority + 1);
       if (server.getState().updateStatemachine(majority, currentTerm)) {
+        commitMeter.mark(majority - oldLastCommitted);
+        server.getTracer().recordUpTo(majority, RequestTracer.Stage.COMMIT);
+        final Long creationNanos = pendingRequests.getCreationNanos(majority);
+        if (creationNanos != null) {
+          commitLatency.update(System.nanoTime() - creationNanos, TimeUnit.NANOSECONDS);
+        }
         watchRequests.update(ReplicationLevel.MAJORITY, majority);
         logMetadata(majority);
         commitIndexChanged();
@@ -62,6 +62,8 @@ public class LogAppender {
   private final DataQueue<EntryWithData> buffer;
   private final int snapshotChunkMaxSize;
   protected final long halfMinTimeoutMs;
+  /** The heartbeat interval of a quiescent follower. */
+  private final long quiescentHeartbeatMs;
 
   private final LifeCycle lifeCycle;
   private final Daemon daemon = new Daemon(this::runAppender);
@@ -75,6 +77,7 @@ public class LogAppender {
     final RaftProperties properties = server.getProxy().getProperties();
     this.snapshotChunkMaxSize = RaftServerConfigKeys.Log.Appender.snapshotChunkSizeMax(properties).getSizeInt();
     this.halfMinTimeoutMs = server.getMinTimeoutMs() / 2;
+    this.quiescentHeartbeatMs = RaftServerConfigKeys.Quiescence.timeoutMultiplier(properties) * halfMinTimeoutMs;
 
     final SizeInBytes bufferByteLimit = RaftServerConfigKeys.Log.Appender.bufferByteLimit(properties);
     final int bufferElementLimit = RaftServerConfigKeys.Log.Appender.bufferElementLimit(properties);
@@ -152,8 +155,12 @@ public class LogAppender {
     final TermIndex previous = getPrevious();
     final long heartbeatRemainingMs = getHeartbeatRemainingTime();
     if (heartbeatRemainingMs <= 0L) {
-      return leaderState.newAppendEntriesRequestProto(
-          getFollowerId(), previous, Collections.emptyList(), !follower.isAttendingVote(), callId);
+      // once a follower is told to be quiescent, it only receives a heartbeat once in a quiescent heartbeat interval
+      final boolean quiescent = leaderState.shouldQuiesce();
+      follower.setQuiescent(quiescent);
+      final boolean timeoutNow = leaderState.sendTimeoutNow(follower);
+      return leaderState.newAppendEntriesRequestProto(getFollowerId(), previous, Collections.emptyList(),
+          !follower.isAttendingVote(), quiescent, timeoutNow, callId);
     }
 
     Preconditions.assertTrue(buffer.isEmpty(), () -> "buffer has " + buffer.getNumElements() + " elements.");
@@ -168,11 +175,14 @@ public class LogAppender {
       return null;
     }
 
-    final List<LogEntryProto> protos = buffer.pollList(heartbeatRemainingMs, EntryWithData::getEntry,
+    // new entries wake up a quiescent follower
+    final long timeoutMs = follower.isQuiescent()? halfMinTimeoutMs: heartbeatRemainingMs;
+    follower.setQuiescent(false);
+    final List<LogEntryProto> protos = buffer.pollList(timeoutMs, EntryWithData::getEntry,
         (entry, time, exception) -> LOG.warn(this + ": Failed get " + entry + " in " + time, exception));
     buffer.clear();
     return leaderState.newAppendEntriesRequestProto(
-        getFollowerId(), previous, protos, !follower.isAttendingVote(), callId);
+        getFollowerId(), previous, protos, !follower.isAttendingVote(), false, false, callId);
   }
 
   /** Send an appendEntries RPC; retry indefinitely. */
@@ -208,6 +218,8 @@ public class LogAppender {
         if (retry++ % 10 == 0) { // to reduce the number of messages
           LOG.warn("{}: Failed to appendEntries (retry={}): {}", this, retry++, ioe);
         }
+        // the follower may have missed the quiescent heartbeat; keep heartbeating
+        follower.setQuiescent(false);
         handleException(ioe);
       }
       if (isAppenderRunning()) {
@@ -486,15 +498,24 @@ public class LogAppender {
   }
 
   /**
-   * @return the time in milliseconds that the leader should send a heartbeat.
+   * @return the time in milliseconds that the leader should send a heartbeat,
+   *         i.e. the heartbeat interval minus the time elapsed since the last rpc,
+   *         where the interval is the quiescent heartbeat interval if the follower is quiescent;
+   *         or 0 if a TimeoutNow should be sent to the follower right away.
    */
   protected long getHeartbeatRemainingTime() {
-    return halfMinTimeoutMs - follower.getLastRpcTime().elapsedTimeMs();
+    if (leaderState.isTimeoutNowPending(follower)) {
+      return 0L; // the leadership transfer target has caught up
+    }
+    final long intervalMs = follower.isQuiescent()? quiescentHeartbeatMs: halfMinTimeoutMs;
+    return intervalMs - follower.getLastRpcTime().elapsedTimeMs();
   }
 
   protected void checkResponseTerm(long responseTerm) {
     synchronized (server) {
+      // a learner does not vote so that its term cannot depose the leader
       if (isAppenderRunning() && follower.isAttendingVote()
+          && !server.getRaftConf().isLearner(follower.getPeer().getId())
           && responseTerm > leaderState.getCurrentTerm()) {
         leaderState.submitStepDownEvent(responseTerm);
       }
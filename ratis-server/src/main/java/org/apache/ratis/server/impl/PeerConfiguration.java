@@ -35,10 +35,28 @@ import java.util.Objects;
  * The objects of this class are immutable.
  */
 class PeerConfiguration {
+  /** The voting members. */
   private final Map<RaftPeerId, RaftPeer> peers;
+  /** The non-voting members, which replicate the log but are excluded from elections and majorities. */
+  private final Map<RaftPeerId, RaftPeer> learners;
 
   PeerConfiguration(Iterable<RaftPeer> peers) {
+    this(peers, Collections.emptyList());
+  }
+
+  PeerConfiguration(Iterable<RaftPeer> peers, Iterable<RaftPeer> learners) {
     Objects.requireNonNull(peers);
+    Objects.requireNonNull(learners);
+    this.peers = toMap(peers);
+    this.learners = toMap(learners);
+    for(RaftPeerId id : this.learners.keySet()) {
+      if (this.peers.containsKey(id)) {
+        throw new IllegalArgumentException("Found " + id + " in both peers " + peers + " and learners " + learners);
+      }
+    }
+  }
+
+  private static Map<RaftPeerId, RaftPeer> toMap(Iterable<RaftPeer> peers) {
     Map<RaftPeerId, RaftPeer> map = new HashMap<>();
     for(RaftPeer p : peers) {
       final RaftPeer previous = map.putIfAbsent(p.getId(), p);
@@ -46,20 +64,25 @@ class PeerConfiguration {
         throw new IllegalArgumentException("Found duplicated ids " + p.getId() + " in peers " + peers);
       }
     }
-    this.peers = Collections.unmodifiableMap(map);
+    return Collections.unmodifiableMap(map);
   }
 
   Collection<RaftPeer> getPeers() {
     return Collections.unmodifiableCollection(peers.values());
   }
 
+  Collection<RaftPeer> getLearners() {
+    return Collections.unmodifiableCollection(learners.values());
+  }
+
   int size() {
     return peers.size();
   }
 
   @Override
   public String toString() {
-    return peers.values().toString();
+    return learners.isEmpty()? peers.values().toString()
+        : peers.values() + ", learners=" + learners.values();
   }
 
   RaftPeer getPeer(RaftPeerId id) {
@@ -70,6 +93,14 @@ class PeerConfiguration {
     return peers.containsKey(id);
   }
 
+  RaftPeer getLearner(RaftPeerId id) {
+    return learners.get(id);
+  }
+
+  boolean containsLearner(RaftPeerId id) {
+    return learners.containsKey(id);
+  }
+
   List<RaftPeer> getOtherPeers(RaftPeerId selfId) {
     List<RaftPeer> others = new ArrayList<>();
     for (Map.Entry<RaftPeerId, RaftPeer> entry : peers.entrySet()) {
@@ -105,7 +136,7 @@ class PeerConfiguration {
       return false;
     }
     final PeerConfiguration that = (PeerConfiguration)obj;
-    return this.peers.equals(that.peers);
+    return this.peers.equals(that.peers) && this.learners.equals(that.learners);
   }
 
   @Override
@@ -30,6 +30,7 @@ public class PendingRequest implements Comparable<PendingRequest> {
   private final RaftClientRequest request;
   private final TransactionContext entry;
   private final CompletableFuture<RaftClientReply> future;
+  private final long creationNanos = System.nanoTime();
 
   PendingRequest(long index, RaftClientRequest request, TransactionContext entry) {
     this.index = index;
@@ -58,6 +59,11 @@ public class PendingRequest implements Comparable<PendingRequest> {
     return entry;
   }
 
+  /** @return the {@link System#nanoTime()} when this request was created. */
+  long getCreationNanos() {
+    return creationNanos;
+  }
+
   /**
    * This is only used when setting new raft configuration.
    */
@@ -54,6 +54,10 @@ class PendingRequests {
       return r;
     }
 
+    int size() {
+      return map.size();
+    }
+
     PendingRequest remove(long index) {
       final PendingRequest r = map.remove(index);
       LOG.debug("{}: PendingRequests.remove {} returns {}", name, index, r);
@@ -117,6 +121,16 @@ class PendingRequests {
     pendingSetConf = null;
   }
 
+  int size() {
+    return pendingRequests.size();
+  }
+
+  /** @return the creation time of the request at the given index; or null if there is no such request. */
+  Long getCreationNanos(long index) {
+    final PendingRequest pendingRequest = pendingRequests.get(index);
+    return pendingRequest != null? pendingRequest.getCreationNanos(): null;
+  }
+
   TransactionContext getTransactionContext(long index) {
     PendingRequest pendingRequest = pendingRequests.get(index);
     // it is possible that the pendingRequest is null if this peer just becomes
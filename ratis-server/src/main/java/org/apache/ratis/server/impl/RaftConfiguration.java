@@ -23,6 +23,7 @@ import org.apache.ratis.util.Preconditions;
 
 import java.util.*;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
 
 /**
  * The configuration of the raft cluster.
@@ -64,6 +65,14 @@ public class RaftConfiguration {
       return setConf(Arrays.asList(peers));
     }
 
+    public Builder setConf(Iterable<RaftPeer> peers, Iterable<RaftPeer> learners) {
+      return setConf(new PeerConfiguration(peers, learners));
+    }
+
+    public Builder setConf(RaftPeer[] peers, RaftPeer[] learners) {
+      return setConf(Arrays.asList(peers), Arrays.asList(learners));
+    }
+
     Builder setConf(RaftConfiguration transitionalConf) {
       Objects.requireNonNull(transitionalConf);
       Preconditions.assertTrue(transitionalConf.isTransitional());
@@ -89,6 +98,10 @@ public class RaftConfiguration {
       return setOldConf(Arrays.asList(oldPeers));
     }
 
+    public Builder setOldConf(RaftPeer[] oldPeers, RaftPeer[] oldLearners) {
+      return setOldConf(new PeerConfiguration(Arrays.asList(oldPeers), Arrays.asList(oldLearners)));
+    }
+
     Builder setOldConf(RaftConfiguration stableConf) {
       Objects.requireNonNull(stableConf);
       Preconditions.assertTrue(stableConf.isStable());
@@ -166,7 +179,15 @@ public class RaftConfiguration {
   }
 
   /**
-   * @return the peer corresponding to the given id;
+   * @return true iff the given peer is a learner in conf.
+   *         A learner replicates the log but neither votes nor counts toward a majority.
+   */
+  boolean isLearner(RaftPeerId peerId) {
+    return conf.containsLearner(peerId);
+  }
+
+  /**
+   * @return the peer, including a learner, corresponding to the given id;
    *         or return null if the peer is not in this configuration.
    */
   public RaftPeer getPeer(RaftPeerId id) {
@@ -174,10 +195,16 @@ public class RaftConfiguration {
       return null;
     }
     RaftPeer peer = conf.getPeer(id);
+    if (peer != null) {
+      return peer;
+    } else if (oldConf != null && (peer = oldConf.getPeer(id)) != null) {
+      return peer;
+    }
+    peer = conf.getLearner(id);
     if (peer != null) {
       return peer;
     } else if (oldConf != null) {
-      return oldConf.getPeer(id);
+      return oldConf.getLearner(id);
     }
     return null;
   }
@@ -206,6 +233,28 @@ public class RaftConfiguration {
     return others;
   }
 
+  /** @return all the learners from the conf, and the old conf if it exists. */
+  public Collection<RaftPeer> getLearners() {
+    final Collection<RaftPeer> learners = new ArrayList<>(conf.getLearners());
+    if (oldConf != null) {
+      oldConf.getLearners().stream().filter(p -> !learners.contains(p))
+          .forEach(learners::add);
+    }
+    return learners;
+  }
+
+  /**
+   * @return all the learners other than the given self id from the conf,
+   *         and the old conf if it exists,
+   *         excluding the peers which are voting members in either conf.
+   */
+  Collection<RaftPeer> getOtherLearners(RaftPeerId selfId) {
+    return getLearners().stream()
+        .filter(p -> !p.getId().equals(selfId))
+        .filter(p -> !containsInConf(p.getId()) && !containsInOldConf(p.getId()))
+        .collect(Collectors.toList());
+  }
+
   /** @return true if the self id together with the others are in the majority. */
   boolean hasMajority(Collection<RaftPeerId> others, RaftPeerId selfId) {
     Preconditions.assertTrue(!others.contains(selfId));
@@ -219,7 +268,12 @@ public class RaftConfiguration {
   }
 
   boolean hasNoChange(RaftPeer[] newMembers) {
-    if (!isStable() || conf.size() != newMembers.length) {
+    return hasNoChange(newMembers, new RaftPeer[0]);
+  }
+
+  boolean hasNoChange(RaftPeer[] newMembers, RaftPeer[] newLearners) {
+    if (!isStable() || conf.size() != newMembers.length
+        || conf.getLearners().size() != newLearners.length) {
       return false;
     }
     for (RaftPeer peer : newMembers) {
@@ -227,6 +281,11 @@ public class RaftConfiguration {
         return false;
       }
     }
+    for (RaftPeer peer : newLearners) {
+      if (!conf.containsLearner(peer.getId())) {
+        return false;
+      }
+    }
     return true;
   }
 
@@ -234,11 +293,16 @@ public class RaftConfiguration {
     return logEntryIndex;
   }
 
+  /**
+   * @return the new members which have to be bootstrapped.
+   *         A learner promoted to a voting member has already been replicating the log
+   *         so that it is not included.
+   */
   static Collection<RaftPeer> computeNewPeers(RaftPeer[] newMembers,
       RaftConfiguration old) {
     List<RaftPeer> peers = new ArrayList<>();
     for (RaftPeer p : newMembers) {
-      if (!old.containsInConf(p.getId())) {
+      if (!old.containsInConf(p.getId()) && !old.isLearner(p.getId())) {
         peers.add(p);
       }
     }
@@ -262,6 +326,14 @@ public class RaftConfiguration {
     return conf.getPeers();
   }
 
+  Collection<RaftPeer> getLearnersInOldConf() {
+    return oldConf != null ? oldConf.getLearners() : Collections.emptyList();
+  }
+
+  Collection<RaftPeer> getLearnersInConf() {
+    return conf.getLearners();
+  }
+
   @Override
   public boolean equals(Object obj) {
     if (this == obj) {
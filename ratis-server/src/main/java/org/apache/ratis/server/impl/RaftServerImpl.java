@@ -17,7 +17,10 @@
  */
 package org.apache.ratis.server.impl;
 
+import com.codahale.metrics.Counter;
 import org.apache.ratis.conf.RaftProperties;
+import org.apache.ratis.metrics.RatisMetrics;
+import org.apache.ratis.metrics.RatisMetricsRegistry;
 import org.apache.ratis.proto.RaftProtos.*;
 import org.apache.ratis.protocol.*;
 import org.apache.ratis.server.RaftServerConfigKeys;
@@ -81,8 +84,14 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
 
   private final RetryCache retryCache;
   private final CommitInfoCache commitInfoCache = new CommitInfoCache();
+  private final TransferLeadership transferLeadership;
 
   private final RaftServerJmxAdapter jmxAdapter;
+  private final RatisMetrics metrics;
+  private final Counter retryCacheHitCounter;
+  private final Counter retryCacheMissCounter;
+  private final LeaderElection.Metrics electionMetrics;
+  private final RequestTracer tracer;
 
   private AtomicReference<TermIndex> inProgressInstallSnapshotRequest;
 
@@ -106,8 +115,15 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
     this.state = new ServerState(id, group, properties, this, stateMachine);
     this.retryCache = initRetryCache(properties);
     this.inProgressInstallSnapshotRequest = new AtomicReference<>(null);
+    this.transferLeadership = new TransferLeadership(this, RaftServerConfigKeys.Rpc.requestTimeout(properties));
 
     this.jmxAdapter = new RaftServerJmxAdapter();
+    this.metrics = new RatisMetrics(RaftServerImpl.class, id, groupId);
+    metrics.gauge("retry-cache.size", retryCache::size);
+    this.retryCacheHitCounter = metrics.counter("retry-cache.hit");
+    this.retryCacheMissCounter = metrics.counter("retry-cache.miss");
+    this.electionMetrics = new LeaderElection.Metrics(metrics);
+    this.tracer = new RequestTracer(id + "@" + groupId, properties, metrics);
   }
 
   private RetryCache initRetryCache(RaftProperties prop) {
@@ -126,6 +142,18 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
     return peerSupplier.get();
   }
 
+  LeaderElection.Metrics getElectionMetrics() {
+    return electionMetrics;
+  }
+
+  RequestTracer getTracer() {
+    return tracer;
+  }
+
+  TransferLeadership getTransferLeadership() {
+    return transferLeadership;
+  }
+
   int getMinTimeoutMs() {
     return minTimeoutMs;
   }
@@ -261,6 +289,8 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
       } catch (Exception ignored) {
         LOG.warn("Failed to close state for " + getId(), ignored);
       }
+      retryCache.close();
+      RatisMetricsRegistry.removeRegistry(getId(), groupId);
       if (deleteDirectory) {
         final RaftStorageDirectory dir = state.getStorage().getStorageDir();
         try {
@@ -288,6 +318,11 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
     return role.isLeader();
   }
 
+  /** @return true if this server is a non-voting learner in the current conf. */
+  public boolean isLearner() {
+    return getRaftConf().isLearner(getId());
+  }
+
   /**
    * Change the server state to Follower if this server is in a different role or force is true.
    * @param newTerm The new term.
@@ -302,6 +337,7 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
       setRole(RaftPeerRole.FOLLOWER, reason);
       if (old == RaftPeerRole.LEADER) {
         role.shutdownLeaderState(false);
+        transferLeadership.onStepDown();
       } else if (old == RaftPeerRole.CANDIDATE) {
         role.shutdownLeaderElection();
       } else if (old == RaftPeerRole.FOLLOWER) {
@@ -327,6 +363,8 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
     // start sending AppendEntries RPC to followers
     final LogEntryProto e = role.startLeaderState(this, getProxy().getProperties());
     getState().setRaftConf(e);
+    // a transfer started in a previous term has failed since this server is elected again
+    transferLeadership.onNewLeader(getId());
   }
 
   Collection<CommitInfoProto> getCommitInfos() {
@@ -393,7 +431,11 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
     return roleInfo.build();
   }
 
-  synchronized void changeToCandidate() {
+  /**
+   * @param skipPreVote Start the election without a pre-vote round,
+   *                    e.g. when the leader has asked this server to take over the leadership.
+   */
+  synchronized void changeToCandidate(boolean skipPreVote) {
     Preconditions.assertTrue(isFollower());
     role.shutdownFollowerState();
     setRole(RaftPeerRole.CANDIDATE, "changeToCandidate");
@@ -401,7 +443,7 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
       stateMachine.notifyExtendedNoLeader(getGroup(), getRoleInfoProto());
     }
     // start election
-    role.startLeaderElection(this);
+    role.startLeaderElection(this, skipPreVote);
   }
 
   @Override
@@ -422,6 +464,8 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
     }
 
     if (!isLeader()) {
+      // the leader may have failed while the group was quiescent
+      role.getFollowerState().ifPresent(fs -> fs.setQuiescent(false));
       NotLeaderException exception = generateNotLeaderException();
       final RaftClientReply reply = new RaftClientReply(request, exception, getCommitInfos());
       return RetryCache.failWithReply(reply, entry);
@@ -473,7 +517,7 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
    */
   private CompletableFuture<RaftClientReply> appendTransaction(
       RaftClientRequest request, TransactionContext context,
-      RetryCache.CacheEntry cacheEntry) throws IOException {
+      RetryCache.CacheEntry cacheEntry, long submitNanos) throws IOException {
     assertLifeCycleState(RUNNING);
     CompletableFuture<RaftClientReply> reply;
 
@@ -483,6 +527,10 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
       if (reply != null) {
         return reply;
       }
+      if (transferLeadership.isSteppingDown()) {
+        // reject new writes so that the transfer target can catch up; the client will retry
+        return RetryCache.failWithException(new LeaderNotReadyException(getId()), cacheEntry);
+      }
 
       // append the message to its local log
       final LeaderState leaderState = role.getLeaderStateNonNull();
@@ -502,6 +550,8 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
 
       // put the request into the pending queue
       pending = leaderState.addPendingRequest(request, context);
+      tracer.begin(pending.getIndex(), RequestTracer.Stage.SUBMIT, submitNanos);
+      tracer.record(pending.getIndex(), RequestTracer.Stage.APPEND);
       leaderState.notifySenders();
     }
     return pending.getFuture();
@@ -510,6 +560,7 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
   @Override
   public CompletableFuture<RaftClientReply> submitClientRequestAsync(
       RaftClientRequest request) throws IOException {
+    final long submitNanos = System.nanoTime();
     assertLifeCycleState(RUNNING);
     LOG.debug("{}: receive client request({})", getId(), request);
     if (request.is(RaftClientRequestProto.TypeCase.STALEREAD)) {
@@ -535,8 +586,9 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
     }
 
     // query the retry cache
-    RetryCache.CacheQueryResult previousResult = retryCache.queryCache(
-        request.getClientId(), request.getCallId());
+    RetryCache.CacheQueryResult previousResult = retryCache.queryCache(request.getClientId(),
+        request.getCallId(), request.getSlidingWindowEntry().getMinUnrepliedCallId());
+    (previousResult.isRetry()? retryCacheHitCounter: retryCacheMissCounter).inc();
     if (previousResult.isRetry()) {
       // if the previous attempt is still pending or it succeeded, return its
       // future
@@ -554,7 +606,7 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
       cacheEntry.failWithReply(exceptionReply);
       return CompletableFuture.completedFuture(exceptionReply);
     }
-    return appendTransaction(request, context, cacheEntry);
+    return appendTransaction(request, context, cacheEntry, submitNanos);
   }
 
   private CompletableFuture<RaftClientReply> watchAsync(RaftClientRequest request) {
@@ -649,6 +701,7 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
     }
 
     final RaftPeer[] peersInNewConf = request.getPeersInNewConf();
+    final RaftPeer[] learnersInNewConf = request.getLearnersInNewConf();
     final PendingRequest pending;
     synchronized (this) {
       reply = checkLeaderState(request, null);
@@ -665,7 +718,7 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
       }
 
       // return success with a null message if the new conf is the same as the current
-      if (current.hasNoChange(peersInNewConf)) {
+      if (current.hasNoChange(peersInNewConf, learnersInNewConf)) {
         pending = new PendingRequest(request);
         pending.setReply(new RaftClientReply(request, getCommitInfos()));
         return pending.getFuture();
@@ -673,12 +726,56 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
 
       // add new peers into the rpc service
       getServerRpc().addPeers(Arrays.asList(peersInNewConf));
+      getServerRpc().addPeers(Arrays.asList(learnersInNewConf));
       // add staging state into the leaderState
       pending = leaderState.startSetConfiguration(request);
     }
     return pending.getFuture();
   }
 
+  public RaftClientReply transferLeadership(TransferLeadershipRequest request)
+      throws IOException {
+    return waitForReply(getId(), request, transferLeadershipAsync(request));
+  }
+
+  /**
+   * Handle a leadership transfer request from client.
+   */
+  public CompletableFuture<RaftClientReply> transferLeadershipAsync(
+      TransferLeadershipRequest request) throws IOException {
+    LOG.info("{}: receive transferLeadership({})", getId(), request);
+    assertLifeCycleState(RUNNING);
+    assertGroup(request.getRequestorId(), request.getRaftGroupId());
+
+    final CompletableFuture<RaftClientReply> future;
+    synchronized (this) {
+      final CompletableFuture<RaftClientReply> reply = checkLeaderState(request, null);
+      if (reply != null) {
+        return reply;
+      }
+
+      final RaftPeerId newLeader = request.getNewLeader();
+      if (newLeader.equals(getId())) {
+        // already the leader
+        return CompletableFuture.completedFuture(new RaftClientReply(request, getCommitInfos()));
+      }
+      final RaftConfiguration conf = getRaftConf();
+      final LeaderState leaderState = role.getLeaderStateNonNull();
+      final String reason = !conf.isStable()? "the conf is not stable: " + conf
+          : leaderState.inStagingState()? "the leader is in staging state"
+          : !conf.containsInConf(newLeader)? newLeader + " is not in the conf " + conf
+          : null;
+      if (reason != null) {
+        LOG.warn("{}: Failed {} since {}", getId(), request, reason);
+        return CompletableFuture.completedFuture(transferLeadership.newFailedReply(request, reason));
+      }
+      future = transferLeadership.start(request, leaderState.getScheduler());
+      // wake up the appender of the target to check if it has caught up
+      leaderState.notifySenders();
+    }
+    return future;
+  }
+
   private boolean shouldWithholdVotes(long candidateTerm) {
     if (state.getCurrentTerm() < candidateTerm) {
       return false;
@@ -709,6 +806,22 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
         && role.getLeaderState().map(ls -> !ls.isBootStrappingPeer(candidateId)).orElse(false);
   }
 
+  /**
+   * A pre-vote is granted only if the candidate's log is up-to-date
+   * and this server has not heard from a leader within the min election timeout,
+   * so that a peer rejoining after a partition cannot disrupt a healthy leader.
+   * As in a real vote, a candidate which is not a voting member, such as a learner, is rejected.
+   */
+  private boolean shouldGrantPreVote(RaftPeerId candidateId, long candidateTerm, TermIndex candidateLastEntry) {
+    if (candidateTerm <= state.getCurrentTerm() || isLeader() || !getRaftConf().containsInConf(candidateId)) {
+      return false;
+    } else if (isFollower() && state.hasLeader()
+        && role.getFollowerState().map(FollowerState::shouldWithholdVotes).orElse(false)) {
+      return false;
+    }
+    return state.isLogUpToDate(candidateLastEntry);
+  }
+
   @Override
   public RequestVoteReplyProto requestVote(RequestVoteRequestProto r)
       throws IOException {
@@ -716,16 +829,17 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
     return requestVote(RaftPeerId.valueOf(request.getRequestorId()),
         ProtoUtils.toRaftGroupId(request.getRaftGroupId()),
         r.getCandidateTerm(),
-        ServerProtoUtils.toTermIndex(r.getCandidateLastEntry()));
+        ServerProtoUtils.toTermIndex(r.getCandidateLastEntry()),
+        r.getPreVote());
   }
 
   private RequestVoteReplyProto requestVote(
       RaftPeerId candidateId, RaftGroupId candidateGroupId,
-      long candidateTerm, TermIndex candidateLastEntry) throws IOException {
+      long candidateTerm, TermIndex candidateLastEntry, boolean preVote) throws IOException {
     CodeInjectionForTesting.execute(REQUEST_VOTE, getId(),
         candidateId, candidateTerm, candidateLastEntry);
-    LOG.debug("{}: receive requestVote({}, {}, {}, {})",
-        getId(), candidateId, candidateGroupId, candidateTerm, candidateLastEntry);
+    LOG.debug("{}: receive {}({}, {}, {}, {})", getId(), preVote? "preVote": "requestVote",
+        candidateId, candidateGroupId, candidateTerm, candidateLastEntry);
     assertLifeCycleState(RUNNING);
     assertGroup(candidateId, candidateGroupId);
 
@@ -734,7 +848,19 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
     final RequestVoteReplyProto reply;
     synchronized (this) {
       final FollowerState fs = role.getFollowerState().orElse(null);
-      if (shouldWithholdVotes(candidateTerm)) {
+      if (preVote) {
+        // decide before waking up a quiescent follower; a pre-vote changes neither the term nor the vote
+        voteGranted = shouldGrantPreVote(candidateId, candidateTerm, candidateLastEntry);
+      }
+      if (fs != null) {
+        // an election wakes up a quiescent group
+        fs.setQuiescent(false);
+      }
+      if (preVote) {
+        LOG.debug("{}-{}: {} pre-vote to candidate {} with term {}. State: leader={}, term={}",
+            getId(), role, voteGranted? "Grant": "Reject", candidateId, candidateTerm,
+            state.getLeaderId(), state.getCurrentTerm());
+      } else if (shouldWithholdVotes(candidateTerm)) {
         LOG.info("{}-{}: Withhold vote from candidate {} with term {}. State: leader={}, term={}, lastRpcElapsed={}",
             getId(), role, candidateId, candidateTerm, state.getLeaderId(), state.getCurrentTerm(),
             fs != null? fs.getLastRpcTime().elapsedTimeMs() + "ms": null);
@@ -817,7 +943,8 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
         previous, r.getLeaderCommit(), r.getInitializing(), entries);
     try {
       return appendEntriesAsync(requestorId, r.getLeaderTerm(), previous, r.getLeaderCommit(),
-          request.getCallId(), r.getInitializing(), r.getCommitInfosList(), entries);
+          request.getCallId(), r.getInitializing(), r.getQuiescent(), r.getTimeoutNow(),
+          r.getCommitInfosList(), entries);
     } catch(Throwable t) {
       LOG.error(getId() + ": Failed appendEntriesAsync " + r, t);
       throw t;
@@ -868,11 +995,12 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
 
   private CompletableFuture<AppendEntriesReplyProto> appendEntriesAsync(
       RaftPeerId leaderId, long leaderTerm, TermIndex previous, long leaderCommit, long callId, boolean initializing,
-      List<CommitInfoProto> commitInfos, LogEntryProto... entries) {
+      boolean quiescent, boolean timeoutNow, List<CommitInfoProto> commitInfos, LogEntryProto... entries) {
     final boolean isHeartbeat = entries.length == 0;
     logAppendEntries(isHeartbeat,
         () -> getId() + ": receive appendEntries(" + leaderId + ", " + leaderTerm + ", "
-            + previous + ", " + leaderCommit + ", " + initializing
+            + previous + ", " + leaderCommit + ", " + initializing + (quiescent? ", quiescent": "")
+            + (timeoutNow? ", timeoutNow": "")
             + ", commits" + ProtoUtils.toString(commitInfos)
             + ", entries: " + ServerProtoUtils.toString(entries));
     final List<CompletableFuture<Long>> futures;
@@ -899,11 +1027,13 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
         return JavaUtils.completeExceptionally(e);
       }
       state.setLeader(leaderId, "appendEntries");
+      transferLeadership.onNewLeader(leaderId);
 
       if (!initializing && lifeCycle.compareAndTransition(STARTING, RUNNING)) {
         role.startFollowerState(this);
       }
       followerState = updateLastRpcTime(FollowerState.UpdateType.APPEND_START);
+      followerState.ifPresent(fs -> fs.setQuiescent(quiescent));
 
       // Check that the append entries are not inconsistent. There are 3
       // scenarios which can result in inconsistency:
@@ -926,8 +1056,8 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
 
     futures = state.getLog().append(entries);
     commitInfos.forEach(commitInfoCache::update);
-
     if (!isHeartbeat) {
+      tracer.begin(entries[0].getIndex(), entries[entries.length - 1].getIndex(), RequestTracer.Stage.RECEIVE);
       CodeInjectionForTesting.execute(RaftLog.LOG_SYNC, getId(), null);
     }
     return JavaUtils.allOf(futures).whenCompleteAsync(
@@ -937,8 +1067,15 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
       synchronized(this) {
         state.updateStatemachine(leaderCommit, currentTerm);
         final long n = isHeartbeat? state.getLog().getNextIndex(): entries[entries.length - 1].getIndex() + 1;
+        tracer.recordUpTo(n - 1, RequestTracer.Stage.FLUSH);
+        tracer.recordUpTo(state.getLog().getLastCommittedIndex(), RequestTracer.Stage.COMMIT);
         reply = ServerProtoUtils.toAppendEntriesReplyProto(leaderId, getId(), groupId, currentTerm,
             state.getLog().getLastCommittedIndex(), n, SUCCESS, callId);
+        if (timeoutNow && isFollower() && state.getCurrentTerm() == currentTerm) {
+          // the leader is transferring the leadership to this server
+          LOG.info("{}: receive TimeoutNow from {} at term {}", getId(), leaderId, currentTerm);
+          changeToCandidate(true);
+        }
       }
       logAppendEntries(isHeartbeat, () ->
           getId() + ": succeeded to handle AppendEntries. Reply: " + ServerProtoUtils.toString(reply));
@@ -1201,9 +1338,9 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
   }
 
   synchronized RequestVoteRequestProto createRequestVoteRequest(
-      RaftPeerId targetId, long term, TermIndex lastEntry) {
+      RaftPeerId targetId, long term, TermIndex lastEntry, boolean preVote) {
     return ServerProtoUtils.toRequestVoteRequestProto(getId(), targetId,
-        groupId, term, lastEntry);
+        groupId, term, lastEntry, preVote);
   }
 
   public void submitUpdateCommitEvent() {
@@ -1227,11 +1364,12 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
     final RaftPeerId serverId = getId();
     final RetryCache.CacheEntry cacheEntry = retryCache.getOrCreateEntry(clientId, callId);
     if (cacheEntry.isFailed()) {
-      retryCache.refreshEntry(new RetryCache.CacheEntry(cacheEntry.getKey()));
+      retryCache.refreshEntry(new RetryCache.CacheEntry(clientId, callId));
     }
 
     final long logIndex = logEntry.getIndex();
     return stateMachineFuture.whenComplete((reply, exception) -> {
+      tracer.record(logIndex, RequestTracer.Stage.APPLY);
       final RaftClientReply r;
       if (exception == null) {
         r = new RaftClientReply(clientId, serverId, groupId, callId, true, reply, null, logIndex, getCommitInfos());
@@ -1243,13 +1381,16 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
       }
 
       // update pending request
+      boolean replied = false;
       synchronized (RaftServerImpl.this) {
         final LeaderState leaderState = role.getLeaderState().orElse(null);
         if (isLeader() && leaderState != null) { // is leader and is running
           leaderState.replyPendingRequest(logIndex, r);
+          replied = true;
         }
       }
       cacheEntry.updateResult(r);
+      tracer.end(logIndex, replied? RequestTracer.Stage.REPLY: RequestTracer.Stage.APPLY);
     });
   }
 
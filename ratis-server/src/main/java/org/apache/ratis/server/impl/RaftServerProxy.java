@@ -20,6 +20,7 @@ package org.apache.ratis.server.impl;
 import org.apache.ratis.RaftConfigKeys;
 import org.apache.ratis.conf.Parameters;
 import org.apache.ratis.conf.RaftProperties;
+import org.apache.ratis.metrics.MetricsHttpServer;
 import org.apache.ratis.proto.RaftProtos.AppendEntriesReplyProto;
 import org.apache.ratis.proto.RaftProtos.AppendEntriesRequestProto;
 import org.apache.ratis.proto.RaftProtos.CommitInfoProto;
@@ -158,6 +159,7 @@ public class RaftServerProxy implements RaftServer {
   private final ServerFactory factory;
 
   private ExecutorService implExecutor;
+  private volatile MetricsHttpServer metricsHttpServer;
 
   private final ImplMap impls = new ImplMap();
 
@@ -173,7 +175,8 @@ public class RaftServerProxy implements RaftServer {
     this.id = id != null? id: RaftPeerId.valueOf(getIdStringFrom(serverRpc));
     this.lifeCycle = new LifeCycle(this.id + "-" + getClass().getSimpleName());
 
-    this.implExecutor = Executors.newSingleThreadExecutor();
+    // the groups are independent of each other so that they can be initialized concurrently
+    this.implExecutor = Executors.newFixedThreadPool(RaftServerConfigKeys.groupInitThreads(properties));
   }
 
   /** Check the storage dir and add groups*/
@@ -298,6 +301,11 @@ public class RaftServerProxy implements RaftServer {
     lifeCycle.startAndTransition(() -> {
       LOG.info("{}: start RPC server", getId());
       getServerRpc().start();
+      if (RaftServerConfigKeys.Metrics.Http.enabled(properties)) {
+        final int port = RaftServerConfigKeys.Metrics.Http.port(properties);
+        metricsHttpServer = new MetricsHttpServer(new InetSocketAddress(port));
+        metricsHttpServer.start();
+      }
     }, IOException.class);
   }
 
@@ -319,6 +327,9 @@ public class RaftServerProxy implements RaftServer {
       } catch(IOException ignored) {
         LOG.warn(getId() + ": Failed to close " + getRpcType() + " server", ignored);
       }
+      if (metricsHttpServer != null) {
+        metricsHttpServer.close();
+      }
     });
   }
 
@@ -437,6 +448,16 @@ public class RaftServerProxy implements RaftServer {
     return submitRequest(request.getRaftGroupId(), impl -> impl.setConfigurationAsync(request));
   }
 
+  @Override
+  public RaftClientReply transferLeadership(TransferLeadershipRequest request) throws IOException {
+    return getImpl(request.getRaftGroupId()).transferLeadership(request);
+  }
+
+  @Override
+  public CompletableFuture<RaftClientReply> transferLeadershipAsync(TransferLeadershipRequest request) {
+    return submitRequest(request.getRaftGroupId(), impl -> impl.transferLeadershipAsync(request));
+  }
+
   @Override
   public RequestVoteReplyProto requestVote(RequestVoteRequestProto request) throws IOException {
     return getImpl(request.getServerRequest()).requestVote(request);
@@ -0,0 +1,182 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.server.impl;
+
+import org.apache.ratis.conf.RaftProperties;
+import org.apache.ratis.metrics.RatisMetrics;
+import org.apache.ratis.server.RaftServerConfigKeys;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Trace the stages of the sampled log entries, see {@link RaftServerConfigKeys.Trace}.
+ *
+ * An entry is sampled if its index is a multiple of the sample interval
+ * so that all the peers sample the same entries, i.e. the log index is the trace id.
+ * The leader traces an entry from {@link Stage#SUBMIT} to {@link Stage#REPLY}
+ * and a follower traces it from {@link Stage#RECEIVE} to {@link Stage#APPLY}.
+ * When a trace ends, the time spent on each stage, i.e. the time since the previous recorded stage,
+ * is added to the trace.[stage] timer.
+ */
+class RequestTracer {
+  static final Logger LOG = LoggerFactory.getLogger(RequestTracer.class);
+
+  enum Stage {
+    /** The leader has received the client request. */
+    SUBMIT,
+    /** The leader has appended the entry to its log. */
+    APPEND,
+    /** The follower has received the entry from the leader. */
+    RECEIVE,
+    /** The entry has been flushed to the local log. */
+    FLUSH,
+    /** The entry has been committed. */
+    COMMIT,
+    /** The entry has been applied to the state machine. */
+    APPLY,
+    /** The leader has replied to the client. */
+    REPLY;
+
+    private final String metricName = "trace." + name().toLowerCase();
+  }
+
+  private static final Stage[] STAGES = Stage.values();
+
+  private static class Trace {
+    private final AtomicLongArray nanos = new AtomicLongArray(STAGES.length);
+
+    /** Record the stage unless it was already recorded. */
+    void record(Stage stage, long now) {
+      nanos.compareAndSet(stage.ordinal(), 0, now);
+    }
+
+    @Override
+    public String toString() {
+      final StringBuilder b = new StringBuilder();
+      long previous = 0;
+      for (Stage stage : STAGES) {
+        final long n = nanos.get(stage.ordinal());
+        if (n != 0) {
+          b.append(previous == 0? "": ", ").append(stage);
+          if (previous != 0) {
+            b.append(" +").append(TimeUnit.NANOSECONDS.toMicros(n - previous)).append("us");
+          }
+          previous = n;
+        }
+      }
+      return b.toString();
+    }
+  }
+
+  private final Object name;
+  private final int sampleInterval;
+  private final boolean logEnabled;
+  private final RatisMetrics metrics;
+  private final ConcurrentNavigableMap<Long, Trace> traces = new ConcurrentSkipListMap<>();
+
+  RequestTracer(Object name, RaftProperties properties, RatisMetrics metrics) {
+    this(name, RaftServerConfigKeys.Trace.sampleInterval(properties),
+        RaftServerConfigKeys.Trace.logEnabled(properties), metrics);
+  }
+
+  RequestTracer(Object name, int sampleInterval, boolean logEnabled, RatisMetrics metrics) {
+    this.name = name;
+    this.sampleInterval = sampleInterval;
+    this.logEnabled = logEnabled;
+    this.metrics = metrics;
+  }
+
+  boolean isSampled(long index) {
+    return sampleInterval > 0 && index % sampleInterval == 0;
+  }
+
+  /** Begin the trace of the given index if it is sampled. */
+  void begin(long index, Stage stage, long nanos) {
+    if (isSampled(index)) {
+      final Trace trace = new Trace();
+      trace.record(stage, nanos);
+      traces.put(index, trace);
+    }
+  }
+
+  /** Begin the traces of the sampled indices in the given range. */
+  void begin(long firstIndex, long lastIndex, Stage stage) {
+    if (sampleInterval <= 0) {
+      return;
+    }
+    final long now = System.nanoTime();
+    final long r = firstIndex % sampleInterval;
+    for(long i = r == 0? firstIndex: firstIndex - r + sampleInterval; i <= lastIndex; i += sampleInterval) {
+      begin(i, stage, now);
+    }
+  }
+
+  /** Record the given stage for the trace of the given index, if there is any. */
+  void record(long index, Stage stage) {
+    final Trace trace = traces.get(index);
+    if (trace != null) {
+      trace.record(stage, System.nanoTime());
+    }
+  }
+
+  /** Record the given stage for all the traces with index less than or equal to the given index. */
+  void recordUpTo(long index, Stage stage) {
+    if (traces.isEmpty()) {
+      return;
+    }
+    final long now = System.nanoTime();
+    for(Trace trace : traces.headMap(index, true).values()) {
+      trace.record(stage, now);
+    }
+  }
+
+  /**
+   * Record the last stage and end the trace of the given index, if there is any.
+   * The unfinished traces with smaller indices are discarded.
+   */
+  void end(long index, Stage stage) {
+    if (traces.isEmpty()) {
+      return;
+    }
+    final Trace trace = traces.remove(index);
+    traces.headMap(index).clear();
+    if (trace == null) {
+      return;
+    }
+    trace.record(stage, System.nanoTime());
+
+    long previous = 0;
+    for (Stage s : STAGES) {
+      final long n = trace.nanos.get(s.ordinal());
+      if (n != 0) {
+        if (previous != 0) {
+          metrics.timer(s.metricName).update(n - previous, TimeUnit.NANOSECONDS);
+        }
+        previous = n;
+      }
+    }
+    if (logEnabled) {
+      LOG.info("{}: trace index {}: {}", name, index, trace);
+    }
+  }
+}
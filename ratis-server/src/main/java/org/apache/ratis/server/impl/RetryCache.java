@@ -19,60 +19,51 @@ package org.apache.ratis.server.impl;
 
 import java.io.Closeable;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.ratis.protocol.ClientId;
 import org.apache.ratis.protocol.RaftClientReply;
 import org.apache.ratis.thirdparty.com.google.common.annotations.VisibleForTesting;
-import org.apache.ratis.thirdparty.com.google.common.cache.Cache;
-import org.apache.ratis.thirdparty.com.google.common.cache.CacheBuilder;
 import org.apache.ratis.util.JavaUtils;
 import org.apache.ratis.util.Preconditions;
 import org.apache.ratis.util.TimeDuration;
+import org.apache.ratis.util.TimeoutScheduler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * The retry cache of the client requests, which is keyed by the client id and the call id.
+ *
+ * The entries are organized per client: each {@link ClientCache} keeps the call ids, the write times
+ * and the entries in parallel arrays of a ring sorted by the call ids.
+ * Since a client allocates the call ids in increasing order,
+ * a new entry is usually appended to the end of the ring
+ * and a lookup is a binary search within the entries of the client.
+ *
+ * An entry expires after the expiry time since it is written.
+ * The expired entries at the beginning of a ring are removed when the client cache is accessed;
+ * an expired entry behind an unexpired one is not returned and it is removed after the unexpired one.
+ * The caches of all clients are swept once per expiry time by a scheduler shared by all the retry caches
+ * so that the entries of inactive clients are removed.
+ *
+ * A request may also carry the smallest call id of the client which is not yet replied;
+ * see {@link org.apache.ratis.proto.RaftProtos.SlidingWindowEntry#getMinUnrepliedCallId()}.
+ * Since the client will not retry the calls with smaller call ids,
+ * the completed entries of these calls are removed without waiting for the expiry time.
+ */
 public class RetryCache implements Closeable {
   static final Logger LOG = LoggerFactory.getLogger(RetryCache.class);
 
-  static class CacheKey {
-    private final ClientId clientId;
-    private final long callId;
-
-    CacheKey(ClientId clientId, long callId) {
-      this.clientId = clientId;
-      this.callId = callId;
-    }
-
-    @Override
-    public int hashCode() {
-      return clientId.hashCode() ^ Long.hashCode(callId);
-    }
-
-    @Override
-    public boolean equals(Object obj) {
-      if (this == obj) {
-        return true;
-      }
-      if (obj instanceof CacheKey) {
-        CacheKey e = (CacheKey) obj;
-        return e.clientId.equals(clientId) && callId == e.callId;
-      }
-      return false;
-    }
-
-    @Override
-    public String toString() {
-      return clientId.toString() + ":" + this.callId;
-    }
-  }
-
   /**
    * CacheEntry is tracked using unique client ID and callId of the RPC request
    */
   @VisibleForTesting
   public static class CacheEntry {
-    private final CacheKey key;
+    private final ClientId clientId;
+    private final long callId;
     private final CompletableFuture<RaftClientReply> replyFuture =
         new CompletableFuture<>();
 
@@ -85,13 +76,14 @@ public class RetryCache implements Closeable {
      */
     private volatile boolean failed = false;
 
-    CacheEntry(CacheKey key) {
-      this.key = key;
+    CacheEntry(ClientId clientId, long callId) {
+      this.clientId = clientId;
+      this.callId = callId;
     }
 
     @Override
     public String toString() {
-      return key + ":" + (isDone() ? "done" : "pending");
+      return clientId + ":" + callId + ":" + (isDone() ? "done" : "pending");
     }
 
     boolean isDone() {
@@ -125,8 +117,12 @@ public class RetryCache implements Closeable {
       return replyFuture;
     }
 
-    CacheKey getKey() {
-      return key;
+    ClientId getClientId() {
+      return clientId;
+    }
+
+    long getCallId() {
+      return callId;
     }
   }
 
@@ -148,83 +144,310 @@ public class RetryCache implements Closeable {
     }
   }
 
-  private final Cache<CacheKey, CacheEntry> cache;
+  /**
+   * The entries of a client in a ring sorted by the call ids.
+   * The methods must be called with the lock of this object.
+   */
+  static class ClientCache {
+    static final int INITIAL_CAPACITY = 8;
+
+    private final ClientId clientId;
+    private long[] callIds = new long[INITIAL_CAPACITY];
+    private long[] writeNanos = new long[INITIAL_CAPACITY];
+    private CacheEntry[] entries = new CacheEntry[INITIAL_CAPACITY];
+    /** The physical index of the first entry. */
+    private int head = 0;
+    private int size = 0;
+    /** Is this removed from the map? If so, a new cache must be used for the client. */
+    private boolean removed = false;
+
+    ClientCache(ClientId clientId) {
+      this.clientId = clientId;
+    }
+
+    private int physical(int i) {
+      return (head + i) & (entries.length - 1);
+    }
+
+    int size() {
+      return size;
+    }
+
+    boolean isRemoved() {
+      return removed;
+    }
+
+    void setRemoved() {
+      removed = true;
+    }
+
+    /**
+     * @return the logical index of the given call id if it exists;
+     *         otherwise, return -(insertion point) - 1.
+     */
+    private int search(long callId) {
+      if (size == 0 || callId > callIds[physical(size - 1)]) {
+        return -size - 1;
+      }
+      int low = 0;
+      int high = size - 1;
+      while (low <= high) {
+        final int mid = (low + high) >>> 1;
+        final long midCallId = callIds[physical(mid)];
+        if (midCallId < callId) {
+          low = mid + 1;
+        } else if (midCallId > callId) {
+          high = mid - 1;
+        } else {
+          return mid;
+        }
+      }
+      return -low - 1;
+    }
+
+    /** @return the unexpired entry of the given call id, or null if it does not exist. */
+    CacheEntry get(long callId, long nowNanos, long expiryNanos) {
+      final int i = search(callId);
+      if (i < 0) {
+        return null;
+      }
+      final int p = physical(i);
+      return nowNanos - writeNanos[p] < expiryNanos? entries[p]: null;
+    }
+
+    /**
+     * Put the given entry, which replaces the existing entry of the same call id.
+     * @return true if the entry is added; or false if it replaces an existing entry.
+     */
+    boolean put(CacheEntry entry, long nowNanos) {
+      final int i = search(entry.getCallId());
+      if (i >= 0) {
+        final int p = physical(i);
+        entries[p] = entry;
+        writeNanos[p] = nowNanos;
+        return false;
+      }
+
+      if (size == entries.length) {
+        resize(entries.length << 1);
+      }
+      final int insertion = -i - 1;
+      // shift the entries after the insertion point, which is usually at the end
+      for(int j = size; j > insertion; j--) {
+        final int to = physical(j);
+        final int from = physical(j - 1);
+        callIds[to] = callIds[from];
+        writeNanos[to] = writeNanos[from];
+        entries[to] = entries[from];
+      }
+      final int p = physical(insertion);
+      callIds[p] = entry.getCallId();
+      writeNanos[p] = nowNanos;
+      entries[p] = entry;
+      size++;
+      return true;
+    }
+
+    /**
+     * Remove the entries at the beginning which are either expired
+     * or completed with call ids smaller than the given minUnrepliedCallId,
+     * and then shrink the arrays if they are mostly unused.
+     * @return the number of the removed entries.
+     */
+    int expire(long nowNanos, long expiryNanos, long minUnrepliedCallId) {
+      final int previous = size;
+      for(; size > 0 && (nowNanos - writeNanos[head] >= expiryNanos
+          || callIds[head] < minUnrepliedCallId && entries[head].isDone()); size--) {
+        entries[head] = null;
+        head = physical(1);
+      }
+      if (entries.length > INITIAL_CAPACITY && size < entries.length >> 2) {
+        resize(entries.length >> 1);
+      }
+      return previous - size;
+    }
+
+    private void resize(int capacity) {
+      final long[] newCallIds = new long[capacity];
+      final long[] newWriteNanos = new long[capacity];
+      final CacheEntry[] newEntries = new CacheEntry[capacity];
+      for(int i = 0; i < size; i++) {
+        final int p = physical(i);
+        newCallIds[i] = callIds[p];
+        newWriteNanos[i] = writeNanos[p];
+        newEntries[i] = entries[p];
+      }
+      callIds = newCallIds;
+      writeNanos = newWriteNanos;
+      entries = newEntries;
+      head = 0;
+    }
+
+    @Override
+    public String toString() {
+      return clientId + ": size=" + size + ", capacity=" + entries.length;
+    }
+  }
+
+  /** The scheduler shared by all the retry caches for sweeping the client caches. */
+  private static final TimeoutScheduler SWEEPER = TimeoutScheduler.newInstance(1);
+
+  private final TimeDuration expiryTime;
+  private final long expiryNanos;
+  private final ConcurrentMap<ClientId, ClientCache> clients = new ConcurrentHashMap<>();
+  /** The number of entries in all the client caches. */
+  private final AtomicLong size = new AtomicLong();
+  private volatile boolean closed = false;
 
   /**
    * @param expirationTime time for an entry to expire in milliseconds
    */
   RetryCache(TimeDuration expirationTime) {
-    cache = CacheBuilder.newBuilder()
-        .expireAfterWrite(expirationTime.getDuration(), expirationTime.getUnit())
-        .build();
+    Preconditions.assertTrue(!expirationTime.isNonPositive(), () -> "expirationTime = " + expirationTime);
+    this.expiryTime = expirationTime;
+    this.expiryNanos = expirationTime.toLong(TimeUnit.NANOSECONDS);
+    scheduleSweep();
   }
 
-  CacheEntry getOrCreateEntry(ClientId clientId, long callId) {
-    final CacheKey key = new CacheKey(clientId, callId);
-    final CacheEntry entry;
+  private ClientCache getClientCache(ClientId clientId) {
+    final ClientCache cache = clients.get(clientId);
+    return cache != null? cache: clients.computeIfAbsent(clientId, ClientCache::new);
+  }
+
+  private void scheduleSweep() {
+    if (!closed) {
+      SWEEPER.onTimeout(expiryTime, this::sweep, LOG, () -> "Failed to sweep the retry cache");
+    }
+  }
+
+  /** Remove the expired entries of all the clients and then schedule the next sweep. */
+  private void sweep() {
     try {
-      entry = cache.get(key, () -> new CacheEntry(key));
-    } catch (ExecutionException e) {
-      throw new IllegalStateException(e);
+      final long now = System.nanoTime();
+      for(ClientCache cache : clients.values()) {
+        synchronized (cache) {
+          expire(cache, now, 0);
+          if (cache.size() == 0) {
+            cache.setRemoved();
+            clients.remove(cache.clientId, cache);
+          }
+        }
+      }
+      LOG.debug("Swept the retry cache: {} clients and {} entries remaining", clients.size(), size.get());
+    } finally {
+      scheduleSweep();
+    }
+  }
+
+  /** The caller must hold the lock of the given cache. */
+  private void expire(ClientCache cache, long nowNanos, long minUnrepliedCallId) {
+    final int removed = cache.expire(nowNanos, expiryNanos, minUnrepliedCallId);
+    if (removed > 0) {
+      size.addAndGet(-removed);
+    }
+  }
+
+  /** The caller must hold the lock of the given cache. */
+  private void put(ClientCache cache, CacheEntry entry, long nowNanos) {
+    if (cache.put(entry, nowNanos)) {
+      size.incrementAndGet();
     }
-    Preconditions.assertTrue(entry != null && !entry.isCompletedNormally(),
+  }
+
+  CacheEntry getOrCreateEntry(ClientId clientId, long callId) {
+    final long now = System.nanoTime();
+    CacheEntry entry = null;
+    while (entry == null) {
+      final ClientCache cache = getClientCache(clientId);
+      synchronized (cache) {
+        if (cache.isRemoved()) {
+          continue;
+        }
+        expire(cache, now, 0);
+        entry = cache.get(callId, now, expiryNanos);
+        if (entry == null) {
+          entry = new CacheEntry(clientId, callId);
+          put(cache, entry, now);
+        }
+      }
+    }
+    Preconditions.assertTrue(!entry.isCompletedNormally(),
         "retry cache entry should be pending: %s", entry);
     return entry;
   }
 
   CacheEntry refreshEntry(CacheEntry newEntry) {
-    cache.put(newEntry.key, newEntry);
-    return newEntry;
+    final long now = System.nanoTime();
+    for(;;) {
+      final ClientCache cache = getClientCache(newEntry.getClientId());
+      synchronized (cache) {
+        if (!cache.isRemoved()) {
+          put(cache, newEntry, now);
+          return newEntry;
+        }
+      }
+    }
   }
 
   CacheQueryResult queryCache(ClientId clientId, long callId) {
-    CacheKey key = new CacheKey(clientId, callId);
-    final CacheEntry newEntry = new CacheEntry(key);
-    CacheEntry cacheEntry;
-    try {
-      cacheEntry = cache.get(key, () -> newEntry);
-    } catch (ExecutionException e) {
-      throw new IllegalStateException(e);
-    }
-
-    if (cacheEntry == newEntry) {
-      // this is the entry we just newly created
-      return new CacheQueryResult(cacheEntry, false);
-    } else if (!cacheEntry.isDone() || !cacheEntry.isFailed()){
-      // the previous attempt is either pending or successful
-      return new CacheQueryResult(cacheEntry, true);
-    }
-
-    // the previous attempt failed, replace it with a new one.
-    synchronized (this) {
-      // need to recheck, since there may be other retry attempts being
-      // processed at the same time. The recheck+replacement should be protected
-      // by lock.
-      CacheEntry currentEntry = cache.getIfPresent(key);
-      if (currentEntry == cacheEntry || currentEntry == null) {
-        // if the failed entry has not got replaced by another retry, or the
-        // failed entry got invalidated, we add a new cache entry
-        return new CacheQueryResult(refreshEntry(newEntry), false);
-      } else {
-        return new CacheQueryResult(currentEntry, true);
+    return queryCache(clientId, callId, 0);
+  }
+
+  /**
+   * @param minUnrepliedCallId the smallest call id of the client which is not yet replied, or 0 if it is unknown.
+   */
+  CacheQueryResult queryCache(ClientId clientId, long callId, long minUnrepliedCallId) {
+    final long now = System.nanoTime();
+    for(;;) {
+      final ClientCache cache = getClientCache(clientId);
+      synchronized (cache) {
+        if (cache.isRemoved()) {
+          continue;
+        }
+        expire(cache, now, minUnrepliedCallId);
+        final CacheEntry cacheEntry = cache.get(callId, now, expiryNanos);
+        if (cacheEntry != null && (!cacheEntry.isDone() || !cacheEntry.isFailed())) {
+          // the previous attempt is either pending or successful
+          return new CacheQueryResult(cacheEntry, true);
+        }
+        // a new request, or the previous attempt failed: add a new entry.
+        final CacheEntry newEntry = new CacheEntry(clientId, callId);
+        put(cache, newEntry, now);
+        return new CacheQueryResult(newEntry, false);
       }
     }
   }
 
-  @VisibleForTesting
+  /** @return the number of entries, which does not count the expired entries not yet removed. */
   long size() {
-    return cache.size();
+    return size.get();
+  }
+
+  @VisibleForTesting
+  int getNumClients() {
+    return clients.size();
   }
 
   @VisibleForTesting
   CacheEntry get(ClientId clientId, long callId) {
-    return cache.getIfPresent(new CacheKey(clientId, callId));
+    final ClientCache cache = clients.get(clientId);
+    if (cache == null) {
+      return null;
+    }
+    synchronized (cache) {
+      return cache.get(callId, System.nanoTime(), expiryNanos);
+    }
   }
 
   @Override
   public synchronized void close() {
-    if (cache != null) {
-      cache.invalidateAll();
+    closed = true;
+    for(ClientCache cache : clients.values()) {
+      synchronized (cache) {
+        cache.setRemoved();
+        clients.remove(cache.clientId, cache);
+        size.addAndGet(-cache.size());
+      }
     }
   }
 
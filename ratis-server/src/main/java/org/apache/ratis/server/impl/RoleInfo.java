@@ -124,8 +124,8 @@ class RoleInfo {
     }
   }
 
-  void startLeaderElection(RaftServerImpl server) {
-    updateAndGet(leaderElection, new LeaderElection(server)).start();
+  void startLeaderElection(RaftServerImpl server, boolean skipPreVote) {
+    updateAndGet(leaderElection, new LeaderElection(server, skipPreVote)).start();
   }
 
   void shutdownLeaderElection() {
@@ -118,17 +118,21 @@ public interface ServerProtoUtils {
   static RaftConfigurationProto.Builder toRaftConfigurationProto(RaftConfiguration conf) {
     return RaftConfigurationProto.newBuilder()
         .addAllPeers(ProtoUtils.toRaftPeerProtos(conf.getPeersInConf()))
-        .addAllOldPeers(ProtoUtils.toRaftPeerProtos(conf.getPeersInOldConf()));
+        .addAllOldPeers(ProtoUtils.toRaftPeerProtos(conf.getPeersInOldConf()))
+        .addAllLearners(ProtoUtils.toRaftPeerProtos(conf.getLearnersInConf()))
+        .addAllOldLearners(ProtoUtils.toRaftPeerProtos(conf.getLearnersInOldConf()));
   }
 
   static RaftConfiguration toRaftConfiguration(LogEntryProto entry) {
     Preconditions.assertTrue(entry.hasConfigurationEntry());
     final RaftConfigurationProto proto = entry.getConfigurationEntry();
     final RaftConfiguration.Builder b = RaftConfiguration.newBuilder()
-        .setConf(ProtoUtils.toRaftPeerArray(proto.getPeersList()))
+        .setConf(ProtoUtils.toRaftPeerArray(proto.getPeersList()),
+            ProtoUtils.toRaftPeerArray(proto.getLearnersList()))
         .setLogEntryIndex(entry.getIndex());
     if (proto.getOldPeersCount() > 0) {
-      b.setOldConf(ProtoUtils.toRaftPeerArray(proto.getOldPeersList()));
+      b.setOldConf(ProtoUtils.toRaftPeerArray(proto.getOldPeersList()),
+          ProtoUtils.toRaftPeerArray(proto.getOldLearnersList()));
     }
     return b.build();
   }
@@ -268,10 +272,12 @@ public interface ServerProtoUtils {
   }
 
   static RequestVoteRequestProto toRequestVoteRequestProto(
-      RaftPeerId requestorId, RaftPeerId replyId, RaftGroupId groupId, long term, TermIndex lastEntry) {
+      RaftPeerId requestorId, RaftPeerId replyId, RaftGroupId groupId, long term, TermIndex lastEntry,
+      boolean preVote) {
     final RequestVoteRequestProto.Builder b = RequestVoteRequestProto.newBuilder()
         .setServerRequest(toRaftRpcRequestProtoBuilder(requestorId, replyId, groupId))
-        .setCandidateTerm(term);
+        .setCandidateTerm(term)
+        .setPreVote(preVote);
     if (lastEntry != null) {
       b.setCandidateLastEntry(toTermIndexProto(lastEntry));
     }
@@ -362,8 +368,8 @@ public interface ServerProtoUtils {
 
   static AppendEntriesRequestProto toAppendEntriesRequestProto(
       RaftPeerId requestorId, RaftPeerId replyId, RaftGroupId groupId, long leaderTerm,
-      List<LogEntryProto> entries, long leaderCommit, boolean initializing,
-      TermIndex previous, Collection<CommitInfoProto> commitInfos, long callId) {
+      List<LogEntryProto> entries, long leaderCommit, boolean initializing, boolean quiescent,
+      boolean timeoutNow, TermIndex previous, Collection<CommitInfoProto> commitInfos, long callId) {
     RaftRpcRequestProto.Builder rpcRequest = toRaftRpcRequestProtoBuilder(requestorId, replyId, groupId)
         .setCallId(callId);
     final AppendEntriesRequestProto.Builder b = AppendEntriesRequestProto
@@ -371,7 +377,9 @@ public interface ServerProtoUtils {
         .setServerRequest(rpcRequest)
         .setLeaderTerm(leaderTerm)
         .setLeaderCommit(leaderCommit)
-        .setInitializing(initializing);
+        .setInitializing(initializing)
+        .setQuiescent(quiescent)
+        .setTimeoutNow(timeoutNow);
     if (entries != null && !entries.isEmpty()) {
       b.addAllEntries(entries);
     }
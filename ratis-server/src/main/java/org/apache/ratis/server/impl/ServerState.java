@@ -358,6 +358,7 @@ public class ServerState implements Closeable {
   void setRaftConf(long logIndex, RaftConfiguration conf) {
     configurationManager.addConfiguration(logIndex, conf);
     server.getServerRpc().addPeers(conf.getPeers());
+    server.getServerRpc().addPeers(conf.getLearners());
     LOG.info("{}:{} set configuration {} at {}", getSelfId(), groupId, conf,
         logIndex);
     LOG.trace("{}: {}", getSelfId(), configurationManager);
@@ -17,7 +17,9 @@
  */
 package org.apache.ratis.server.impl;
 
+import com.codahale.metrics.Meter;
 import org.apache.ratis.conf.RaftProperties;
+import org.apache.ratis.metrics.RatisMetrics;
 import org.apache.ratis.protocol.Message;
 import org.apache.ratis.server.RaftServerConfigKeys;
 import org.apache.ratis.server.storage.RaftLog;
@@ -64,6 +66,10 @@ class StateMachineUpdater implements Runnable {
   private final Thread updater;
   private volatile State state = State.RUNNING;
 
+  private final RatisMetrics metrics;
+  /** The number of entries applied to the state machine. */
+  private final Meter applyMeter;
+
   StateMachineUpdater(StateMachine stateMachine, RaftServerImpl server,
       RaftLog raftLog, long lastAppliedIndex, RaftProperties properties) {
     this.properties = properties;
@@ -77,6 +83,11 @@ class StateMachineUpdater implements Runnable {
     autoSnapshotEnabled = RaftServerConfigKeys.Snapshot.autoTriggerEnabled(properties);
     autoSnapshotThreshold = RaftServerConfigKeys.Snapshot.autoTriggerThreshold(properties);
     updater = new Daemon(this);
+
+    this.metrics = new RatisMetrics(StateMachineUpdater.class, raftLog.getSelfId(), server.getGroupId());
+    this.applyMeter = metrics.meter("apply");
+    metrics.gauge("applied-index", this::getLastAppliedIndex);
+    metrics.gauge("backlog", () -> Math.max(0, raftLog.getLastCommittedIndex() - getLastAppliedIndex()));
   }
 
   void start() {
@@ -85,6 +96,7 @@ class StateMachineUpdater implements Runnable {
 
   private void stop() {
     state = State.STOP;
+    metrics.removeAll();
     try {
       stateMachine.close();
     } catch (IOException ignored) {
@@ -158,6 +170,7 @@ class StateMachineUpdater implements Runnable {
 
         final MemoizedSupplier<List<CompletableFuture<Message>>> futures
             = MemoizedSupplier.valueOf(() -> new ArrayList<>());
+        final long startIndex = lastAppliedIndex;
         while (lastAppliedIndex < committedIndex) {
           final long nextIndex = lastAppliedIndex + 1;
           final LogEntryProto next = raftLog.get(nextIndex);
@@ -178,6 +191,10 @@ class StateMachineUpdater implements Runnable {
           }
         }
 
+        if (lastAppliedIndex > startIndex) {
+          applyMeter.mark(lastAppliedIndex - startIndex);
+        }
+
         // check if need to trigger a snapshot
         if (shouldTakeSnapshot()) {
           if (futures.isInitialized()) {
@@ -0,0 +1,164 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.server.impl;
+
+import org.apache.ratis.protocol.RaftClientReply;
+import org.apache.ratis.protocol.RaftPeerId;
+import org.apache.ratis.protocol.TransferLeadershipException;
+import org.apache.ratis.protocol.TransferLeadershipRequest;
+import org.apache.ratis.util.TimeDuration;
+import org.apache.ratis.util.TimeoutScheduler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Transfer the leadership of a group to one of its followers;
+ * see Section 3.10 of the Raft dissertation.
+ *
+ * During a transfer, the leader stops accepting write requests.
+ * Once the target has caught up, the leader sends it a TimeoutNow,
+ * i.e. an appendEntries heartbeat with the timeoutNow flag,
+ * so that the target starts an election immediately.
+ * The transfer succeeds when the target is recognized as the new leader.
+ * It fails if another leader is recognized, if this server steps down before sending the TimeoutNow,
+ * or if the target does not become the leader within the timeout.
+ */
+class TransferLeadership {
+  public static final Logger LOG = LoggerFactory.getLogger(TransferLeadership.class);
+
+  private static class PendingRequest {
+    private final TransferLeadershipRequest request;
+    private final CompletableFuture<RaftClientReply> replyFuture = new CompletableFuture<>();
+    private final AtomicBoolean timeoutNowSent = new AtomicBoolean();
+
+    PendingRequest(TransferLeadershipRequest request) {
+      this.request = request;
+    }
+
+    RaftPeerId getTarget() {
+      return request.getNewLeader();
+    }
+
+    @Override
+    public String toString() {
+      return "TransferLeadership to " + getTarget() + (timeoutNowSent.get()? " (TimeoutNow sent)": "");
+    }
+  }
+
+  private final RaftServerImpl server;
+  private final TimeDuration timeout;
+  private final AtomicReference<PendingRequest> pending = new AtomicReference<>();
+
+  TransferLeadership(RaftServerImpl server, TimeDuration timeout) {
+    this.server = server;
+    this.timeout = timeout;
+  }
+
+  /** @return true iff a transfer is in progress. */
+  boolean isSteppingDown() {
+    return pending.get() != null;
+  }
+
+  /**
+   * Start a transfer unless another transfer is in progress.
+   * @param scheduler the scheduler of the leader for timing out the transfer.
+   */
+  CompletableFuture<RaftClientReply> start(TransferLeadershipRequest request, TimeoutScheduler scheduler) {
+    final PendingRequest p = new PendingRequest(request);
+    if (!pending.compareAndSet(null, p)) {
+      final PendingRequest previous = pending.get();
+      if (previous != null && previous.getTarget().equals(request.getNewLeader())) {
+        return previous.replyFuture; // a retry of the same transfer
+      }
+      final String reason = previous + " is in progress";
+      LOG.warn("{}: Failed {} since {}", server.getId(), request, reason);
+      return CompletableFuture.completedFuture(newFailedReply(request, reason));
+    }
+    LOG.info("{}:{} starts {}", server.getId(), server.getGroupId(), p);
+    scheduler.onTimeout(timeout, () -> finish(p, false, "timed out after " + timeout),
+        LOG, () -> "Failed to timeout " + p);
+    return p.replyFuture;
+  }
+
+  /**
+   * @return true iff the given follower is the target of the transfer,
+   *         it has caught up with the given last index and a TimeoutNow has not yet been sent to it.
+   */
+  boolean isTimeoutNowPending(FollowerInfo follower, long lastIndex) {
+    return isTimeoutNowPending(pending.get(), follower, lastIndex);
+  }
+
+  private static boolean isTimeoutNowPending(PendingRequest p, FollowerInfo follower, long lastIndex) {
+    return p != null && !p.timeoutNowSent.get()
+        && p.getTarget().equals(follower.getPeer().getId())
+        && follower.getMatchIndex() >= lastIndex;
+  }
+
+  /** @return true iff the caller should send a TimeoutNow to the given follower. */
+  boolean sendTimeoutNow(FollowerInfo follower, long lastIndex) {
+    final PendingRequest p = pending.get();
+    if (!isTimeoutNowPending(p, follower, lastIndex) || !p.timeoutNowSent.compareAndSet(false, true)) {
+      return false;
+    }
+    LOG.info("{}:{} sends TimeoutNow to {}", server.getId(), server.getGroupId(), p.getTarget());
+    return true;
+  }
+
+  /**
+   * Called when the given peer is recognized as the leader, including this server itself.
+   * The transfer succeeds if the given peer is the target; otherwise, it fails.
+   */
+  void onNewLeader(RaftPeerId leaderId) {
+    final PendingRequest p = pending.get();
+    if (p != null) {
+      final boolean success = p.getTarget().equals(leaderId);
+      finish(p, success, (success? "": "another ") + "new leader " + leaderId + " is elected");
+    }
+  }
+
+  /**
+   * Called when this server steps down from the leader.
+   * The transfer fails unless a TimeoutNow has been sent to the target,
+   * in which case the step down is expected and the transfer completes in {@link #onNewLeader(RaftPeerId)}.
+   */
+  void onStepDown() {
+    final PendingRequest p = pending.get();
+    if (p != null && !p.timeoutNowSent.get()) {
+      finish(p, false, server.getId() + " stepped down before sending TimeoutNow");
+    }
+  }
+
+  private void finish(PendingRequest p, boolean success, String reason) {
+    if (!pending.compareAndSet(p, null)) {
+      return;
+    }
+    LOG.info("{}:{} {} {}: {}", server.getId(), server.getGroupId(), success? "completed": "failed", p, reason);
+    p.replyFuture.complete(success? new RaftClientReply(p.request, server.getCommitInfos())
+        : newFailedReply(p.request, reason));
+  }
+
+  RaftClientReply newFailedReply(TransferLeadershipRequest request, String reason) {
+    final TransferLeadershipException e = new TransferLeadershipException(
+        server.getId() + ": Failed to transfer the leadership to " + request.getNewLeader() + ": " + reason);
+    return new RaftClientReply(request, e, server.getCommitInfos());
+  }
+}
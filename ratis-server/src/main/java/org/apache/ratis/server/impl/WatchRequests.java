@@ -154,7 +154,7 @@ class WatchRequests {
 
   private final TimeDuration watchTimeoutNanos;
   private final TimeDuration watchTimeoutDenominationNanos;
-  private final TimeoutScheduler scheduler = TimeoutScheduler.newInstance(2);
+  private final TimeoutScheduler scheduler;
 
   WatchRequests(Object name, RaftProperties properties) {
     this.name = name + "-" + getClass().getSimpleName();
@@ -167,9 +167,15 @@ class WatchRequests {
         () -> "watchTimeout (=" + watchTimeout + ") is not a multiple of watchTimeoutDenomination (="
             + watchTimeoutDenomination + ").");
 
+    this.scheduler = TimeoutScheduler.newInstance(2, RaftServerConfigKeys.TimeoutScheduler.tick(properties));
+
     Arrays.stream(ReplicationLevel.values()).forEach(r -> queues.put(r, new WatchQueue(r)));
   }
 
+  TimeoutScheduler getScheduler() {
+    return scheduler;
+  }
+
   CompletableFuture<Void> add(RaftClientRequest request) {
     final WatchRequestTypeProto watch = request.getType().getWatch();
     final WatchQueue queue = queues.get(watch.getReplication());
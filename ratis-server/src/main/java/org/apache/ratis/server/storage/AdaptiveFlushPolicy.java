@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.server.storage;
+
+import org.apache.ratis.conf.RaftProperties;
+import org.apache.ratis.server.RaftServerConfigKeys;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decide when {@link RaftLogWorker} flushes the written entries,
+ * see {@link RaftServerConfigKeys.Log.Flush}.
+ *
+ * The policy keeps a batch threshold in [1, {@link RaftServerConfigKeys.Log#forceSyncNum(RaftProperties)}]
+ * and an exponentially weighted moving average of the flush time.
+ * After each flush,
+ * (1) the threshold is halved if the observed latency exceeds the target latency, or
+ * (2) the threshold is increased by a quarter if there are at least threshold tasks in the queue.
+ *
+ * This class is not threadsafe; it is only used by the worker thread.
+ */
+class AdaptiveFlushPolicy {
+  static final Logger LOG = LoggerFactory.getLogger(AdaptiveFlushPolicy.class);
+
+  private final int maxThreshold;
+  private final long targetLatencyNanos;
+  private final long lingerMaxNanos;
+
+  private int threshold;
+  private long flushTimeNanosAverage = 0;
+
+  AdaptiveFlushPolicy(RaftProperties properties) {
+    this(RaftServerConfigKeys.Log.forceSyncNum(properties),
+        RaftServerConfigKeys.Log.Flush.targetLatency(properties).toLong(TimeUnit.NANOSECONDS),
+        RaftServerConfigKeys.Log.Flush.lingerMax(properties).toLong(TimeUnit.NANOSECONDS));
+  }
+
+  AdaptiveFlushPolicy(int maxThreshold, long targetLatencyNanos, long lingerMaxNanos) {
+    this.maxThreshold = Math.max(1, maxThreshold);
+    this.targetLatencyNanos = targetLatencyNanos;
+    this.lingerMaxNanos = lingerMaxNanos;
+    this.threshold = this.maxThreshold;
+  }
+
+  int getThreshold() {
+    return threshold;
+  }
+
+  /**
+   * @param pending the number of written but not yet flushed entries.
+   * @param queued the number of tasks in the queue.
+   * @param pendingNanos the elapsed time since the first pending entry was written.
+   * @return should the pending entries be flushed now?
+   */
+  boolean shouldFlush(int pending, int queued, long pendingNanos) {
+    if (pending == 0) {
+      return false;
+    } else if (pending >= threshold) {
+      return true;
+    } else if (queued > 0) {
+      return false;
+    }
+    return getLingerNanos(pendingNanos) <= 0;
+  }
+
+  /**
+   * @return the time to wait for more entries before flushing the pending entries,
+   *         i.e. the smaller of the max linger time and the remaining time within the target latency.
+   */
+  long getLingerNanos(long pendingNanos) {
+    final long remaining = targetLatencyNanos - flushTimeNanosAverage - pendingNanos;
+    return Math.min(lingerMaxNanos, remaining);
+  }
+
+  /**
+   * Update the policy after a flush.
+   *
+   * @param flushNanos the time spent on the flush.
+   * @param latencyNanos the time from the first pending entry written to the end of the flush.
+   * @param queued the number of tasks in the queue.
+   */
+  void onFlush(long flushNanos, long latencyNanos, int queued) {
+    flushTimeNanosAverage = flushTimeNanosAverage == 0? flushNanos
+        : (flushTimeNanosAverage * 7 + flushNanos) >> 3;
+
+    final int previous = threshold;
+    if (latencyNanos > targetLatencyNanos) {
+      threshold = Math.max(1, threshold >> 1);
+    } else if (queued >= threshold) {
+      threshold = Math.min(maxThreshold, threshold + Math.max(1, threshold >> 2));
+    }
+    if (threshold != previous) {
+      LOG.debug("threshold {} -> {}: flush={}ns, latency={}ns, queued={}",
+          previous, threshold, flushNanos, latencyNanos, queued);
+    }
+  }
+}
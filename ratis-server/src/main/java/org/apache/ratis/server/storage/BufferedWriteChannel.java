@@ -17,6 +17,15 @@
  */
 package org.apache.ratis.server.storage;
 
+import org.apache.ratis.io.nativeio.NativeIO;
+import org.apache.ratis.thirdparty.io.netty.util.internal.PlatformDependent;
+import org.apache.ratis.util.CodeInjectionForTesting;
+import org.apache.ratis.util.Preconditions;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
@@ -24,8 +33,18 @@ import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Provides a buffering layer in front of a FileChannel for writing.
+ *
+ * When the alignment is positive, the writes are aligned for direct I/O:
+ * the buffer address, the file offsets and the write sizes are all multiples of the alignment.
+ * A flush pads the last partial block with the terminator
+ * and keeps the block in the buffer, so that it is rewritten together with the following data.
  */
 public class BufferedWriteChannel extends BufferedChannelBase {
+  /** Injection point before writing to the file; the args are the number of bytes. */
+  public static final String WRITE = BufferedWriteChannel.class.getSimpleName() + ".write";
+  /** Injection point before forcing the file to the disk. */
+  public static final String FORCE = BufferedWriteChannel.class.getSimpleName() + ".force";
+
   // The capacity of the write buffer.
   private final int writeCapacity;
   // The position of the file channel's write pointer.
@@ -34,6 +53,12 @@ public class BufferedWriteChannel extends BufferedChannelBase {
   private final ByteBuffer writeBuffer;
   // The absolute position of the next write operation.
   private volatile long position;
+  // The alignment for direct I/O; or 0 if the writes are not aligned.
+  private final int alignment;
+  // The number of bytes at the beginning of the buffer which are already written to the file.
+  private int flushedLength = 0;
+  // The local id for the injection points, e.g. the file.
+  private Object name;
 
   public BufferedWriteChannel(FileChannel fc, int writeCapacity)
       throws IOException {
@@ -42,6 +67,65 @@ public class BufferedWriteChannel extends BufferedChannelBase {
     this.position = fc.position();
     this.writeBufferStartPosition.set(position);
     this.writeBuffer = ByteBuffer.allocateDirect(writeCapacity);
+    this.alignment = 0;
+  }
+
+  /**
+   * Create a channel writing aligned blocks to the given file channel starting at the given position.
+   * When the position is not aligned, the beginning of its block is read from the given reader.
+   */
+  BufferedWriteChannel(FileChannel fc, int writeCapacity, int alignment, long position, FileChannel reader)
+      throws IOException {
+    super(fc);
+    Preconditions.assertTrue(alignment > 0 && Integer.bitCount(alignment) == 1,
+        () -> "alignment = " + alignment + " is not a power of two");
+    this.alignment = alignment;
+    this.writeCapacity = Math.max(alignment, writeCapacity & -alignment);
+    this.writeBuffer = allocateAligned(this.writeCapacity, alignment);
+    this.position = position;
+
+    final long blockStart = position & -alignment;
+    this.writeBufferStartPosition.set(blockStart);
+    writeBuffer.limit((int) (position - blockStart));
+    while (writeBuffer.hasRemaining()) {
+      if (reader.read(writeBuffer, blockStart + writeBuffer.position()) < 0) {
+        throw new EOFException("Failed to read the block at " + blockStart + " before position " + position);
+      }
+    }
+    flushedLength = writeBuffer.position();
+    writeBuffer.limit(writeBuffer.capacity());
+  }
+
+  /**
+   * Open the given file with O_DIRECT for writing aligned blocks.
+   *
+   * @return the channel; or null if direct I/O is not supported on this system.
+   * @throws IOException if the file cannot be opened, e.g. direct I/O is not supported by the file system.
+   */
+  static BufferedWriteChannel openDirect(File file, int writeCapacity, int alignment, long position,
+      FileChannel reader) throws IOException {
+    if (!NativeIO.isAvailable() || NativeIO.POSIX.O_DIRECT == -1 || !PlatformDependent.hasUnsafe()) {
+      return null;
+    }
+    final FileDescriptor fd = NativeIO.POSIX.open(file.getAbsolutePath(),
+        NativeIO.POSIX.O_WRONLY | NativeIO.POSIX.O_DIRECT, 0);
+    final FileChannel fc = new FileOutputStream(fd).getChannel();
+    try {
+      return new BufferedWriteChannel(fc, writeCapacity, alignment, position, reader);
+    } catch (IOException | RuntimeException e) {
+      fc.close();
+      throw e;
+    }
+  }
+
+  /** Allocate a direct buffer with the given capacity such that its address is aligned. */
+  static ByteBuffer allocateAligned(int capacity, int alignment) {
+    final ByteBuffer buffer = ByteBuffer.allocateDirect(capacity + alignment);
+    final long address = PlatformDependent.directBufferAddress(buffer);
+    final int offset = (int) (-address & (alignment - 1));
+    buffer.position(offset);
+    buffer.limit(offset + capacity);
+    return buffer.slice();
   }
 
   /**
@@ -96,6 +180,11 @@ public class BufferedWriteChannel extends BufferedChannelBase {
     position += b.length;
   }
 
+  /** Set the local id for the injection points. */
+  void setName(Object name) {
+    this.name = name;
+  }
+
   /**
    * Get the position where the next write operation will begin writing from.
    */
@@ -133,7 +222,12 @@ public class BufferedWriteChannel extends BufferedChannelBase {
    * @throws IOException if the write fails.
    */
   private void flushInternal() throws IOException {
+    if (alignment > 0) {
+      flushAligned();
+      return;
+    }
     writeBuffer.flip();
+    CodeInjectionForTesting.execute(WRITE, name, null, writeBuffer.remaining());
     do {
       fileChannel.write(writeBuffer);
     } while (writeBuffer.hasRemaining());
@@ -141,12 +235,42 @@ public class BufferedWriteChannel extends BufferedChannelBase {
     writeBufferStartPosition.set(fileChannel.position());
   }
 
+  private void flushAligned() throws IOException {
+    final int length = writeBuffer.position();
+    if (length == flushedLength) {
+      return;
+    }
+    // pad the last partial block with the terminator
+    final int padded = (length + alignment - 1) & -alignment;
+    for (int i = length; i < padded; i++) {
+      writeBuffer.put(i, SegmentedRaftLogFormat.getTerminator());
+    }
+    writeBuffer.position(0);
+    writeBuffer.limit(padded);
+    CodeInjectionForTesting.execute(WRITE, name, null, padded);
+    final long start = writeBufferStartPosition.get();
+    while (writeBuffer.hasRemaining()) {
+      fileChannel.write(writeBuffer, start + writeBuffer.position());
+    }
+
+    // keep the last partial block
+    final int blocks = length & -alignment;
+    writeBuffer.position(blocks);
+    writeBuffer.limit(length);
+    final ByteBuffer partial = writeBuffer.slice();
+    writeBuffer.clear();
+    writeBuffer.put(partial);
+    flushedLength = writeBuffer.position();
+    writeBufferStartPosition.set(start + blocks);
+  }
+
   public long forceWrite(boolean forceMetadata) throws IOException {
     // This is the point up to which we had flushed to the file system page cache
     // before issuing this force write hence is guaranteed to be made durable by
     // the force write, any flush that happens after this may or may
     // not be flushed
     long positionForceWrite = writeBufferStartPosition.get();
+    CodeInjectionForTesting.execute(FORCE, name, null);
     fileChannel.force(forceMetadata);
     return positionForceWrite;
   }
@@ -0,0 +1,260 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.server.storage;
+
+import org.apache.ratis.io.CorruptedFileException;
+import org.apache.ratis.proto.RaftProtos.LogEntryProto;
+import org.apache.ratis.protocol.ChecksumException;
+import org.apache.ratis.util.Crc32cProvider;
+import org.apache.ratis.util.Preconditions;
+import org.apache.ratis.util.function.CheckedConsumer;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.Checksum;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A block of entries in the version 2 segment format, see {@link SegmentedRaftLogFormat}.
+ *
+ * Format:
+ *   (1) 1-byte codec, which is non-zero so that a terminator marks the end of the blocks.
+ *   (2) 8-byte index of the first entry.
+ *   (3) 4-byte number of entries.
+ *   (4) 4-byte length of the raw data.
+ *   (5) 4-byte length of the stored data.
+ *   (6) 4-byte checksum of (1)-(5) and the stored data.
+ *   (7) The stored data, i.e. the raw data compressed by the codec.
+ *
+ * The raw data is the entries, each of which is written as its serialized size followed by itself.
+ * The header has the index range of the block so that a reader can seek to an entry
+ * by skipping the stored data of the blocks before it.
+ */
+final class LogBlock {
+  private LogBlock() {}
+
+  static final int HEADER_LENGTH = 25;
+  /** The length of the header fields covered by the checksum. */
+  private static final int HEADER_DATA_LENGTH = HEADER_LENGTH - 4;
+  static final int MAX_LENGTH = 256 << 20;
+
+  static final byte CODEC_NONE = 1;
+  static final byte CODEC_DEFLATE = 2;
+
+  static final class Header {
+    private final byte[] bytes;
+    private final byte codec;
+    private final long firstIndex;
+    private final int numEntries;
+    private final int rawLength;
+    private final int storedLength;
+    private final int checksum;
+
+    /** Parse the header from the given bytes, which must have length {@link #HEADER_LENGTH}. */
+    Header(byte[] bytes, File file, long position) throws CorruptedFileException {
+      Preconditions.assertTrue(bytes.length == HEADER_LENGTH);
+      this.bytes = bytes;
+      final ByteBuffer b = ByteBuffer.wrap(bytes);
+      this.codec = b.get();
+      this.firstIndex = b.getLong();
+      this.numEntries = b.getInt();
+      this.rawLength = b.getInt();
+      this.storedLength = b.getInt();
+      this.checksum = b.getInt();
+
+      if (codec != CODEC_NONE && codec != CODEC_DEFLATE) {
+        throw new CorruptedFileException(file, "Unknown codec " + codec + " in the block at " + position);
+      } else if (numEntries <= 0 || rawLength <= 0 || rawLength > MAX_LENGTH
+          || storedLength <= 0 || storedLength > MAX_LENGTH
+          || (codec == CODEC_NONE && rawLength != storedLength)) {
+        throw new CorruptedFileException(file, "Invalid block header at " + position + ": " + this);
+      }
+    }
+
+    long getFirstIndex() {
+      return firstIndex;
+    }
+
+    int getNumEntries() {
+      return numEntries;
+    }
+
+    int getRawLength() {
+      return rawLength;
+    }
+
+    int getStoredLength() {
+      return storedLength;
+    }
+
+    boolean contains(long index) {
+      return index >= firstIndex && index < firstIndex + numEntries;
+    }
+
+    /**
+     * Verify the checksum and decode the stored data.
+     *
+     * @param stored the stored data, which is returned if there is no compression.
+     * @return the raw data.
+     */
+    byte[] decode(byte[] stored, Checksum crc, Inflater inflater, long position) throws IOException {
+      crc.reset();
+      crc.update(bytes, 0, HEADER_DATA_LENGTH);
+      crc.update(stored, 0, storedLength);
+      final int calculated = (int) crc.getValue();
+      if (calculated != checksum) {
+        throw new ChecksumException("Block is corrupt. Calculated checksum is "
+            + calculated + " but read checksum " + checksum, position);
+      }
+
+      if (codec == CODEC_NONE) {
+        return stored;
+      }
+      final byte[] raw = new byte[rawLength];
+      inflater.reset();
+      inflater.setInput(stored, 0, storedLength);
+      try {
+        final int n = inflater.inflate(raw);
+        if (n != rawLength || !inflater.finished()) {
+          throw new IOException("Failed to decompress the block at " + position
+              + ": expected raw length " + rawLength + " but decompressed " + n);
+        }
+      } catch (DataFormatException e) {
+        throw new IOException("Failed to decompress the block at " + position, e);
+      }
+      return raw;
+    }
+
+    @Override
+    public String toString() {
+      return "codec=" + codec + ", entries=[" + firstIndex + ", " + (firstIndex + numEntries - 1)
+          + "], rawLength=" + rawLength + ", storedLength=" + storedLength;
+    }
+  }
+
+  /** Write a segment file in version 2. */
+  static class Writer implements Closeable {
+    private final FileOutputStream fileOut;
+    private final DataOutputStream out;
+    private final int blockSize;
+    private final Deflater deflater;
+    private final Checksum checksum = Crc32cProvider.newChecksum();
+
+    private final RawBuffer raw = new RawBuffer();
+    private byte[] compressed = new byte[0];
+    private long firstIndex = -1;
+    private int numEntries = 0;
+
+    Writer(File file, int blockSize, boolean compress) throws IOException {
+      this.fileOut = new FileOutputStream(file);
+      this.out = new DataOutputStream(new BufferedOutputStream(fileOut, 64 << 10));
+      this.blockSize = blockSize;
+      this.deflater = compress? new Deflater(Deflater.BEST_SPEED): null;
+      SegmentedRaftLogFormat.applyHeaderTo(SegmentedRaftLogFormat.VERSION_2,
+          CheckedConsumer.asCheckedFunction(out::write));
+    }
+
+    void write(LogEntryProto entry) throws IOException {
+      if (numEntries == 0) {
+        firstIndex = entry.getIndex();
+      } else {
+        Preconditions.assertTrue(entry.getIndex() == firstIndex + numEntries,
+            () -> "Expected index " + (firstIndex + numEntries) + " but entry index is " + entry.getIndex());
+      }
+      entry.writeDelimitedTo(raw);
+      numEntries++;
+      if (raw.size() >= blockSize) {
+        writeBlock();
+      }
+    }
+
+    private void writeBlock() throws IOException {
+      final int rawLength = raw.size();
+      byte codec = CODEC_NONE;
+      byte[] stored = raw.getBuffer();
+      int storedLength = rawLength;
+      if (deflater != null) {
+        final int n = deflate(rawLength);
+        if (n > 0) {
+          codec = CODEC_DEFLATE;
+          stored = compressed;
+          storedLength = n;
+        }
+      }
+
+      final ByteBuffer header = ByteBuffer.allocate(HEADER_DATA_LENGTH);
+      header.put(codec).putLong(firstIndex).putInt(numEntries).putInt(rawLength).putInt(storedLength);
+      checksum.reset();
+      checksum.update(header.array(), 0, HEADER_DATA_LENGTH);
+      checksum.update(stored, 0, storedLength);
+
+      out.write(header.array());
+      out.writeInt((int) checksum.getValue());
+      out.write(stored, 0, storedLength);
+
+      raw.reset();
+      numEntries = 0;
+    }
+
+    /** @return the compressed length; or 0 if the data is not compressible. */
+    private int deflate(int rawLength) {
+      if (compressed.length < rawLength) {
+        compressed = new byte[rawLength];
+      }
+      deflater.reset();
+      deflater.setInput(raw.getBuffer(), 0, rawLength);
+      deflater.finish();
+      int n = 0;
+      while (!deflater.finished() && n < rawLength) {
+        n += deflater.deflate(compressed, n, rawLength - n);
+      }
+      return deflater.finished() && n < rawLength? n: 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        if (numEntries > 0) {
+          writeBlock();
+        }
+        out.flush();
+        fileOut.getChannel().force(true);
+      } finally {
+        out.close();
+        if (deflater != null) {
+          deflater.end();
+        }
+      }
+    }
+  }
+
+  /** A {@link ByteArrayOutputStream} exposing its buffer to avoid copying. */
+  private static class RawBuffer extends ByteArrayOutputStream {
+    byte[] getBuffer() {
+      return buf;
+    }
+  }
+}
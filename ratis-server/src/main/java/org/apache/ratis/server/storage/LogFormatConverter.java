@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.server.storage;
+
+import org.apache.ratis.io.CorruptedFileException;
+import org.apache.ratis.proto.RaftProtos.LogEntryProto;
+import org.apache.ratis.server.RaftServerConfigKeys;
+import org.apache.ratis.server.storage.RaftStorageDirectory.LogPathAndIndex;
+import org.apache.ratis.util.FileUtils;
+import org.apache.ratis.util.Preconditions;
+import org.apache.ratis.util.function.CheckedConsumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Convert closed segment files between the versions of {@link SegmentedRaftLogFormat}.
+ *
+ * The files of both versions can be read, so that the segments are converted one by one:
+ * when {@link RaftServerConfigKeys.Log.Format#VERSION_KEY} is set to 2,
+ * the segments are converted when they are closed and the existing segments remain in version 1.
+ * Before downgrading to a release without version 2,
+ * convert the segments back to version 1 using {@link #convertAll(RaftStorageDirectory, int, int, boolean)}
+ * when the server is stopped.
+ */
+public final class LogFormatConverter {
+  static final Logger LOG = LoggerFactory.getLogger(LogFormatConverter.class);
+
+  private LogFormatConverter() {}
+
+  /** Convert the closed segments in the given directory to the given version. */
+  public static void convertAll(RaftStorageDirectory dir, int version, int blockSize, boolean compress)
+      throws IOException {
+    for (LogPathAndIndex segment : dir.getLogSegmentFiles()) {
+      if (!segment.isOpen()) {
+        convert(segment.getPath().toFile(), segment.startIndex, segment.endIndex, version, blockSize, compress);
+      }
+    }
+  }
+
+  /**
+   * Convert the given closed segment to the given version.
+   *
+   * @return true if the file is converted; or false if it is already in the given version.
+   */
+  public static boolean convert(File file, long startIndex, long endIndex,
+      int version, int blockSize, boolean compress) throws IOException {
+    Preconditions.assertTrue(endIndex >= startIndex, () -> "Segment " + file + " is not closed");
+    final int current = SegmentedRaftLogFormat.readVersion(file);
+    if (current == -1) {
+      throw new CorruptedFileException(file, "Unknown segment file version");
+    } else if (current == version) {
+      return false;
+    }
+
+    write(file, startIndex, endIndex, file, version, blockSize, compress);
+    LOG.info("Converted segment file {} from version {} to version {}", file, current, version);
+    return true;
+  }
+
+  /**
+   * Write the entries of the given closed segment to the destination file in the given version.
+   * The entries are written to a temporary file, which then atomically replaces the destination file.
+   */
+  static void write(File file, long startIndex, long endIndex, File dst,
+      int version, int blockSize, boolean compress) throws IOException {
+    final File tmp = new File(dst.getPath() + ".tmp");
+    try {
+      final long count;
+      if (version == SegmentedRaftLogFormat.VERSION_1) {
+        try (LogOutputStream out = new LogOutputStream(tmp, false, Long.MAX_VALUE, 0, blockSize)) {
+          count = copyEntries(file, startIndex, endIndex, out::write);
+          out.flush();
+        }
+      } else {
+        Preconditions.assertTrue(version == SegmentedRaftLogFormat.VERSION_2, () -> "Unknown version " + version);
+        try (LogBlock.Writer out = new LogBlock.Writer(tmp, blockSize, compress)) {
+          count = copyEntries(file, startIndex, endIndex, out::write);
+        }
+      }
+      if (count != endIndex - startIndex + 1) {
+        throw new CorruptedFileException(file, "Expected " + (endIndex - startIndex + 1)
+            + " entries but read " + count);
+      }
+      Files.move(tmp.toPath(), dst.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException e) {
+      if (tmp.exists()) {
+        FileUtils.deleteFile(tmp);
+      }
+      throw e;
+    }
+  }
+
+  private static long copyEntries(File file, long startIndex, long endIndex,
+      CheckedConsumer<LogEntryProto, IOException> writer) throws IOException {
+    long count = 0;
+    try (LogInputStream in = new LogInputStream(file, startIndex, endIndex, false)) {
+      for (LogEntryProto entry; (entry = in.nextEntry()) != null && entry.getIndex() <= endIndex; ) {
+        writer.accept(entry);
+        count++;
+      }
+    }
+    return count;
+  }
+}
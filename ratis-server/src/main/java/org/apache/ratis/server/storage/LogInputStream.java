@@ -85,8 +85,15 @@ public class LogInputStream implements Closeable {
     state.open();
     try {
       final LogReader r = new LogReader(logFile);
-      if (r.verifyHeader()) {
-        reader = r;
+      try {
+        if (r.verifyHeader()) {
+          reader = r;
+        }
+      } finally {
+        if (reader == null) {
+          // release the buffer of the reader
+          r.close();
+        }
       }
     } finally {
       if (reader == null) {
@@ -17,17 +17,19 @@
  */
 package org.apache.ratis.server.storage;
 
+import org.apache.ratis.io.nativeio.NativeIO;
 import org.apache.ratis.proto.RaftProtos.LogEntryProto;
 import org.apache.ratis.thirdparty.com.google.protobuf.CodedOutputStream;
+import org.apache.ratis.util.Crc32cProvider;
 import org.apache.ratis.util.FileUtils;
 import org.apache.ratis.util.IOUtils;
-import org.apache.ratis.util.PureJavaCrc32C;
 import org.apache.ratis.util.function.CheckedConsumer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.Closeable;
 import java.io.File;
+import java.io.FileDescriptor;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
@@ -49,6 +51,7 @@ public class LogOutputStream implements Closeable {
 
   private File file;
   private FileChannel fc; // channel of the file stream for sync
+  private final FileDescriptor fd; // for the native calls
   private BufferedWriteChannel out; // buffered FileChannel for writing
   private final Checksum checksum;
 
@@ -59,22 +62,36 @@ public class LogOutputStream implements Closeable {
   public LogOutputStream(File file, boolean append, long segmentMaxSize,
       long preallocatedSize, int bufferSize)
       throws IOException {
+    this(file, append, segmentMaxSize, preallocatedSize, bufferSize, 0);
+  }
+
+  /**
+   * @param directIoAlignment the alignment for writing the file with direct I/O;
+   *                          or 0 for writing through the page cache.
+   */
+  public LogOutputStream(File file, boolean append, long segmentMaxSize,
+      long preallocatedSize, int bufferSize, int directIoAlignment)
+      throws IOException {
     this.file = file;
-    this.checksum = new PureJavaCrc32C();
+    this.checksum = Crc32cProvider.newChecksum();
     this.segmentMaxSize = segmentMaxSize;
     this.preallocatedSize = preallocatedSize;
     RandomAccessFile rp = new RandomAccessFile(file, "rw");
-    fc = rp.getChannel();
-    fc.position(fc.size());
-    preallocatedPos = fc.size();
-    out = new BufferedWriteChannel(fc, bufferSize);
+    fd = rp.getFD();
 
     try {
       fc = rp.getChannel();
+      if (!append) {
+        fc.truncate(0);
+      }
       fc.position(fc.size());
       preallocatedPos = fc.size();
 
-      out = new BufferedWriteChannel(fc, bufferSize);
+      out = directIoAlignment > 0? openDirect(file, fc, bufferSize, directIoAlignment): null;
+      if (out == null) {
+        out = new BufferedWriteChannel(fc, bufferSize);
+      }
+      out.setName(file);
       if (!append) {
         create();
       }
@@ -82,6 +99,7 @@ public class LogOutputStream implements Closeable {
       LOG.warn("Hit IOException while creating log segment " + file
           + ", delete the partial file.");
       // hit IOException, clean up the in-progress log file
+      IOUtils.cleanup(LOG, out, fc);
       try {
         FileUtils.deleteFully(file);
       } catch (IOException e) {
@@ -91,6 +109,26 @@ public class LogOutputStream implements Closeable {
     }
   }
 
+  /**
+   * Open a second descriptor of the file with O_DIRECT for writing the entries.
+   * The given channel is still used for preallocation and truncation.
+   *
+   * @return the direct I/O channel; or null if direct I/O is unavailable.
+   */
+  private static BufferedWriteChannel openDirect(File file, FileChannel fc, int bufferSize, int alignment) {
+    try {
+      final BufferedWriteChannel direct = BufferedWriteChannel.openDirect(
+          file, bufferSize, alignment, fc.position(), fc);
+      if (direct != null) {
+        return direct;
+      }
+      LOG.warn("Direct I/O is unavailable on this system, write {} through the page cache", file);
+    } catch (IOException e) {
+      LOG.warn("Failed to open " + file + " with direct I/O, write it through the page cache", e);
+    }
+    return null;
+  }
+
   /**
    * Write the given entry to this output stream.
    *
@@ -145,7 +183,9 @@ public class LogOutputStream implements Closeable {
     try {
       out.flush(false);
       if (fc != null && fc.isOpen()) {
-        fc.truncate(fc.position());
+        fc.truncate(out.position());
+        // the segment is no longer written; it is read from the cache, if necessary.
+        dropPageCache(file, fd);
       }
     } finally {
       IOUtils.cleanup(LOG, fc, out);
@@ -165,9 +205,28 @@ public class LogOutputStream implements Closeable {
     out.flush(true);
   }
 
+  /**
+   * Advise the OS to drop the page cache of the given file when {@link NativeIO} is available.
+   * Dirty pages are not dropped but their writeback is started.
+   */
+  static void dropPageCache(Object identifier, FileDescriptor fd) {
+    try {
+      NativeIO.POSIX.getCacheManipulator().posixFadviseIfPossible(String.valueOf(identifier),
+          fd, 0, 0, NativeIO.POSIX.POSIX_FADV_DONTNEED);
+    } catch (IOException e) {
+      LOG.warn("Failed to drop the page cache of " + identifier, e);
+    }
+  }
+
   private void preallocate() throws IOException {
-    fill.position(0);
     long targetSize = Math.min(segmentMaxSize - fc.size(), preallocatedSize);
+    if (targetSize > 0 && NativeIO.POSIX.fallocateIfPossible(fd, preallocatedPos, targetSize)) {
+      preallocatedPos += targetSize;
+      LOG.debug("Pre-allocated {} bytes for the log segment using fallocate", targetSize);
+      return;
+    }
+
+    fill.position(0);
     int allocated = 0;
     while (allocated < targetSize) {
       int size = (int) Math.min(BUFFER_SIZE, targetSize - allocated);
@@ -21,124 +21,137 @@ import org.apache.ratis.io.CorruptedFileException;
 import org.apache.ratis.protocol.ChecksumException;
 import org.apache.ratis.server.impl.RaftServerConstants;
 import org.apache.ratis.thirdparty.com.google.protobuf.CodedInputStream;
-import org.apache.ratis.thirdparty.com.google.protobuf.CodedOutputStream;
 import org.apache.ratis.proto.RaftProtos.LogEntryProto;
-import org.apache.ratis.util.IOUtils;
+import org.apache.ratis.thirdparty.io.netty.buffer.ByteBuf;
+import org.apache.ratis.thirdparty.io.netty.buffer.PooledByteBufAllocator;
+import org.apache.ratis.util.Crc32cProvider;
 import org.apache.ratis.util.Preconditions;
-import org.apache.ratis.util.PureJavaCrc32C;
 import org.apache.ratis.util.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.*;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.zip.Checksum;
+import java.util.zip.Inflater;
 
+/**
+ * Read a segment file through a {@link FileChannel}.
+ *
+ * The file is read into a pooled direct buffer, which is returned to the pool when the reader is closed.
+ * An entry is checksummed and parsed directly from the buffer without copying it to an array.
+ * The buffer grows for a large entry up to the max entry size
+ * and shrinks back to the default size afterward.
+ */
 public class LogReader implements Closeable {
   static final Logger LOG = LoggerFactory.getLogger(LogReader.class);
-  /**
-   * InputStream wrapper that keeps track of the current stream position.
-   *
-   * This stream also allows us to set a limit on how many bytes we can read
-   * without getting an exception.
-   */
-  public static class LimitedInputStream extends FilterInputStream {
-    private long curPos = 0;
-    private long markPos = -1;
-    private long limitPos = Long.MAX_VALUE;
-
-    public LimitedInputStream(InputStream is) {
-      super(is);
-    }
-
-    private void checkLimit(long amt) throws IOException {
-      long extra = (curPos + amt) - limitPos;
-      if (extra > 0) {
-        throw new IOException("Tried to read " + amt + " byte(s) past " +
-            "the limit at offset " + limitPos);
-      }
-    }
-
-    @Override
-    public int read() throws IOException {
-      checkLimit(1);
-      int ret = super.read();
-      if (ret != -1) curPos++;
-      return ret;
-    }
 
-    @Override
-    public int read(byte[] data) throws IOException {
-      checkLimit(data.length);
-      int ret = super.read(data);
-      if (ret > 0) curPos += ret;
-      return ret;
-    }
+  private static final int maxOpSize = 32 * 1024 * 1024;
+  /** The max length of the varint-encoded entry size. */
+  private static final int MAX_VARINT_LENGTH = 5;
+  private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+  private static final int MAX_BUFFER_SIZE = maxOpSize + MAX_VARINT_LENGTH + 4;
 
-    @Override
-    public int read(byte[] data, int offset, int length) throws IOException {
-      checkLimit(length);
-      int ret = super.read(data, offset, length);
-      if (ret > 0) curPos += ret;
-      return ret;
-    }
+  private final File file;
+  private final FileChannel channel;
+  private final Checksum checksum;
+  private int version = -1;
+
+  /** The pooled buffer; its nio view {@link #buffer} has the bytes of the file starting at {@link #bufferOffset}. */
+  private ByteBuf pooled;
+  /** The bytes in [position, limit) are the unread bytes. */
+  private ByteBuffer buffer;
+  private long bufferOffset = 0;
+  /** Has the channel reached the end of the file? */
+  private boolean eof = false;
+
+  // For version 2: the current block and the position of the next entry in it.
+  private Inflater inflater;
+  private LogBlock.Header blockHeader;
+  private byte[] stored = new byte[0];
+  private byte[] block;
+  private int blockPosition;
+  private long blockNextIndex;
+
+  LogReader(File file) throws IOException {
+    this.file = file;
+    this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    this.checksum = Crc32cProvider.newChecksum();
+    allocate(DEFAULT_BUFFER_SIZE);
+  }
 
-    public void setLimit(long limit) {
-      limitPos = curPos + limit;
+  private void allocate(int capacity) {
+    final ByteBuf newPooled = PooledByteBufAllocator.DEFAULT.directBuffer(capacity, capacity);
+    final ByteBuffer newBuffer = newPooled.nioBuffer(0, capacity);
+    newBuffer.limit(0);
+    if (pooled != null) {
+      // keep the unread bytes
+      bufferOffset += buffer.position();
+      newBuffer.limit(buffer.remaining());
+      newBuffer.put(buffer);
+      newBuffer.flip();
+      pooled.release();
     }
+    pooled = newPooled;
+    buffer = newBuffer;
+  }
 
-    public void clearLimit() {
-      limitPos = Long.MAX_VALUE;
+  /**
+   * Make sure that the buffer has at least the given number of unread bytes unless it hits the end of the file.
+   *
+   * @return true if the buffer has the given number of unread bytes.
+   */
+  private boolean fill(int length) throws IOException {
+    Preconditions.assertTrue(length <= MAX_BUFFER_SIZE, () -> "length = " + length + " > " + MAX_BUFFER_SIZE);
+    if (buffer.remaining() >= length) {
+      return true;
+    } else if (eof) {
+      return false;
     }
 
-    @Override
-    public void mark(int limit) {
-      super.mark(limit);
-      markPos = curPos;
+    if (buffer.capacity() < length) {
+      allocate(Math.min(MAX_BUFFER_SIZE, Math.max(length, 2 * buffer.capacity())));
+    } else if (buffer.capacity() > DEFAULT_BUFFER_SIZE && length <= DEFAULT_BUFFER_SIZE
+        && buffer.remaining() <= DEFAULT_BUFFER_SIZE / 2) {
+      // shrink the buffer grown for a large entry
+      allocate(DEFAULT_BUFFER_SIZE);
     }
-
-    @Override
-    public void reset() throws IOException {
-      if (markPos == -1) {
-        throw new IOException("Not marked!");
+    // move the unread bytes to the beginning
+    bufferOffset += buffer.position();
+    buffer.compact();
+    try {
+      while (buffer.position() < length) {
+        if (channel.read(buffer, bufferOffset + buffer.position()) < 0) {
+          eof = true;
+          break;
+        }
       }
-      super.reset();
-      curPos = markPos;
-      markPos = -1;
-    }
-
-    public long getPos() {
-      return curPos;
+    } finally {
+      buffer.flip();
     }
+    return buffer.remaining() >= length;
+  }
 
-    @Override
-    public long skip(long amt) throws IOException {
-      long extra = (curPos + amt) - limitPos;
-      if (extra > 0) {
-        throw new IOException("Tried to skip " + extra + " bytes past " +
-            "the limit at offset " + limitPos);
+  /** Read the given number of bytes to the given array, or throw {@link EOFException}. */
+  private void readFully(byte[] bytes, int offset, int length) throws IOException {
+    while (length > 0) {
+      if (!buffer.hasRemaining() && !fill(Math.min(length, DEFAULT_BUFFER_SIZE))) {
+        if (!buffer.hasRemaining()) {
+          throw new EOFException("Failed to read " + length + " bytes at " + getPos() + " from " + file);
+        }
       }
-      long ret = super.skip(amt);
-      curPos += ret;
-      return ret;
+      final int n = Math.min(length, buffer.remaining());
+      buffer.get(bytes, offset, n);
+      offset += n;
+      length -= n;
     }
   }
 
-  private static final int maxOpSize = 32 * 1024 * 1024;
-
-  private final File file;
-  private final LimitedInputStream limiter;
-  private final DataInputStream in;
-  private byte[] temp = new byte[4096];
-  private final Checksum checksum;
-
-  LogReader(File file) throws FileNotFoundException {
-    this.file = file;
-    this.limiter = new LimitedInputStream(
-        new BufferedInputStream(new FileInputStream(file)));
-    in = new DataInputStream(limiter);
-    checksum = new PureJavaCrc32C();
-  }
-
   /**
    * Read header from the log file:
    *
@@ -153,38 +166,39 @@ public class LogReader implements Closeable {
    */
   boolean verifyHeader() throws IOException {
     final int headerLength = SegmentedRaftLogFormat.getHeaderLength();
-    final int readLength = in.read(temp, 0, headerLength);
-    Preconditions.assertTrue(readLength <= headerLength);
-    final int matchLength = SegmentedRaftLogFormat.matchHeader(temp, 0, readLength);
+    fill(headerLength);
+    final int readLength = Math.min(headerLength, buffer.remaining());
+    final byte[] header = new byte[readLength];
+    buffer.get(header);
+    final int matchLength = SegmentedRaftLogFormat.matchHeader(header, 0, readLength);
     Preconditions.assertTrue(matchLength <= readLength);
 
-    if (readLength == headerLength && matchLength == readLength) {
+    version = SegmentedRaftLogFormat.getVersion(header, 0, readLength);
+    if (version != -1) {
       // The header is matched successfully
       return true;
-    } else if (SegmentedRaftLogFormat.isTerminator(temp, matchLength, readLength - matchLength)) {
+    } else if (SegmentedRaftLogFormat.isTerminator(header, matchLength, readLength - matchLength)) {
       // The header is partially written
       return false;
     }
     // The header is corrupted
     throw new CorruptedFileException(file, "Log header mismatched: expected header length="
         + SegmentedRaftLogFormat.getHeaderLength() + ", read length=" + readLength + ", match length=" + matchLength
-        + ", header in file=" + StringUtils.bytes2HexString(temp, 0, readLength)
+        + ", header in file=" + StringUtils.bytes2HexString(header, 0, readLength)
         + ", expected header=" + SegmentedRaftLogFormat.applyHeaderTo(StringUtils::bytes2HexString));
   }
 
   /**
-   * Read a log entry from the input stream.
+   * Read a log entry from the file.
+   * When there is an error, the position of this reader is unchanged.
    *
-   * @return the operation read from the stream, or null at the end of the
-   *         file
-   * @throws IOException on error.  This function should only throw an
-   *         exception when skipBrokenEdits is false.
+   * @return the entry read from the file, or null at the end of the file
+   * @throws IOException on error.
    */
   LogEntryProto readEntry() throws IOException {
     try {
       return decodeEntry();
     } catch (EOFException eof) {
-      in.reset();
       // The last entry is partially written.
       // It is okay to ignore it since this entry is never committed in this server.
       if (LOG.isWarnEnabled()) {
@@ -194,13 +208,10 @@ public class LogReader implements Closeable {
       }
       return null;
     } catch (IOException e) {
-      in.reset();
-
       throw e;
     } catch (Throwable e) {
       // raft log requires no gap between any two entries. thus if an entry is
       // broken, throw the exception instead of skipping broken entries
-      in.reset();
       throw new IOException("got unexpected exception " + e.getMessage(), e);
     }
   }
@@ -214,32 +225,21 @@ public class LogReader implements Closeable {
     return entry != null ? entry.getIndex() : RaftServerConstants.INVALID_LOG_INDEX;
   }
 
+  /**
+   * The end of the log should contain 0x00 bytes.
+   * If it contains other bytes, the log itself may be corrupt.
+   * The position is advanced to the first non-terminator, if there is any, or the end of the file.
+   */
   void verifyTerminator() throws IOException {
-     // The end of the log should contain 0x00 bytes.
-     // If it contains other bytes, the log itself may be corrupt.
-    limiter.clearLimit();
-    int numRead = -1, idx = 0;
-    while (true) {
-      try {
-        numRead = in.read(temp);
-        if (numRead == -1) {
-          return;
-        }
-        for (idx = 0; idx < numRead; idx++) {
-          if (!SegmentedRaftLogFormat.isTerminator(temp[idx])) {
-            throw new IOException("Read extra bytes after the terminator!");
-          }
-        }
-      } finally {
-        // After reading each group of bytes, we reposition the mark one
-        // byte before the next group. Similarly, if there is an error, we
-        // want to reposition the mark one byte before the error
-        if (numRead != -1) {
-          in.reset();
-          IOUtils.skipFully(in, idx);
-          in.mark(temp.length + 1);
-          IOUtils.skipFully(in, 1);
+    for(;;) {
+      while (buffer.hasRemaining()) {
+        if (!SegmentedRaftLogFormat.isTerminator(buffer.get(buffer.position()))) {
+          throw new IOException("Read extra bytes after the terminator!");
         }
+        buffer.position(buffer.position() + 1);
+      }
+      if (!fill(1)) {
+        return;
       }
     }
   }
@@ -248,84 +248,253 @@ public class LogReader implements Closeable {
    * Decode the log entry "frame". This includes reading the log entry, and
    * validating the checksum.
    *
-   * The input stream will be advanced to the end of the op at the end of this
-   * function.
+   * The position is advanced to the end of the entry only if it is decoded successfully.
    *
    * @return The log entry, or null if we hit EOF.
    */
   private LogEntryProto decodeEntry() throws IOException {
-    limiter.setLimit(maxOpSize);
-    in.mark(maxOpSize);
+    if (version == SegmentedRaftLogFormat.VERSION_2) {
+      return decodeEntryFromBlock();
+    }
 
-    byte nextByte;
-    try {
-      nextByte = in.readByte();
-    } catch (EOFException eof) {
-      // EOF at an opcode boundary is expected.
+    if (!fill(1)) {
+      // EOF at an entry boundary is expected.
       return null;
     }
     // Each log entry starts with a var-int. Thus a valid entry's first byte
     // should not be 0. So if the terminate byte is 0, we should hit the end
     // of the segment.
-    if (SegmentedRaftLogFormat.isTerminator(nextByte)) {
+    if (SegmentedRaftLogFormat.isTerminator(buffer.get(buffer.position()))) {
       verifyTerminator();
       return null;
     }
 
-    // Here, we verify that the Op size makes sense and that the
-    // data matches its checksum before attempting to construct an Op.
-    int entryLength = CodedInputStream.readRawVarint32(nextByte, in);
-    if (entryLength > maxOpSize) {
+    // Here, we verify that the entry size makes sense and that the
+    // data matches its checksum before attempting to parse the entry.
+    fill(MAX_VARINT_LENGTH);
+    final int start = buffer.position();
+    int entryLength = 0;
+    int varintLength = 0;
+    for(int shift = 0;; shift += 7) {
+      if (varintLength == MAX_VARINT_LENGTH) {
+        throw new IOException("Malformed varint at " + getPos() + " in " + file);
+      } else if (start + varintLength >= buffer.limit()) {
+        throw new EOFException("Partial varint at " + getPos());
+      }
+      final byte b = buffer.get(start + varintLength++);
+      entryLength |= (b & 0x7F) << shift;
+      if (b >= 0) {
+        break;
+      }
+    }
+    if (entryLength < 0 || entryLength > maxOpSize) {
       throw new IOException("Entry has size " + entryLength
           + ", but maxOpSize = " + maxOpSize);
     }
 
-    final int varintLength = CodedOutputStream.computeUInt32SizeNoTag(
-        entryLength);
     final int totalLength = varintLength + entryLength;
-    checkBufferSize(totalLength);
-    in.reset();
-    in.mark(maxOpSize);
-    IOUtils.readFully(in, temp, 0, totalLength);
+    if (!fill(totalLength + 4)) {
+      throw new EOFException("Partial entry at " + getPos() + ": expected length "
+          + (totalLength + 4) + " but only " + buffer.remaining() + " bytes are available");
+    }
+    // fill(..) may have moved the bytes
+    final int entryStart = buffer.position();
 
     // verify checksum
     checksum.reset();
-    checksum.update(temp, 0, totalLength);
-    int expectedChecksum = in.readInt();
-    int calculatedChecksum = (int) checksum.getValue();
+    Crc32cProvider.update(checksum, slice(entryStart, totalLength));
+    final int expectedChecksum = buffer.getInt(entryStart + totalLength);
+    final int calculatedChecksum = (int) checksum.getValue();
     if (expectedChecksum != calculatedChecksum) {
       throw new ChecksumException("LogEntry is corrupt. Calculated checksum is "
-          + calculatedChecksum + " but read checksum " + expectedChecksum,
-          limiter.markPos);
+          + calculatedChecksum + " but read checksum " + expectedChecksum, getPos());
     }
 
     // parse the buffer
-    return LogEntryProto.parseFrom(
-        CodedInputStream.newInstance(temp, varintLength, entryLength));
+    final LogEntryProto entry = LogEntryProto.parseFrom(
+        CodedInputStream.newInstance(slice(entryStart + varintLength, entryLength)));
+    buffer.position(entryStart + totalLength + 4);
+    return entry;
+  }
+
+  /** @return a view of the given range of the buffer. */
+  private ByteBuffer slice(int offset, int length) {
+    final ByteBuffer b = buffer.duplicate();
+    b.limit(offset + length);
+    b.position(offset);
+    return b.slice();
+  }
+
+  private boolean hasEntryInBlock() {
+    return blockHeader != null
+        && blockNextIndex < blockHeader.getFirstIndex() + blockHeader.getNumEntries();
+  }
+
+  /** Decode the next entry of the current block, or of the next block if the current block has no more entries. */
+  private LogEntryProto decodeEntryFromBlock() throws IOException {
+    if (!hasEntryInBlock()) {
+      final LogBlock.Header header = readBlockHeader();
+      if (header == null) {
+        return null;
+      }
+      readBlock(header);
+    }
+
+    final CodedInputStream cin = newBlockInputStream();
+    final int entryLength = readEntryLengthInBlock(cin);
+    final int varintLength = cin.getTotalBytesRead();
+    final LogEntryProto entry = LogEntryProto.parseFrom(
+        CodedInputStream.newInstance(block, blockPosition + varintLength, entryLength));
+    if (entry.getIndex() != blockNextIndex) {
+      throw new CorruptedFileException(file, "Expected index " + blockNextIndex
+          + " but entry index is " + entry.getIndex() + " in block " + blockHeader);
+    }
+    blockPosition += varintLength + entryLength;
+    blockNextIndex++;
+    return entry;
+  }
+
+  private CodedInputStream newBlockInputStream() throws CorruptedFileException {
+    final int remaining = blockHeader.getRawLength() - blockPosition;
+    if (remaining <= 0) {
+      throw new CorruptedFileException(file, "Entry " + blockNextIndex + " is beyond the end of block " + blockHeader);
+    }
+    return CodedInputStream.newInstance(block, blockPosition, remaining);
+  }
+
+  /** Read and validate the length of the entry at the current position of the block. */
+  private int readEntryLengthInBlock(CodedInputStream cin) throws CorruptedFileException {
+    final int entryLength;
+    try {
+      entryLength = cin.readRawVarint32();
+    } catch (IOException e) {
+      throw new CorruptedFileException(file, "Failed to read the length of entry " + blockNextIndex
+          + " in block " + blockHeader + ": " + e);
+    }
+    final int varintLength = cin.getTotalBytesRead();
+    if (entryLength < 0 || entryLength > maxOpSize
+        || (long) blockPosition + varintLength + entryLength > blockHeader.getRawLength()) {
+      throw new CorruptedFileException(file, "Entry " + blockNextIndex + " has invalid size " + entryLength
+          + " in block " + blockHeader);
+    }
+    return entryLength;
+  }
+
+  /**
+   * Read the next block header.
+   * @return the header; or null if it hits the end of the blocks.
+   */
+  private LogBlock.Header readBlockHeader() throws IOException {
+    final long position = getPos();
+    if (!fill(1)) {
+      // EOF at a block boundary is expected.
+      return null;
+    } else if (SegmentedRaftLogFormat.isTerminator(buffer.get(buffer.position()))) {
+      verifyTerminator();
+      return null;
+    }
+
+    final byte[] bytes = new byte[LogBlock.HEADER_LENGTH];
+    readFully(bytes, 0, bytes.length);
+    return new LogBlock.Header(bytes, file, position);
   }
 
-  private void checkBufferSize(int entryLength) {
-    Preconditions.assertTrue(entryLength <= maxOpSize);
-    int length = temp.length;
-    if (length < entryLength) {
-      while (length < entryLength) {
-        length = Math.min(length * 2, maxOpSize);
+  private void readBlock(LogBlock.Header header) throws IOException {
+    final long position = getPos() - LogBlock.HEADER_LENGTH;
+    final int length = header.getStoredLength();
+    if (stored.length < length) {
+      stored = new byte[length];
+    }
+    readFully(stored, 0, length);
+    if (inflater == null) {
+      inflater = new Inflater();
+    }
+    block = header.decode(stored, checksum, inflater, position);
+    blockHeader = header;
+    blockPosition = 0;
+    blockNextIndex = header.getFirstIndex();
+  }
+
+  /** Skip the entries of the current block before the given index. */
+  private void skipInBlock(long index) throws IOException {
+    for(; blockNextIndex < index; blockNextIndex++) {
+      final CodedInputStream cin = newBlockInputStream();
+      final int entryLength = readEntryLengthInBlock(cin);
+      blockPosition += cin.getTotalBytesRead() + entryLength;
+    }
+  }
+
+  /**
+   * Position this reader so that the next entry read is the entry with the given index.
+   * Version 1 skips to the given offset;
+   * version 2 skips the blocks before the block containing the entry, using only the block headers.
+   * The reader cannot go backward.
+   */
+  void seek(long index, long offset) throws IOException {
+    if (version != SegmentedRaftLogFormat.VERSION_2) {
+      skipFully(offset - getPos());
+      return;
+    }
+
+    if (blockHeader != null && blockHeader.contains(index) && index >= blockNextIndex) {
+      skipInBlock(index);
+      return;
+    }
+    for(;;) {
+      final LogBlock.Header header = readBlockHeader();
+      if (header == null) {
+        throw new CorruptedFileException(file, "Entry " + index + " not found");
+      } else if (header.contains(index)) {
+        readBlock(header);
+        skipInBlock(index);
+        return;
       }
-      temp = new byte[length];
+      skipFully(header.getStoredLength());
     }
   }
 
+  int getVersion() {
+    return version;
+  }
+
   long getPos() {
-    return limiter.getPos();
+    return bufferOffset + buffer.position();
   }
 
   void skipFully(long length) throws IOException {
-    limiter.clearLimit();
-    IOUtils.skipFully(limiter, length);
+    Preconditions.assertTrue(length >= 0, () -> "Negative length " + length);
+    if (length <= buffer.remaining()) {
+      buffer.position(buffer.position() + (int) length);
+    } else {
+      final long target = getPos() + length;
+      if (target > channel.size()) {
+        throw new EOFException("Failed to skip " + length + " bytes at " + getPos()
+            + " since the file size is " + channel.size());
+      }
+      // discard the buffer and continue reading from the target
+      bufferOffset = target;
+      buffer.clear().limit(0);
+      eof = false;
+    }
+    if (blockHeader != null) {
+      // the remaining entries of the current block are skipped
+      blockNextIndex = blockHeader.getFirstIndex() + blockHeader.getNumEntries();
+    }
   }
 
   @Override
   public void close() {
-    IOUtils.cleanup(LOG, in);
+    try {
+      channel.close();
+    } catch (IOException e) {
+      LOG.warn("Failed to close " + file, e);
+    }
+    if (pooled != null) {
+      pooled.release();
+      pooled = null;
+    }
+    if (inflater != null) {
+      inflater.end();
+    }
   }
 }
@@ -17,6 +17,7 @@
  */
 package org.apache.ratis.server.storage;
 
+import org.apache.ratis.io.CorruptedFileException;
 import org.apache.ratis.proto.RaftProtos.LogEntryProto;
 import org.apache.ratis.server.impl.ServerProtoUtils;
 import org.apache.ratis.server.protocol.TermIndex;
@@ -29,16 +30,17 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 import java.util.Objects;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.function.Consumer;
+import java.util.stream.LongStream;
 
 /**
  * In-memory cache for a log segment file. All the updates will be first written
@@ -49,6 +51,8 @@ import java.util.function.Consumer;
 class LogSegment implements Comparable<Long> {
   static final Logger LOG = LoggerFactory.getLogger(LogSegment.class);
 
+  private static final AtomicReferenceArray<LogEntryProto> EMPTY_CACHE = new AtomicReferenceArray<>(0);
+
   static long getEntrySize(LogEntryProto entry) {
     final int serialized = ServerProtoUtils.removeStateMachineData(entry).getSerializedSize();
     return serialized + CodedOutputStream.computeUInt32SizeNoTag(serialized) + 4;
@@ -59,9 +63,9 @@ class LogSegment implements Comparable<Long> {
     private final long offset;
     private final TermIndex termIndex;
 
-    LogRecord(long offset, LogEntryProto entry) {
+    LogRecord(long offset, TermIndex termIndex) {
       this.offset = offset;
-      termIndex = TermIndex.newTermIndex(entry.getTerm(), entry.getIndex());
+      this.termIndex = termIndex;
     }
 
     TermIndex getTermIndex() {
@@ -126,10 +130,103 @@ class LogSegment implements Comparable<Long> {
     return count;
   }
 
+  /**
+   * Read the entries with the given indices, which must be in ascending order.
+   * The offsets are used only if the file is in version 1.
+   */
+  private static List<LogEntryProto> readEntries(File file, long[] indices, long[] offsets) throws IOException {
+    final List<LogEntryProto> entries = new ArrayList<>(offsets.length);
+    try (LogReader reader = new LogReader(file)) {
+      if (!reader.verifyHeader()) {
+        throw new CorruptedFileException(file, "Log header is partially written");
+      }
+      for (int i = 0; i < indices.length; i++) {
+        reader.seek(indices[i], offsets[i]);
+        final LogEntryProto entry = reader.readEntry();
+        if (entry == null) {
+          throw new CorruptedFileException(file, "Failed to read the entry " + indices[i]
+              + " at offset " + offsets[i]);
+        }
+        entries.add(entry);
+      }
+    }
+    return entries;
+  }
+
+  /**
+   * Load a closed segment from its index file without parsing all the entries.
+   * Only the configuration entries and the last metadata entry,
+   * which are required by the consumer, are read from the segment file.
+   *
+   * @return the segment, or null if the index file is missing or invalid.
+   */
+  private static LogSegment loadSegmentFromIndex(RaftStorage storage, File file,
+      long start, long end, Consumer<LogEntryProto> logConsumer) {
+    final LogSegmentIndex.Loaded loaded = LogSegmentIndex.read(LogSegmentIndex.getIndexFile(file), start, end);
+    if (loaded == null) {
+      return null;
+    }
+    final long fileLength = file.length();
+    // the offsets and the total size are for version 1; a version 2 file can be smaller
+    final boolean version1 = readVersionQuietly(file) != SegmentedRaftLogFormat.VERSION_2;
+    if (version1 && loaded.getTotalSize() > fileLength) {
+      LOG.warn("Ignoring the index of segment file {}: totalSize {} > file length {}",
+          file, loaded.getTotalSize(), fileLength);
+      return null;
+    }
+
+    final LogSegmentIndex index = loaded.getIndex();
+    try {
+      if (logConsumer != null) {
+        final long[] configs = index.getConfigIndices();
+        final long metadata = index.getLastMetadataIndex();
+        final long[] indices = metadata < 0? configs : LongStream.concat(
+            Arrays.stream(configs), LongStream.of(metadata)).sorted().toArray();
+        final long[] offsets = Arrays.stream(indices).map(i -> index.getOffset(Math.toIntExact(i - start))).toArray();
+        final List<LogEntryProto> entries = readEntries(file, indices, offsets);
+        for (int i = 0; i < indices.length; i++) {
+          final LogEntryProto e = entries.get(i);
+          if (e.getIndex() != indices[i] || e.getTerm() != index.getTerm(Math.toIntExact(indices[i] - start))) {
+            throw new CorruptedFileException(file, "Entry " + ServerProtoUtils.toLogEntryString(e)
+                + " mismatches the index at " + indices[i]);
+          }
+        }
+        entries.forEach(logConsumer);
+      }
+      if (version1 && fileLength > loaded.getTotalSize()) {
+        // The segment has extra padding, truncate it.
+        FileUtils.truncateFile(file, loaded.getTotalSize());
+      }
+    } catch (IOException e) {
+      LOG.warn("Ignoring the index of segment file " + file, e);
+      return null;
+    }
+
+    LOG.info("Successfully loaded {} entries from the index of segment file {}", index.size(), file);
+    return new LogSegment(storage, false, start, end, index, loaded.getTotalSize());
+  }
+
+  /** @return the version of the given file; or -1 if it cannot be read. */
+  private static int readVersionQuietly(File file) {
+    try {
+      return SegmentedRaftLogFormat.readVersion(file);
+    } catch (IOException e) {
+      LOG.warn("Failed to read the version of segment file " + file, e);
+      return -1;
+    }
+  }
+
   static LogSegment loadSegment(RaftStorage storage, File file,
       long start, long end, boolean isOpen,
       boolean keepEntryInCache, Consumer<LogEntryProto> logConsumer)
       throws IOException {
+    if (!isOpen && !keepEntryInCache) {
+      final LogSegment loaded = loadSegmentFromIndex(storage, file, start, end, logConsumer);
+      if (loaded != null) {
+        return loaded;
+      }
+    }
+
     final LogSegment segment = isOpen ?
         LogSegment.newOpenSegment(storage, start) :
         LogSegment.newCloseSegment(storage, start, end);
@@ -146,15 +243,13 @@ class LogSegment implements Comparable<Long> {
       // The segment does not have any entries, delete the file.
       FileUtils.deleteFile(file);
       return null;
-    } else if (file.length() > segment.getTotalSize()) {
+    } else if (file.length() > segment.getTotalSize()
+        && (isOpen || readVersionQuietly(file) != SegmentedRaftLogFormat.VERSION_2)) {
       // The segment has extra padding, truncate it.
       FileUtils.truncateFile(file, segment.getTotalSize());
     }
 
     Preconditions.assertTrue(start == segment.getStartIndex());
-    if (!segment.records.isEmpty()) {
-      Preconditions.assertTrue(start == segment.records.get(0).getTermIndex().getIndex());
-    }
     if (!isOpen) {
       Preconditions.assertTrue(segment.getEndIndex() == end);
     }
@@ -174,10 +269,22 @@ class LogSegment implements Comparable<Long> {
       final File file = getSegmentFile();
       // note the loading should not exceed the endIndex: it is possible that
       // the on-disk log file should be truncated but has not been done yet.
-      readSegmentFile(file, startIndex, endIndex, isOpen,
-          entry -> entryCache.put(ServerProtoUtils.toTermIndex(entry), entry));
+      final TermIndex ti = key.getTermIndex();
+      final AtomicReference<LogEntryProto> found = new AtomicReference<>();
+      readSegmentFile(file, startIndex, endIndex, isOpen, entry -> {
+        putCachedEntry(entry);
+        if (entry.getIndex() == ti.getIndex()) {
+          found.set(entry);
+        }
+      });
+      if (!isOpen) {
+        // the entries are cached now; do not let the file push out the hot pages
+        try (FileInputStream in = new FileInputStream(file)) {
+          LogOutputStream.dropPageCache(file, in.getFD());
+        }
+      }
       loadingTimes.incrementAndGet();
-      return Objects.requireNonNull(entryCache.get(key.getTermIndex()));
+      return Objects.requireNonNull(found.get(), () -> "Entry not found for " + ti);
     }
   }
 
@@ -194,10 +301,11 @@ class LogSegment implements Comparable<Long> {
         .append(", numOfEntries=").append(numOfEntries())
         .append(", isOpen? ").append(isOpen)
         .append(", file=").append(getSegmentFile());
-    records.stream().map(LogRecord::getTermIndex).forEach(
-        ti -> b.append("  ").append(ti).append(", cache=")
-            .append(ServerProtoUtils.toLogEntryString(entryCache.get(ti)))
-    );
+    for (int i = 0; i < index.size(); i++) {
+      final TermIndex ti = TermIndex.newTermIndex(index.getTerm(i), startIndex + i);
+      b.append("  ").append(ti).append(", cache=")
+          .append(ServerProtoUtils.toLogEntryString(getCachedEntry(ti)));
+    }
     return b.toString();
   }
 
@@ -212,21 +320,32 @@ class LogSegment implements Comparable<Long> {
   private volatile boolean hasEntryCache;
 
   /**
-   * the list of records is more like the index of a segment
+   * the offsets and the terms of the entries; the {@link LogRecord}s are created on demand.
    */
-  private final List<LogRecord> records = new ArrayList<>();
+  private final LogSegmentIndex index;
   /**
-   * the entryCache caches the content of log entries.
+   * the entryCache caches the content of log entries, addressed by (index - startIndex).
+   * Only the appending thread and {@link #loadCache(LogRecord)} may replace the array;
+   * a larger array replaces it when an open segment grows.
    */
-  private final Map<TermIndex, LogEntryProto> entryCache = new ConcurrentHashMap<>();
-  private final Set<TermIndex> configEntries = new HashSet<>();
+  private volatile AtomicReferenceArray<LogEntryProto> entryCache = EMPTY_CACHE;
+  /** Should the entries of this closed segment be cached off-heap? */
+  private volatile boolean useOffHeapCache;
+  /** When it is non-null, the entries are cached off-heap instead of in {@link #entryCache}. */
+  private volatile OffHeapEntries offHeapCache;
 
   private LogSegment(RaftStorage storage, boolean isOpen, long start, long end) {
+    this(storage, isOpen, start, end, new LogSegmentIndex(start), SegmentedRaftLogFormat.getHeaderLength());
+  }
+
+  private LogSegment(RaftStorage storage, boolean isOpen, long start, long end,
+      LogSegmentIndex index, long totalSize) {
     this.storage = storage;
     this.isOpen = isOpen;
     this.startIndex = start;
     this.endIndex = end;
-    totalSize = SegmentedRaftLogFormat.getHeaderLength();
+    this.index = index;
+    this.totalSize = totalSize;
     hasEntryCache = isOpen;
   }
 
@@ -255,7 +374,7 @@ class LogSegment implements Comparable<Long> {
   private void append(boolean keepEntryInCache, LogEntryProto... entries) {
     Preconditions.assertTrue(entries != null && entries.length > 0);
     final long term = entries[0].getTerm();
-    if (records.isEmpty()) {
+    if (index.size() == 0) {
       Preconditions.assertTrue(entries[0].getIndex() == startIndex,
           "gap between start index %s and first entry to append %s",
           startIndex, entries[0].getIndex());
@@ -264,70 +383,152 @@ class LogSegment implements Comparable<Long> {
       // all these entries should be of the same term
       Preconditions.assertTrue(entry.getTerm() == term,
           "expected term:%s, term of the entry:%s", term, entry.getTerm());
-      final LogRecord currentLast = getLastRecord();
-      if (currentLast != null) {
-        Preconditions.assertTrue(
-            entry.getIndex() == currentLast.getTermIndex().getIndex() + 1,
-            "gap between entries %s and %s", entry.getIndex(),
-            currentLast.getTermIndex().getIndex());
+      if (index.size() > 0) {
+        final long lastIndex = startIndex + index.size() - 1;
+        Preconditions.assertTrue(entry.getIndex() == lastIndex + 1,
+            "gap between entries %s and %s", entry.getIndex(), lastIndex);
       }
 
-      final LogRecord record = new LogRecord(totalSize, entry);
-      records.add(record);
+      index.append(entry.getTerm(), totalSize, entry.hasConfigurationEntry(), entry.hasMetadataEntry());
       if (keepEntryInCache) {
-        entryCache.put(record.getTermIndex(), entry);
-      }
-      if (entry.hasConfigurationEntry()) {
-        configEntries.add(record.getTermIndex());
+        putCachedEntry(entry);
       }
       totalSize += getEntrySize(entry);
       endIndex = entry.getIndex();
     }
   }
 
+  /** @return the cached entry with the given term and index; or null if it is not cached. */
+  private LogEntryProto getCachedEntry(TermIndex ti) {
+    final AtomicReferenceArray<LogEntryProto> cache = entryCache;
+    final long k = ti.getIndex() - startIndex;
+    if (k < 0 || k >= numOfEntries()) {
+      return null;
+    }
+    LogEntryProto entry = k < cache.length()? cache.get((int) k): null;
+    if (entry == null) {
+      final OffHeapEntries offHeap = offHeapCache;
+      if (offHeap != null && k < offHeap.size()) {
+        entry = offHeap.get(ti.getIndex());
+      }
+    }
+    return entry != null && entry.getTerm() == ti.getTerm()? entry: null;
+  }
+
+  private void putCachedEntry(LogEntryProto entry) {
+    final int k = Math.toIntExact(entry.getIndex() - startIndex);
+    AtomicReferenceArray<LogEntryProto> cache = entryCache;
+    if (k >= cache.length()) {
+      cache = growEntryCache(k + 1);
+    }
+    cache.set(k, entry);
+  }
+
+  /**
+   * Replace the cache array with a larger one.
+   * It is synchronized with {@link #loadCache(LogRecord)} so that the loaded entries are not lost.
+   */
+  private synchronized AtomicReferenceArray<LogEntryProto> growEntryCache(int minLength) {
+    final AtomicReferenceArray<LogEntryProto> old = entryCache;
+    if (minLength <= old.length()) {
+      return old;
+    }
+    final int length = isOpen? Math.max(minLength, 2 * old.length()): Math.max(minLength, numOfEntries());
+    final AtomicReferenceArray<LogEntryProto> cache = new AtomicReferenceArray<>(length);
+    for (int i = 0; i < old.length(); i++) {
+      cache.set(i, old.get(i));
+    }
+    entryCache = cache;
+    return cache;
+  }
+
   LogRecordWithEntry getEntryWithoutLoading(long index) {
     LogRecord record = getLogRecord(index);
     if (record == null) {
       return null;
     }
-    return new LogRecordWithEntry(record, entryCache.get(record.getTermIndex()));
+    return new LogRecordWithEntry(record, getCachedEntry(record.getTermIndex()));
   }
 
   /**
    * Acquire LogSegment's monitor so that there is no concurrent loading.
    */
   synchronized LogEntryProto loadCache(LogRecord record) throws RaftLogIOException {
-    LogEntryProto entry = entryCache.get(record.getTermIndex());
+    LogEntryProto entry = getCachedEntry(record.getTermIndex());
     if (entry != null) {
       return entry;
     }
     try {
       entry = cacheLoader.load(record);
       hasEntryCache = true;
+      if (useOffHeapCache) {
+        moveCacheOffHeap();
+      }
       return entry;
     } catch (Exception e) {
       throw new RaftLogIOException(e);
     }
   }
 
-  LogRecord getLogRecord(long index) {
-    if (index >= startIndex && index <= endIndex) {
-      return records.get(Math.toIntExact(index - startIndex));
+  /**
+   * Cache the entries of this closed segment off-heap from now on.
+   * The entries currently cached on-heap, if there are any, are moved off-heap.
+   */
+  synchronized void useOffHeapCache() {
+    Preconditions.assertTrue(!isOpen(), () -> "Segment " + this + " is open");
+    useOffHeapCache = true;
+    moveCacheOffHeap();
+  }
+
+  /** Move the on-heap cache off-heap if all the entries are cached. */
+  private synchronized void moveCacheOffHeap() {
+    final AtomicReferenceArray<LogEntryProto> cache = entryCache;
+    final int n = numOfEntries();
+    if (n == 0 || cache.length() < n) {
+      return;
     }
-    return null;
+    for (int i = 0; i < n; i++) {
+      if (cache.get(i) == null) {
+        return;
+      }
+    }
+    releaseOffHeapCache();
+    offHeapCache = OffHeapEntries.serialize(startIndex, cache, n);
+    entryCache = EMPTY_CACHE;
+    LOG.debug("{}: moved the cache to {}", this, offHeapCache);
   }
 
-  private LogRecord getLastRecord() {
-    return records.isEmpty() ? null : records.get(records.size() - 1);
+  private synchronized void releaseOffHeapCache() {
+    final OffHeapEntries offHeap = offHeapCache;
+    if (offHeap != null) {
+      offHeapCache = null;
+      offHeap.release();
+    }
+  }
+
+  LogRecord getLogRecord(long i) {
+    if (i >= startIndex && i <= endIndex) {
+      final int k = Math.toIntExact(i - startIndex);
+      return new LogRecord(index.getOffset(k), TermIndex.newTermIndex(index.getTerm(k), i));
+    }
+    return null;
   }
 
   TermIndex getLastTermIndex() {
-    LogRecord last = getLastRecord();
-    return last == null ? null : last.getTermIndex();
+    final int size = index.size();
+    return size == 0 ? null : TermIndex.newTermIndex(index.getTerm(size - 1), startIndex + size - 1);
   }
 
   boolean isConfigEntry(TermIndex ti) {
-    return configEntries.contains(ti);
+    final long i = ti.getIndex();
+    return i >= startIndex && i < startIndex + index.size() && index.isConfig(i)
+        && index.getTerm(Math.toIntExact(i - startIndex)) == ti.getTerm();
+  }
+
+  /** @return a copy of the index of this segment, which must be closed. */
+  LogSegmentIndex copyIndex() {
+    Preconditions.assertTrue(!isOpen(), () -> "Segment " + this + " is open");
+    return index.copy();
   }
 
   long getTotalSize() {
@@ -339,13 +540,19 @@ class LogSegment implements Comparable<Long> {
    */
   void truncate(long fromIndex) {
     Preconditions.assertTrue(fromIndex >= startIndex && fromIndex <= endIndex);
-    LogRecord record = records.get(Math.toIntExact(fromIndex - startIndex));
-    for (long index = endIndex; index >= fromIndex; index--) {
-      LogRecord removed = records.remove(Math.toIntExact(index - startIndex));
-      entryCache.remove(removed.getTermIndex());
-      configEntries.remove(removed.getTermIndex());
+    final int k = Math.toIntExact(fromIndex - startIndex);
+    final long offset = index.getOffset(k);
+    final AtomicReferenceArray<LogEntryProto> cache = entryCache;
+    for (int i = Math.min(index.size(), cache.length()) - 1; i >= k; i--) {
+      cache.set(i, null);
+    }
+    if (offHeapCache != null) {
+      // the remaining entries will be loaded again if necessary
+      releaseOffHeapCache();
+      hasEntryCache = false;
     }
-    totalSize = record.offset;
+    index.truncate(k);
+    totalSize = offset;
     isOpen = false;
     this.endIndex = fromIndex - 1;
   }
@@ -368,10 +575,10 @@ class LogSegment implements Comparable<Long> {
   }
 
   void clear() {
-    records.clear();
-    entryCache.clear();
+    index.clear();
+    entryCache = EMPTY_CACHE;
+    releaseOffHeapCache();
     hasEntryCache = false;
-    configEntries.clear();
     endIndex = startIndex - 1;
   }
 
@@ -379,9 +586,11 @@ class LogSegment implements Comparable<Long> {
     return loadingTimes.get();
   }
 
-  void evictCache() {
+  /** It is synchronized with {@link #loadCache(LogRecord)} so that hasEntryCache stays consistent with the cache. */
+  synchronized void evictCache() {
     hasEntryCache = false;
-    entryCache.clear();
+    entryCache = EMPTY_CACHE;
+    releaseOffHeapCache();
   }
 
   boolean hasCache() {
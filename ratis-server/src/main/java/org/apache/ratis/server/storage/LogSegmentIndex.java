@@ -0,0 +1,309 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.server.storage;
+
+import org.apache.ratis.util.Preconditions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * The index of a log segment,
+ * i.e. the offsets of the entries in the segment file and the terms of the entries.
+ * Since the consecutive entries usually have the same term,
+ * the terms are stored as runs, where each run is a start position and a term.
+ * The positions of the configuration entries and of the last metadata entry are also kept.
+ *
+ * When a segment is closed, its index is written to a sidecar file
+ * so that the segment can be loaded without parsing the entries.
+ * The sidecar file is checksummed;
+ * a missing, stale or corrupted sidecar file is ignored and the segment file is parsed as usual.
+ *
+ * This class is not threadsafe; it is protected by the lock of the {@link LogSegment}.
+ */
+class LogSegmentIndex {
+  static final Logger LOG = LoggerFactory.getLogger(LogSegmentIndex.class);
+
+  static final String SUFFIX = ".idx";
+
+  private static final int MAGIC = 0x52494458; // "RIDX"
+  private static final int VERSION = 1;
+  /** magic, version, startIndex, endIndex, totalSize, lastMetadataIndex, numEntries, numRuns, numConfigs */
+  private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 8 + 8 + 4 + 4 + 4;
+  private static final int CHECKSUM_SIZE = 4;
+
+  static File getIndexFile(File segmentFile) {
+    return new File(segmentFile.getParentFile(), segmentFile.getName() + SUFFIX);
+  }
+
+  static void deleteIndexFile(File segmentFile) throws IOException {
+    final File indexFile = getIndexFile(segmentFile);
+    if (Files.deleteIfExists(indexFile.toPath())) {
+      LOG.info("Deleted segment index file {}", indexFile);
+    }
+  }
+
+  private final long startIndex;
+
+  private long[] offsets;
+  private int numEntries;
+
+  /** The term of the entries in [runStarts[i], runStarts[i+1]) is runTerms[i]. */
+  private int[] runStarts;
+  private long[] runTerms;
+  private int numRuns;
+
+  /** The indices of the configuration entries in ascending order. */
+  private long[] configs;
+  private int numConfigs;
+
+  private long lastMetadataIndex = -1;
+
+  LogSegmentIndex(long startIndex) {
+    this(startIndex, new long[16], 0, new int[1], new long[1], 0, new long[1], 0, -1);
+  }
+
+  private LogSegmentIndex(long startIndex, long[] offsets, int numEntries,
+      int[] runStarts, long[] runTerms, int numRuns, long[] configs, int numConfigs, long lastMetadataIndex) {
+    this.startIndex = startIndex;
+    this.offsets = offsets;
+    this.numEntries = numEntries;
+    this.runStarts = runStarts;
+    this.runTerms = runTerms;
+    this.numRuns = numRuns;
+    this.configs = configs;
+    this.numConfigs = numConfigs;
+    this.lastMetadataIndex = lastMetadataIndex;
+  }
+
+  /** @return a copy of this index trimmed to its size. */
+  LogSegmentIndex copy() {
+    return new LogSegmentIndex(startIndex, Arrays.copyOf(offsets, numEntries), numEntries,
+        Arrays.copyOf(runStarts, numRuns), Arrays.copyOf(runTerms, numRuns), numRuns,
+        Arrays.copyOf(configs, numConfigs), numConfigs, lastMetadataIndex);
+  }
+
+  int size() {
+    return numEntries;
+  }
+
+  long getOffset(int i) {
+    Preconditions.assertTrue(i >= 0 && i < numEntries, () -> "Index out of bounds: i=" + i + ", size=" + numEntries);
+    return offsets[i];
+  }
+
+  long getTerm(int i) {
+    Preconditions.assertTrue(i >= 0 && i < numEntries, () -> "Index out of bounds: i=" + i + ", size=" + numEntries);
+    final int r = Arrays.binarySearch(runStarts, 0, numRuns, i);
+    return runTerms[r >= 0? r: -r - 2];
+  }
+
+  boolean isConfig(long index) {
+    return Arrays.binarySearch(configs, 0, numConfigs, index) >= 0;
+  }
+
+  long[] getConfigIndices() {
+    return Arrays.copyOf(configs, numConfigs);
+  }
+
+  long getLastMetadataIndex() {
+    return lastMetadataIndex;
+  }
+
+  void append(long term, long offset, boolean isConfig, boolean isMetadata) {
+    final long index = startIndex + numEntries;
+    if (numEntries == offsets.length) {
+      offsets = Arrays.copyOf(offsets, 2 * numEntries + 1);
+    }
+    offsets[numEntries] = offset;
+
+    if (numRuns == 0 || runTerms[numRuns - 1] != term) {
+      if (numRuns == runStarts.length) {
+        runStarts = Arrays.copyOf(runStarts, 2 * numRuns + 1);
+        runTerms = Arrays.copyOf(runTerms, 2 * numRuns + 1);
+      }
+      runStarts[numRuns] = numEntries;
+      runTerms[numRuns] = term;
+      numRuns++;
+    }
+
+    if (isConfig) {
+      if (numConfigs == configs.length) {
+        configs = Arrays.copyOf(configs, 2 * numConfigs + 1);
+      }
+      configs[numConfigs++] = index;
+    }
+    if (isMetadata) {
+      lastMetadataIndex = index;
+    }
+    numEntries++;
+  }
+
+  /** Remove the entries starting from the given position (inclusive). */
+  void truncate(int newSize) {
+    Preconditions.assertTrue(newSize >= 0 && newSize <= numEntries);
+    numEntries = newSize;
+    while (numRuns > 0 && runStarts[numRuns - 1] >= newSize) {
+      numRuns--;
+    }
+    final long endIndex = startIndex + newSize - 1;
+    while (numConfigs > 0 && configs[numConfigs - 1] > endIndex) {
+      numConfigs--;
+    }
+    if (lastMetadataIndex > endIndex) {
+      // the previous metadata entry, if there is any, is unknown
+      lastMetadataIndex = -1;
+    }
+  }
+
+  void clear() {
+    truncate(0);
+  }
+
+  /** Write this index to the given file. */
+  void write(File file, long totalSize) throws IOException {
+    final int size = HEADER_SIZE + 8 * numEntries + (4 + 8) * numRuns + 8 * numConfigs + CHECKSUM_SIZE;
+    final ByteBuffer buffer = ByteBuffer.allocate(size);
+    buffer.putInt(MAGIC).putInt(VERSION)
+        .putLong(startIndex).putLong(startIndex + numEntries - 1)
+        .putLong(totalSize).putLong(lastMetadataIndex)
+        .putInt(numEntries).putInt(numRuns).putInt(numConfigs);
+    buffer.asLongBuffer().put(offsets, 0, numEntries);
+    buffer.position(buffer.position() + 8 * numEntries);
+    buffer.asIntBuffer().put(runStarts, 0, numRuns);
+    buffer.position(buffer.position() + 4 * numRuns);
+    buffer.asLongBuffer().put(runTerms, 0, numRuns);
+    buffer.position(buffer.position() + 8 * numRuns);
+    buffer.asLongBuffer().put(configs, 0, numConfigs);
+    buffer.position(buffer.position() + 8 * numConfigs);
+
+    final CRC32 crc = new CRC32();
+    crc.update(buffer.array(), 0, buffer.position());
+    buffer.putInt((int) crc.getValue());
+    buffer.flip();
+
+    try (FileChannel out = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+      while (buffer.hasRemaining()) {
+        out.write(buffer);
+      }
+    }
+  }
+
+  /** The result of {@link #read(File, long, long)}. */
+  static class Loaded {
+    private final LogSegmentIndex index;
+    private final long totalSize;
+
+    Loaded(LogSegmentIndex index, long totalSize) {
+      this.index = index;
+      this.totalSize = totalSize;
+    }
+
+    LogSegmentIndex getIndex() {
+      return index;
+    }
+
+    long getTotalSize() {
+      return totalSize;
+    }
+  }
+
+  /**
+   * Read the index from the given file.
+   *
+   * @return the index, or null if the file does not exist or it is not a valid index of the given range.
+   */
+  static Loaded read(File file, long start, long end) {
+    if (!file.isFile()) {
+      return null;
+    }
+    try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      final long fileSize = in.size();
+      if (fileSize < HEADER_SIZE + CHECKSUM_SIZE || fileSize > Integer.MAX_VALUE) {
+        LOG.warn("Ignoring segment index file {}: unexpected size {}", file, fileSize);
+        return null;
+      }
+      final MappedByteBuffer buffer = in.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+
+      final int checksumPos = (int) fileSize - CHECKSUM_SIZE;
+      final CRC32 crc = new CRC32();
+      final ByteBuffer content = buffer.duplicate();
+      content.limit(checksumPos);
+      crc.update(content);
+      if (buffer.getInt(checksumPos) != (int) crc.getValue()) {
+        LOG.warn("Ignoring segment index file {}: checksum mismatched", file);
+        return null;
+      }
+
+      final int magic = buffer.getInt();
+      final int version = buffer.getInt();
+      final long startIndex = buffer.getLong();
+      final long endIndex = buffer.getLong();
+      if (magic != MAGIC || version != VERSION || startIndex != start || endIndex != end) {
+        LOG.warn("Ignoring segment index file {}: magic={}, version={}, range=[{}, {}], expected range=[{}, {}]",
+            file, Integer.toHexString(magic), version, startIndex, endIndex, start, end);
+        return null;
+      }
+      final long totalSize = buffer.getLong();
+      final long lastMetadataIndex = buffer.getLong();
+      final int numEntries = buffer.getInt();
+      final int numRuns = buffer.getInt();
+      final int numConfigs = buffer.getInt();
+      if (numEntries != end - start + 1
+          || checksumPos != HEADER_SIZE + 8L * numEntries + (4 + 8) * (long) numRuns + 8L * numConfigs) {
+        LOG.warn("Ignoring segment index file {}: numEntries={}, numRuns={}, numConfigs={}",
+            file, numEntries, numRuns, numConfigs);
+        return null;
+      }
+
+      final long[] offsets = new long[numEntries];
+      buffer.asLongBuffer().get(offsets);
+      buffer.position(buffer.position() + 8 * numEntries);
+      final int[] runStarts = new int[numRuns];
+      buffer.asIntBuffer().get(runStarts);
+      buffer.position(buffer.position() + 4 * numRuns);
+      final long[] runTerms = new long[numRuns];
+      buffer.asLongBuffer().get(runTerms);
+      buffer.position(buffer.position() + 8 * numRuns);
+      final long[] configs = new long[numConfigs];
+      buffer.asLongBuffer().get(configs);
+
+      return new Loaded(new LogSegmentIndex(start, offsets, numEntries,
+          runStarts, runTerms, numRuns, configs, numConfigs, lastMetadataIndex), totalSize);
+    } catch (IOException e) {
+      LOG.warn("Ignoring segment index file " + file, e);
+      return null;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + "(start=" + startIndex + ", size=" + numEntries
+        + ", runs=" + numRuns + ", configs=" + numConfigs + ")";
+  }
+}
@@ -0,0 +1,133 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.server.storage;
+
+import org.apache.ratis.proto.RaftProtos.LogEntryProto;
+import org.apache.ratis.thirdparty.com.google.protobuf.InvalidProtocolBufferException;
+import org.apache.ratis.thirdparty.io.netty.buffer.ByteBuf;
+import org.apache.ratis.thirdparty.io.netty.buffer.ByteBufOutputStream;
+import org.apache.ratis.thirdparty.io.netty.buffer.PooledByteBufAllocator;
+import org.apache.ratis.util.Preconditions;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The serialized entries of a closed log segment stored in a pooled direct buffer.
+ *
+ * The entries are parsed only when they are read.
+ * This object is reference counted:
+ * the segment holds a reference until {@link #release()} and each read retains a reference while parsing,
+ * so that the buffer is returned to the pool only after the segment drops it and no read is in progress.
+ * The count is kept in this object, not in the buffer,
+ * since a released buffer may be recycled by the pool and then retained by its new owner.
+ */
+class OffHeapEntries {
+  private final long startIndex;
+  /** The entry at (startIndex + i) is in [positions[i], positions[i + 1]). */
+  private final int[] positions;
+  private final ByteBuf buffer;
+  /** The references held by the segment and the reads in progress; once it becomes 0, it never increases. */
+  private final AtomicInteger refCount = new AtomicInteger(1);
+  private final AtomicBoolean released = new AtomicBoolean();
+
+  /** Serialize the given entries, which must be all non-null, to a new direct buffer. */
+  static OffHeapEntries serialize(long startIndex, AtomicReferenceArray<LogEntryProto> entries, int size) {
+    final int[] positions = new int[size + 1];
+    for (int i = 0; i < size; i++) {
+      final LogEntryProto e = entries.get(i);
+      Preconditions.assertTrue(e != null && e.getIndex() == startIndex + i,
+          "Unexpected entry at %s: %s", startIndex + i, e);
+      positions[i + 1] = Math.addExact(positions[i], e.getSerializedSize());
+    }
+
+    final ByteBuf buffer = PooledByteBufAllocator.DEFAULT.directBuffer(positions[size], positions[size]);
+    try (ByteBufOutputStream out = new ByteBufOutputStream(buffer)) {
+      for (int i = 0; i < size; i++) {
+        entries.get(i).writeTo(out);
+      }
+    } catch (IOException e) {
+      buffer.release();
+      throw new UncheckedIOException("Failed to serialize entries starting at " + startIndex, e);
+    }
+    return new OffHeapEntries(startIndex, positions, buffer);
+  }
+
+  private OffHeapEntries(long startIndex, int[] positions, ByteBuf buffer) {
+    this.startIndex = startIndex;
+    this.positions = positions;
+    this.buffer = buffer;
+  }
+
+  int size() {
+    return positions.length - 1;
+  }
+
+  long getSerializedSize() {
+    return positions[size()];
+  }
+
+  /** @return the entry with the given index; or null if the buffer is already released. */
+  LogEntryProto get(long index) {
+    final int i = Math.toIntExact(index - startIndex);
+    Preconditions.assertTrue(i >= 0 && i < size(), () -> "Index " + index + " out of range " + this);
+    if (!tryRetain()) {
+      return null;
+    }
+    try {
+      return LogEntryProto.parseFrom(buffer.nioBuffer(positions[i], positions[i + 1] - positions[i]));
+    } catch (InvalidProtocolBufferException e) {
+      throw new IllegalStateException("Failed to parse entry " + index + " in " + this, e);
+    } finally {
+      releaseReference();
+    }
+  }
+
+  private boolean tryRetain() {
+    for(;;) {
+      final int count = refCount.get();
+      if (count <= 0) {
+        return false;
+      } else if (refCount.compareAndSet(count, count + 1)) {
+        return true;
+      }
+    }
+  }
+
+  private void releaseReference() {
+    if (refCount.decrementAndGet() == 0) {
+      buffer.release();
+    }
+  }
+
+  /** Release the reference held by the segment; it is a no-op if the reference is already released. */
+  void release() {
+    if (released.compareAndSet(false, true)) {
+      releaseReference();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + "[" + startIndex + ", " + (startIndex + size() - 1)
+        + "], bytes=" + getSerializedSize();
+  }
+}
@@ -260,6 +260,26 @@ public abstract class RaftLog implements RaftLogSequentialOps, Closeable {
    */
   public abstract LogEntryProto get(long index) throws RaftLogIOException;
 
+  /**
+   * @return the start index of the entries readable by {@link #getWithArchive(long)},
+   *         which is smaller than {@link #getStartIndex()} if the purged entries are archived.
+   */
+  public long getArchiveStartIndex() {
+    return getStartIndex();
+  }
+
+  /**
+   * Get the log entry of the given index, reading it from the archive if it is purged,
+   * see {@link org.apache.ratis.server.RaftServerConfigKeys.Log.Archive}.
+   *
+   * @param index The given index.
+   * @return The log entry associated with the given index.
+   *         Null if there is no log entry with the index in both the log and the archive.
+   */
+  public LogEntryProto getWithArchive(long index) throws RaftLogIOException {
+    return get(index);
+  }
+
   /**
    * Get the log entry of the given index along with the state machine data.
    *
@@ -0,0 +1,293 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.server.storage;
+
+import org.apache.ratis.conf.RaftProperties;
+import org.apache.ratis.io.CorruptedFileException;
+import org.apache.ratis.proto.RaftProtos.LogEntryProto;
+import org.apache.ratis.server.RaftServerConfigKeys;
+import org.apache.ratis.server.impl.RaftServerConstants;
+import org.apache.ratis.util.Daemon;
+import org.apache.ratis.util.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Matcher;
+
+/**
+ * The archive of the purged log segments, see {@link RaftServerConfigKeys.Log.Archive}.
+ *
+ * When a closed segment is purged,
+ * it is rewritten to the archive directory in the version 2 format with compression
+ * and then deleted from the storage directory.
+ * The archived segments keep the closed segment file names,
+ * so that the index of the archive, which maps the start index to the segment file,
+ * is rebuilt by listing the archive directory.
+ *
+ * The segments are archived in order by a background thread, so that the log worker is not blocked
+ * by the compression and the fsync.
+ * Once the total size of the archived segments exceeds the limit, the oldest archived segments are deleted.
+ *
+ * The archived entries are read on demand;
+ * only the entries of the most recently read segment are kept in memory.
+ */
+class RaftLogArchive implements Closeable {
+  static final Logger LOG = LoggerFactory.getLogger(RaftLogArchive.class);
+
+  static RaftLogArchive newInstance(RaftStorage storage, RaftProperties properties) {
+    final File dir = RaftServerConfigKeys.Log.Archive.dir(properties);
+    if (dir == null) {
+      return null;
+    }
+    // use the storage directory name, i.e. the group id, to separate the groups
+    return new RaftLogArchive(new File(dir, storage.getStorageDir().getRoot().getName()),
+        RaftServerConfigKeys.Log.Format.blockSize(properties).getSizeInt(),
+        RaftServerConfigKeys.Log.Archive.sizeMax(properties).getSize());
+  }
+
+  private static final class Segment {
+    private final long startIndex;
+    private final long endIndex;
+    private final File file;
+    /** The size of the archived file; or -1 if the segment is purged but not yet archived. */
+    private final long size;
+
+    private Segment(long startIndex, long endIndex, File file, long size) {
+      this.startIndex = startIndex;
+      this.endIndex = endIndex;
+      this.file = file;
+      this.size = size;
+    }
+
+    private boolean isArchived() {
+      return size >= 0;
+    }
+
+    @Override
+    public String toString() {
+      return file + "[" + startIndex + ", " + endIndex + "]";
+    }
+  }
+
+  private static final class LoadedSegment {
+    private final Segment segment;
+    private final List<LogEntryProto> entries;
+
+    private LoadedSegment(Segment segment, List<LogEntryProto> entries) {
+      this.segment = segment;
+      this.entries = entries;
+    }
+  }
+
+  private final File dir;
+  private final int blockSize;
+  private final long sizeMax;
+  /** Map the start index to the segment. */
+  private final NavigableMap<Long, Segment> index = new ConcurrentSkipListMap<>();
+  private final AtomicReference<LoadedSegment> lastLoaded = new AtomicReference<>();
+
+  private final ExecutorService executor;
+  /** The total size of the archived segments, which is only updated by the archive thread after open. */
+  private long size = 0;
+  /**
+   * Is there a segment failed to be archived?
+   * If it is true, the following segments are not archived
+   * so that the segments kept in the storage directory have no gaps.
+   */
+  private volatile boolean failed = false;
+
+  RaftLogArchive(File dir, int blockSize, long sizeMax) {
+    this.dir = dir;
+    this.blockSize = blockSize;
+    this.sizeMax = sizeMax;
+    final String name = dir.getName() + "-" + getClass().getSimpleName();
+    this.executor = Executors.newSingleThreadExecutor(r -> new Daemon(r, name));
+  }
+
+  File getDir() {
+    return dir;
+  }
+
+  /** Create the archive directory if necessary and load the index. */
+  void open() throws IOException {
+    FileUtils.createDirectories(dir);
+    final File[] files = dir.listFiles();
+    if (files == null) {
+      throw new IOException("Failed to list " + dir);
+    }
+    for (File f : files) {
+      final Matcher matcher = RaftStorageDirectory.CLOSED_SEGMENT_REGEX.matcher(f.getName());
+      if (matcher.matches()) {
+        final long startIndex = Long.parseLong(matcher.group(1));
+        final long endIndex = Long.parseLong(matcher.group(2));
+        index.put(startIndex, new Segment(startIndex, endIndex, f, f.length()));
+        size += f.length();
+      }
+    }
+    LOG.info("Loaded {} archived segments ({} bytes) from {}", index.size(), size, dir);
+  }
+
+  /** @return the start index of the archive; or {@link RaftServerConstants#INVALID_LOG_INDEX} if it is empty. */
+  long getStartIndex() {
+    final Map.Entry<Long, Segment> first = index.firstEntry();
+    return first != null? first.getKey(): RaftServerConstants.INVALID_LOG_INDEX;
+  }
+
+  /**
+   * Add the given segment, which is purged but not yet archived, to the index
+   * so that its entries can be read from the storage directory until it is archived.
+   */
+  void addPurged(long startIndex, long endIndex, File file) {
+    index.putIfAbsent(startIndex, new Segment(startIndex, endIndex, file, -1));
+  }
+
+  /**
+   * Archive the given purged segment in the background and then delete it from the storage directory.
+   * The segments are archived in the order of the calls.
+   * Once a segment fails to be archived, it and all the following segments are kept in the storage directory,
+   * so that the remaining log has no gaps; they are purged and archived again after restart.
+   */
+  void archiveAsync(long startIndex, long endIndex, File file) {
+    executor.execute(() -> archiveAndDelete(startIndex, endIndex, file));
+  }
+
+  private void archiveAndDelete(long startIndex, long endIndex, File file) {
+    if (failed) {
+      LOG.warn("Skip archiving {} since a previous segment failed to be archived; it is kept until restart", file);
+      return;
+    }
+    try {
+      archive(startIndex, endIndex, file);
+      FileUtils.deleteFile(file);
+      LogSegmentIndex.deleteIndexFile(file);
+    } catch (IOException e) {
+      failed = true;
+      LOG.error("Failed to archive " + file + " to " + dir + "; it and the following segments are kept", e);
+      return;
+    }
+    deleteOldSegments();
+  }
+
+  /**
+   * Archive the given closed segment.
+   * The segment file is not deleted; the caller deletes it once it is archived.
+   */
+  private void archive(long startIndex, long endIndex, File file) throws IOException {
+    final File archived = new File(dir, file.getName());
+    LogFormatConverter.write(file, startIndex, endIndex, archived, SegmentedRaftLogFormat.VERSION_2, blockSize, true);
+    final long archivedSize = archived.length();
+    index.put(startIndex, new Segment(startIndex, endIndex, archived, archivedSize));
+    size += archivedSize;
+    LOG.info("Archived segment {} to {}", file, archived);
+  }
+
+  /** Delete the oldest archived segments until the total size is within the limit. */
+  private void deleteOldSegments() {
+    for(Iterator<Segment> i = index.values().iterator(); size > sizeMax && i.hasNext(); ) {
+      final Segment s = i.next();
+      if (!s.isArchived()) {
+        return;
+      }
+      i.remove();
+      size -= s.size;
+      try {
+        FileUtils.deleteFile(s.file);
+        LOG.info("Deleted archived segment {} since the archive size exceeds {}", s, sizeMax);
+      } catch (IOException e) {
+        LOG.warn("Failed to delete archived segment " + s, e);
+      }
+    }
+  }
+
+  /**
+   * @return the archived entry with the given index;
+   *         or null if the index is not in the archive.
+   */
+  LogEntryProto get(long i) throws IOException {
+    for(;;) {
+      final Map.Entry<Long, Segment> floor = index.floorEntry(i);
+      if (floor == null || i > floor.getValue().endIndex) {
+        return null;
+      }
+      final Segment segment = floor.getValue();
+      try {
+        return get(segment, i);
+      } catch (IOException e) {
+        // retry if the segment is concurrently moved to the archive or deleted
+        if (index.get(segment.startIndex) == segment) {
+          throw e;
+        }
+      }
+    }
+  }
+
+  private LogEntryProto get(Segment segment, long i) throws IOException {
+    LoadedSegment loaded = lastLoaded.get();
+    if (loaded == null || loaded.segment != segment) {
+      loaded = new LoadedSegment(segment, load(segment));
+      lastLoaded.set(loaded);
+    }
+    return loaded.entries.get(Math.toIntExact(i - segment.startIndex));
+  }
+
+  private static List<LogEntryProto> load(Segment segment) throws IOException {
+    final List<LogEntryProto> entries = new ArrayList<>(Math.toIntExact(segment.endIndex - segment.startIndex + 1));
+    try (LogInputStream in = new LogInputStream(segment.file, segment.startIndex, segment.endIndex, false)) {
+      for (LogEntryProto entry; (entry = in.nextEntry()) != null && entry.getIndex() <= segment.endIndex; ) {
+        if (entry.getIndex() != segment.startIndex + entries.size()) {
+          throw new CorruptedFileException(segment.file, "Expected index " + (segment.startIndex + entries.size())
+              + " but entry index is " + entry.getIndex());
+        }
+        entries.add(entry);
+      }
+    }
+    if (entries.size() != segment.endIndex - segment.startIndex + 1) {
+      throw new CorruptedFileException(segment.file, "Expected " + (segment.endIndex - segment.startIndex + 1)
+          + " entries but read " + entries.size());
+    }
+    return Collections.unmodifiableList(entries);
+  }
+
+  /** Wait for the pending segments to be archived. */
+  @Override
+  public void close() throws IOException {
+    executor.shutdown();
+    try {
+      if (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+        LOG.warn("Timed out waiting for the segments to be archived to {}", dir);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while waiting for the segments to be archived to " + dir, e);
+    }
+  }
+}
@@ -17,8 +17,12 @@
  */
 package org.apache.ratis.server.storage;
 
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Timer;
 import org.apache.ratis.conf.RaftProperties;
+import org.apache.ratis.metrics.RatisMetrics;
 import org.apache.ratis.proto.RaftProtos.LogEntryProto;
+import org.apache.ratis.protocol.RaftGroupId;
 import org.apache.ratis.protocol.RaftPeerId;
 import org.apache.ratis.server.RaftServerConfigKeys;
 import org.apache.ratis.server.impl.RaftServerConstants;
@@ -246,6 +250,7 @@ class RaftLogCache {
         if (segmentIndex == -segments.size() - 1) {
           for (LogSegment ls : segments) {
             list.add(new SegmentFileInfo(ls.getStartIndex(), ls.getEndIndex(), false, 0, 0));
+            ls.evictCache();
           }
           segments.clear();
         } else if (segmentIndex >= 0) {
@@ -254,6 +259,7 @@ class RaftLogCache {
             LogSegment ls = segments.get(i);
             list.add(new SegmentFileInfo(ls.getStartIndex(), ls.getEndIndex(), false, 0, 0));
             segments.remove(i);
+            ls.evictCache();
           }
         } else {
           throw new IllegalStateException("Unexpected gap in segments: binarySearch(" + index + ") returns "
@@ -279,13 +285,43 @@ class RaftLogCache {
   private final RaftStorage storage;
 
   private final int maxCachedSegments;
+  private final boolean offHeapCache;
   private final CacheInvalidationPolicy evictionPolicy = new CacheInvalidationPolicyDefault();
 
+  private final RatisMetrics metrics;
+  private final Counter hitCount;
+  private final Counter missCount;
+  private final Counter evictionCount;
+  /** The time to load the entries of a segment to the cache. */
+  private final Timer loadTimer;
+
   RaftLogCache(RaftPeerId selfId, RaftStorage storage, RaftProperties properties) {
+    this(selfId, null, storage, properties);
+  }
+
+  RaftLogCache(RaftPeerId selfId, RaftGroupId groupId, RaftStorage storage, RaftProperties properties) {
     this.name = selfId + "-" + getClass().getSimpleName();
     this.closedSegments = new LogSegmentList(name);
     this.storage = storage;
     maxCachedSegments = RaftServerConfigKeys.Log.maxCachedSegmentNum(properties);
+    offHeapCache = RaftServerConfigKeys.Log.segmentCacheOffHeap(properties);
+
+    this.metrics = new RatisMetrics(RaftLogCache.class, selfId, groupId);
+    this.hitCount = metrics.counter("hit");
+    this.missCount = metrics.counter("miss");
+    this.evictionCount = metrics.counter("eviction");
+    this.loadTimer = metrics.timer("load-time");
+    metrics.gauge("cached-segments", this::getCachedSegmentNum);
+    metrics.gauge("segments", this::getNumOfSegments);
+  }
+
+  /** Record an entry found, or not found, in the cache. */
+  void recordAccess(boolean hit) {
+    (hit? hitCount: missCount).inc();
+  }
+
+  Timer getLoadTimer() {
+    return loadTimer;
   }
 
   int getMaxCachedSegments() {
@@ -294,13 +330,28 @@ class RaftLogCache {
 
   void loadSegment(LogPathAndIndex pi, boolean keepEntryInCache,
       Consumer<LogEntryProto> logConsumer) throws IOException {
-    LogSegment logSegment = LogSegment.loadSegment(storage, pi.getPath().toFile(),
-        pi.startIndex, pi.endIndex, pi.isOpen(), keepEntryInCache, logConsumer);
+    LogSegment logSegment = readSegment(pi, keepEntryInCache, logConsumer);
     if (logSegment != null) {
       addSegment(logSegment);
     }
   }
 
+  /**
+   * Read the given segment file without adding it to this cache.
+   * It does not access the state of this cache so that it can be called concurrently.
+   *
+   * @return the segment, or null if the file does not have any entries.
+   */
+  LogSegment readSegment(LogPathAndIndex pi, boolean keepEntryInCache,
+      Consumer<LogEntryProto> logConsumer) throws IOException {
+    final LogSegment segment = LogSegment.loadSegment(storage, pi.getPath().toFile(),
+        pi.startIndex, pi.endIndex, pi.isOpen(), keepEntryInCache, logConsumer);
+    if (offHeapCache && segment != null && !segment.isOpen()) {
+      segment.useOffHeapCache();
+    }
+    return segment;
+  }
+
   long getCachedSegmentNum() {
     return closedSegments.countCached();
   }
@@ -316,6 +367,7 @@ class RaftLogCache {
     for (LogSegment s : toEvict) {
       s.evictCache();
     }
+    evictionCount.inc(toEvict.size());
   }
 
 
@@ -364,6 +416,9 @@ class RaftLogCache {
         && openSegment.numOfEntries() > 0);
     final long nextIndex = openSegment.getEndIndex() + 1;
     openSegment.close();
+    if (offHeapCache) {
+      openSegment.useOffHeapCache();
+    }
     closedSegments.add(openSegment);
     clearOpenSegment();
     if (createNewOpen) {
@@ -580,4 +635,9 @@ class RaftLogCache {
     }
     closedSegments.clear();
   }
+
+  void close() {
+    clear();
+    metrics.removeAll();
+  }
 }
@@ -17,10 +17,12 @@
  */
 package org.apache.ratis.server.storage;
 
-import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Histogram;
 import com.codahale.metrics.Timer;
 import org.apache.ratis.conf.RaftProperties;
-import org.apache.ratis.metrics.RatisMetricsRegistry;
+import org.apache.ratis.metrics.RatisMetrics;
+import org.apache.ratis.protocol.RaftGroupId;
 import org.apache.ratis.protocol.RaftPeerId;
 import org.apache.ratis.protocol.TimeoutIOException;
 import org.apache.ratis.server.RaftServerConfigKeys;
@@ -37,9 +39,13 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 
@@ -89,7 +95,7 @@ class RaftLogWorker implements Runnable {
   /**
    * The task queue accessed by rpc handler threads and the io worker thread.
    */
-  private final DataBlockingQueue<Task> queue;
+  private final MpscDataBlockingQueue<Task> queue;
   private volatile boolean running = true;
   private final Thread workerThread;
 
@@ -97,27 +103,48 @@ class RaftLogWorker implements Runnable {
   private volatile LogOutputStream out;
   private final Runnable submitUpdateCommitEvent;
   private final StateMachine stateMachine;
-  private final Supplier<Timer> logFlushTimer;
+  private final RatisMetrics metrics;
+  private final Timer logFlushTimer;
+  /** The number of entries per flush. */
+  private final Histogram flushBatchSize;
+  /** The time from the first entry written to the end of its flush. */
+  private final Timer flushLatency;
+  /** The number of bytes of the entries written. */
+  private final Counter bytesWritten;
 
   /**
    * The number of entries that have been written into the LogOutputStream but
    * has not been flushed.
    */
   private int pendingFlushNum = 0;
+  /** The time when the first pending entry was written. */
+  private long firstPendingNanos;
   /** the index of the last entry that has been written */
   private long lastWrittenIndex;
   /** the largest index of the entry that has been flushed */
   private volatile long flushedIndex;
 
   private final int forceSyncNum;
+  /** Null if the adaptive flush policy is disabled. */
+  private final AdaptiveFlushPolicy flushPolicy;
 
   private final long segmentMaxSize;
   private final long preallocatedSize;
   private final int bufferSize;
+  /** The format of the closed segments, see {@link RaftServerConfigKeys.Log.Format}. */
+  private final int formatVersion;
+  private final int formatBlockSize;
+  private final boolean formatCompression;
+  /** Convert the closed segments to {@link #formatVersion} in the background; or null for version 1. */
+  private final ExecutorService converter;
+  /** The last conversion submitted, which is only accessed by the worker thread. */
+  private CompletableFuture<Void> lastConversion = CompletableFuture.completedFuture(null);
+  /** The alignment for direct I/O; or 0 if direct I/O is disabled for the storage directory. */
+  private final int directIoAlignment;
 
   private final StateMachineDataPolicy stateMachineDataPolicy;
 
-  RaftLogWorker(RaftPeerId selfId, StateMachine stateMachine, Runnable submitUpdateCommitEvent,
+  RaftLogWorker(RaftPeerId selfId, RaftGroupId groupId, StateMachine stateMachine, Runnable submitUpdateCommitEvent,
       RaftStorage storage, RaftProperties properties) {
     this.name = selfId + "-" + getClass().getSimpleName();
     LOG.info("new {} for {}", name, storage);
@@ -129,20 +156,43 @@ class RaftLogWorker implements Runnable {
 
     final SizeInBytes queueByteLimit = RaftServerConfigKeys.Log.queueByteLimit(properties);
     final int queueElementLimit = RaftServerConfigKeys.Log.queueElementLimit(properties);
-    this.queue = new DataBlockingQueue<>(name, queueByteLimit, queueElementLimit, Task::getSerializedSize);
+    this.queue = new MpscDataBlockingQueue<>(name, queueByteLimit, queueElementLimit, Task::getSerializedSize);
 
     this.segmentMaxSize = RaftServerConfigKeys.Log.segmentSizeMax(properties).getSize();
     this.preallocatedSize = RaftServerConfigKeys.Log.preallocatedSize(properties).getSize();
     this.bufferSize = RaftServerConfigKeys.Log.writeBufferSize(properties).getSizeInt();
+    this.formatVersion = RaftServerConfigKeys.Log.Format.version(properties);
+    this.formatBlockSize = RaftServerConfigKeys.Log.Format.blockSize(properties).getSizeInt();
+    this.formatCompression = RaftServerConfigKeys.Log.Format.compressionEnabled(properties);
+    this.converter = formatVersion == SegmentedRaftLogFormat.VERSION_1? null
+        : Executors.newSingleThreadExecutor(r -> new Daemon(r, name + "-converter"));
+    this.directIoAlignment = isDirectIo(storage, properties)?
+        RaftServerConfigKeys.Log.DirectIo.alignment(properties).getSizeInt(): 0;
     this.forceSyncNum = RaftServerConfigKeys.Log.forceSyncNum(properties);
+    this.flushPolicy = RaftServerConfigKeys.Log.Flush.adaptiveEnabled(properties)?
+        new AdaptiveFlushPolicy(properties): null;
 
     this.stateMachineDataPolicy = new StateMachineDataPolicy(properties);
 
     this.workerThread = new Thread(this, name);
 
-    // Server Id can be null in unit tests
-    this.logFlushTimer = JavaUtils.memoize(() -> RatisMetricsRegistry.getRegistry()
-        .timer(MetricRegistry.name(RaftLogWorker.class, selfId.toString(), "flush-time")));
+    // Server Id and group Id can be null in unit tests
+    this.metrics = new RatisMetrics(RaftLogWorker.class, selfId, groupId);
+    this.logFlushTimer = metrics.timer("flush-time");
+    this.flushBatchSize = metrics.histogram("flush-batch-size");
+    this.flushLatency = metrics.timer("flush-latency");
+    this.bytesWritten = metrics.counter("bytes-written");
+    metrics.gauge("queue-size", queue::getNumElements);
+    metrics.gauge("queue-bytes", queue::getNumBytes);
+    metrics.gauge("flushed-index", () -> flushedIndex);
+  }
+
+  /** Is the storage in one of the direct I/O directories? */
+  private static boolean isDirectIo(RaftStorage storage, RaftProperties properties) {
+    final Path root = storage.getStorageDir().getRoot().getAbsoluteFile().toPath().normalize();
+    return RaftServerConfigKeys.Log.DirectIo.dirs(properties).stream()
+        .map(dir -> dir.getAbsoluteFile().toPath().normalize())
+        .anyMatch(root::startsWith);
   }
 
   void start(long latestIndex, File openSegmentFile) throws IOException {
@@ -152,7 +202,7 @@ class RaftLogWorker implements Runnable {
     if (openSegmentFile != null) {
       Preconditions.assertTrue(openSegmentFile.exists());
       out = new LogOutputStream(openSegmentFile, true, segmentMaxSize,
-          preallocatedSize, bufferSize);
+          preallocatedSize, bufferSize, directIoAlignment);
     }
     workerThread.start();
   }
@@ -165,9 +215,30 @@ class RaftLogWorker implements Runnable {
     } catch (InterruptedException ignored) {
     }
     IOUtils.cleanup(LOG, out);
+    if (converter != null) {
+      converter.shutdown();
+      try {
+        if (!converter.awaitTermination(3, TimeUnit.SECONDS)) {
+          // an interrupted conversion leaves the segment in version 1
+          converter.shutdownNow();
+        }
+      } catch (InterruptedException ignored) {
+        converter.shutdownNow();
+      }
+    }
+    metrics.removeAll();
     LOG.info("{} close()", name);
   }
 
+  /** Wait for the pending conversions before renaming or deleting the closed segment files. */
+  private void waitForConversions() {
+    try {
+      lastConversion.join();
+    } catch (CompletionException e) {
+      LOG.warn(name + ": Failed to convert a segment file", e.getCause());
+    }
+  }
+
   /**
    * A snapshot has just been installed on the follower. Need to update the IO
    * worker's state accordingly.
@@ -213,8 +284,11 @@ class RaftLogWorker implements Runnable {
   public void run() {
     while (running) {
       try {
-        Task task = queue.poll(ONE_SECOND);
-        if (task != null) {
+        Task task = queue.poll(getPollTimeout());
+        if (task == null && pendingFlushNum > 0) {
+          // the linger time is up
+          flushWrites();
+        } else if (task != null) {
           try {
             task.execute();
           } catch (IOException e) {
@@ -254,14 +328,29 @@ class RaftLogWorker implements Runnable {
   }
 
   private boolean shouldFlush() {
+    if (flushPolicy != null) {
+      return flushPolicy.shouldFlush(pendingFlushNum, queue.getNumElements(),
+          System.nanoTime() - firstPendingNanos);
+    }
     return pendingFlushNum >= forceSyncNum ||
         (pendingFlushNum > 0 && queue.isEmpty());
   }
 
+  /** @return the time to wait for the next task, which is bounded by the linger time when lingering. */
+  private TimeDuration getPollTimeout() {
+    if (flushPolicy == null || pendingFlushNum == 0) {
+      return ONE_SECOND;
+    }
+    final long linger = flushPolicy.getLingerNanos(System.nanoTime() - firstPendingNanos);
+    return TimeDuration.valueOf(Math.max(0, linger), TimeUnit.NANOSECONDS);
+  }
+
   private void flushWrites() throws IOException {
     if (out != null) {
       LOG.debug("{}: flush {}", name, out);
-      final Timer.Context timerContext = logFlushTimer.get().time();
+      final int batchSize = pendingFlushNum;
+      final long startNanos = System.nanoTime();
+      final Timer.Context timerContext = logFlushTimer.time();
       try {
         final CompletableFuture<Void> f = stateMachine != null ?
             stateMachine.flushStateMachineData(lastWrittenIndex) :
@@ -276,6 +365,15 @@ class RaftLogWorker implements Runnable {
       } finally {
         timerContext.stop();
       }
+      if (batchSize > 0) {
+        final long endNanos = System.nanoTime();
+        final long latencyNanos = endNanos - firstPendingNanos;
+        flushBatchSize.update(batchSize);
+        flushLatency.update(latencyNanos, TimeUnit.NANOSECONDS);
+        if (flushPolicy != null) {
+          flushPolicy.onFlush(endNanos - startNanos, latencyNanos, queue.getNumElements());
+        }
+      }
       updateFlushedIndex();
     }
   }
@@ -315,26 +413,33 @@ class RaftLogWorker implements Runnable {
     return addIOTask(new TruncateLog(ts, index));
   }
 
-  Task purge(TruncationSegments ts) {
-    return addIOTask(new PurgeLog(ts, storage));
+  Task purge(TruncationSegments ts, RaftLogArchive archive) {
+    return addIOTask(new PurgeLog(ts, archive));
   }
 
-  private static final class PurgeLog extends Task {
+  private final class PurgeLog extends Task {
     private final TruncationSegments segments;
-    private final RaftStorage storage;
+    private final RaftLogArchive archive;
 
-    private PurgeLog(TruncationSegments segments, RaftStorage storage) {
+    private PurgeLog(TruncationSegments segments, RaftLogArchive archive) {
       this.segments = segments;
-      this.storage = storage;
+      this.archive = archive;
     }
 
     @Override
     void execute() throws IOException {
+      waitForConversions();
       if (segments.toDelete != null) {
         for (SegmentFileInfo fileInfo : segments.toDelete) {
           File delFile = storage.getStorageDir()
                   .getClosedLogFile(fileInfo.startIndex, fileInfo.endIndex);
-          FileUtils.deleteFile(delFile);
+          if (archive != null) {
+            // the segment is deleted once it is archived
+            archive.archiveAsync(fileInfo.startIndex, fileInfo.endIndex, delFile);
+          } else {
+            FileUtils.deleteFile(delFile);
+            LogSegmentIndex.deleteIndexFile(delFile);
+          }
         }
       }
     }
@@ -388,8 +493,11 @@ class RaftLogWorker implements Runnable {
       Preconditions.assertTrue(lastWrittenIndex + 1 == entry.getIndex(),
           "lastWrittenIndex == %s, entry == %s", lastWrittenIndex, entry);
       out.write(entry);
+      bytesWritten.inc(getSerializedSize());
       lastWrittenIndex = entry.getIndex();
-      pendingFlushNum++;
+      if (pendingFlushNum++ == 0) {
+        firstPendingNanos = System.nanoTime();
+      }
       if (shouldFlush()) {
         flushWrites();
       }
@@ -409,11 +517,16 @@ class RaftLogWorker implements Runnable {
   private class FinalizeLogSegment extends Task {
     private final long startIndex;
     private final long endIndex;
+    /** A copy of the index since the segment may be truncated before this task is executed. */
+    private final LogSegmentIndex index;
+    private final long totalSize;
 
     FinalizeLogSegment(LogSegment segmentToClose) {
       Preconditions.assertTrue(segmentToClose != null, "Log segment to be rolled is null");
       this.startIndex = segmentToClose.getStartIndex();
       this.endIndex = segmentToClose.getEndIndex();
+      this.index = segmentToClose.copyIndex();
+      this.totalSize = segmentToClose.getTotalSize();
     }
 
     @Override
@@ -431,6 +544,11 @@ class RaftLogWorker implements Runnable {
 
         FileUtils.move(openFile, dstFile);
         LOG.info("{}: Rolled log segment from {} to {}", name, openFile, dstFile);
+        writeIndexFile(dstFile);
+        if (converter != null) {
+          // the converted file atomically replaces the segment file; the readers can read either version
+          lastConversion = CompletableFuture.runAsync(() -> convertFormat(dstFile), converter);
+        }
       } else { // delete the file of the empty segment
         FileUtils.deleteFile(openFile);
         LOG.info("{}: Deleted empty log segment {}", name, openFile);
@@ -438,6 +556,27 @@ class RaftLogWorker implements Runnable {
       updateFlushedIndex();
     }
 
+    /** The conversion is optional; the segment remains in version 1 if it fails. */
+    private void convertFormat(File segmentFile) {
+      try {
+        LogFormatConverter.convert(segmentFile, startIndex, endIndex, formatVersion, formatBlockSize,
+            formatCompression);
+      } catch (IOException e) {
+        LOG.warn(name + ": Failed to convert segment file " + segmentFile + " to version " + formatVersion, e);
+      }
+    }
+
+    /** The index file is optional; a failure only slows down the next loading. */
+    private void writeIndexFile(File segmentFile) {
+      final File indexFile = LogSegmentIndex.getIndexFile(segmentFile);
+      try {
+        index.write(indexFile, totalSize);
+      } catch (IOException e) {
+        // a partially written index file fails the checksum verification and is ignored when loading
+        LOG.warn(name + ": Failed to write segment index file " + indexFile, e);
+      }
+    }
+
     @Override
     long getEndIndex() {
       return endIndex;
@@ -463,7 +602,7 @@ class RaftLogWorker implements Runnable {
           openFile, name);
       Preconditions.assertTrue(out == null && pendingFlushNum == 0);
       out = new LogOutputStream(openFile, false, segmentMaxSize,
-          preallocatedSize, bufferSize);
+          preallocatedSize, bufferSize, directIoAlignment);
       Preconditions.assertTrue(openFile.exists(), "Failed to create file %s for %s",
           openFile.getAbsolutePath(), name);
       LOG.info("{}: created new log segment {}", name, openFile);
@@ -489,6 +628,7 @@ class RaftLogWorker implements Runnable {
     void execute() throws IOException {
       IOUtils.cleanup(null, out);
       out = null;
+      waitForConversions();
       CompletableFuture<Void> stateMachineFuture = null;
       if (stateMachine != null) {
         stateMachineFuture = stateMachine.truncateStateMachineData(truncateIndex);
@@ -503,7 +643,14 @@ class RaftLogWorker implements Runnable {
                 segments.toTruncate.endIndex);
         Preconditions.assertTrue(fileToTruncate.exists(),
             "File %s to be truncated does not exist", fileToTruncate);
+        if (!segments.toTruncate.isOpen) {
+          // the target length is an offset in version 1
+          LogFormatConverter.convert(fileToTruncate, segments.toTruncate.startIndex, segments.toTruncate.endIndex,
+              SegmentedRaftLogFormat.VERSION_1, bufferSize, false);
+        }
         FileUtils.truncateFile(fileToTruncate, segments.toTruncate.targetLength);
+        // the index file, if there is any, becomes stale
+        LogSegmentIndex.deleteIndexFile(fileToTruncate);
 
         // rename the file
         File dstFile = storage.getStorageDir().getClosedLogFile(
@@ -530,6 +677,7 @@ class RaftLogWorker implements Runnable {
           Preconditions.assertTrue(delFile.exists(),
               "File %s to be deleted does not exist", delFile);
           FileUtils.deleteFile(delFile);
+          LogSegmentIndex.deleteIndexFile(delFile);
           LOG.info("{}: Deleted log file {}", name, delFile);
           minStart = Math.min(minStart, del.startIndex);
         }
@@ -17,7 +17,9 @@
  */
 package org.apache.ratis.server.storage;
 
+import com.codahale.metrics.Timer;
 import org.apache.ratis.conf.RaftProperties;
+import org.apache.ratis.protocol.RaftGroupId;
 import org.apache.ratis.protocol.RaftPeerId;
 import org.apache.ratis.server.RaftServerConfigKeys;
 import org.apache.ratis.server.impl.RaftServerImpl;
@@ -30,6 +32,7 @@ import org.apache.ratis.server.storage.RaftStorageDirectory.LogPathAndIndex;
 import org.apache.ratis.proto.RaftProtos.LogEntryProto;
 import org.apache.ratis.statemachine.StateMachine;
 import org.apache.ratis.util.AutoCloseableLock;
+import org.apache.ratis.util.Daemon;
 import org.apache.ratis.util.JavaUtils;
 import org.apache.ratis.util.Preconditions;
 
@@ -40,8 +43,14 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 
+import static org.apache.ratis.server.impl.RaftServerConstants.INVALID_LOG_INDEX;
+
 /**
  * The RaftLog implementation that writes log entries into segmented files in
  * local disk.
@@ -102,7 +111,9 @@ public class SegmentedRaftLog extends RaftLog {
   private final RaftStorage storage;
   private final RaftLogCache cache;
   private final RaftLogWorker fileLogWorker;
+  private final RaftLogArchive archive;
   private final long segmentMaxSize;
+  private final int segmentLoadThreads;
   private final boolean stateMachineCachingEnabled;
 
   public SegmentedRaftLog(RaftPeerId selfId, RaftServerImpl server,
@@ -119,13 +130,20 @@ public class SegmentedRaftLog extends RaftLog {
     this.server = Optional.ofNullable(server);
     this.storage = storage;
     segmentMaxSize = RaftServerConfigKeys.Log.segmentSizeMax(properties).getSize();
-    cache = new RaftLogCache(selfId, storage, properties);
-    this.fileLogWorker = new RaftLogWorker(selfId, stateMachine, submitUpdateCommitEvent, storage, properties);
+    segmentLoadThreads = RaftServerConfigKeys.Log.segmentLoadThreads(properties);
+    final RaftGroupId groupId = server != null? server.getGroupId(): null;
+    cache = new RaftLogCache(selfId, groupId, storage, properties);
+    this.fileLogWorker = new RaftLogWorker(selfId, groupId, stateMachine, submitUpdateCommitEvent,
+        storage, properties);
+    this.archive = RaftLogArchive.newInstance(storage, properties);
     stateMachineCachingEnabled = RaftServerConfigKeys.Log.StateMachineData.cachingEnabled(properties);
   }
 
   @Override
   protected void openImpl(long lastIndexInSnapshot, Consumer<LogEntryProto> consumer) throws IOException {
+    if (archive != null) {
+      archive.open();
+    }
     loadLogSegments(lastIndexInSnapshot, consumer);
     File openSegmentFile = null;
     LogSegment openSegment = cache.getOpenSegment();
@@ -142,21 +160,77 @@ public class SegmentedRaftLog extends RaftLog {
     return cache.getStartIndex();
   }
 
+  /** A closed segment read by a loader thread, together with the entries to be replayed to the consumer. */
+  private static class LoadedSegment {
+    private final LogSegment segment;
+    private final List<LogEntryProto> entriesToConsume;
+
+    LoadedSegment(LogSegment segment, List<LogEntryProto> entriesToConsume) {
+      this.segment = segment;
+      this.entriesToConsume = entriesToConsume;
+    }
+  }
+
+  /**
+   * Load the log segments.
+   *
+   * When there are multiple closed segments, they are read and checksum-verified in parallel
+   * by at most {@link RaftServerConfigKeys.Log#segmentLoadThreads(RaftProperties)} threads
+   * and then added to the cache in order.
+   * Since the consumer must see the entries in order,
+   * the loader threads only buffer the configuration and metadata entries,
+   * which are then replayed to the consumer in order.
+   * In such case, the state machine entries are not passed to the consumer
+   * since the state machine is not updated during the initial loading anyway.
+   * In order to bound the memory usage, at most one segment per thread is loaded ahead of the consumer.
+   * The open segment, if there is any, is loaded last in the calling thread.
+   */
   private void loadLogSegments(long lastIndexInSnapshot,
       Consumer<LogEntryProto> logConsumer) throws IOException {
     try(AutoCloseableLock writeLock = writeLock()) {
       List<LogPathAndIndex> paths = storage.getStorageDir().getLogSegmentFiles();
-      int i = 0;
-      for (LogPathAndIndex pi : paths) {
-        // During the initial loading, we can only confirm the committed
-        // index based on the snapshot. This means if a log segment is not kept
-        // in cache after the initial loading, later we have to load its content
-        // again for updating the state machine.
-        // TODO we should let raft peer persist its committed index periodically
-        // so that during the initial loading we can apply part of the log
-        // entries to the state machine
-        boolean keepEntryInCache = (paths.size() - i++) <= cache.getMaxCachedSegments();
-        cache.loadSegment(pi, keepEntryInCache, logConsumer);
+      final int numClosed = (int)paths.stream().filter(pi -> !pi.isOpen()).count();
+      final int numThreads = Math.min(segmentLoadThreads, numClosed);
+      final ExecutorService executor = numThreads > 1? newSegmentLoader(numThreads): null;
+      try {
+        final List<CompletableFuture<LoadedSegment>> futures = new ArrayList<>(
+            Collections.nCopies(paths.size(), null));
+        int next = 0; // the index of the next segment to be submitted to the executor
+        for (; executor != null && next < numThreads; next++) {
+          futures.set(next, submitClosedSegment(paths, next, executor, logConsumer != null));
+        }
+
+        for (int i = 0; i < paths.size(); i++) {
+          final LogPathAndIndex pi = paths.get(i);
+          final CompletableFuture<LoadedSegment> future = futures.set(i, null);
+          // During the initial loading, we can only confirm the committed
+          // index based on the snapshot. This means if a log segment is not kept
+          // in cache after the initial loading, later we have to load its content
+          // again for updating the state machine.
+          // TODO we should let raft peer persist its committed index periodically
+          // so that during the initial loading we can apply part of the log
+          // entries to the state machine
+          if (future == null) {
+            final boolean keepEntryInCache = paths.size() - i <= cache.getMaxCachedSegments();
+            cache.loadSegment(pi, keepEntryInCache, logConsumer);
+          } else {
+            final LoadedSegment loaded = joinLoadedSegment(future);
+            if (next < paths.size()) {
+              futures.set(next, submitClosedSegment(paths, next, executor, logConsumer != null));
+              next++;
+            }
+            if (logConsumer != null) {
+              loaded.entriesToConsume.forEach(logConsumer);
+            }
+            if (loaded.segment != null) {
+              cache.addSegment(loaded.segment);
+            }
+          }
+        }
+      } finally {
+        if (executor != null) {
+          executor.shutdownNow();
+        }
       }
 
       // if the largest index is smaller than the last index in snapshot, we do
@@ -172,6 +246,47 @@ public class SegmentedRaftLog extends RaftLog {
     }
   }
 
+  private ExecutorService newSegmentLoader(int numThreads) {
+    final String name = getName() + "-segmentLoader";
+    final AtomicInteger count = new AtomicInteger();
+    return Executors.newFixedThreadPool(numThreads, r -> new Daemon(r, name + "-" + count.incrementAndGet()));
+  }
+
+  /** @return the future of loading the i-th segment, or null if it is the open segment. */
+  private CompletableFuture<LoadedSegment> submitClosedSegment(List<LogPathAndIndex> paths, int i,
+      ExecutorService executor, boolean consume) {
+    final LogPathAndIndex pi = paths.get(i);
+    if (pi.isOpen()) {
+      return null;
+    }
+    final boolean keepEntryInCache = paths.size() - i <= cache.getMaxCachedSegments();
+    return CompletableFuture.supplyAsync(() -> JavaUtils.supplyAndWrapAsCompletionException(
+        () -> readClosedSegment(pi, keepEntryInCache, consume)), executor);
+  }
+
+  private LoadedSegment readClosedSegment(LogPathAndIndex pi, boolean keepEntryInCache, boolean consume)
+      throws IOException {
+    final List<LogEntryProto> entriesToConsume = new ArrayList<>();
+    final LogSegment segment = cache.readSegment(pi, keepEntryInCache, !consume? null: e -> {
+      if (!e.hasStateMachineLogEntry()) {
+        entriesToConsume.add(e);
+      }
+    });
+    return new LoadedSegment(segment, entriesToConsume);
+  }
+
+  private static LoadedSegment joinLoadedSegment(CompletableFuture<LoadedSegment> future) throws IOException {
+    try {
+      return future.join();
+    } catch (CompletionException e) {
+      final Throwable cause = JavaUtils.unwrapCompletionException(e);
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      throw new IOException("Failed to load a log segment", cause);
+    }
+  }
+
   @Override
   public LogEntryProto get(long index) throws RaftLogIOException {
     checkLogState();
@@ -186,6 +301,7 @@ public class SegmentedRaftLog extends RaftLog {
       if (recordAndEntry == null) {
         return null;
       }
+      cache.recordAccess(recordAndEntry.hasEntry());
       if (recordAndEntry.hasEntry()) {
         return recordAndEntry.getEntry();
       }
@@ -194,7 +310,32 @@ public class SegmentedRaftLog extends RaftLog {
     // the entry is not in the segment's cache. Load the cache without holding
     // RaftLog's lock.
     checkAndEvictCache();
-    return segment.loadCache(recordAndEntry.getRecord());
+    final Timer.Context timerContext = cache.getLoadTimer().time();
+    try {
+      return segment.loadCache(recordAndEntry.getRecord());
+    } finally {
+      timerContext.stop();
+    }
+  }
+
+  @Override
+  public long getArchiveStartIndex() {
+    final long start = archive != null? archive.getStartIndex(): INVALID_LOG_INDEX;
+    return start != INVALID_LOG_INDEX? start: getStartIndex();
+  }
+
+  @Override
+  public LogEntryProto getWithArchive(long index) throws RaftLogIOException {
+    final LogEntryProto entry = get(index);
+    if (entry != null || archive == null) {
+      return entry;
+    }
+    try {
+      return archive.get(index);
+    } catch (IOException e) {
+      throw new RaftLogIOException(getSelfId() + ": Failed to read the archived entry " + index
+          + " from " + archive.getDir(), e);
+    }
   }
 
   @Override
@@ -273,7 +414,13 @@ public class SegmentedRaftLog extends RaftLog {
       RaftLogCache.TruncationSegments ts = cache.purge(index);
       LOG.debug("truncating segments:{}", ts);
       if (ts != null) {
-        Task task = fileLogWorker.purge(ts);
+        if (archive != null) {
+          for (RaftLogCache.SegmentFileInfo info : ts.toDelete) {
+            archive.addPurged(info.startIndex, info.endIndex,
+                storage.getStorageDir().getClosedLogFile(info.startIndex, info.endIndex));
+          }
+        }
+        Task task = fileLogWorker.purge(ts, archive);
         return task.getFuture();
       }
     }
@@ -418,9 +565,12 @@ public class SegmentedRaftLog extends RaftLog {
   public void close() throws IOException {
     try(AutoCloseableLock writeLock = writeLock()) {
       super.close();
-      cache.clear();
+      cache.close();
     }
     fileLogWorker.close();
+    if (archive != null) {
+      archive.close();
+    }
     storage.close();
   }
 
@@ -20,18 +20,41 @@ package org.apache.ratis.server.storage;
 import org.apache.ratis.util.Preconditions;
 import org.apache.ratis.util.function.CheckedFunction;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 
+/**
+ * The format of the segment files.
+ *
+ * Version 1 writes each entry with its own framing, see {@link LogOutputStream#write}.
+ * Version 2 packs the entries into blocks, each of which has a single checksum, see {@link LogBlock}.
+ * Both versions have an 8-byte header and end with the terminator padding, if there is any.
+ * The open segments are always in version 1
+ * since they are appended, flushed and truncated entry by entry.
+ */
 public interface SegmentedRaftLogFormat {
+  int VERSION_1 = 1;
+  int VERSION_2 = 2;
+
   class Internal {
     private static final byte[] HEADER_BYTES = "RaftLog1".getBytes(StandardCharsets.UTF_8);
     private static final byte[] HEADER_BYTES_CLONE = HEADER_BYTES.clone();
+    private static final byte[] HEADER_BYTES_V2 = "RaftLog2".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] HEADER_BYTES_V2_CLONE = HEADER_BYTES_V2.clone();
     private static final byte TERMINATOR_BYTE = 0;
 
     private static void assertHeader() {
       Preconditions.assertTrue(Arrays.equals(HEADER_BYTES, HEADER_BYTES_CLONE));
+      Preconditions.assertTrue(Arrays.equals(HEADER_BYTES_V2, HEADER_BYTES_V2_CLONE));
+    }
+
+    private static byte[] getHeader(int version) {
+      Preconditions.assertTrue(version == VERSION_1 || version == VERSION_2, () -> "Unknown version " + version);
+      return version == VERSION_1? HEADER_BYTES: HEADER_BYTES_V2;
     }
   }
 
@@ -40,17 +63,50 @@ public interface SegmentedRaftLogFormat {
   }
 
   static int matchHeader(byte[] bytes, int offset, int length) {
+    return matchHeader(VERSION_1, bytes, offset, length);
+  }
+
+  static int matchHeader(int version, byte[] bytes, int offset, int length) {
     Preconditions.assertTrue(length <= getHeaderLength());
+    final byte[] header = Internal.getHeader(version);
     for(int i = 0; i < length; i++) {
-      if (bytes[offset + i] != Internal.HEADER_BYTES[i]) {
+      if (bytes[offset + i] != header[i]) {
         return i;
       }
     }
     return length;
   }
 
+  /** @return the version of the given header; or -1 if it does not match any version. */
+  static int getVersion(byte[] bytes, int offset, int length) {
+    if (length == getHeaderLength()) {
+      for (int version = VERSION_1; version <= VERSION_2; version++) {
+        if (matchHeader(version, bytes, offset, length) == length) {
+          return version;
+        }
+      }
+    }
+    return -1;
+  }
+
+  /** @return the version of the given segment file; or -1 if its header is invalid. */
+  static int readVersion(File file) throws IOException {
+    final byte[] header = new byte[getHeaderLength()];
+    int n = 0;
+    try (InputStream in = new FileInputStream(file)) {
+      for (int read; n < header.length && (read = in.read(header, n, header.length - n)) != -1; ) {
+        n += read;
+      }
+    }
+    return getVersion(header, 0, n);
+  }
+
   static <T> T applyHeaderTo(CheckedFunction<byte[], T, IOException> function) throws IOException {
-    final T t = function.apply(Internal.HEADER_BYTES);
+    return applyHeaderTo(VERSION_1, function);
+  }
+
+  static <T> T applyHeaderTo(int version, CheckedFunction<byte[], T, IOException> function) throws IOException {
+    final T t = function.apply(Internal.getHeader(version));
     Internal.assertHeader(); // assert that the header is unmodified by the function.
     return t;
   }
@@ -27,6 +27,7 @@ import org.apache.ratis.protocol.RaftPeerId;
 import org.apache.ratis.util.JavaUtils;
 import org.apache.ratis.util.LogUtils;
 import org.apache.ratis.util.TimeDuration;
+import org.apache.ratis.util.Timestamp;
 import org.junit.Assert;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -98,6 +99,20 @@ public class RaftServerTestUtil {
     return server.getRole().getRaftPeerRole();
   }
 
+  public static boolean isQuiescent(RaftServerImpl server) {
+    return server.getRole().getFollowerState().map(FollowerState::isQuiescent).orElse(false);
+  }
+
+  /** @return the last time that the given follower heard from the leader; or null if it is not a follower. */
+  public static Timestamp getLastRpcTime(RaftServerImpl server) {
+    return server.getRole().getFollowerState().map(FollowerState::getLastRpcTime).orElse(null);
+  }
+
+  /** Let the given follower start an election as if its election timeout has elapsed. */
+  public static void changeToCandidate(RaftServerImpl server) {
+    server.changeToCandidate(false);
+  }
+
   public static Stream<LogAppender> getLogAppenders(RaftServerImpl server) {
     return server.getRole().getLeaderState().map(LeaderState::getLogAppenders).orElse(null);
   }
@@ -44,22 +44,33 @@ public class MiniRaftClusterWithSimulatedRpc extends MiniRaftCluster {
     public MiniRaftClusterWithSimulatedRpc newCluster(
         String[] ids, RaftProperties prop) {
       RaftConfigKeys.Rpc.setType(prop, SimulatedRpc.INSTANCE);
-      if (ThreadLocalRandom.current().nextBoolean()) {
-        // turn off simulate latency half of the times.
+      if (prop.get(SimulatedRequestReply.SIMULATE_LATENCY_KEY) == null
+          && ThreadLocalRandom.current().nextBoolean()) {
+        // turn off simulate latency half of the times unless it is set.
         prop.setInt(SimulatedRequestReply.SIMULATE_LATENCY_KEY, 0);
       }
       final int simulateLatencyMs = ConfUtils.getInt(prop::getInt,
           SimulatedRequestReply.SIMULATE_LATENCY_KEY,
           SimulatedRequestReply.SIMULATE_LATENCY_DEFAULT, LOG::info, requireMin(0));
+      final SimulatedNetwork network = new SimulatedNetwork(prop);
       final SimulatedRequestReply<RaftServerRequest, RaftServerReply> serverRequestReply
-          = new SimulatedRequestReply<>(simulateLatencyMs);
+          = new SimulatedRequestReply<>(simulateLatencyMs, network);
       final SimulatedClientRpc client2serverRequestReply
-          = new SimulatedClientRpc(simulateLatencyMs);
+          = new SimulatedClientRpc(simulateLatencyMs, network);
       return new MiniRaftClusterWithSimulatedRpc(ids, prop,
           serverRequestReply, client2serverRequestReply);
     }
   };
 
+  /**
+   * Set the latency simulated by the repliers; 0 disables it.
+   * When it is not set, it is randomly disabled half of the times.
+   * For modeling the links, see {@link SimulatedNetwork}.
+   */
+  public static void setSimulateLatencyMs(RaftProperties properties, int simulateLatencyMs) {
+    properties.setInt(SimulatedRequestReply.SIMULATE_LATENCY_KEY, simulateLatencyMs);
+  }
+
   public interface FactoryGet extends Factory.Get<MiniRaftClusterWithSimulatedRpc> {
     @Override
     default Factory<MiniRaftClusterWithSimulatedRpc> getFactory() {
@@ -71,6 +71,17 @@ class RaftServerRequest implements RaftRpcMessage {
     return installSnapshot;
   }
 
+  /** @return the serialized size of the proto, which is used to simulate the bandwidth. */
+  int getSerializedSize() {
+    if (isAppendEntries()) {
+      return appendEntries.getSerializedSize();
+    } else if (isRequestVote()) {
+      return requestVote.getSerializedSize();
+    } else {
+      return installSnapshot.getSerializedSize();
+    }
+  }
+
   @Override
   public boolean isRequest() {
     return true;
@@ -25,8 +25,8 @@ import org.apache.ratis.protocol.RaftPeer;
 class SimulatedClientRpc
     extends SimulatedRequestReply<RaftClientRequest, RaftClientReply>
     implements RaftClientRpc {
-  SimulatedClientRpc(int simulateLatencyMs) {
-    super(simulateLatencyMs);
+  SimulatedClientRpc(int simulateLatencyMs, SimulatedNetwork network) {
+    super(simulateLatencyMs, network);
   }
 
   @Override
@@ -0,0 +1,256 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.server.simulation;
+
+import org.apache.ratis.conf.ConfUtils;
+import org.apache.ratis.conf.RaftProperties;
+import org.apache.ratis.protocol.Message;
+import org.apache.ratis.protocol.RaftClientReply;
+import org.apache.ratis.protocol.RaftClientRequest;
+import org.apache.ratis.protocol.RaftRpcMessage;
+import org.apache.ratis.util.IOUtils;
+import org.apache.ratis.util.SizeInBytes;
+import org.apache.ratis.util.TimeDuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.apache.ratis.conf.ConfUtils.requireMin;
+
+/**
+ * A network model for {@link SimulatedRequestReply}.
+ *
+ * Each directed link from a requestor to a replier has
+ * (1) a latency and a jitter, i.e. the one-way delay is uniformly distributed in [latency - jitter, latency + jitter];
+ * (2) a bandwidth in bytes per second, i.e. the messages are transmitted one after another; and
+ * (3) a loss probability, i.e. a lost message fails the request with an {@link IOException} after the delay.
+ *
+ * The model of a link is set by the keys with the prefix of the link, see {@link #setLink},
+ * or by the default keys, see {@link #setDefault}, so that the links can be asymmetric.
+ * Each link has a random generator seeded by {@link #SEED_KEY} and the link name
+ * so that a run with the same seed draws the same delays and losses on each link.
+ */
+public class SimulatedNetwork {
+  static final Logger LOG = LoggerFactory.getLogger(SimulatedNetwork.class);
+
+  public static final String PREFIX = SimulatedNetwork.class.getName();
+
+  /** The seed of the random generators; a random seed is used and logged if it is not set. */
+  public static final String SEED_KEY = PREFIX + ".seed";
+
+  static final String LATENCY_SUFFIX = ".latency";
+  static final String JITTER_SUFFIX = ".jitter";
+  static final String BANDWIDTH_SUFFIX = ".bandwidth";
+  static final String LOSS_SUFFIX = ".loss";
+
+  static String linkPrefix(String from, String to) {
+    return PREFIX + ".link." + from + "." + to;
+  }
+
+  public static void setSeed(RaftProperties properties, long seed) {
+    properties.setLong(SEED_KEY, seed);
+  }
+
+  /** Set the model of the links without their own models. */
+  public static void setDefault(RaftProperties properties, LinkModel model) {
+    model.set(properties, PREFIX);
+  }
+
+  /** Set the model of the link from the given requestor to the given replier. */
+  public static void setLink(RaftProperties properties, String from, String to, LinkModel model) {
+    model.set(properties, linkPrefix(from, to));
+  }
+
+  /** The model of a link. */
+  public static final class LinkModel {
+    public static final LinkModel NONE = new LinkModel(
+        TimeDuration.valueOf(0, TimeUnit.MILLISECONDS), TimeDuration.valueOf(0, TimeUnit.MILLISECONDS),
+        SizeInBytes.valueOf(0), 0);
+
+    private final TimeDuration latency;
+    private final TimeDuration jitter;
+    private final SizeInBytes bandwidth;
+    private final double loss;
+
+    /**
+     * @param bandwidth the bytes per second; or 0 for unlimited.
+     * @param loss the probability in [0, 1] that a message is lost.
+     */
+    public LinkModel(TimeDuration latency, TimeDuration jitter, SizeInBytes bandwidth, double loss) {
+      this.latency = Objects.requireNonNull(latency, "latency == null");
+      this.jitter = Objects.requireNonNull(jitter, "jitter == null");
+      this.bandwidth = Objects.requireNonNull(bandwidth, "bandwidth == null");
+      this.loss = loss;
+      requireMin(0L).accept("bandwidth", bandwidth.getSize());
+      if (loss < 0 || loss > 1) {
+        throw new IllegalArgumentException("loss = " + loss + " is not in [0, 1]");
+      }
+    }
+
+    static LinkModel get(RaftProperties properties, String prefix, LinkModel defaults) {
+      return new LinkModel(
+          ConfUtils.getTimeDuration(properties.getTimeDuration(TimeUnit.MILLISECONDS),
+              prefix + LATENCY_SUFFIX, defaults.latency, LOG::debug),
+          ConfUtils.getTimeDuration(properties.getTimeDuration(TimeUnit.MILLISECONDS),
+              prefix + JITTER_SUFFIX, defaults.jitter, LOG::debug),
+          ConfUtils.getSizeInBytes(properties::getSizeInBytes,
+              prefix + BANDWIDTH_SUFFIX, defaults.bandwidth, LOG::debug),
+          ConfUtils.get(properties::getDouble, prefix + LOSS_SUFFIX, defaults.loss, LOG::debug));
+    }
+
+    void set(RaftProperties properties, String prefix) {
+      properties.setTimeDuration(prefix + LATENCY_SUFFIX, latency);
+      properties.setTimeDuration(prefix + JITTER_SUFFIX, jitter);
+      properties.set(prefix + BANDWIDTH_SUFFIX, bandwidth.getInput());
+      properties.setDouble(prefix + LOSS_SUFFIX, loss);
+    }
+
+    boolean isNone() {
+      return latency.getDuration() == 0 && jitter.getDuration() == 0 && bandwidth.getSize() == 0 && loss == 0;
+    }
+
+    @Override
+    public String toString() {
+      return "latency=" + latency + ", jitter=" + jitter + ", bandwidth=" + bandwidth + "/s, loss=" + loss;
+    }
+  }
+
+  /** A directed link from a requestor to a replier. */
+  static class Link {
+    private final String name;
+    private final LinkModel model;
+    private final long latencyNanos;
+    private final long jitterNanos;
+    private final Random random;
+    /** The time when the link finishes transmitting the previous messages. */
+    private long nextFreeNanos = System.nanoTime();
+
+    Link(String name, LinkModel model, long seed) {
+      this.name = name;
+      this.model = model;
+      this.latencyNanos = model.latency.toLong(TimeUnit.NANOSECONDS);
+      this.jitterNanos = model.jitter.toLong(TimeUnit.NANOSECONDS);
+      this.random = new Random(seed);
+    }
+
+    LinkModel getModel() {
+      return model;
+    }
+
+    synchronized boolean nextLost() {
+      return model.loss > 0 && random.nextDouble() < model.loss;
+    }
+
+    synchronized int nextInt(int bound) {
+      return random.nextInt(bound);
+    }
+
+    /** @return the delay to deliver a message of the given size sent now. */
+    synchronized long nextDelayNanos(int size) {
+      final long now = System.nanoTime();
+      long delay = latencyNanos;
+      if (jitterNanos > 0) {
+        delay += (long) ((2 * random.nextDouble() - 1) * jitterNanos);
+      }
+      final long bytesPerSecond = model.bandwidth.getSize();
+      if (bytesPerSecond > 0) {
+        final long start = Math.max(now, nextFreeNanos);
+        nextFreeNanos = start + size * TimeUnit.SECONDS.toNanos(1) / bytesPerSecond;
+        delay += nextFreeNanos - now;
+      }
+      return Math.max(0, delay);
+    }
+
+    @Override
+    public String toString() {
+      return name + "(" + model + ")";
+    }
+  }
+
+  private final RaftProperties properties;
+  private final long seed;
+  private final LinkModel defaultModel;
+  private final Map<String, Link> links = new ConcurrentHashMap<>();
+
+  SimulatedNetwork(RaftProperties properties) {
+    this.properties = properties;
+    this.seed = properties.get(SEED_KEY) != null? properties.getLong(SEED_KEY, 0)
+        : ThreadLocalRandom.current().nextLong();
+    this.defaultModel = LinkModel.get(properties, PREFIX, LinkModel.NONE);
+    LOG.info("{}: seed={}, default link model: {}", getClass().getSimpleName(), seed, defaultModel);
+  }
+
+  long getSeed() {
+    return seed;
+  }
+
+  Link getLink(String from, String to) {
+    return links.computeIfAbsent(from + "->" + to, name -> {
+      final LinkModel model = LinkModel.get(properties, linkPrefix(from, to), defaultModel);
+      // seed by the name but not the creation order of the links
+      return new Link(name, model, seed * 31 + name.hashCode());
+    });
+  }
+
+  /**
+   * Delay the given message sent from the given requestor to the given replier.
+   *
+   * @throws IOException if the message is lost.
+   */
+  void transmit(RaftRpcMessage message, String from, String to) throws IOException {
+    final Link link = getLink(from, to);
+    if (link.getModel().isNone()) {
+      return;
+    }
+    final boolean lost = link.nextLost();
+    final long delay = link.nextDelayNanos(sizeOf(message));
+    try {
+      TimeUnit.NANOSECONDS.sleep(delay);
+    } catch (InterruptedException e) {
+      throw IOUtils.toInterruptedIOException("Interrupted while transmitting " + message, e);
+    }
+    if (lost) {
+      throw new IOException("Simulated loss in link " + link + ": " + message);
+    }
+  }
+
+  /** @return the size of the given message, which is used to simulate the bandwidth. */
+  static int sizeOf(RaftRpcMessage message) {
+    if (message instanceof RaftServerRequest) {
+      return ((RaftServerRequest) message).getSerializedSize();
+    } else if (message instanceof RaftServerReply) {
+      return ((RaftServerReply) message).getSerializedSize();
+    } else if (message instanceof RaftClientRequest) {
+      return sizeOf(((RaftClientRequest) message).getMessage());
+    } else if (message instanceof RaftClientReply) {
+      return sizeOf(((RaftClientReply) message).getMessage());
+    }
+    return 0;
+  }
+
+  private static int sizeOf(Message message) {
+    return message == null? 0: message.getContent().size();
+  }
+}
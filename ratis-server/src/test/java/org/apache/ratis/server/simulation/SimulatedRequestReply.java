@@ -101,9 +101,11 @@ class SimulatedRequestReply<REQUEST extends RaftRpcMessage, REPLY extends RaftRp
   private final Map<String, EventQueue<REQUEST, REPLY>> queues
       = new ConcurrentHashMap<>();
   private final int simulateLatencyMs;
+  private final SimulatedNetwork network;
 
-  SimulatedRequestReply(int simulateLatencyMs) {
+  SimulatedRequestReply(int simulateLatencyMs, SimulatedNetwork network) {
     this.simulateLatencyMs = simulateLatencyMs;
+    this.network = network;
   }
 
   EventQueue<REQUEST, REPLY> getQueue(String qid) {
@@ -118,7 +120,10 @@ class SimulatedRequestReply<REQUEST extends RaftRpcMessage, REPLY extends RaftRp
     }
     try {
       RaftTestUtil.block(q.blockSendRequestTo::get);
-      return q.request(request);
+      network.transmit(request, request.getRequestorId(), qid);
+      final REPLY reply = q.request(request);
+      network.transmit(reply, qid, request.getRequestorId());
+      return reply;
     } catch (InterruptedException e) {
       throw IOUtils.toInterruptedIOException("", e);
     }
@@ -158,7 +163,7 @@ class SimulatedRequestReply<REQUEST extends RaftRpcMessage, REPLY extends RaftRp
       Preconditions.assertTrue(
           request.getReplierId().equals(reply.getReplierId()));
     }
-    simulateLatency();
+    simulateLatency(request);
     final String qid = request.getReplierId();
     EventQueue<REQUEST, REPLY> q = queues.get(qid);
     if (q != null) {
@@ -178,11 +183,12 @@ class SimulatedRequestReply<REQUEST extends RaftRpcMessage, REPLY extends RaftRp
     queues.put(newPeer.toString(), new EventQueue<>());
   }
 
-  private void simulateLatency() throws IOException {
+  private void simulateLatency(REQUEST request) throws IOException {
     if (simulateLatencyMs > 0) {
       int waitExpetation = simulateLatencyMs / 10;
       int waitHalfRange = waitExpetation / 3;
-      int randomSleepMs = ThreadLocalRandom.current().nextInt(2 * waitHalfRange)
+      int randomSleepMs = network.getLink(request.getReplierId(), request.getRequestorId())
+          .nextInt(2 * waitHalfRange)
           + waitExpetation - waitHalfRange;
       try {
         Thread.sleep(randomSleepMs);
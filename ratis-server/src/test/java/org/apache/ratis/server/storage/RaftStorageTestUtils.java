@@ -18,6 +18,8 @@
 package org.apache.ratis.server.storage;
 
 import org.apache.log4j.Level;
+import org.apache.ratis.metrics.RatisMetrics;
+import org.apache.ratis.protocol.RaftGroupId;
 import org.apache.ratis.protocol.RaftPeerId;
 import org.apache.ratis.server.impl.ServerProtoUtils;
 import org.apache.ratis.server.protocol.TermIndex;
@@ -32,8 +34,8 @@ public interface RaftStorageTestUtils {
     LogUtils.setLogLevel(RaftLogWorker.LOG, level);
   }
 
-  static String getLogFlushTimeMetric(RaftPeerId serverId) {
-    return RaftLogWorker.class.getName() + "." + serverId + ".flush-time";
+  static String getLogFlushTimeMetric(RaftPeerId serverId, RaftGroupId groupId) {
+    return new RatisMetrics(RaftLogWorker.class, serverId, groupId).getName("flush-time");
   }
 
   static void printLog(RaftLog log, Consumer<String> println) {
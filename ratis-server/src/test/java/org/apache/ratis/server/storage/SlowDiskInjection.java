@@ -0,0 +1,131 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.server.storage;
+
+import org.apache.ratis.util.CodeInjectionForTesting;
+import org.apache.ratis.util.SizeInBytes;
+import org.apache.ratis.util.TimeDuration;
+
+import java.io.File;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
+
+/**
+ * Inject code to slow down the disk writes of the raft logs,
+ * see {@link BufferedWriteChannel#WRITE} and {@link BufferedWriteChannel#FORCE}.
+ *
+ * A {@link DiskModel} is selected by the names in the path of the file,
+ * e.g. the peer id of a storage directory in a MiniRaftCluster, or the default model otherwise.
+ * The random generator of each model is seeded so that a run is reproducible.
+ */
+public class SlowDiskInjection {
+  /** The model of a disk. */
+  public static class DiskModel {
+    private final long bytesPerSecond;
+    private final long forceLatencyNanos;
+    private final long forceJitterNanos;
+    private final Random random;
+
+    /**
+     * @param bandwidth the write bytes per second; or 0 for unlimited.
+     * @param forceLatency the mean latency of forcing a file to the disk, i.e. fsync.
+     * @param forceJitter the force latency is uniformly distributed in [latency - jitter, latency + jitter].
+     */
+    public DiskModel(SizeInBytes bandwidth, TimeDuration forceLatency, TimeDuration forceJitter, long seed) {
+      this.bytesPerSecond = bandwidth.getSize();
+      this.forceLatencyNanos = forceLatency.toLong(TimeUnit.NANOSECONDS);
+      this.forceJitterNanos = forceJitter.toLong(TimeUnit.NANOSECONDS);
+      this.random = new Random(seed);
+    }
+
+    long getWriteNanos(int bytes) {
+      return bytesPerSecond <= 0? 0: bytes * TimeUnit.SECONDS.toNanos(1) / bytesPerSecond;
+    }
+
+    synchronized long nextForceNanos() {
+      if (forceJitterNanos <= 0) {
+        return forceLatencyNanos;
+      }
+      return Math.max(0, forceLatencyNanos + (long) ((2 * random.nextDouble() - 1) * forceJitterNanos));
+    }
+  }
+
+  private static final SlowDiskInjection INSTANCE = new SlowDiskInjection();
+
+  /** @return the instance, which is registered to the injection points. */
+  public static SlowDiskInjection getInstance() {
+    CodeInjectionForTesting.put(BufferedWriteChannel.WRITE,
+        (localId, remoteId, args) -> INSTANCE.delay(localId, m -> m.getWriteNanos((Integer) args[0])));
+    CodeInjectionForTesting.put(BufferedWriteChannel.FORCE,
+        (localId, remoteId, args) -> INSTANCE.delay(localId, DiskModel::nextForceNanos));
+    return INSTANCE;
+  }
+
+  private final Map<String, DiskModel> models = new ConcurrentHashMap<>();
+  private volatile DiskModel defaultModel;
+
+  private SlowDiskInjection() {}
+
+  /** Set the model of the files without their own models; or null to remove it. */
+  public void setDefault(DiskModel model) {
+    defaultModel = model;
+  }
+
+  /** Set the model of the files having the given name in their paths. */
+  public void setModel(String name, DiskModel model) {
+    models.put(name, model);
+  }
+
+  public void clear() {
+    models.clear();
+    defaultModel = null;
+  }
+
+  DiskModel getModel(Object localId) {
+    if (!models.isEmpty() && localId instanceof File) {
+      for (File f = (File) localId; f != null; f = f.getParentFile()) {
+        final DiskModel m = models.get(f.getName());
+        if (m != null) {
+          return m;
+        }
+      }
+    }
+    return defaultModel;
+  }
+
+  private boolean delay(Object localId, ToLongFunction<DiskModel> nanos) {
+    final DiskModel m = getModel(localId);
+    if (m == null) {
+      return false;
+    }
+    final long delay = nanos.applyAsLong(m);
+    if (delay <= 0) {
+      return false;
+    }
+    try {
+      TimeUnit.NANOSECONDS.sleep(delay);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      CodeInjectionForTesting.LOG.debug("Interrupted while delaying " + localId);
+    }
+    return true;
+  }
+}
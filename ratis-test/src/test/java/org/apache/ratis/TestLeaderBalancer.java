@@ -0,0 +1,145 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis;
+
+import org.apache.log4j.Level;
+import org.apache.ratis.client.LeaderBalancer;
+import org.apache.ratis.client.RaftClient;
+import org.apache.ratis.client.RaftClientConfigKeys;
+import org.apache.ratis.conf.RaftProperties;
+import org.apache.ratis.protocol.RaftGroup;
+import org.apache.ratis.protocol.RaftGroupId;
+import org.apache.ratis.protocol.RaftPeer;
+import org.apache.ratis.protocol.RaftPeerId;
+import org.apache.ratis.retry.RetryPolicies;
+import org.apache.ratis.retry.RetryPolicy;
+import org.apache.ratis.server.simulation.MiniRaftClusterWithSimulatedRpc;
+import org.apache.ratis.statemachine.SimpleStateMachine4Testing;
+import org.apache.ratis.statemachine.StateMachine;
+import org.apache.ratis.util.LogUtils;
+import org.apache.ratis.util.TimeDuration;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Test that the {@link LeaderBalancer} spreads the leaders of multiple groups across the servers.
+ */
+public class TestLeaderBalancer extends BaseTest {
+  static {
+    LogUtils.setLogLevel(LeaderBalancer.LOG, Level.DEBUG);
+  }
+
+  public static final int NUM_SERVERS = 3;
+
+  protected static final RaftProperties properties = new RaftProperties();
+
+  private final MiniRaftClusterWithSimulatedRpc cluster = MiniRaftClusterWithSimulatedRpc
+      .FACTORY.newCluster(NUM_SERVERS, getProperties());
+
+  public RaftProperties getProperties() {
+    properties.setClass(MiniRaftCluster.STATEMACHINE_CLASS_KEY,
+        SimpleStateMachine4Testing.class, StateMachine.class);
+    RaftClientConfigKeys.LeaderBalancer.setTransfersMax(properties, NUM_SERVERS);
+    RaftClientConfigKeys.LeaderBalancer.setGroupCooldown(properties, TimeDuration.valueOf(0, TimeUnit.SECONDS));
+    return properties;
+  }
+
+  @Before
+  public void setup() throws IOException {
+    Assert.assertNull(cluster.getLeader());
+    cluster.start();
+  }
+
+  @After
+  public void tearDown() {
+    if (cluster != null) {
+      cluster.shutdown();
+    }
+  }
+
+  @Test
+  public void testBalanceLeaders() throws Exception {
+    runTestBalanceLeaders(false);
+  }
+
+  /** A server failing to answer must not fail the round for the other servers. */
+  @Test
+  public void testBalanceLeadersWithFailedServer() throws Exception {
+    runTestBalanceLeaders(true);
+  }
+
+  void runTestBalanceLeaders(boolean withFailedServer) throws Exception {
+    RaftTestUtil.waitForLeader(cluster);
+    final List<RaftPeer> peers = cluster.getPeers();
+
+    // add more groups over the same servers
+    final List<RaftGroup> groups = new ArrayList<>();
+    groups.add(cluster.getGroup());
+    for(int i = 1; i < NUM_SERVERS; i++) {
+      final RaftGroup g = RaftGroup.valueOf(RaftGroupId.randomId(), peers);
+      for(RaftPeer peer : peers) {
+        try(final RaftClient client = cluster.createClient(peer.getId(), g)) {
+          Assert.assertTrue(client.groupAdd(g, peer.getId()).isSuccess());
+        }
+      }
+      groups.add(g);
+    }
+
+    // move all the leaders to the first server
+    final RaftPeerId first = peers.get(0).getId();
+    for(RaftGroup g : groups) {
+      final RaftPeerId leader = RaftTestUtil.waitForLeader(cluster, g.getGroupId()).getId();
+      if (!leader.equals(first)) {
+        try(final RaftClient client = cluster.createClient(leader, g)) {
+          Assert.assertTrue(client.transferLeadership(first).isSuccess());
+        }
+      }
+      Assert.assertEquals(first, RaftTestUtil.waitForLeader(cluster, g.getGroupId()).getId());
+    }
+
+    final List<RaftPeer> servers = new ArrayList<>(peers);
+    if (withFailedServer) {
+      // a server not in the cluster, which fails every request
+      servers.add(new RaftPeer(RaftPeerId.valueOf("failed")));
+    }
+    final RetryPolicy retryPolicy = RetryPolicies.retryUpToMaximumCountWithFixedSleep(
+        3, TimeDuration.valueOf(100, TimeUnit.MILLISECONDS));
+    try(final LeaderBalancer balancer = new LeaderBalancer(servers, properties,
+        g -> cluster.createClient(null, g, null, retryPolicy))) {
+      Assert.assertEquals(NUM_SERVERS - 1, balancer.balance());
+
+      final Set<RaftPeerId> leaders = new HashSet<>();
+      for(RaftGroup g : groups) {
+        leaders.add(RaftTestUtil.waitForLeader(cluster, g.getGroupId()).getId());
+      }
+      Assert.assertEquals(NUM_SERVERS, leaders.size());
+
+      // already balanced
+      Assert.assertEquals(0, balancer.balance());
+    }
+  }
+}
@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis;
+
+import org.apache.log4j.Level;
+import org.apache.ratis.RaftTestUtil.SimpleMessage;
+import org.apache.ratis.client.RaftClient;
+import org.apache.ratis.protocol.RaftClientReply;
+import org.apache.ratis.protocol.RaftPeerId;
+import org.apache.ratis.protocol.TransferLeadershipException;
+import org.apache.ratis.server.impl.RaftServerImpl;
+import org.apache.ratis.server.impl.RaftServerTestUtil;
+import org.apache.ratis.server.simulation.MiniRaftClusterWithSimulatedRpc;
+import org.apache.ratis.statemachine.SimpleStateMachine4Testing;
+import org.apache.ratis.statemachine.StateMachine;
+import org.apache.ratis.util.JavaUtils;
+import org.apache.ratis.util.LogUtils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test that a pre-vote does not disrupt a healthy leader
+ * and that the leadership can be transferred to a follower.
+ */
+public class TestPreVoteAndTransferLeadership extends BaseTest implements MiniRaftClusterWithSimulatedRpc.FactoryGet {
+  static {
+    LogUtils.setLogLevel(RaftServerImpl.LOG, Level.DEBUG);
+  }
+
+  public static final int NUM_SERVERS = 3;
+
+  @Before
+  public void setup() {
+    getProperties().setClass(MiniRaftCluster.STATEMACHINE_CLASS_KEY,
+        SimpleStateMachine4Testing.class, StateMachine.class);
+  }
+
+  @Test
+  public void testPreVoteWithHealthyLeader() throws Exception {
+    runWithNewCluster(NUM_SERVERS, this::runTestPreVoteWithHealthyLeader);
+  }
+
+  void runTestPreVoteWithHealthyLeader(MiniRaftCluster cluster) throws Exception {
+    final RaftServerImpl leader = RaftTestUtil.waitForLeader(cluster);
+    final long term = leader.getState().getCurrentTerm();
+
+    // the other peers still hear from the leader, so the pre-vote must fail without bumping the term
+    final RaftServerImpl follower = cluster.getFollowers().get(0);
+    RaftServerTestUtil.changeToCandidate(follower);
+    JavaUtils.attempt(follower::isFollower, 10, cluster.getTimeoutMax(), "waitForFollower", LOG);
+
+    Assert.assertSame(leader, cluster.getLeader());
+    Assert.assertEquals(term, leader.getState().getCurrentTerm());
+    Assert.assertEquals(term, follower.getState().getCurrentTerm());
+  }
+
+  @Test
+  public void testTransferLeadership() throws Exception {
+    runWithNewCluster(NUM_SERVERS, this::runTestTransferLeadership);
+  }
+
+  void runTestTransferLeadership(MiniRaftCluster cluster) throws Exception {
+    final RaftServerImpl leader = RaftTestUtil.waitForLeader(cluster);
+    final RaftPeerId newLeader = cluster.getFollowers().get(0).getId();
+
+    try (final RaftClient client = cluster.createClient(leader.getId())) {
+      Assert.assertTrue(client.send(new SimpleMessage("before")).isSuccess());
+
+      final RaftClientReply reply = client.transferLeadership(newLeader);
+      Assert.assertTrue(reply.isSuccess());
+      Assert.assertEquals(newLeader, RaftTestUtil.waitForLeader(cluster).getId());
+
+      Assert.assertTrue(client.send(new SimpleMessage("after")).isSuccess());
+    }
+  }
+
+  @Test
+  public void testTransferLeadershipToNonMember() throws Exception {
+    runWithNewCluster(NUM_SERVERS, this::runTestTransferLeadershipToNonMember);
+  }
+
+  void runTestTransferLeadershipToNonMember(MiniRaftCluster cluster) throws Exception {
+    final RaftServerImpl leader = RaftTestUtil.waitForLeader(cluster);
+    final RaftPeerId nonMember = RaftPeerId.valueOf("nonMember");
+
+    try (final RaftClient client = cluster.createClient(leader.getId())) {
+      final RaftClientReply reply = client.transferLeadership(nonMember);
+      Assert.assertFalse(reply.isSuccess());
+      final TransferLeadershipException e = reply.getTransferLeadershipException();
+      Assert.assertNotNull(e);
+      Assert.assertTrue(e.getMessage(), e.getMessage().contains(nonMember + " is not in the conf"));
+
+      // the failed transfer must not block the write requests
+      Assert.assertSame(leader, cluster.getLeader());
+      Assert.assertTrue(client.send(new SimpleMessage("after")).isSuccess());
+    }
+  }
+}
@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis;
+
+import org.apache.log4j.Level;
+import org.apache.ratis.MiniRaftCluster.PeerChanges;
+import org.apache.ratis.RaftTestUtil.SimpleMessage;
+import org.apache.ratis.client.RaftClient;
+import org.apache.ratis.conf.RaftProperties;
+import org.apache.ratis.protocol.RaftClientReply;
+import org.apache.ratis.protocol.RaftPeer;
+import org.apache.ratis.protocol.RaftPeerId;
+import org.apache.ratis.retry.RetryPolicies;
+import org.apache.ratis.server.impl.RaftServerImpl;
+import org.apache.ratis.server.simulation.MiniRaftClusterWithSimulatedRpc;
+import org.apache.ratis.statemachine.SimpleStateMachine4Testing;
+import org.apache.ratis.statemachine.StateMachine;
+import org.apache.ratis.util.JavaUtils;
+import org.apache.ratis.util.LogUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Test that a learner replicates the log and serves stale reads
+ * without being counted in the majority.
+ */
+public class TestRaftServerLearner extends BaseTest {
+  static {
+    LogUtils.setLogLevel(RaftServerImpl.LOG, Level.DEBUG);
+  }
+
+  public static final int NUM_SERVERS = 3;
+
+  protected static final RaftProperties properties = new RaftProperties();
+
+  private final MiniRaftClusterWithSimulatedRpc cluster = MiniRaftClusterWithSimulatedRpc
+      .FACTORY.newCluster(NUM_SERVERS, getProperties());
+
+  public RaftProperties getProperties() {
+    properties.setClass(MiniRaftCluster.STATEMACHINE_CLASS_KEY,
+        SimpleStateMachine4Testing.class, StateMachine.class);
+    return properties;
+  }
+
+  @Before
+  public void setup() throws IOException {
+    Assert.assertNull(cluster.getLeader());
+    cluster.start();
+  }
+
+  @After
+  public void tearDown() {
+    if (cluster != null) {
+      cluster.shutdown();
+    }
+  }
+
+  @Test
+  public void testLearner() throws Exception {
+    final RaftServerImpl leader = RaftTestUtil.waitForLeader(cluster);
+    final RaftPeer[] voters = cluster.getPeers().toArray(new RaftPeer[0]);
+
+    final PeerChanges change = cluster.addNewPeers(1, true);
+    final RaftPeer learner = change.newPeers[0];
+
+    try (final RaftClient client = cluster.createClient(leader.getId())) {
+      final RaftClientReply conf = client.setConfiguration(voters, new RaftPeer[]{learner});
+      Assert.assertTrue(conf.isSuccess());
+
+      final RaftClientReply write = client.send(new SimpleMessage("m0"));
+      Assert.assertTrue(write.isSuccess());
+
+      // the learner receives the log and serves stale reads
+      final RaftServerImpl learnerImpl = cluster.getRaftServerImpl(learner.getId());
+      JavaUtils.attempt(() -> learnerImpl.getState().getLastAppliedIndex() >= write.getLogIndex(),
+          10, cluster.getTimeoutMax(), "learner catch up", LOG);
+      Assert.assertTrue(learnerImpl.isLearner());
+      Assert.assertTrue(learnerImpl.isFollower());
+      Assert.assertTrue(client.sendStaleRead(new SimpleMessage("m0"), write.getLogIndex(), learner.getId())
+          .isSuccess());
+    }
+
+    // with a follower and the learner down, the two remaining voters are still a majority;
+    // it would not be the case if the learner were a voting member.
+    final RaftPeerId follower = cluster.getFollowers().stream()
+        .map(RaftServerImpl::getId)
+        .filter(id -> !id.equals(learner.getId()))
+        .findFirst().get();
+    cluster.killServer(follower);
+    cluster.killServer(learner.getId());
+
+    try (final RaftClient client = cluster.createClient(leader.getId(), RetryPolicies.noRetry())) {
+      final CompletableFuture<RaftClientReply> f = client.sendAsync(new SimpleMessage("m1"));
+      try {
+        Assert.assertTrue(f.get(cluster.getTimeoutMax().toLong(TimeUnit.MILLISECONDS) * 5, TimeUnit.MILLISECONDS)
+            .isSuccess());
+      } catch (TimeoutException e) {
+        Assert.fail("The write should not wait for the learner: " + e);
+      }
+    }
+    Assert.assertSame(leader, cluster.getLeader());
+  }
+}
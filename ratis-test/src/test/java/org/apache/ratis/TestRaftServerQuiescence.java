@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis;
+
+import org.apache.log4j.Level;
+import org.apache.ratis.RaftTestUtil.SimpleMessage;
+import org.apache.ratis.client.RaftClient;
+import org.apache.ratis.conf.RaftProperties;
+import org.apache.ratis.protocol.RaftClientReply;
+import org.apache.ratis.server.RaftServerConfigKeys;
+import org.apache.ratis.server.impl.RaftServerImpl;
+import org.apache.ratis.server.impl.RaftServerTestUtil;
+import org.apache.ratis.server.simulation.MiniRaftClusterWithSimulatedRpc;
+import org.apache.ratis.statemachine.SimpleStateMachine4Testing;
+import org.apache.ratis.statemachine.StateMachine;
+import org.apache.ratis.util.JavaUtils;
+import org.apache.ratis.util.LogUtils;
+import org.apache.ratis.util.TimeDuration;
+import org.apache.ratis.util.Timestamp;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Test that an idle group becomes quiescent and wakes up on the next client request.
+ */
+public class TestRaftServerQuiescence extends BaseTest implements MiniRaftClusterWithSimulatedRpc.FactoryGet {
+  static {
+    LogUtils.setLogLevel(RaftServerImpl.LOG, Level.DEBUG);
+  }
+
+  public static final int NUM_SERVERS = 3;
+
+  /** The quiescence is only enabled for this test, not in the properties shared with the other tests. */
+  private final RaftProperties properties = new RaftProperties();
+
+  {
+    RaftServerConfigKeys.Quiescence.setEnabled(properties, true);
+    RaftServerConfigKeys.Quiescence.setIdleTimeout(properties, TimeDuration.valueOf(1, TimeUnit.SECONDS));
+    RaftServerConfigKeys.Quiescence.setTimeoutMultiplier(properties, 3);
+    properties.setClass(MiniRaftCluster.STATEMACHINE_CLASS_KEY,
+        SimpleStateMachine4Testing.class, StateMachine.class);
+  }
+
+  @Override
+  public RaftProperties getProperties() {
+    return properties;
+  }
+
+  void waitForQuiescence(MiniRaftCluster cluster) throws InterruptedException {
+    final TimeDuration idleTimeout = RaftServerConfigKeys.Quiescence.idleTimeout(cluster.getProperties());
+    JavaUtils.attempt(() -> cluster.getFollowers().stream().allMatch(RaftServerTestUtil::isQuiescent),
+        10, idleTimeout, "waitForQuiescence", LOG);
+  }
+
+  @Test
+  public void testQuiescence() throws Exception {
+    runWithNewCluster(NUM_SERVERS, this::runTestQuiescence);
+  }
+
+  void runTestQuiescence(MiniRaftCluster cluster) throws Exception {
+    final RaftServerImpl leader = RaftTestUtil.waitForLeader(cluster);
+    final long term = leader.getState().getCurrentTerm();
+    waitForQuiescence(cluster);
+
+    // with only the quiescent heartbeats, the followers must not start any election:
+    // wait until all of them are still quiescent and have heard from the leader after a few election timeouts
+    final TimeDuration timeoutMax = cluster.getTimeoutMax();
+    final Timestamp after = Timestamp.currentTime().addTimeMs(3 * timeoutMax.toLong(TimeUnit.MILLISECONDS));
+    JavaUtils.attempt(() -> cluster.getFollowers().stream().allMatch(f -> RaftServerTestUtil.isQuiescent(f)
+            && RaftServerTestUtil.getLastRpcTime(f).compareTo(after) > 0),
+        10, timeoutMax, "waitForQuiescentHeartbeats", LOG);
+    Assert.assertSame(leader, cluster.getLeader());
+    Assert.assertEquals(term, leader.getState().getCurrentTerm());
+
+    // a client request wakes up the group
+    try (final RaftClient client = cluster.createClient(leader.getId())) {
+      final RaftClientReply reply = client.send(new SimpleMessage("wake-up"));
+      Assert.assertTrue(reply.isSuccess());
+    }
+    for (RaftServerImpl follower : cluster.getFollowers()) {
+      Assert.assertFalse(follower + " is still quiescent", RaftServerTestUtil.isQuiescent(follower));
+    }
+    Assert.assertEquals(term, leader.getState().getCurrentTerm());
+  }
+
+  /** The followers of a quiescent group must elect a new leader when the leader fails. */
+  @Test
+  public void testLeaderFailureWhileQuiescent() throws Exception {
+    runWithNewCluster(NUM_SERVERS, this::runTestLeaderFailureWhileQuiescent);
+  }
+
+  void runTestLeaderFailureWhileQuiescent(MiniRaftCluster cluster) throws Exception {
+    final RaftServerImpl leader = RaftTestUtil.waitForLeader(cluster);
+    final long term = leader.getState().getCurrentTerm();
+    waitForQuiescence(cluster);
+
+    cluster.killServer(leader.getId());
+    final RaftServerImpl newLeader = RaftTestUtil.waitForLeader(cluster);
+    Assert.assertNotEquals(leader.getId(), newLeader.getId());
+    Assert.assertTrue(newLeader.getState().getCurrentTerm() > term);
+  }
+}
@@ -0,0 +1,107 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.metrics;
+
+import org.apache.ratis.BaseTest;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.StringWriter;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+public class TestPrometheusMetrics extends BaseTest {
+  static final String PREFIX = "ratis_test_prometheus_metrics_";
+  static final String LABELS = "{peer=\"s0\",group=\"group-1\"}";
+
+  static String write() throws Exception {
+    final StringWriter out = new StringWriter();
+    PrometheusMetricsWriter.write(out);
+    return out.toString();
+  }
+
+  @Test
+  public void testWriter() throws Exception {
+    final RatisMetrics metrics = new RatisMetrics(TestPrometheusMetrics.class, "s0", "group-1");
+    metrics.counter("hit").inc(3);
+    metrics.meter("commit").mark(5);
+    metrics.timer("flush-time").update(2, TimeUnit.MILLISECONDS);
+    metrics.gauge("queue-size", () -> 7);
+
+    final String text = write();
+    LOG.info(text);
+    Assert.assertTrue(text.contains("# TYPE " + PREFIX + "hit_total counter\n"));
+    Assert.assertTrue(text.contains(PREFIX + "hit_total" + LABELS + " 3\n"));
+    Assert.assertTrue(text.contains("# TYPE " + PREFIX + "commit_total counter\n"));
+    Assert.assertTrue(text.contains(PREFIX + "commit_total" + LABELS + " 5\n"));
+    Assert.assertTrue(text.contains("# TYPE " + PREFIX + "flush_time_seconds summary\n"));
+    Assert.assertTrue(text.contains(PREFIX + "flush_time_seconds_count" + LABELS + " 1\n"));
+    Assert.assertTrue(text.contains(
+        PREFIX + "flush_time_seconds{peer=\"s0\",group=\"group-1\",quantile=\"0.5\"} 0.002\n"));
+    Assert.assertTrue(text.contains(PREFIX + "queue_size" + LABELS + " 7\n"));
+
+    // the metrics are gone with the registry
+    RatisMetricsRegistry.removeRegistry("s0", "group-1");
+    Assert.assertFalse(write().contains(LABELS));
+  }
+
+  @Test
+  public void testLabels() throws Exception {
+    final RatisMetrics metrics = new RatisMetrics(TestPrometheusMetrics.class, "s0", "group-1");
+    metrics.gauge(RatisMetrics.withLabel("match-lag", "follower", "s1"), () -> 1);
+    metrics.gauge(RatisMetrics.withLabel("match-lag", "follower", "s\"2\\\n"), () -> 2);
+    try {
+      final String text = write();
+      LOG.info(text);
+      Assert.assertTrue(text.contains("# TYPE " + PREFIX + "match_lag gauge\n"));
+      Assert.assertTrue(text.contains(PREFIX + "match_lag{peer=\"s0\",group=\"group-1\",follower=\"s1\"} 1\n"));
+      // the label values are escaped
+      Assert.assertTrue(text.contains(
+          PREFIX + "match_lag{peer=\"s0\",group=\"group-1\",follower=\"s\\\"2\\\\\\n\"} 2\n"));
+    } finally {
+      RatisMetricsRegistry.removeRegistry("s0", "group-1");
+    }
+  }
+
+  @Test
+  public void testHttpServer() throws Exception {
+    final RatisMetrics metrics = new RatisMetrics(TestPrometheusMetrics.class, "s0", "group-1");
+    metrics.counter("hit").inc();
+
+    try (MetricsHttpServer server = new MetricsHttpServer(new InetSocketAddress(0))) {
+      server.start();
+      final URL url = new URL("http://localhost:" + server.getAddress().getPort() + MetricsHttpServer.PATH);
+      final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+      Assert.assertEquals(200, connection.getResponseCode());
+      Assert.assertEquals(MetricsHttpServer.CONTENT_TYPE, connection.getContentType());
+      try (BufferedReader in = new BufferedReader(
+          new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8))) {
+        final String text = in.lines().collect(Collectors.joining("\n"));
+        Assert.assertTrue(text.contains(PREFIX + "hit" + LABELS + " 1"));
+      }
+    } finally {
+      RatisMetricsRegistry.removeRegistry("s0", "group-1");
+    }
+  }
+}
@@ -24,6 +24,7 @@ import org.apache.ratis.BaseTest;
 import org.apache.ratis.MiniRaftCluster;
 import org.apache.ratis.RaftTestUtil;
 import org.apache.ratis.client.RaftClient;
+import org.apache.ratis.metrics.RatisMetrics;
 import org.apache.ratis.metrics.RatisMetricsRegistry;
 import org.apache.ratis.server.impl.RaftServerImpl;
 import org.apache.ratis.server.simulation.MiniRaftClusterWithSimulatedRpc;
@@ -91,7 +92,12 @@ public class TestRaftLogMetrics extends BaseTest
     }
 
     // For leader, flush must happen before client can get replies.
-    assertFlushCount(cluster.getLeader());
+    final RaftServerImpl leader = cluster.getLeader();
+    assertFlushCount(leader);
+
+    final RatisMetrics metrics = new RatisMetrics(RaftServerImpl.class, leader.getId(), leader.getGroupId());
+    Assert.assertTrue(metrics.counter("retry-cache.miss").getCount() >= numMsg);
+    Assert.assertTrue(metrics.timer("election.election.time").getCount() > 0);
 
     // For followers, flush can be lagged behind.  Attempt multiple times.
     for(RaftServerImpl f : cluster.getFollowers()) {
@@ -100,8 +106,10 @@ public class TestRaftLogMetrics extends BaseTest
   }
 
   static void assertFlushCount(RaftServerImpl server) throws Exception {
-      final String flushTimeMetric = RaftStorageTestUtils.getLogFlushTimeMetric(server.getId());
-      Timer tm = RatisMetricsRegistry.getRegistry().getTimers().get(flushTimeMetric);
+      final String flushTimeMetric = RaftStorageTestUtils.getLogFlushTimeMetric(
+          server.getId(), server.getGroupId());
+      Timer tm = RatisMetricsRegistry.getRegistry(server.getId(), server.getGroupId())
+          .getTimers().get(flushTimeMetric);
       Assert.assertNotNull(tm);
 
       final MetricsStateMachine stateMachine = MetricsStateMachine.get(server);
@@ -0,0 +1,77 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.server.impl;
+
+import com.codahale.metrics.Timer;
+import org.apache.ratis.BaseTest;
+import org.apache.ratis.metrics.RatisMetrics;
+import org.apache.ratis.server.impl.RequestTracer.Stage;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestRequestTracer extends BaseTest {
+  private final RatisMetrics metrics = new RatisMetrics(TestRequestTracer.class, "s0", "group");
+
+  @After
+  public void removeMetrics() {
+    metrics.removeAll();
+  }
+
+  @Test
+  public void testSampling() {
+    final RequestTracer tracer = new RequestTracer("s0", 10, false, metrics);
+    Assert.assertTrue(tracer.isSampled(0));
+    Assert.assertFalse(tracer.isSampled(5));
+    Assert.assertTrue(tracer.isSampled(20));
+    Assert.assertFalse(new RequestTracer("s0", 0, false, metrics).isSampled(20));
+
+    // the entries 10 and 20 are sampled
+    tracer.begin(5, 25, Stage.RECEIVE);
+    tracer.recordUpTo(25, Stage.FLUSH);
+    tracer.end(10, Stage.APPLY);
+    tracer.end(20, Stage.APPLY);
+    Assert.assertEquals(2, metrics.timer("trace.flush").getCount());
+    Assert.assertEquals(2, metrics.timer("trace.apply").getCount());
+    Assert.assertEquals(0, metrics.timer("trace.commit").getCount());
+  }
+
+  @Test
+  public void testLeaderStages() {
+    final RequestTracer tracer = new RequestTracer("s0", 1, true, metrics);
+    tracer.begin(1, Stage.SUBMIT, System.nanoTime());
+    tracer.record(1, Stage.APPEND);
+    tracer.begin(2, Stage.SUBMIT, System.nanoTime());
+    tracer.recordUpTo(2, Stage.FLUSH);
+    tracer.recordUpTo(1, Stage.COMMIT);
+    tracer.record(1, Stage.APPLY);
+    tracer.end(1, Stage.REPLY);
+
+    for (Stage stage : new Stage[]{Stage.APPEND, Stage.FLUSH, Stage.COMMIT, Stage.APPLY, Stage.REPLY}) {
+      final Timer timer = metrics.timer("trace." + stage.name().toLowerCase());
+      Assert.assertEquals(stage.toString(), 1, timer.getCount());
+    }
+
+    // the trace of index 2 is discarded when a larger index ends
+    tracer.begin(3, Stage.SUBMIT, System.nanoTime());
+    tracer.end(3, Stage.REPLY);
+    tracer.end(2, Stage.REPLY);
+    Assert.assertEquals(1, metrics.timer("trace.flush").getCount());
+    Assert.assertEquals(2, metrics.timer("trace.reply").getCount());
+  }
+}
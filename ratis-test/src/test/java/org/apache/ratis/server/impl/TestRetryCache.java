@@ -0,0 +1,156 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.server.impl;
+
+import org.apache.ratis.BaseTest;
+import org.apache.ratis.protocol.ClientId;
+import org.apache.ratis.util.JavaUtils;
+import org.apache.ratis.util.TimeDuration;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class TestRetryCache extends BaseTest {
+  static RetryCache.CacheQueryResult assertQuery(RetryCache cache, ClientId clientId, long callId, boolean isRetry) {
+    final RetryCache.CacheQueryResult result = cache.queryCache(clientId, callId);
+    Assert.assertEquals(isRetry, result.isRetry());
+    Assert.assertSame(result.getEntry(), cache.get(clientId, callId));
+    return result;
+  }
+
+  @Test
+  public void testRetry() {
+    final RetryCache cache = new RetryCache(TimeDuration.valueOf(60, TimeUnit.SECONDS));
+    final ClientId clientId = ClientId.randomId();
+
+    final RetryCache.CacheEntry pending = assertQuery(cache, clientId, 1, false).getEntry();
+    Assert.assertSame(pending, assertQuery(cache, clientId, 1, true).getEntry());
+    Assert.assertNull(cache.get(clientId, 2));
+    Assert.assertNull(cache.get(ClientId.randomId(), 1));
+
+    // a failed entry is replaced by the retry
+    pending.failWithException(new Exception("test"));
+    final RetryCache.CacheEntry retried = assertQuery(cache, clientId, 1, false).getEntry();
+    Assert.assertNotSame(pending, retried);
+    Assert.assertFalse(retried.isDone());
+    Assert.assertEquals(1, cache.size());
+
+    cache.close();
+    Assert.assertEquals(0, cache.size());
+  }
+
+  /** The call ids of a client may arrive out of order, e.g. from multiple handler threads. */
+  @Test
+  public void testOutOfOrderCallIds() {
+    final RetryCache cache = new RetryCache(TimeDuration.valueOf(60, TimeUnit.SECONDS));
+    final ClientId[] clientIds = {ClientId.randomId(), ClientId.randomId()};
+
+    final List<Long> callIds = new ArrayList<>();
+    for (long i = 0; i < 1000; i++) {
+      callIds.add(3 * i);
+    }
+    Collections.shuffle(callIds);
+    for (long callId : callIds) {
+      for (ClientId clientId : clientIds) {
+        assertQuery(cache, clientId, callId, false);
+      }
+    }
+    Assert.assertEquals(2 * callIds.size(), cache.size());
+    Assert.assertEquals(clientIds.length, cache.getNumClients());
+
+    for (long callId : callIds) {
+      for (ClientId clientId : clientIds) {
+        assertQuery(cache, clientId, callId, true);
+        Assert.assertNull(cache.get(clientId, callId + 1));
+      }
+    }
+    cache.close();
+  }
+
+  @Test
+  public void testExpiry() throws Exception {
+    final RetryCache cache = new RetryCache(TimeDuration.valueOf(100, TimeUnit.MILLISECONDS));
+    final ClientId active = ClientId.randomId();
+    final ClientId inactive = ClientId.randomId();
+
+    for (long callId = 0; callId < 100; callId++) {
+      assertQuery(cache, active, callId, false).getEntry().updateResult(null);
+      assertQuery(cache, inactive, callId, false);
+    }
+    Assert.assertEquals(200, cache.size());
+
+    // the scheduled sweep removes the expired entries and then the clients without entries
+    JavaUtils.attempt(() -> cache.getNumClients() == 0, 100, TimeDuration.valueOf(50, TimeUnit.MILLISECONDS),
+        "sweep", LOG);
+    Assert.assertEquals(0, cache.size());
+    Assert.assertNull(cache.get(active, 0));
+    Assert.assertNull(cache.get(inactive, 0));
+    assertQuery(cache, active, 0, false);
+    Assert.assertEquals(1, cache.size());
+    Assert.assertEquals(1, cache.getNumClients());
+    cache.close();
+    Assert.assertEquals(0, cache.size());
+
+    // all the entries expire
+    final RetryCache.ClientCache clientCache = new RetryCache.ClientCache(active);
+    for (long callId = 0; callId < 100; callId++) {
+      clientCache.put(new RetryCache.CacheEntry(active, callId), 0);
+    }
+    Assert.assertEquals(100, clientCache.size());
+    clientCache.expire(10, 10, 0);
+    Assert.assertEquals(0, clientCache.size());
+  }
+
+  /** The completed entries below the smallest unreplied call id of the client are removed before they expire. */
+  @Test
+  public void testMinUnrepliedCallId() {
+    final RetryCache cache = new RetryCache(TimeDuration.valueOf(60, TimeUnit.SECONDS));
+    final ClientId clientId = ClientId.randomId();
+    final List<RetryCache.CacheEntry> entries = new ArrayList<>();
+    for (long callId = 0; callId < 100; callId++) {
+      entries.add(assertQuery(cache, clientId, callId, false).getEntry());
+    }
+    for (int i = 0; i < 50; i++) {
+      if (i != 30) {
+        entries.get(i).updateResult(null);
+      }
+    }
+
+    // the removal stops at the pending entry
+    cache.queryCache(clientId, 100, 60);
+    Assert.assertEquals(71, cache.size());
+    Assert.assertNull(cache.get(clientId, 29));
+    Assert.assertSame(entries.get(30), cache.get(clientId, 30));
+
+    // the pending entries are not removed even if they are below the given call id
+    entries.get(30).updateResult(null);
+    cache.queryCache(clientId, 101, 60);
+    Assert.assertEquals(52, cache.size());
+    Assert.assertNull(cache.get(clientId, 49));
+    Assert.assertSame(entries.get(50), cache.get(clientId, 50));
+
+    // zero means unknown
+    cache.queryCache(clientId, 102, 0);
+    Assert.assertEquals(53, cache.size());
+    cache.close();
+  }
+}
@@ -0,0 +1,85 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.server.simulation;
+
+import org.apache.ratis.BaseTest;
+import org.apache.ratis.conf.RaftProperties;
+import org.apache.ratis.server.simulation.SimulatedNetwork.Link;
+import org.apache.ratis.server.simulation.SimulatedNetwork.LinkModel;
+import org.apache.ratis.util.SizeInBytes;
+import org.apache.ratis.util.TimeDuration;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class TestSimulatedNetwork extends BaseTest {
+  static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  static LinkModel newModel(long latencyMs, long jitterMs, String bandwidth, double loss) {
+    return new LinkModel(TimeDuration.valueOf(latencyMs, TimeUnit.MILLISECONDS),
+        TimeDuration.valueOf(jitterMs, TimeUnit.MILLISECONDS), SizeInBytes.valueOf(bandwidth), loss);
+  }
+
+  @Test
+  public void testSeed() {
+    final RaftProperties properties = new RaftProperties();
+    SimulatedNetwork.setSeed(properties, 12345L);
+    SimulatedNetwork.setDefault(properties, newModel(10, 5, "0", 0.3));
+
+    final Link a = new SimulatedNetwork(properties).getLink("s0", "s1");
+    final Link b = new SimulatedNetwork(properties).getLink("s0", "s1");
+    for (int i = 0; i < 100; i++) {
+      Assert.assertEquals(a.nextLost(), b.nextLost());
+      final long delay = a.nextDelayNanos(100);
+      Assert.assertEquals(delay, b.nextDelayNanos(100));
+      Assert.assertTrue(delay >= 5 * MS && delay <= 15 * MS);
+    }
+  }
+
+  @Test
+  public void testBandwidth() {
+    final RaftProperties properties = new RaftProperties();
+    SimulatedNetwork.setDefault(properties, newModel(0, 0, "1MB", 0));
+    final Link link = new SimulatedNetwork(properties).getLink("s0", "s1");
+
+    // the messages sent at the same time are transmitted one after another
+    final int size = 100 << 10;
+    final long expected = TimeUnit.SECONDS.toNanos(1) * size / (1 << 20);
+    for (int i = 1; i <= 3; i++) {
+      final long delay = link.nextDelayNanos(size);
+      Assert.assertTrue("i=" + i + ", delay=" + delay, delay > (i - 1) * expected && delay <= i * expected);
+    }
+  }
+
+  @Test
+  public void testAsymmetricLinks() {
+    final RaftProperties properties = new RaftProperties();
+    SimulatedNetwork.setDefault(properties, newModel(1, 0, "0", 0));
+    SimulatedNetwork.setLink(properties, "s0", "s1", newModel(20, 0, "0", 1));
+    final SimulatedNetwork network = new SimulatedNetwork(properties);
+
+    final Link slow = network.getLink("s0", "s1");
+    Assert.assertEquals(20 * MS, slow.nextDelayNanos(0));
+    Assert.assertTrue(slow.nextLost());
+
+    final Link reverse = network.getLink("s1", "s0");
+    Assert.assertEquals(MS, reverse.nextDelayNanos(0));
+    Assert.assertFalse(reverse.nextLost());
+  }
+}
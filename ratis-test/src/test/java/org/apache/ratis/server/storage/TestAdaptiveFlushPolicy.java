@@ -0,0 +1,69 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.server.storage;
+
+import org.apache.ratis.BaseTest;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class TestAdaptiveFlushPolicy extends BaseTest {
+  static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  @Test
+  public void testThreshold() {
+    final AdaptiveFlushPolicy policy = new AdaptiveFlushPolicy(128, 10 * MS, 2 * MS);
+    Assert.assertEquals(128, policy.getThreshold());
+
+    // slow flushes shrink the batches
+    policy.onFlush(20 * MS, 30 * MS, 0);
+    Assert.assertEquals(64, policy.getThreshold());
+    for (int i = 0; i < 10; i++) {
+      policy.onFlush(20 * MS, 30 * MS, 0);
+    }
+    Assert.assertEquals(1, policy.getThreshold());
+
+    // a queue building up grows the batches, up to the max
+    for (int i = 0; i < 100; i++) {
+      policy.onFlush(MS, 2 * MS, 1000);
+    }
+    Assert.assertEquals(128, policy.getThreshold());
+
+    // within the target latency with no backlog, the threshold stays
+    policy.onFlush(MS, 2 * MS, 0);
+    Assert.assertEquals(128, policy.getThreshold());
+  }
+
+  @Test
+  public void testLinger() {
+    final AdaptiveFlushPolicy policy = new AdaptiveFlushPolicy(128, 10 * MS, 2 * MS);
+    policy.onFlush(MS, 2 * MS, 0);
+
+    Assert.assertFalse(policy.shouldFlush(0, 0, 0));
+    Assert.assertTrue(policy.shouldFlush(128, 10, 0));
+    // more tasks are coming
+    Assert.assertFalse(policy.shouldFlush(1, 10, 0));
+    // the queue is empty: linger within the target latency
+    Assert.assertFalse(policy.shouldFlush(1, 0, 0));
+    Assert.assertEquals(2 * MS, policy.getLingerNanos(0));
+    Assert.assertEquals(MS, policy.getLingerNanos(8 * MS));
+    // no time left for lingering
+    Assert.assertTrue(policy.shouldFlush(1, 0, 9 * MS));
+  }
+}
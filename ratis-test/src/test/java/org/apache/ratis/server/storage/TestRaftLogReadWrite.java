@@ -38,9 +38,12 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * Test basic functionality of LogReader, LogInputStream, and LogOutputStream.
@@ -122,6 +125,32 @@ public class TestRaftLogReadWrite extends BaseTest {
     Assert.assertArrayEquals(entries, readEntries);
   }
 
+  /**
+   * Entries larger than the read buffer grow the buffer,
+   * which shrinks back for the small entries after them.
+   */
+  @Test
+  public void testReadLargeEntries() throws IOException {
+    final RaftStorage storage = new RaftStorage(storageDir, StartupOption.REGULAR);
+    final File openSegment = storage.getStorageDir().getOpenLogFile(0);
+
+    final LogEntryProto[] entries = new LogEntryProto[20];
+    try (LogOutputStream out = new LogOutputStream(openSegment, false, segmentMaxSize,
+        preallocatedSize, bufferSize)) {
+      for (int i = 0; i < entries.length; i++) {
+        final char[] chars = new char[i % 4 == 1? (i + 1) * 50_000: 10];
+        Arrays.fill(chars, (char) ('a' + i));
+        final SimpleOperation m = new SimpleOperation(new String(chars));
+        entries[i] = ServerProtoUtils.toLogEntryProto(m.getLogEntryContent(), 0, i);
+        out.write(entries[i]);
+      }
+    } finally {
+      storage.close();
+    }
+
+    Assert.assertArrayEquals(entries, readLog(openSegment, 0, RaftServerConstants.INVALID_LOG_INDEX, true));
+  }
+
   @Test
   public void testAppendLog() throws IOException {
     final RaftStorage storage = new RaftStorage(storageDir, StartupOption.REGULAR);
@@ -154,6 +183,87 @@ public class TestRaftLogReadWrite extends BaseTest {
     storage.close();
   }
 
+  /**
+   * Test the aligned writes used by direct I/O over a regular file channel:
+   * each flush writes whole blocks padded with the terminator,
+   * and a reopened channel continues from an unaligned position.
+   */
+  @Test
+  public void testAlignedWrite() throws IOException {
+    final int alignment = 512;
+    final File file = new File(storageDir, "aligned");
+    Assert.assertTrue(storageDir.mkdirs() || storageDir.isDirectory());
+    final byte[] data = new byte[5000];
+    ThreadLocalRandom.current().nextBytes(data);
+    for (int i = 0; i < data.length; i++) {
+      if (data[i] == SegmentedRaftLogFormat.getTerminator()) {
+        data[i] = 1;
+      }
+    }
+
+    final int reopen = 1777;
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+         BufferedWriteChannel out = new BufferedWriteChannel(raf.getChannel(), 1024, alignment, 0, raf.getChannel())) {
+      for (int i = 0; i < reopen; i += 100) {
+        out.write(Arrays.copyOfRange(data, i, Math.min(i + 100, reopen)));
+        out.flush(false);
+        Assert.assertEquals(0, raf.length() % alignment);
+        Assert.assertEquals((out.position() + alignment - 1) / alignment * alignment, raf.length());
+      }
+      Assert.assertEquals(reopen, out.position());
+    }
+
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+         BufferedWriteChannel out = new BufferedWriteChannel(
+             raf.getChannel(), 1024, alignment, reopen, raf.getChannel())) {
+      out.write(Arrays.copyOfRange(data, reopen, data.length));
+      out.flush(false);
+      Assert.assertEquals(0, raf.length() % alignment);
+
+      final byte[] written = new byte[(int) raf.length()];
+      raf.readFully(written);
+      Assert.assertArrayEquals(data, Arrays.copyOf(written, data.length));
+      for (int i = data.length; i < written.length; i++) {
+        Assert.assertEquals(SegmentedRaftLogFormat.getTerminator(), written[i]);
+      }
+    }
+  }
+
+  /**
+   * Convert a segment to version 2 and back, and seek to the entries using the block headers.
+   */
+  @Test
+  public void testFormatVersion2() throws IOException {
+    final RaftStorage storage = new RaftStorage(storageDir, StartupOption.REGULAR);
+    final File segment = storage.getStorageDir().getClosedLogFile(0, 99);
+    final LogEntryProto[] entries = new LogEntryProto[100];
+    try (LogOutputStream out = new LogOutputStream(segment, false, segmentMaxSize,
+        preallocatedSize, bufferSize)) {
+      writeMessages(entries, out);
+    } finally {
+      storage.close();
+    }
+    final byte[] version1 = Files.readAllBytes(segment.toPath());
+
+    for (boolean compress : new boolean[]{false, true}) {
+      Assert.assertTrue(LogFormatConverter.convert(segment, 0, 99, SegmentedRaftLogFormat.VERSION_2, 256, compress));
+      Assert.assertEquals(SegmentedRaftLogFormat.VERSION_2, SegmentedRaftLogFormat.readVersion(segment));
+      Assert.assertFalse(LogFormatConverter.convert(segment, 0, 99, SegmentedRaftLogFormat.VERSION_2, 256, compress));
+      Assert.assertArrayEquals(entries, readLog(segment, 0, 99, false));
+
+      try (LogReader reader = new LogReader(segment)) {
+        Assert.assertTrue(reader.verifyHeader());
+        for (long i : new long[]{3, 4, 57, 90}) {
+          reader.seek(i, -1);
+          Assert.assertEquals(entries[(int) i], reader.readEntry());
+        }
+      }
+
+      Assert.assertTrue(LogFormatConverter.convert(segment, 0, 99, SegmentedRaftLogFormat.VERSION_1, 256, compress));
+      Assert.assertArrayEquals(version1, Files.readAllBytes(segment.toPath()));
+    }
+  }
+
   /**
    * Simulate the scenario that the peer is shutdown without truncating
    * log segment file padding. Make sure the reader can correctly handle this.
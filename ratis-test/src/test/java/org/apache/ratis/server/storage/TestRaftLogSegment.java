@@ -45,6 +45,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import static org.apache.ratis.server.impl.RaftServerConstants.INVALID_LOG_INDEX;
 import static org.apache.ratis.server.storage.LogSegment.getEntrySize;
@@ -270,6 +271,71 @@ public class TestRaftLogSegment extends BaseTest {
         SegmentedRaftLogFormat.getHeaderLength(), term);
   }
 
+  @Test
+  public void testEntryCache() throws Exception {
+    final long start = 1000;
+    LogSegment segment = LogSegment.newOpenSegment(null, start);
+    final List<LogEntryProto> entries = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      // change the term for the second half so that the terms are stored in two runs
+      final LogEntryProto entry = ServerProtoUtils.toLogEntryProto(
+          new SimpleOperation("m" + i).getLogEntryContent(), i < 50? 1: 2, i + start);
+      segment.appendToOpenSegment(entry);
+      entries.add(entry);
+    }
+    for (LogEntryProto e : entries) {
+      final LogRecordWithEntry lre = segment.getEntryWithoutLoading(e.getIndex());
+      Assert.assertEquals(e.getTerm(), lre.getRecord().getTermIndex().getTerm());
+      Assert.assertSame(e, lre.getEntry());
+    }
+
+    segment.truncate(start + 80);
+    Assert.assertNull(segment.getEntryWithoutLoading(start + 80));
+    Assert.assertSame(entries.get(79), segment.getEntryWithoutLoading(start + 79).getEntry());
+    Assert.assertEquals(2, segment.getLastTermIndex().getTerm());
+
+    segment.evictCache();
+    Assert.assertFalse(segment.hasCache());
+    Assert.assertFalse(segment.getEntryWithoutLoading(start).hasEntry());
+  }
+
+  @Test
+  public void testOffHeapCache() throws Exception {
+    final long start = 1000;
+    LogSegment segment = LogSegment.newOpenSegment(null, start);
+    final List<LogEntryProto> entries = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      final LogEntryProto entry = ServerProtoUtils.toLogEntryProto(
+          new SimpleOperation("m" + i).getLogEntryContent(), 1, i + start);
+      segment.appendToOpenSegment(entry);
+      entries.add(entry);
+    }
+    segment.close();
+    segment.useOffHeapCache();
+    Assert.assertTrue(segment.hasCache());
+    for (LogEntryProto e : entries) {
+      // the entries are parsed from the off-heap buffer
+      Assert.assertEquals(e, segment.getEntryWithoutLoading(e.getIndex()).getEntry());
+    }
+
+    segment.truncate(start + 50);
+    Assert.assertFalse(segment.hasCache());
+    Assert.assertFalse(segment.getEntryWithoutLoading(start).hasEntry());
+
+    // a released buffer may be recycled by the pool, so reads must not touch it anymore
+    final AtomicReferenceArray<LogEntryProto> array = new AtomicReferenceArray<>(entries.size());
+    for (int i = 0; i < entries.size(); i++) {
+      array.set(i, entries.get(i));
+    }
+    final OffHeapEntries offHeap = OffHeapEntries.serialize(start, array, entries.size());
+    Assert.assertEquals(entries.get(1), offHeap.get(start + 1));
+    offHeap.release();
+    Assert.assertNull(offHeap.get(start + 1));
+    // releasing again is a no-op
+    offHeap.release();
+    Assert.assertNull(offHeap.get(start + 1));
+  }
+
   @Test
   public void testPreallocateSegment() throws Exception {
     RaftStorage storage = new RaftStorage(storageDir, StartupOption.REGULAR);
@@ -24,6 +24,7 @@ import org.apache.ratis.conf.RaftProperties;
 import org.apache.ratis.protocol.RaftPeerId;
 import org.apache.ratis.protocol.TimeoutIOException;
 import org.apache.ratis.server.RaftServerConfigKeys;
+import org.apache.ratis.server.impl.RaftConfiguration;
 import org.apache.ratis.server.impl.RaftServerConstants;
 import org.apache.ratis.server.impl.RetryCacheTestUtil;
 import org.apache.ratis.server.impl.RetryCache;
@@ -182,6 +183,52 @@ public class TestSegmentedRaftLog extends BaseTest {
     }
   }
 
+  @Test
+  public void testLoadLogSegmentsInParallel() throws Exception {
+    // the first entry of each segment is a configuration entry
+    final List<SegmentRange> ranges = prepareRanges(0, 10, 50, 0);
+    final List<Long> confIndices = new ArrayList<>();
+    final RaftConfiguration conf = RaftConfiguration.newBuilder()
+        .setConf(Collections.emptyList()).build();
+    for (SegmentRange range : ranges) {
+      final File file = range.isOpen ?
+          storage.getStorageDir().getOpenLogFile(range.start) :
+          storage.getStorageDir().getClosedLogFile(range.start, range.end);
+      try (LogOutputStream out = new LogOutputStream(file, false,
+          segmentMaxSize, preallocatedSize, bufferSize)) {
+        for (long i = range.start; i <= range.end; i++) {
+          if (i == range.start) {
+            out.write(ServerProtoUtils.toLogEntryProto(conf, range.term, i));
+            confIndices.add(i);
+          } else {
+            out.write(ServerProtoUtils.toLogEntryProto(
+                new SimpleOperation("m" + i).getLogEntryContent(), range.term, i));
+          }
+        }
+      }
+    }
+
+    for (int threads : new int[]{1, 4}) {
+      RaftServerConfigKeys.Log.setSegmentLoadThreads(properties, threads);
+      final List<Long> consumed = new ArrayList<>();
+      try (SegmentedRaftLog raftLog =
+               new SegmentedRaftLog(peerId, null, storage, -1, properties)) {
+        raftLog.open(RaftServerConstants.INVALID_LOG_INDEX, e -> {
+          if (e.hasConfigurationEntry()) {
+            consumed.add(e.getIndex());
+          }
+        });
+        // the configuration entries are consumed in order
+        Assert.assertEquals(confIndices, consumed);
+        Assert.assertEquals(0, raftLog.getStartIndex());
+        Assert.assertEquals(ranges.get(ranges.size() - 1).end, raftLog.getLastEntryTermIndex().getIndex());
+        for (SegmentRange range : ranges) {
+          Assert.assertEquals(range.term, raftLog.get(range.end).getTerm());
+        }
+      }
+    }
+  }
+
   static List<LogEntryProto> prepareLogEntries(List<SegmentRange> slist,
       Supplier<String> stringSupplier) {
     List<LogEntryProto> eList = new ArrayList<>();
@@ -283,6 +330,53 @@ public class TestSegmentedRaftLog extends BaseTest {
     }
   }
 
+  /**
+   * The closed segments have index files, which are used for loading the segments.
+   * A corrupted index file is ignored.
+   */
+  @Test
+  public void testLoadLogSegmentsFromIndex() throws Exception {
+    RaftServerConfigKeys.Log.setPreallocatedSize(properties, SizeInBytes.valueOf("16KB"));
+    RaftServerConfigKeys.Log.setSegmentSizeMax(properties, SizeInBytes.valueOf("128KB"));
+    RaftServerConfigKeys.Log.setMaxCachedSegmentNum(properties, 1);
+
+    List<SegmentRange> ranges = prepareRanges(1, 4, 300, 0);
+    final byte[] content = new byte[1024];
+    List<LogEntryProto> entries = prepareLogEntries(ranges,
+        () -> new String(content));
+
+    try (SegmentedRaftLog raftLog =
+             new SegmentedRaftLog(peerId, null, storage, -1, properties)) {
+      raftLog.open(RaftServerConstants.INVALID_LOG_INDEX, null);
+      entries.stream().map(raftLog::appendEntry).forEach(CompletableFuture::join);
+    }
+
+    final List<File> indexFiles = new ArrayList<>();
+    for (RaftStorageDirectory.LogPathAndIndex pi : storage.getStorageDir().getLogSegmentFiles()) {
+      final File indexFile = LogSegmentIndex.getIndexFile(pi.getPath().toFile());
+      Assert.assertEquals(pi + ": " + indexFile, !pi.isOpen(), indexFile.exists());
+      if (indexFile.exists()) {
+        indexFiles.add(indexFile);
+      }
+    }
+    Assert.assertTrue(indexFiles.size() > 1);
+
+    for (int round = 0; round < 2; round++) {
+      try (SegmentedRaftLog raftLog =
+               new SegmentedRaftLog(peerId, null, storage, -1, properties)) {
+        raftLog.open(RaftServerConstants.INVALID_LOG_INDEX, null);
+        checkEntries(raftLog, entries, 0, entries.size());
+        for (SegmentRange range : ranges) {
+          Assert.assertEquals(range.term, raftLog.getTermIndex(range.start).getTerm());
+          Assert.assertEquals(range.term, raftLog.getTermIndex(range.end).getTerm());
+        }
+      }
+      // corrupt an index file
+      final File indexFile = indexFiles.get(0);
+      FileUtils.truncateFile(indexFile, indexFile.length() - 1);
+    }
+  }
+
   @Test
   public void testTruncate() throws Exception {
     // prepare the log for truncation
@@ -394,6 +488,103 @@ public class TestSegmentedRaftLog extends BaseTest {
     }
   }
 
+  @Test
+  public void testPurgeToArchive() throws Exception {
+    final File archiveDir = new File(storageDir.getParentFile(), "archive");
+    RaftServerConfigKeys.Log.Archive.setDir(properties, archiveDir);
+    final List<SegmentRange> ranges = prepareRanges(0, 5, 200, 0);
+    final List<LogEntryProto> entries = prepareLogEntries(ranges, null);
+
+    try (SegmentedRaftLog raftLog = new SegmentedRaftLog(peerId, null, storage, -1, properties)) {
+      raftLog.open(RaftServerConstants.INVALID_LOG_INDEX, null);
+      entries.stream().map(raftLog::appendEntry).forEach(CompletableFuture::join);
+      raftLog.purge(599).join();
+      Assert.assertEquals(400, raftLog.getStartIndex());
+      Assert.assertNull(raftLog.get(0));
+      Assert.assertEquals(0, raftLog.getArchiveStartIndex());
+    }
+
+    final File groupArchiveDir = new File(archiveDir, storageDir.getName());
+    for (int i = 0; i < 2; i++) {
+      final SegmentRange r = ranges.get(i);
+      final File purged = storage.getStorageDir().getClosedLogFile(r.start, r.end);
+      Assert.assertFalse(purged.exists());
+      final File archived = new File(groupArchiveDir, purged.getName());
+      Assert.assertEquals(SegmentedRaftLogFormat.VERSION_2, SegmentedRaftLogFormat.readVersion(archived));
+    }
+
+    // the archive index is reloaded after restart
+    try (SegmentedRaftLog raftLog = new SegmentedRaftLog(peerId, null, storage, -1, properties)) {
+      raftLog.open(RaftServerConstants.INVALID_LOG_INDEX, null);
+      Assert.assertEquals(0, raftLog.getArchiveStartIndex());
+      for (LogEntryProto e : entries) {
+        Assert.assertEquals(e, raftLog.getWithArchive(e.getIndex()));
+      }
+      Assert.assertNull(raftLog.getWithArchive(entries.size()));
+    }
+  }
+
+  /** The closed segments are converted in the background while the log is truncated. */
+  @Test
+  public void testConvertFormatInBackground() throws Exception {
+    RaftServerConfigKeys.Log.Format.setVersion(properties, SegmentedRaftLogFormat.VERSION_2);
+    final List<SegmentRange> ranges = prepareRanges(0, 5, 200, 0);
+    final List<LogEntryProto> entries = prepareLogEntries(ranges, null);
+
+    try (SegmentedRaftLog raftLog = new SegmentedRaftLog(peerId, null, storage, -1, properties)) {
+      raftLog.open(RaftServerConstants.INVALID_LOG_INDEX, null);
+      entries.stream().map(raftLog::appendEntry).forEach(CompletableFuture::join);
+      raftLog.truncate(500).join();
+    }
+
+    for (int i = 0; i < 2; i++) {
+      final SegmentRange r = ranges.get(i);
+      final File closed = storage.getStorageDir().getClosedLogFile(r.start, r.end);
+      Assert.assertEquals(SegmentedRaftLogFormat.VERSION_2, SegmentedRaftLogFormat.readVersion(closed));
+    }
+    final File truncated = storage.getStorageDir().getClosedLogFile(400, 499);
+    Assert.assertEquals(SegmentedRaftLogFormat.VERSION_1, SegmentedRaftLogFormat.readVersion(truncated));
+
+    try (SegmentedRaftLog raftLog = new SegmentedRaftLog(peerId, null, storage, -1, properties)) {
+      raftLog.open(RaftServerConstants.INVALID_LOG_INDEX, null);
+      Assert.assertEquals(499, raftLog.getLastEntryTermIndex().getIndex());
+      for (LogEntryProto e : entries.subList(0, 500)) {
+        Assert.assertEquals(e, raftLog.get(e.getIndex()));
+      }
+    }
+  }
+
+  @Test
+  public void testArchiveSizeMax() throws Exception {
+    final File archiveDir = new File(storageDir.getParentFile(), "archive");
+    RaftServerConfigKeys.Log.Archive.setDir(properties, archiveDir);
+    // each archived segment exceeds the limit and is deleted right after it is archived
+    RaftServerConfigKeys.Log.Archive.setSizeMax(properties, SizeInBytes.valueOf(1));
+    final List<SegmentRange> ranges = prepareRanges(0, 5, 200, 0);
+    final List<LogEntryProto> entries = prepareLogEntries(ranges, null);
+
+    try (SegmentedRaftLog raftLog = new SegmentedRaftLog(peerId, null, storage, -1, properties)) {
+      raftLog.open(RaftServerConstants.INVALID_LOG_INDEX, null);
+      entries.stream().map(raftLog::appendEntry).forEach(CompletableFuture::join);
+      raftLog.purge(599).join();
+      Assert.assertEquals(400, raftLog.getStartIndex());
+    }
+
+    final File groupArchiveDir = new File(archiveDir, storageDir.getName());
+    for (int i = 0; i < 2; i++) {
+      final SegmentRange r = ranges.get(i);
+      final File purged = storage.getStorageDir().getClosedLogFile(r.start, r.end);
+      Assert.assertFalse(purged.exists());
+      Assert.assertFalse(new File(groupArchiveDir, purged.getName()).exists());
+    }
+
+    try (SegmentedRaftLog raftLog = new SegmentedRaftLog(peerId, null, storage, -1, properties)) {
+      raftLog.open(RaftServerConstants.INVALID_LOG_INDEX, null);
+      Assert.assertNull(raftLog.getWithArchive(0));
+      Assert.assertEquals(entries.get(400), raftLog.getWithArchive(400));
+    }
+  }
+
   /**
    * Test append with inconsistent entries
    */
@@ -0,0 +1,68 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.util;
+
+import org.apache.ratis.util.Crc32cProvider.Implementation;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.zip.Checksum;
+
+public class TestCrc32cProvider {
+  @Test(timeout = 10000)
+  public void testImplementations() {
+    Assert.assertTrue(Crc32cProvider.isAvailable(Crc32cProvider.getImplementation()));
+    for (Implementation i : Implementation.values()) {
+      if (Crc32cProvider.isAvailable(i)) {
+        for (int length : new int[]{0, 1, 7, 8, 9, 100, 4096, 100_000}) {
+          runTestChecksum(i, length);
+        }
+      }
+    }
+  }
+
+  static void runTestChecksum(Implementation implementation, int length) {
+    final ThreadLocalRandom random = ThreadLocalRandom.current();
+    final byte[] data = new byte[length];
+    random.nextBytes(data);
+    final Checksum expected = new PureJavaCrc32C();
+    expected.update(data, 0, length);
+
+    final Checksum checksum = Crc32cProvider.newChecksum(implementation);
+    final int split = length == 0? 0: random.nextInt(length);
+    checksum.update(data, 0, split);
+    checksum.update(data, split, length - split);
+    Assert.assertEquals(implementation + ", length=" + length, expected.getValue(), checksum.getValue());
+
+    for (boolean direct : new boolean[]{false, true}) {
+      final ByteBuffer buffer = direct? ByteBuffer.allocateDirect(length + 2): ByteBuffer.allocate(length + 2);
+      buffer.position(1);
+      buffer.put(data);
+      buffer.position(1);
+      buffer.limit(1 + length);
+
+      checksum.reset();
+      Crc32cProvider.update(checksum, buffer);
+      Assert.assertEquals(implementation + ", length=" + length + ", direct=" + direct,
+          expected.getValue(), checksum.getValue());
+      Assert.assertEquals(buffer.limit(), buffer.position());
+    }
+  }
+}
@@ -0,0 +1,192 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.util;
+
+import org.apache.ratis.BaseTest;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestMpscDataBlockingQueue extends BaseTest {
+  static final TimeDuration TIMEOUT = TimeDuration.valueOf(10, TimeUnit.MILLISECONDS);
+
+  static void assertSizes(int expectedNumElements, int expectedNumBytes, MpscDataBlockingQueue<?> q) {
+    Assert.assertEquals(expectedNumElements, q.getNumElements());
+    Assert.assertEquals(expectedNumBytes, q.getNumBytes());
+  }
+
+  @Test(timeout = 1000)
+  public void testElementLimit() {
+    final MpscDataBlockingQueue<Integer> q = new MpscDataBlockingQueue<>(null, SizeInBytes.valueOf(100), 10, i -> 1);
+    for (int i = 0; i < 10; i++) {
+      Assert.assertTrue(q.offer(i));
+    }
+    assertSizes(10, 10, q);
+    Assert.assertFalse(q.offer(10));
+
+    Assert.assertEquals(0, q.poll().intValue());
+    assertSizes(9, 9, q);
+    Assert.assertTrue(q.offer(10));
+
+    final List<Integer> drained = new ArrayList<>();
+    Assert.assertEquals(5, q.drainTo(drained, 5));
+    Assert.assertEquals(5, drained.size());
+    for (int i = 0; i < drained.size(); i++) {
+      Assert.assertEquals(i + 1, drained.get(i).intValue());
+    }
+    assertSizes(5, 5, q);
+
+    q.clear();
+    assertSizes(0, 0, q);
+    Assert.assertNull(q.poll());
+  }
+
+  @Test(timeout = 1000)
+  public void testByteLimit() {
+    final MpscDataBlockingQueue<Integer> q = new MpscDataBlockingQueue<>(null, SizeInBytes.valueOf(100), 0, i -> i);
+    Assert.assertTrue(q.offer(60));
+    Assert.assertFalse(q.offer(41));
+    Assert.assertTrue(q.offer(40));
+    assertSizes(2, 100, q);
+    Assert.assertFalse(q.offer(1));
+    Assert.assertTrue(q.offer(0));
+
+    Assert.assertEquals(60, q.poll().intValue());
+    assertSizes(2, 40, q);
+    Assert.assertTrue(q.offer(41));
+    assertSizes(3, 81, q);
+
+    testFailureCase("element too large", () -> q.offer(101), IllegalStateException.class);
+  }
+
+  @Test(timeout = 10_000)
+  public void testBlockingCalls() throws Exception {
+    final MpscDataBlockingQueue<Integer> q = new MpscDataBlockingQueue<>(null, SizeInBytes.valueOf(100), 1, i -> 1);
+    Assert.assertNull(q.poll(TIMEOUT));
+    Assert.assertTrue(q.offer(1, TIMEOUT));
+    Assert.assertFalse(q.offer(2, TIMEOUT));
+
+    // a waiting producer is signaled by the consumer
+    final CompletableFuture<Boolean> offered = CompletableFuture.supplyAsync(() -> {
+      try {
+        return q.offer(2, TimeDuration.valueOf(10, TimeUnit.SECONDS));
+      } catch (InterruptedException e) {
+        throw new IllegalStateException(e);
+      }
+    });
+    JavaUtils.attempt(() -> q.getNumWaitingProducers() == 1, 100, TIMEOUT, "waitForProducer", LOG);
+    Assert.assertEquals(1, q.poll().intValue());
+    Assert.assertTrue(offered.get());
+
+    // a waiting consumer is unparked by a producer
+    Assert.assertEquals(2, q.poll().intValue());
+    final CompletableFuture<Integer> polled = CompletableFuture.supplyAsync(() -> {
+      try {
+        return q.poll(TimeDuration.valueOf(10, TimeUnit.SECONDS));
+      } catch (InterruptedException e) {
+        throw new IllegalStateException(e);
+      }
+    });
+    JavaUtils.attempt(q::hasWaitingConsumer, 100, TIMEOUT, "waitForConsumer", LOG);
+    Assert.assertTrue(q.offer(3));
+    Assert.assertEquals(3, polled.get().intValue());
+  }
+
+  static void assertNoFailures(Queue<Throwable> failures) {
+    final Throwable failure = failures.peek();
+    if (failure != null) {
+      throw new AssertionError(failures.size() + " producer(s) failed", failure);
+    }
+  }
+
+  /**
+   * Multiple producers offer increasing values to a small queue.
+   * The consumer checks that the values of each producer are in order
+   * and that the limits are never exceeded.
+   */
+  @Test(timeout = 60_000)
+  public void testMultipleProducers() throws Exception {
+    final int numProducers = 8;
+    final int numValues = 100_000;
+    final int elementLimit = 64;
+    final int byteLimit = 1000;
+    final MpscDataBlockingQueue<long[]> q = new MpscDataBlockingQueue<>(
+        null, SizeInBytes.valueOf(byteLimit), elementLimit, a -> (int) (a[1] % 32));
+
+    final AtomicInteger exceeded = new AtomicInteger();
+    final Queue<Throwable> failures = new ConcurrentLinkedQueue<>();
+    final List<Thread> producers = new ArrayList<>();
+    for (int p = 0; p < numProducers; p++) {
+      final long producer = p;
+      producers.add(new Thread(() -> {
+        try {
+          for (long i = 0; i < numValues; ) {
+            if (q.offer(new long[]{producer, i}, TIMEOUT)) {
+              i++;
+            }
+            if (q.getNumElements() > elementLimit || q.getNumBytes() > byteLimit) {
+              exceeded.incrementAndGet();
+            }
+          }
+        } catch (Throwable t) {
+          LOG.error("producer " + producer + " failed", t);
+          failures.add(t);
+        }
+      }));
+    }
+    producers.forEach(Thread::start);
+
+    final long[] expected = new long[numProducers];
+    final List<long[]> batch = new ArrayList<>();
+    for (long remaining = (long) numProducers * numValues; remaining > 0 && failures.isEmpty(); ) {
+      // alternate between poll and drain
+      if (remaining % 2 == 0) {
+        final long[] polled = q.poll(TIMEOUT);
+        if (polled != null) {
+          batch.add(polled);
+        }
+      } else {
+        q.drainTo(batch, 16);
+      }
+      for (long[] a : batch) {
+        Assert.assertEquals(expected[(int) a[0]]++, a[1]);
+      }
+      remaining -= batch.size();
+      batch.clear();
+    }
+
+    // do not join the other producers if any of them failed since they may be blocked on a full queue
+    assertNoFailures(failures);
+    for (Thread t : producers) {
+      t.join();
+    }
+    assertNoFailures(failures);
+    for (long e : expected) {
+      Assert.assertEquals(numValues, e);
+    }
+    Assert.assertEquals(0, exceeded.get());
+    assertSizes(0, 0, q);
+  }
+}
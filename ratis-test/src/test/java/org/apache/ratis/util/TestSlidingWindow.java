@@ -0,0 +1,335 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.util;
+
+import org.apache.ratis.BaseTest;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+public class TestSlidingWindow extends BaseTest {
+  static class Request implements SlidingWindow.ClientSideRequest<Long>, SlidingWindow.ServerSideRequest<Long> {
+    private final long seqNum;
+    private volatile boolean first;
+    private volatile Long reply;
+
+    Request(long seqNum) {
+      this(seqNum, false);
+    }
+
+    Request(long seqNum, boolean first) {
+      this.seqNum = seqNum;
+      this.first = first;
+    }
+
+    @Override
+    public long getSeqNum() {
+      return seqNum;
+    }
+
+    @Override
+    public void setReply(Long reply) {
+      this.reply = reply;
+    }
+
+    @Override
+    public boolean hasReply() {
+      return reply != null;
+    }
+
+    @Override
+    public void setFirstRequest() {
+      first = true;
+    }
+
+    @Override
+    public boolean isFirstRequest() {
+      return first;
+    }
+
+    @Override
+    public void fail(Throwable e) {
+      reply = -1L;
+    }
+
+    @Override
+    public String toString() {
+      return "seq=" + seqNum;
+    }
+  }
+
+  @Test
+  public void testClientDelaysUntilFirstReply() {
+    final SlidingWindow.Client<Request, Long> client = new SlidingWindow.Client<>("client");
+    final List<Long> sent = new ArrayList<>();
+    final Consumer<Request> send = r -> sent.add(r.getSeqNum());
+
+    final Request r1 = client.submitNewRequest(Request::new, send);
+    final Request r2 = client.submitNewRequest(Request::new, send);
+    final Request r3 = client.submitNewRequest(Request::new, send);
+    Assert.assertTrue(r1.isFirstRequest());
+    Assert.assertEquals(Collections.singletonList(1L), sent);
+
+    client.receiveReply(1, 1L, send);
+    Assert.assertEquals(1L, r1.reply.longValue());
+    Assert.assertEquals(3, sent.size());
+    Assert.assertEquals(2L, sent.get(1).longValue());
+    Assert.assertEquals(3L, sent.get(2).longValue());
+
+    // out-of-order and duplicated replies
+    client.receiveReply(3, 3L, send);
+    client.receiveReply(3, 33L, send);
+    client.receiveReply(2, 2L, send);
+    Assert.assertEquals(3L, r3.reply.longValue());
+    Assert.assertEquals(2L, r2.reply.longValue());
+
+    // the new requests are sent right away
+    client.submitNewRequest(Request::new, send);
+    Assert.assertEquals(4, sent.size());
+  }
+
+  @Test
+  public void testClientFail() {
+    final SlidingWindow.Client<Request, Long> client = new SlidingWindow.Client<>("client");
+    final Consumer<Request> send = r -> {};
+    final List<Request> requests = new ArrayList<>();
+    for (int i = 0; i < 40; i++) {
+      requests.add(client.submitNewRequest(Request::new, send));
+    }
+    client.fail(1, new Exception());
+    requests.forEach(r -> Assert.assertTrue(r.hasReply()));
+    Assert.assertTrue(client.submitNewRequest(Request::new, send).hasReply());
+  }
+
+  @Test
+  public void testServerOrdering() {
+    final Request end = new Request(Long.MAX_VALUE, false);
+    end.setReply(0L);
+    final SlidingWindow.Server<Request, Long> server = new SlidingWindow.Server<>("server", end);
+    final List<Long> processed = new ArrayList<>();
+    final List<Long> replied = new ArrayList<>();
+    final Consumer<Request> process = r -> processed.add(r.getSeqNum());
+    final Consumer<Request> reply = r -> replied.add(r.getSeqNum());
+
+    // the requests arrive out-of-order, with a range larger than the initial ring
+    for (long seq = 100; seq >= 5; seq--) {
+      server.receivedRequest(new Request(seq), process);
+    }
+    Assert.assertTrue(processed.isEmpty());
+    server.receivedRequest(new Request(4, true), process);
+    Assert.assertEquals(97, processed.size());
+    for (int i = 0; i < processed.size(); i++) {
+      Assert.assertEquals(4 + i, processed.get(i).longValue());
+    }
+
+    // the replies are sent in order
+    for (long seq = 100; seq > 4; seq--) {
+      server.receiveReply(seq, seq, reply, process);
+    }
+    Assert.assertTrue(replied.isEmpty());
+    Assert.assertFalse(server.endOfRequests());
+    server.receiveReply(4, 4L, reply, process);
+    Assert.assertEquals(98, replied.size());
+    for (int i = 0; i < 97; i++) {
+      Assert.assertEquals(4 + i, replied.get(i).longValue());
+    }
+    Assert.assertEquals(Long.MAX_VALUE, replied.get(97).longValue());
+  }
+
+  /** A failure of the processing or the reply method must not stop the later requests. */
+  @Test
+  public void testServerMethodFailure() {
+    final Request end = new Request(Long.MAX_VALUE, false);
+    end.setReply(0L);
+    final SlidingWindow.Server<Request, Long> server = new SlidingWindow.Server<>("server", end);
+    final List<Long> processed = new ArrayList<>();
+    final List<Long> replied = new ArrayList<>();
+    final Consumer<Request> process = r -> {
+      processed.add(r.getSeqNum());
+      if (r.getSeqNum() == 0) {
+        throw new IllegalStateException("Failed to process " + r);
+      }
+    };
+    final Consumer<Request> reply = r -> {
+      replied.add(r.getSeqNum());
+      if (r.getSeqNum() == 0) {
+        throw new IllegalStateException("Failed to reply " + r);
+      }
+    };
+
+    testFailure(() -> server.receivedRequest(new Request(0, true), process));
+    testFailure(() -> server.receiveReply(0, 0L, reply, process));
+
+    server.receivedRequest(new Request(1), process);
+    Assert.assertEquals(Arrays.asList(0L, 1L), processed);
+    server.receiveReply(1, 1L, reply, process);
+    Assert.assertEquals(Arrays.asList(0L, 1L), replied);
+  }
+
+  void testFailure(Runnable runnable) {
+    try {
+      runnable.run();
+      Assert.fail("Expected " + IllegalStateException.class);
+    } catch (IllegalStateException e) {
+      LOG.info("Good: got " + e);
+    }
+  }
+
+  @Test(timeout = 10_000)
+  public void testServerConcurrentReplies() throws Exception {
+    final Request end = new Request(Long.MAX_VALUE, false);
+    end.setReply(0L);
+    final SlidingWindow.Server<Request, Long> server = new SlidingWindow.Server<>("server", end);
+    final int n = 10000;
+    final ConcurrentLinkedQueue<Request> processed = new ConcurrentLinkedQueue<>();
+    final List<Long> replied = Collections.synchronizedList(new ArrayList<>());
+    final AtomicInteger replying = new AtomicInteger();
+    final AtomicInteger maxReplying = new AtomicInteger();
+    final Consumer<Request> reply = r -> {
+      // the replies are sent by one thread at a time
+      maxReplying.accumulateAndGet(replying.incrementAndGet(), Math::max);
+      replied.add(r.getSeqNum());
+      replying.decrementAndGet();
+    };
+
+    // the first request arrives last so that all the requests are processed in a batch
+    for (int i = n - 1; i >= 0; i--) {
+      server.receivedRequest(new Request(i, i == 0), processed::add);
+    }
+    Assert.assertEquals(n, processed.size());
+
+    runConcurrently(4, () -> {
+      for (Request r; (r = processed.poll()) != null; ) {
+        server.receiveReply(r.getSeqNum(), r.getSeqNum(), reply, processed::add);
+      }
+    });
+
+    Assert.assertEquals(1, maxReplying.get());
+    Assert.assertEquals(n, replied.size());
+    for (int i = 0; i < n; i++) {
+      Assert.assertEquals(i, replied.get(i).longValue());
+    }
+    Assert.assertTrue(server.endOfRequests());
+  }
+
+  /**
+   * After the first reply, the requests are submitted and retried concurrently.
+   * The sends must be run by one thread at a time, and the new requests must be sent in seqNum order.
+   */
+  @Test(timeout = 10_000)
+  public void testClientConcurrentSends() throws Exception {
+    final SlidingWindow.Client<Request, Long> client = new SlidingWindow.Client<>("client");
+    final List<Long> sent = new ArrayList<>();
+    final AtomicInteger sending = new AtomicInteger();
+    final AtomicInteger maxSending = new AtomicInteger();
+    final Consumer<Request> send = r -> {
+      maxSending.accumulateAndGet(sending.incrementAndGet(), Math::max);
+      sent.add(r.getSeqNum());
+      sending.decrementAndGet();
+    };
+
+    final Request first = client.submitNewRequest(Request::new, send);
+    final Request delayed = client.submitNewRequest(Request::new, send);
+    client.receiveReply(first.getSeqNum(), 1L, send);
+    Assert.assertEquals(2, sent.size());
+
+    final int numThreads = 4;
+    final int n = 1000;
+    final ConcurrentLinkedQueue<Request> submitted = new ConcurrentLinkedQueue<>();
+    runConcurrently(numThreads, () -> {
+      for (int i = 0; i < n; i++) {
+        final Request r = client.submitNewRequest(Request::new, send);
+        submitted.add(r);
+        client.retry(r, send);
+      }
+    });
+
+    Assert.assertEquals(1, maxSending.get());
+    Assert.assertEquals(2 + 2 * numThreads * n, sent.size());
+    // each new request is sent before its retry and after the new requests with smaller seqNums
+    long maxSent = delayed.getSeqNum();
+    final Set<Long> sentOnce = new HashSet<>();
+    for (long seqNum : sent.subList(2, sent.size())) {
+      if (sentOnce.add(seqNum)) {
+        Assert.assertTrue(seqNum > maxSent);
+        maxSent = seqNum;
+      }
+    }
+    Assert.assertEquals(numThreads * n, submitted.size());
+  }
+
+  @Test
+  public void testRequestMapShrink() {
+    final SlidingWindow.RequestMap<Request, Long> map = new SlidingWindow.RequestMap<>("map");
+    final int n = 1000;
+    for (long seq = 0; seq < n; seq++) {
+      map.putNewRequest(new Request(seq));
+    }
+    Assert.assertEquals(1024, map.getCapacity());
+
+    // the ring shrinks as the requests are removed from the head
+    for (long seq = 0; seq < n - 10; seq++) {
+      Assert.assertEquals(seq, map.removeFirst().getSeqNum());
+    }
+    Assert.assertEquals(32, map.getCapacity());
+    for (long seq = n - 10; seq < n; seq++) {
+      Assert.assertEquals(seq, map.get(seq).getSeqNum());
+    }
+
+    // an empty ring is reset to the initial capacity
+    map.putNewRequest(new Request(n + 100));
+    Assert.assertEquals(128, map.getCapacity());
+    while (!map.isEmpty()) {
+      map.removeFirst();
+    }
+    Assert.assertEquals(16, map.getCapacity());
+  }
+
+  /** Run the given task in the given number of threads and then assert that none of them failed. */
+  static void runConcurrently(int numThreads, Runnable task) throws InterruptedException {
+    final CountDownLatch done = new CountDownLatch(numThreads);
+    final ConcurrentLinkedQueue<Throwable> failures = new ConcurrentLinkedQueue<>();
+    for (int t = 0; t < numThreads; t++) {
+      new Thread(() -> {
+        try {
+          task.run();
+        } catch (Throwable e) {
+          failures.add(e);
+        } finally {
+          done.countDown();
+        }
+      }).start();
+    }
+    done.await();
+
+    final Throwable first = failures.peek();
+    if (first != null) {
+      throw new AssertionError(failures.size() + " thread(s) failed", first);
+    }
+  }
+}
@@ -21,6 +21,9 @@ import org.apache.log4j.Level;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
@@ -30,6 +33,10 @@ public class TestTimeoutScheduler {
     LogUtils.setLogLevel(TimeoutScheduler.LOG, Level.ALL);
   }
 
+  TimeoutScheduler newTimeoutScheduler() {
+    return TimeoutScheduler.newInstance(1);
+  }
+
   static class ErrorHandler implements Consumer<RuntimeException> {
     private final AtomicBoolean hasError = new AtomicBoolean(false);
 
@@ -46,7 +53,7 @@ public class TestTimeoutScheduler {
 
   @Test(timeout = 1000)
   public void testSingleTask() throws Exception {
-    final TimeoutScheduler scheduler = TimeoutScheduler.newInstance(1);
+    final TimeoutScheduler scheduler = newTimeoutScheduler();
     final TimeDuration grace = TimeDuration.valueOf(100, TimeUnit.MILLISECONDS);
     scheduler.setGracePeriod(grace);
     Assert.assertFalse(scheduler.hasScheduler());
@@ -81,7 +88,7 @@ public class TestTimeoutScheduler {
 
   @Test(timeout = 1000)
   public void testMultipleTasks() throws Exception {
-    final TimeoutScheduler scheduler = TimeoutScheduler.newInstance(1);
+    final TimeoutScheduler scheduler = newTimeoutScheduler();
     final TimeDuration grace = TimeDuration.valueOf(100, TimeUnit.MILLISECONDS);
     scheduler.setGracePeriod(grace);
     Assert.assertFalse(scheduler.hasScheduler());
@@ -127,7 +134,7 @@ public class TestTimeoutScheduler {
 
   @Test(timeout = 1000)
   public void testExtendingGracePeriod() throws Exception {
-    final TimeoutScheduler scheduler = TimeoutScheduler.newInstance(1);
+    final TimeoutScheduler scheduler = newTimeoutScheduler();
     final TimeDuration grace = TimeDuration.valueOf(100, TimeUnit.MILLISECONDS);
     scheduler.setGracePeriod(grace);
     Assert.assertFalse(scheduler.hasScheduler());
@@ -177,7 +184,7 @@ public class TestTimeoutScheduler {
 
   @Test(timeout = 1000)
   public void testRestartingScheduler() throws Exception {
-    final TimeoutScheduler scheduler = TimeoutScheduler.newInstance(1);
+    final TimeoutScheduler scheduler = newTimeoutScheduler();
     final TimeDuration grace = TimeDuration.valueOf(100, TimeUnit.MILLISECONDS);
     scheduler.setGracePeriod(grace);
     Assert.assertFalse(scheduler.hasScheduler());
@@ -207,4 +214,36 @@ public class TestTimeoutScheduler {
 
     errorHandler.assertNoError();
   }
+
+  /**
+   * Schedule tasks concurrently with a zero grace period,
+   * so that the scheduler is repeatedly shut down and restarted while the tasks are being scheduled.
+   */
+  @Test(timeout = 10_000)
+  public void testConcurrentTasks() throws Exception {
+    final TimeoutScheduler scheduler = newTimeoutScheduler();
+    scheduler.setGracePeriod(TimeDuration.valueOf(0, TimeUnit.MILLISECONDS));
+    final ErrorHandler errorHandler = new ErrorHandler();
+
+    final int numThreads = 4;
+    final int numTasks = 1000;
+    final CountDownLatch latch = new CountDownLatch(numThreads * numTasks);
+    final List<Thread> threads = new ArrayList<>();
+    for(int t = 0; t < numThreads; t++) {
+      threads.add(new Thread(() -> {
+        for(int i = 0; i < numTasks; i++) {
+          scheduler.onTimeout(TimeDuration.valueOf(i % 3, TimeUnit.MILLISECONDS), latch::countDown, errorHandler);
+        }
+      }));
+    }
+    threads.forEach(Thread::start);
+    for(Thread t : threads) {
+      t.join();
+    }
+
+    latch.await();
+    errorHandler.assertNoError();
+    JavaUtils.attempt(() -> !scheduler.hasScheduler(), 100, TimeDuration.valueOf(10, TimeUnit.MILLISECONDS),
+        "shutdown", TimeoutScheduler.LOG);
+  }
 }
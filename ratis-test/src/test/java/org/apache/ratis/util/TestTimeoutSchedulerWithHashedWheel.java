@@ -0,0 +1,109 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestTimeoutSchedulerWithHashedWheel extends TestTimeoutScheduler {
+  static final TimeDuration TICK = TimeDuration.valueOf(5, TimeUnit.MILLISECONDS);
+
+  @Override
+  TimeoutScheduler newTimeoutScheduler() {
+    return TimeoutScheduler.newInstance(1, TICK);
+  }
+
+  @Test
+  public void testZeroTick() {
+    Assert.assertNull(TimeoutScheduler.newInstance(1, TimeDuration.valueOf(0, TimeUnit.MILLISECONDS)).getTick());
+    Assert.assertEquals(TICK, newTimeoutScheduler().getTick());
+  }
+
+  /** The schedulers with the same tick share a timer, which is stopped after it is released by all of them. */
+  @Test(timeout = 10_000)
+  public void testSharedTimer() throws Exception {
+    final TimeDuration grace = TimeDuration.valueOf(100, TimeUnit.MILLISECONDS);
+    final TimeoutScheduler[] schedulers = {newTimeoutScheduler(), newTimeoutScheduler()};
+    final CountDownLatch latch = new CountDownLatch(schedulers.length);
+    for (TimeoutScheduler s : schedulers) {
+      s.setGracePeriod(grace);
+      s.onTimeout(TICK, latch::countDown, TimeoutScheduler.LOG, () -> "Failed to count down");
+    }
+    final HashedWheelTimer timer = ((HashedWheelTimer.SharedScheduler) schedulers[0].getScheduler()).getTimer();
+    Assert.assertSame(timer, ((HashedWheelTimer.SharedScheduler) schedulers[1].getScheduler()).getTimer());
+    latch.await();
+
+    JavaUtils.attempt(() -> !schedulers[0].hasScheduler() && !schedulers[1].hasScheduler(),
+        100, grace, "shutdown", TimeoutScheduler.LOG);
+    final HashedWheelTimer.SharedScheduler shared = HashedWheelTimer.getShared(1, TICK);
+    try {
+      Assert.assertNotSame(timer, shared.getTimer());
+    } finally {
+      shared.shutdown();
+    }
+  }
+
+  /** The tick thread parks while the wheel is empty. */
+  @Test(timeout = 10_000)
+  public void testIdle() throws Exception {
+    final HashedWheelTimer timer = new HashedWheelTimer("test", 1, TICK, 16);
+    try {
+      JavaUtils.attempt(timer::isIdle, 100, TICK, "idle", TimeoutScheduler.LOG);
+      for (int i = 0; i < 3; i++) {
+        final CountDownLatch latch = new CountDownLatch(1);
+        timer.schedule(latch::countDown, TICK);
+        latch.await();
+        JavaUtils.attempt(timer::isIdle, 100, TICK, "idle", TimeoutScheduler.LOG);
+      }
+    } finally {
+      timer.shutdown();
+    }
+  }
+
+  /** The tasks, some of which wrap around the wheel, must not run early. */
+  @Test(timeout = 10_000)
+  public void testManyTasks() throws Exception {
+    final int numTasks = 10_000;
+    final int wheelSize = 16;
+    final TimeDuration tick = TimeDuration.valueOf(1, TimeUnit.MILLISECONDS);
+    final HashedWheelTimer timer = new HashedWheelTimer("test", 2, tick, wheelSize);
+    final CountDownLatch latch = new CountDownLatch(numTasks);
+    final AtomicInteger early = new AtomicInteger();
+    try {
+      for (int i = 0; i < numTasks; i++) {
+        final long delayNanos = TimeUnit.MILLISECONDS.toNanos(ThreadLocalRandom.current().nextInt(4 * wheelSize));
+        final long deadline = System.nanoTime() + delayNanos;
+        timer.schedule(() -> {
+          if (System.nanoTime() < deadline) {
+            early.incrementAndGet();
+          }
+          latch.countDown();
+        }, TimeDuration.valueOf(delayNanos, TimeUnit.NANOSECONDS));
+      }
+      latch.await();
+      Assert.assertEquals(0, early.get());
+    } finally {
+      timer.shutdown();
+    }
+  }
+}